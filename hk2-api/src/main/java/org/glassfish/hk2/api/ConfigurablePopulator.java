@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.api;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Populator} whose way of reading descriptor files can be
+ * changed.  The populator returned by
+ * {@link DynamicConfigurationService#getPopulator()} in the hk2
+ * implementation is a ConfigurablePopulator.  The settings apply to
+ * every later call to populate on this populator
+ * 
+ * @author jwells
+ *
+ */
+public interface ConfigurablePopulator extends Populator {
+    /**
+     * Sets whether or not this populator reads descriptors lazily.  In
+     * lazy mode the metadata of each descriptor is kept unparsed until
+     * it is first asked for, which saves time and memory for the services
+     * that are never looked up.  The default comes from the
+     * org.jvnet.hk2.properties.populator.lazy system property, or false
+     * 
+     * @param lazy true if descriptors should be read lazily
+     */
+    public void setLazy(boolean lazy);
+    
+    /**
+     * Tells whether or not this populator reads descriptors lazily
+     * 
+     * @return true if descriptors are read lazily
+     */
+    public boolean isLazy();
+    
+    /**
+     * Sets whether or not this populator reads descriptor files in parallel.
+     * In parallel mode each file is read on the executor (see
+     * {@link #setExecutor(Executor)}).  The {@link PopulatorPostProcessor}s
+     * given to populate are still called on the calling thread, and the
+     * descriptors are post processed and bound in file order and then record
+     * order, so the results are the same as when reading the files one at a
+     * time.  All of them are committed in one {@link DynamicConfiguration}.
+     * The default comes from the
+     * org.jvnet.hk2.properties.populator.parallel system property, or false
+     * 
+     * @param parallel true if descriptor files should be read in parallel
+     */
+    public void setParallel(boolean parallel);
+    
+    /**
+     * Tells whether or not this populator reads descriptor files in parallel
+     * 
+     * @return true if descriptor files are read in parallel
+     */
+    public boolean isParallel();
+    
+    /**
+     * Sets the executor used to read descriptor files in parallel mode.
+     * If null a shared pool of daemon threads, one per available processor,
+     * is used
+     * 
+     * @param executor The executor to use in parallel mode, or null to
+     * use the default pool
+     */
+    public void setExecutor(Executor executor);
+    
+    /**
+     * Returns the executor set with {@link #setExecutor(Executor)}
+     * 
+     * @return The executor used in parallel mode, or null if the
+     * default pool is used
+     */
+    public Executor getExecutor();
+
+}
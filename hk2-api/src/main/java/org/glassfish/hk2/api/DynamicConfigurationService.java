@@ -60,7 +60,9 @@ public interface DynamicConfigurationService {
     /**
      * Returns a populator for this service locator that can be used to
      * automatically read in hk2 inhabitant files (or some other external
-     * source)
+     * source).  The populator of the hk2 implementation is a
+     * {@link ConfigurablePopulator}, which can be used to read
+     * descriptor files lazily or in parallel
      * @return A non-null populator that can be used to fill in a {@link ServiceLocator}
      */
     public Populator getPopulator();
@@ -63,6 +63,12 @@ import org.jvnet.hk2.annotations.Contract;
  * make liberal use of {@link javax.inject.Provider} or {@link IterableProvider}
  * when injecting dependent services so that these services are not instantiated
  * when the InterceptionService is created
+ * <p>
+ * The interceptors returned for a service are kept and shared by
+ * every instance of that service until the interception services or
+ * the configuration of the {@link ServiceLocator} change.  An
+ * implementation that must return new interceptors for every instance
+ * of a service should be annotated with {@link PerInstanceInterceptors}
  * 
  * @author jwells
  */
@@ -57,6 +57,11 @@ import javax.inject.Scope;
  * The PerThread scope is not automatically handled by a new ServiceLocator.  In order to enable the PerThread scope
  * the user can either add an implementation of {@link Context} which handles it or it can use the
  * {@link org.glassfish.hk2.utilities.ServiceLocatorUtilities#enablePerThreadScope} method.
+ * <p>
+ * By default the services of a thread are never destroyed, they are released
+ * when the thread is garbage collected.  If the scope is enabled with
+ * {@link org.glassfish.hk2.utilities.ServiceLocatorUtilities#enablePerThreadScope(org.glassfish.hk2.api.ServiceLocator, boolean)}
+ * then the services of terminated threads are destroyed.
  * 
  * @author jwells
  *
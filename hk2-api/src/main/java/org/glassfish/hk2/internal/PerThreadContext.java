@@ -42,7 +42,12 @@ package org.glassfish.hk2.internal;
 import java.lang.annotation.Annotation;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import javax.inject.Singleton;
 
@@ -56,10 +61,27 @@ import org.glassfish.hk2.utilities.general.Hk2ThreadLocal;
 import org.glassfish.hk2.utilities.reflection.Logger;
 
 /**
+ * The {@link Context} for the {@link PerThread} scope.
+ * <p>
+ * By default the instances of a thread are never destroyed, they are
+ * simply released once the thread is gone.  When destroyOnThreadExit is
+ * set the context also keeps track of the threads it has given instances
+ * to, and destroys the instances of threads that have terminated.  Threads
+ * are checked for termination as new threads start using the context,
+ * so the number of terminated threads whose instances have not yet been
+ * destroyed stays proportional to the number of live threads.  This
+ * is meant for applications with very many short-lived threads.
+ * Since shutdown destroys the instances of threads that may still
+ * be running, the instances of each thread are guarded by the lock
+ * of that thread's own wrapper, which is normally uncontended
+ * 
  * @author jwells
  */
 @Singleton @Visibility(DescriptorVisibility.LOCAL)
 public class PerThreadContext implements Context<PerThread> {
+    /** The fewest tracked threads before terminated threads are looked for */
+    private final static int MINIMUM_DESTRUCTION_CHECK = 16;
+    
     private final static boolean LOG_THREAD_DESTRUCTION = AccessController.<Boolean>doPrivileged(new PrivilegedAction<Boolean>() {
 
         @Override
@@ -72,9 +94,41 @@ public class PerThreadContext implements Context<PerThread> {
     private final Hk2ThreadLocal<PerContextThreadWrapper> threadMap =
             new Hk2ThreadLocal<PerContextThreadWrapper>() {
         public PerContextThreadWrapper initialValue() {
-            return new PerContextThreadWrapper();
+            PerContextThreadWrapper retVal = new PerContextThreadWrapper();
+            if (destroyOnThreadExit) {
+                track(retVal);
+            }
+            
+            return retVal;
         }
     };
+    
+    private final boolean destroyOnThreadExit;
+    
+    // Only used when destroyOnThreadExit is true
+    private final Object trackLock = new Object();
+    private List<PerContextThreadWrapper> tracked = new LinkedList<PerContextThreadWrapper>();
+    private int nextDestructionCheck = MINIMUM_DESTRUCTION_CHECK;
+    
+    /**
+     * Creates a PerThreadContext that never destroys
+     * the instances it creates
+     */
+    public PerThreadContext() {
+        this(false);
+    }
+    
+    /**
+     * Creates a PerThreadContext
+     * 
+     * @param destroyOnThreadExit If true the instances of a thread
+     * will be destroyed some time after the thread terminates, and
+     * all remaining instances will be destroyed when this context
+     * is shut down.  If false instances are never destroyed
+     */
+    public PerThreadContext(boolean destroyOnThreadExit) {
+        this.destroyOnThreadExit = destroyOnThreadExit;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#getScope()
@@ -130,6 +184,85 @@ public class PerThreadContext implements Context<PerThread> {
     @Override
     public void shutdown() {
         threadMap.removeAll();
+        
+        if (!destroyOnThreadExit) return;
+        
+        List<PerContextThreadWrapper> destroyMe;
+        synchronized (trackLock) {
+            destroyMe = tracked;
+            tracked = new LinkedList<PerContextThreadWrapper>();
+        }
+        
+        destroy(destroyMe);
+    }
+    
+    /**
+     * Destroys the instances of all threads that have terminated.
+     * This is done automatically as new threads use this context,
+     * but may also be called directly.  Does nothing if this context
+     * was not created with destroyOnThreadExit
+     */
+    public void destroyTerminatedThreadInstances() {
+        if (!destroyOnThreadExit) return;
+        
+        destroy(removeTerminated());
+    }
+    
+    private void track(PerContextThreadWrapper wrapper) {
+        List<PerContextThreadWrapper> destroyMe = null;
+        synchronized (trackLock) {
+            tracked.add(wrapper);
+            
+            if (tracked.size() >= nextDestructionCheck) {
+                destroyMe = removeTerminated();
+            }
+        }
+        
+        if (destroyMe != null) {
+            destroy(destroyMe);
+        }
+    }
+    
+    private List<PerContextThreadWrapper> removeTerminated() {
+        List<PerContextThreadWrapper> retVal = new LinkedList<PerContextThreadWrapper>();
+        
+        synchronized (trackLock) {
+            List<PerContextThreadWrapper> alive = new LinkedList<PerContextThreadWrapper>();
+            for (PerContextThreadWrapper wrapper : tracked) {
+                if (wrapper.isTerminated()) {
+                    retVal.add(wrapper);
+                }
+                else {
+                    alive.add(wrapper);
+                }
+            }
+            
+            tracked = alive;
+            nextDestructionCheck = Math.max(MINIMUM_DESTRUCTION_CHECK, 2 * alive.size());
+        }
+        
+        return retVal;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void destroy(List<PerContextThreadWrapper> wrappers) {
+        for (PerContextThreadWrapper wrapper : wrappers) {
+            // Disposed outside of the lock of the wrapper
+            List<Map.Entry<ActiveDescriptor<?>, Object>> entries = wrapper.removeAll();
+            
+            for (Map.Entry<ActiveDescriptor<?>, Object> entry : entries) {
+                try {
+                    ((ActiveDescriptor<Object>) entry.getKey()).dispose(entry.getValue());
+                }
+                catch (Throwable th) {
+                    Logger.getLogger().debug(PerThreadContext.class.getName(), "destroy", th);
+                }
+            }
+            
+            if (LOG_THREAD_DESTRUCTION) {
+                Logger.getLogger().debug("Destroyed PerThreadContext data for thread " + wrapper.id);
+            }
+        }
     }
 
     @Override
@@ -140,25 +273,52 @@ public class PerThreadContext implements Context<PerThread> {
     }
     
     private static class PerContextThreadWrapper {
-        private final HashMap<ActiveDescriptor<?>, Object> instances =
-                new HashMap<ActiveDescriptor<?>, Object>();
+        private final LinkedHashMap<ActiveDescriptor<?>, Object> instances =
+                new LinkedHashMap<ActiveDescriptor<?>, Object>();
         private final long id = Thread.currentThread().getId();
         
-        public boolean has(ActiveDescriptor<?> d) {
+        // Weak so that the values of the Hk2ThreadLocal do not keep the thread alive
+        private final WeakReference<Thread> thread = new WeakReference<Thread>(Thread.currentThread());
+        
+        private boolean isTerminated() {
+            Thread t = thread.get();
+            return (t == null) || !t.isAlive();
+        }
+        
+        public synchronized boolean has(ActiveDescriptor<?> d) {
             return instances.containsKey(d);
         }
         
-        public Object get(ActiveDescriptor<?> d) {
+        public synchronized Object get(ActiveDescriptor<?> d) {
             return instances.get(d);
         }
         
-        public void put(ActiveDescriptor<?> d, Object v) {
+        public synchronized void put(ActiveDescriptor<?> d, Object v) {
             instances.put(d, v);
         }
         
+        /**
+         * Removes all the instances of this thread
+         * 
+         * @return The removed instances, in the reverse order of creation
+         */
+        private synchronized List<Map.Entry<ActiveDescriptor<?>, Object>> removeAll() {
+            List<Map.Entry<ActiveDescriptor<?>, Object>> retVal =
+                    new LinkedList<Map.Entry<ActiveDescriptor<?>, Object>>();
+            for (Map.Entry<ActiveDescriptor<?>, Object> entry : instances.entrySet()) {
+                retVal.add(0, new AbstractMap.SimpleImmutableEntry<ActiveDescriptor<?>, Object>(entry));
+            }
+            
+            instances.clear();
+            
+            return retVal;
+        }
+        
         @Override
         public void finalize() throws Throwable {
-            instances.clear();
+            synchronized (this) {
+                instances.clear();
+            }
             
             if (LOG_THREAD_DESTRUCTION) {
                 Logger.getLogger().debug("Removing PerThreadContext data for thread " + id);
@@ -0,0 +1,549 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ClassAnalyzer;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.PerLookup;
+
+/**
+ * This is a compact binary form of the hk2 descriptor file.  The generators
+ * can optionally write this file next to the text file, with the same
+ * name plus {@link #BINARY_SUFFIX}.  All strings in the file are kept once
+ * in a string table, and every descriptor record is located with an offset
+ * table at the front of the file, so that a reader can go directly to any
+ * record without parsing the ones before it.
+ * <p>
+ * The layout of the file (all values big-endian) is:
+ * <pre>
+ * int     magic ('HK2B')
+ * short   version
+ * short   reserved (0)
+ * int     number of strings
+ * int     number of descriptors
+ * int[]   absolute offset of every string
+ * int[]   absolute offset of every descriptor record
+ * strings (unsigned short length followed by that many UTF-8 bytes)
+ * descriptor records
+ * </pre>
+ * A descriptor record refers to strings by their index in the string table,
+ * where -1 means null
+ * 
+ * @author jwells
+ *
+ */
+public class BinaryDescriptorFile {
+    /** The suffix added to the name of the text descriptor file to get the binary one */
+    public final static String BINARY_SUFFIX = ".bin";
+    
+    /** The first four bytes of every binary descriptor file ('HK2B') */
+    public final static int MAGIC = 0x484B3242;
+    
+    /** The version of the binary format written by this class */
+    public final static short VERSION = 1;
+    
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int HEADER_SIZE = 16;
+    private final static int FIXED_RECORD_SIZE = 24;
+    private final static int NULL_INDEX = -1;
+    private final static int MAXIMUM_STRING_LENGTH = 0xFFFF;
+    private final static int MAXIMUM_COUNT = Short.MAX_VALUE;
+    
+    private final static byte NULL_BOOLEAN = 0;
+    private final static byte FALSE_BOOLEAN = 1;
+    private final static byte TRUE_BOOLEAN = 2;
+    
+    private final ByteBuffer buffer;
+    private final int numStrings;
+    private final int numDescriptors;
+    private final String strings[];
+    
+    /**
+     * Creates a reader for the binary descriptor file found in the
+     * buffer, from the current position of the buffer to its limit.
+     * The buffer itself is never modified and may be a memory
+     * mapped buffer
+     * 
+     * @param buffer The buffer containing the binary descriptor file
+     * @throws IOException if the buffer does not contain a valid
+     * binary descriptor file header
+     */
+    public BinaryDescriptorFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice();
+        
+        if (this.buffer.limit() < HEADER_SIZE) {
+            throw new IOException("The binary descriptor file is too short to contain a header: " + this.buffer.limit());
+        }
+        if (this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("The binary descriptor file does not start with the proper magic number: " +
+                Integer.toHexString(this.buffer.getInt(0)));
+        }
+        short version = this.buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary descriptor file version " + version);
+        }
+        
+        numStrings = this.buffer.getInt(8);
+        numDescriptors = this.buffer.getInt(12);
+        if (numStrings < 0 || numDescriptors < 0 ||
+                ((long) HEADER_SIZE + (4L * numStrings) + (4L * numDescriptors)) > this.buffer.limit()) {
+            throw new IOException("The binary descriptor file has an invalid header: strings=" + numStrings +
+                " descriptors=" + numDescriptors + " length=" + this.buffer.limit());
+        }
+        
+        strings = new String[numStrings];
+    }
+    
+    /**
+     * Returns the number of descriptors in this file
+     * 
+     * @return The number of descriptors in this file
+     */
+    public int getNumberOfDescriptors() {
+        return numDescriptors;
+    }
+    
+    /**
+     * Reads the descriptor at the given index in this file
+     * 
+     * @param index The index of the descriptor, from 0 to
+     * {@link #getNumberOfDescriptors()} - 1
+     * @return A new DescriptorImpl with the data from the record
+     * @throws IOException if the record is corrupt
+     */
+    public DescriptorImpl getDescriptor(int index) throws IOException {
+        return getDescriptor(index, true);
+    }
+    
+    /**
+     * Reads the descriptor at the given index in this file, optionally
+     * leaving out the metadata, which can be read later with
+     * {@link #getMetadata(int)}
+     * 
+     * @param index The index of the descriptor, from 0 to
+     * {@link #getNumberOfDescriptors()} - 1
+     * @param includeMetadata If false the returned descriptor has
+     * no metadata
+     * @return A new DescriptorImpl with the data from the record
+     * @throws IOException if the record is corrupt
+     */
+    public DescriptorImpl getDescriptor(int index, boolean includeMetadata) throws IOException {
+        ByteBuffer record = getRecord(index);
+        try {
+            String implementation = getString(record.getInt());
+            String name = getString(record.getInt());
+            String scope = getString(record.getInt());
+            String analysisName = getString(record.getInt());
+            int rank = record.getInt();
+            DescriptorType descriptorType = (record.get() == 0) ? DescriptorType.CLASS : DescriptorType.PROVIDE_METHOD ;
+            DescriptorVisibility descriptorVisibility = (record.get() == 0) ? DescriptorVisibility.NORMAL : DescriptorVisibility.LOCAL ;
+            Boolean proxiable = readBoolean(record.get());
+            Boolean proxyForSameScope = readBoolean(record.get());
+            
+            Set<String> contracts = readStringSet(record);
+            Set<String> qualifiers = readStringSet(record);
+            
+            Map<String, List<String>> metadatas = (includeMetadata) ? readMetadata(record) : null ;
+            
+            return new DescriptorImpl(contracts,
+                    name,
+                    scope,
+                    implementation,
+                    metadatas,
+                    qualifiers,
+                    descriptorType,
+                    descriptorVisibility,
+                    null,
+                    rank,
+                    proxiable,
+                    proxyForSameScope,
+                    analysisName,
+                    null,
+                    null);
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Descriptor record " + index + " runs past the end of the binary descriptor file", bue);
+        }
+    }
+    
+    /**
+     * Reads only the metadata of the descriptor at the given index in this file
+     * 
+     * @param index The index of the descriptor, from 0 to
+     * {@link #getNumberOfDescriptors()} - 1
+     * @return A new non-null map of the metadata of the descriptor
+     * @throws IOException if the record is corrupt
+     */
+    public Map<String, List<String>> getMetadata(int index) throws IOException {
+        ByteBuffer record = getRecord(index);
+        try {
+            record.position(record.position() + FIXED_RECORD_SIZE);
+            
+            // Skip the contracts and qualifiers
+            for (int lcv = 0; lcv < 2; lcv++) {
+                int size = record.getShort();
+                record.position(record.position() + (4 * size));
+            }
+            
+            return readMetadata(record);
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Descriptor record " + index + " runs past the end of the binary descriptor file", bue);
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IOException("Descriptor record " + index + " runs past the end of the binary descriptor file", iae);
+        }
+    }
+    
+    private ByteBuffer getRecord(int index) throws IOException {
+        if (index < 0 || index >= numDescriptors) {
+            throw new IndexOutOfBoundsException("Descriptor index " + index + " is not in the range [0," + numDescriptors + ")");
+        }
+        
+        ByteBuffer record = buffer.duplicate();
+        try {
+            record.position(buffer.getInt(HEADER_SIZE + (4 * numStrings) + (4 * index)));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IOException("Descriptor record " + index + " has an invalid offset", iae);
+        }
+        
+        return record;
+    }
+    
+    private Map<String, List<String>> readMetadata(ByteBuffer record) throws IOException {
+        int numMetadatas = record.getShort();
+        Map<String, List<String>> metadatas = new LinkedHashMap<String, List<String>>();
+        for (int lcv = 0; lcv < numMetadatas; lcv++) {
+            String key = getString(record.getInt());
+            
+            int numValues = record.getShort();
+            List<String> values = new ArrayList<String>(numValues);
+            for (int v = 0; v < numValues; v++) {
+                values.add(getString(record.getInt()));
+            }
+            
+            metadatas.put(key, values);
+        }
+        
+        return metadatas;
+    }
+    
+    /**
+     * Reads all of the descriptors in this file, in file order
+     * 
+     * @return A non-null list of all descriptors in this file
+     * @throws IOException if any record is corrupt
+     */
+    public List<DescriptorImpl> getDescriptors() throws IOException {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(numDescriptors);
+        for (int lcv = 0; lcv < numDescriptors; lcv++) {
+            retVal.add(getDescriptor(lcv));
+        }
+        
+        return retVal;
+    }
+    
+    private Set<String> readStringSet(ByteBuffer record) throws IOException {
+        int size = record.getShort();
+        Set<String> retVal = new LinkedHashSet<String>();
+        for (int lcv = 0; lcv < size; lcv++) {
+            retVal.add(getString(record.getInt()));
+        }
+        
+        return retVal;
+    }
+    
+    private String getString(int index) throws IOException {
+        if (index == NULL_INDEX) return null;
+        if (index < 0 || index >= numStrings) {
+            throw new IOException("String index " + index + " is not in the string table of size " + numStrings);
+        }
+        
+        String retVal = strings[index];
+        if (retVal != null) return retVal;
+        
+        // Racing threads decode the same value, which is harmless
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.getInt(HEADER_SIZE + (4 * index)));
+        
+        int length = data.getShort() & 0xFFFF;
+        byte bytes[] = new byte[length];
+        data.get(bytes);
+        
+        retVal = new String(bytes, UTF8);
+        strings[index] = retVal;
+        
+        return retVal;
+    }
+    
+    private static Boolean readBoolean(byte b) {
+        switch (b) {
+        case FALSE_BOOLEAN:
+            return Boolean.FALSE;
+        case TRUE_BOOLEAN:
+            return Boolean.TRUE;
+        default:
+            return null;
+        }
+    }
+    
+    private static byte writeBoolean(Boolean b) {
+        if (b == null) return NULL_BOOLEAN;
+        return b.booleanValue() ? TRUE_BOOLEAN : FALSE_BOOLEAN ;
+    }
+    
+    /**
+     * Returns true if the buffer, starting at its current position,
+     * begins with the binary descriptor file magic number
+     * 
+     * @param buffer The buffer to check
+     * @return true if this buffer contains a binary descriptor file
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return false;
+        
+        return buffer.getInt(buffer.position()) == MAGIC;
+    }
+    
+    /**
+     * If the input stream contains a binary descriptor file this method
+     * returns a buffer with the entire contents of the stream, otherwise
+     * it returns null and leaves the stream positioned where it was.
+     * If the input stream is a {@link FileInputStream} the returned buffer
+     * is a read-only memory mapped view of the file.  Any other input stream
+     * must support {@link InputStream#mark(int)}, or else this method
+     * returns null without reading anything from the stream
+     * 
+     * @param is The non-null stream to inspect
+     * @return A buffer containing the binary descriptor file, or null
+     * if the stream does not contain a binary descriptor file
+     * @throws IOException on an error reading the stream
+     */
+    public static ByteBuffer getBinaryContents(InputStream is) throws IOException {
+        if (is instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) is).getChannel();
+            long position = channel.position();
+            long size = channel.size() - position;
+            if (size < HEADER_SIZE) return null;
+            
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic, position + magic.position()) < 0) return null;
+            }
+            if (magic.getInt(0) != MAGIC) return null;
+            
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+        
+        if (!is.markSupported()) return null;
+        
+        is.mark(4);
+        byte magic[] = new byte[4];
+        int read = 0;
+        try {
+            while (read < magic.length) {
+                int thisRead = is.read(magic, read, magic.length - read);
+                if (thisRead < 0) return null;
+                read += thisRead;
+            }
+        }
+        finally {
+            is.reset();
+        }
+        
+        if (ByteBuffer.wrap(magic).getInt() != MAGIC) return null;
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte chunk[] = new byte[4096];
+        while ((read = is.read(chunk)) >= 0) {
+            baos.write(chunk, 0, read);
+        }
+        
+        return ByteBuffer.wrap(baos.toByteArray());
+    }
+    
+    /**
+     * Writes the given descriptors to the output stream in the binary
+     * descriptor file format.  The output stream is not closed
+     * 
+     * @param out The non-null output stream to write to
+     * @param descriptors The non-null descriptors to write, in the order
+     * they should appear in the file
+     * @throws IOException on an error writing to the stream, or if a
+     * descriptor has values that are too large for the binary format
+     */
+    public static void write(OutputStream out, Collection<? extends Descriptor> descriptors) throws IOException {
+        List<String> stringTable = new ArrayList<String>();
+        Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int recordOffsets[] = new int[descriptors.size()];
+        
+        int lcv = 0;
+        for (Descriptor d : descriptors) {
+            recordOffsets[lcv++] = records.size();
+            
+            records.writeInt(intern(d.getImplementation(), stringTable, stringIndexes));
+            records.writeInt(intern(d.getName(), stringTable, stringIndexes));
+            
+            // Scope and analysis name are written as the text format would read them back
+            String scope = d.getScope();
+            if (scope == null) scope = PerLookup.class.getName();
+            String analysisName = d.getClassAnalysisName();
+            if (ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(analysisName)) analysisName = null;
+            
+            records.writeInt(intern(scope, stringTable, stringIndexes));
+            records.writeInt(intern(analysisName, stringTable, stringIndexes));
+            records.writeInt(d.getRanking());
+            records.writeByte(DescriptorType.PROVIDE_METHOD.equals(d.getDescriptorType()) ? 1 : 0);
+            records.writeByte(DescriptorVisibility.LOCAL.equals(d.getDescriptorVisibility()) ? 1 : 0);
+            records.writeByte(writeBoolean(d.isProxiable()));
+            records.writeByte(writeBoolean(d.isProxyForSameScope()));
+            
+            writeStringSet(records, d.getAdvertisedContracts(), stringTable, stringIndexes);
+            writeStringSet(records, d.getQualifiers(), stringTable, stringIndexes);
+            
+            Map<String, List<String>> metadatas = d.getMetadata();
+            records.writeShort(checkCount(metadatas.size(), "metadata keys"));
+            for (Map.Entry<String, List<String>> entry : metadatas.entrySet()) {
+                records.writeInt(intern(entry.getKey(), stringTable, stringIndexes));
+                
+                List<String> values = entry.getValue();
+                records.writeShort(checkCount(values.size(), "metadata values"));
+                for (String value : values) {
+                    records.writeInt(intern(value, stringTable, stringIndexes));
+                }
+            }
+        }
+        records.close();
+        
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringData = new DataOutputStream(stringBytes);
+        int stringOffsets[] = new int[stringTable.size()];
+        
+        lcv = 0;
+        for (String s : stringTable) {
+            stringOffsets[lcv++] = stringData.size();
+            
+            byte encoded[] = s.getBytes(UTF8);
+            if (encoded.length > MAXIMUM_STRING_LENGTH) {
+                throw new IOException("The string starting with " + s.substring(0, 32) +
+                    " is too long for the binary descriptor format (" + encoded.length + " bytes)");
+            }
+            
+            stringData.writeShort(encoded.length);
+            stringData.write(encoded);
+        }
+        stringData.close();
+        
+        int stringBase = HEADER_SIZE + (4 * stringOffsets.length) + (4 * recordOffsets.length);
+        int recordBase = stringBase + stringBytes.size();
+        
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeShort(VERSION);
+        dos.writeShort(0);
+        dos.writeInt(stringOffsets.length);
+        dos.writeInt(recordOffsets.length);
+        for (int offset : stringOffsets) {
+            dos.writeInt(stringBase + offset);
+        }
+        for (int offset : recordOffsets) {
+            dos.writeInt(recordBase + offset);
+        }
+        stringBytes.writeTo(dos);
+        recordBytes.writeTo(dos);
+        dos.flush();
+    }
+    
+    private static void writeStringSet(DataOutputStream records, Set<String> set,
+            List<String> stringTable, Map<String, Integer> stringIndexes) throws IOException {
+        records.writeShort(checkCount(set.size(), "set elements"));
+        for (String s : set) {
+            records.writeInt(intern(s, stringTable, stringIndexes));
+        }
+    }
+    
+    private static int checkCount(int count, String what) throws IOException {
+        if (count > MAXIMUM_COUNT) {
+            throw new IOException("Too many " + what + " for the binary descriptor format: " + count);
+        }
+        
+        return count;
+    }
+    
+    private static int intern(String s, List<String> stringTable, Map<String, Integer> stringIndexes) {
+        if (s == null) return NULL_INDEX;
+        
+        Integer index = stringIndexes.get(s);
+        if (index != null) return index;
+        
+        index = stringTable.size();
+        stringTable.add(s);
+        stringIndexes.put(s, index);
+        
+        return index;
+    }
+}
@@ -40,6 +40,8 @@
 
 package org.glassfish.hk2.utilities;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -49,6 +51,7 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 
 import org.glassfish.hk2.api.DescriptorFileFinder;
@@ -71,7 +74,17 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
             
     });
     
+    private final static String USE_BINARY_DESCRIPTORS_PROPERTY = "org.jvnet.hk2.properties.descriptor.file.finder.binary";
+    private final static boolean USE_BINARY_DESCRIPTORS = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(System.getProperty(USE_BINARY_DESCRIPTORS_PROPERTY, "true"));
+        }
+            
+    });
+    
     private final static String DEFAULT_NAME = "default";
+    private final static String FILE_PROTOCOL = "file";
 
     private final ClassLoader classLoader;
     private final String names[];
@@ -123,7 +136,11 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
     /**
      * Simple implementation of the findDescriptorFiles which does a
      * simple getResources on the classloader in order to find the
-     * hk2 descriptor files
+     * hk2 descriptor files.  If a binary descriptor file (see
+     * {@link BinaryDescriptorFile}) is found next to a text descriptor
+     * file then the binary file is returned in its place, unless the
+     * org.jvnet.hk2.properties.descriptor.file.finder.binary
+     * system property is set to false
      */
     @Override
     public List<InputStream> findDescriptorFiles() throws IOException {
@@ -132,11 +149,25 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
         ArrayList<InputStream> returnList = new ArrayList<InputStream>();
         
         for (String name : names) {
+            HashSet<String> binaryURLs = new HashSet<String>();
+            if (USE_BINARY_DESCRIPTORS) {
+                Enumeration<URL> binaries = classLoader.getResources(RESOURCE_BASE + name + BinaryDescriptorFile.BINARY_SUFFIX);
+                while (binaries.hasMoreElements()) {
+                    binaryURLs.add(binaries.nextElement().toString());
+                }
+            }
+            
             Enumeration<URL> e = classLoader.getResources(RESOURCE_BASE+name);
 
             for (; e.hasMoreElements();) {
                 URL url = e.nextElement();
                 
+                String binaryURL = url.toString() + BinaryDescriptorFile.BINARY_SUFFIX;
+                if (binaryURLs.contains(binaryURL)) {
+                    // The binary companion of the text file is faster to read
+                    url = new URL(binaryURL);
+                }
+                
                 if (DEBUG_DESCRIPTOR_FINDER) {
                     Logger.getLogger().debug("Adding in URL to set being parsed: " + url + " from " + RESOURCE_BASE+name);
                 }
@@ -149,7 +180,7 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
                 
                 InputStream inputStream;
                 try {
-                    inputStream = url.openStream();
+                    inputStream = openStream(url);
                 }
                 catch (IOException ioe) {
                     if (DEBUG_DESCRIPTOR_FINDER) {
@@ -174,6 +205,26 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder, Desc
         return returnList;
     }
     
+    /**
+     * Files are opened directly so that a binary descriptor file
+     * can be memory mapped rather than copied
+     */
+    private static InputStream openStream(URL url) throws IOException {
+        if (FILE_PROTOCOL.equals(url.getProtocol())) {
+            try {
+                return new FileInputStream(new File(url.toURI()));
+            }
+            catch (URISyntaxException e) {
+                // Fall through to the URL
+            }
+            catch (IllegalArgumentException e) {
+                // Fall through to the URL
+            }
+        }
+        
+        return url.openStream();
+    }
+    
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.DescriptorFileFinderInformation#getDescriptorFileInformation()
      */
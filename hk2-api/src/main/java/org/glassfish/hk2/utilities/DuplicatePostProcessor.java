@@ -69,7 +69,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 public class DuplicatePostProcessor implements PopulatorPostProcessor {
 
 	private final DuplicatePostProcessorMode mode;
-    private final HashSet<DescriptorImpl> strictDupSet = new HashSet<DescriptorImpl>();
+    private final HashSet<StrictKey> strictDupSet = new HashSet<StrictKey>();
     private final HashSet<ImplOnlyKey> implOnlyDupSet = new HashSet<ImplOnlyKey>();
     
     /**
@@ -142,10 +142,12 @@ public class DuplicatePostProcessor implements PopulatorPostProcessor {
     }
     
     private DescriptorImpl strict(ServiceLocator serviceLocator, DescriptorImpl descriptorImpl) {
-    	if (strictDupSet.contains(descriptorImpl)) {
+    	StrictKey key = new StrictKey(descriptorImpl);
+    	
+    	if (strictDupSet.contains(key)) {
             return null;
         }
-        strictDupSet.add(descriptorImpl);
+        strictDupSet.add(key);
         
         Set<String> contracts = descriptorImpl.getAdvertisedContracts();
         String contract = null;
@@ -194,6 +196,67 @@ public class DuplicatePostProcessor implements PopulatorPostProcessor {
     	return "DuplicateCodeProcessor(" + mode + "," + System.identityHashCode(this) + ")";
     }
 
+    /**
+     * Key used for strict mode.  The hash code leaves out the metadata,
+     * so that descriptors whose metadata is read lazily are only made
+     * to read it when every other field matches another descriptor
+     * 
+     * @author jwells
+     */
+    private final static class StrictKey {
+        private final DescriptorImpl descriptor;
+        private final int hash;
+        
+        private StrictKey(DescriptorImpl descriptor) {
+            this.descriptor = descriptor;
+            
+            int hash = 0;
+            if (descriptor.getImplementation() != null) {
+                hash ^= descriptor.getImplementation().hashCode();
+            }
+            for (String contract : descriptor.getAdvertisedContracts()) {
+                hash ^= contract.hashCode();
+            }
+            if (descriptor.getName() != null) {
+                hash ^= descriptor.getName().hashCode();
+            }
+            if (descriptor.getScope() != null) {
+                hash ^= descriptor.getScope().hashCode();
+            }
+            for (String qualifier : descriptor.getQualifiers()) {
+                hash ^= qualifier.hashCode();
+            }
+            if (descriptor.getDescriptorType() != null) {
+                hash ^= descriptor.getDescriptorType().hashCode();
+            }
+            if (descriptor.getDescriptorVisibility() != null) {
+                hash ^= descriptor.getDescriptorVisibility().hashCode();
+            }
+            
+            this.hash = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof StrictKey)) return false;
+            StrictKey other = (StrictKey) o;
+            
+            return DescriptorImpl.descriptorEquals(descriptor, other.descriptor);
+        }
+        
+        @Override
+        public String toString() {
+            return "StrictKey(" + descriptor.getImplementation() + "," + System.identityHashCode(this) + ")";
+        }
+        
+    }
+
     /**
      * Key use for implementation only (along with descriptor
      * type, otherwise factories eliminate themselves)
@@ -46,7 +46,11 @@ package org.glassfish.hk2.utilities;
  *
  */
 public enum DuplicatePostProcessorMode {
-	/** Uses the equals method of {@link DescriptorImpl} which includes most of the fields of the descriptor */
+	/**
+	 * Uses the equals method of {@link DescriptorImpl} which includes most of the fields of the descriptor.
+	 * The metadata of a descriptor that is read lazily is only read if all of the other fields match
+	 * another descriptor
+	 */
 	STRICT,
 	
 	/**
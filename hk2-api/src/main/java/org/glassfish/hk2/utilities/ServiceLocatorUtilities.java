@@ -111,6 +111,33 @@ public abstract class ServiceLocatorUtilities {
         }
     }
 
+    /**
+     * This method will add the ability to use the {@link PerThread} scope to
+     * the given locator.  If the locator already has the hk2 {@link Context} implementation
+     * that handles the {@link PerThread} scope this method does nothing.
+     * <p>
+     * When destroyOnThreadExit is true the services created for a thread are
+     * destroyed some time after that thread has terminated, rather than just
+     * being released.  This is useful when there are very many short-lived
+     * threads, as the services of a thread no longer live until the thread
+     * is garbage collected and their {@link javax.annotation.PreDestroy}
+     * methods are called
+     *
+     * @param locator The non-null locator to enable the PerThread scope on
+     * @param destroyOnThreadExit true if the services of terminated threads should be destroyed
+     * @throws MultiException if there were errors when committing the service
+     */
+    public static void enablePerThreadScope(ServiceLocator locator, boolean destroyOnThreadExit) {
+        if (!destroyOnThreadExit) {
+            enablePerThreadScope(locator);
+            return;
+        }
+
+        if (locator.getBestDescriptor(BuilderHelper.createContractFilter(PerThreadContext.class.getName())) != null) return;
+
+        addOneConstant(locator, new PerThreadContext(true));
+    }
+
     /**
      * This method will add the ability to use the {@link InheritableThread}
      * scope to the given locator. If the locator already has a {@link Context}
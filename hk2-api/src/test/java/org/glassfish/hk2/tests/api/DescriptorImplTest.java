@@ -40,12 +40,16 @@
 
 package org.glassfish.hk2.tests.api;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -56,6 +60,7 @@ import junit.framework.Assert;
 import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.junit.Test;
@@ -679,6 +684,89 @@ public class DescriptorImplTest {
         
     }
     
+    /**
+     * Tests that descriptors written in the binary format
+     * are read back in the same
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryReadWrite() throws IOException {
+        DescriptorImpl full = new DescriptorImpl(new FullDescriptorImpl());
+        full.setLoader(null);
+        full.setServiceId(null);
+        full.setLocatorId(null);
+        
+        DescriptorImpl empty = new DescriptorImpl();
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(baos, Arrays.asList(full, empty, full));
+        baos.close();
+        
+        ByteBuffer contents = BinaryDescriptorFile.getBinaryContents(new ByteArrayInputStream(baos.toByteArray()));
+        Assert.assertNotNull(contents);
+        Assert.assertTrue(BinaryDescriptorFile.isBinary(contents));
+        
+        BinaryDescriptorFile binaryFile = new BinaryDescriptorFile(contents);
+        Assert.assertEquals(3, binaryFile.getNumberOfDescriptors());
+        
+        // Records can be read in any order
+        DescriptorImpl third = binaryFile.getDescriptor(2);
+        DescriptorImpl first = binaryFile.getDescriptor(0);
+        DescriptorImpl second = binaryFile.getDescriptor(1);
+        
+        Assert.assertEquals(full, first);
+        Assert.assertEquals(full, third);
+        Assert.assertEquals(FullDescriptorImpl.FULL_INITIAL_RANK, first.getRanking());
+        Assert.assertEquals(FullDescriptorImpl.FULL_INITIAL_PROXIABLE, first.isProxiable());
+        Assert.assertEquals(FullDescriptorImpl.FULL_INITIAL_PROXY_FOR_SAME_SCOPE, first.isProxyForSameScope());
+        Assert.assertEquals(FullDescriptorImpl.FULL_ANALYSIS_SERVICE, first.getClassAnalysisName());
+        
+        // Interned strings are shared between records
+        Assert.assertSame(first.getImplementation(), third.getImplementation());
+        
+        Assert.assertEquals(empty, second);
+        Assert.assertNull(second.getImplementation());
+        Assert.assertEquals(PerLookup.class.getName(), second.getScope());
+        Assert.assertNull(second.isProxiable());
+    }
+    
+    /**
+     * Tests that the text format is not mistaken for the binary
+     * format, and that checking does not consume the stream
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testTextIsNotBinary() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(baos);
+        new FullDescriptorImpl().writeObject(pw);
+        pw.close();
+        
+        BufferedInputStream bis = new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Assert.assertNull(BinaryDescriptorFile.getBinaryContents(bis));
+        
+        DescriptorImpl di = new DescriptorImpl();
+        Assert.assertTrue(di.readObject(new BufferedReader(new InputStreamReader(bis))));
+        Assert.assertEquals(FullDescriptorImpl.class.getName(), di.getImplementation());
+    }
+    
+    /**
+     * Tests that a corrupt binary file is reported as an IOException
+     * 
+     * @throws IOException
+     */
+    @Test(expected=IOException.class)
+    public void testTruncatedBinaryFile() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(baos, Collections.singletonList(new FullDescriptorImpl()));
+        
+        byte truncated[] = Arrays.copyOf(baos.toByteArray(), baos.size() - 8);
+        
+        new BinaryDescriptorFile(ByteBuffer.wrap(truncated)).getDescriptor(0);
+    }
+    
     /**
      * Tests that a bad value cannot come in
      */
@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.utilities.finder;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the binary file handling of the {@link ClasspathDescriptorFileFinder}.
+ * The files used are in META-INF/hk2-locator of the test resources
+ * 
+ * @author jwells
+ *
+ */
+public class ClasspathDescriptorFileFinderTest {
+    private final static String TEXT_ONLY = "finder-text";
+    private final static String TEXT_AND_BINARY = "finder-binary";
+    private final static String BINARY_IMPL = "com.acme.finder.BinaryService";
+    
+    private static InputStream findOne(ClasspathDescriptorFileFinder finder) throws IOException {
+        List<InputStream> found = finder.findDescriptorFiles();
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals(1, finder.getDescriptorFileInformation().size());
+        
+        return found.get(0);
+    }
+    
+    /**
+     * Tests that the text file is found when there is no binary file
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testTextOnly() throws IOException {
+        ClasspathDescriptorFileFinder finder = new ClasspathDescriptorFileFinder(getClass().getClassLoader(), TEXT_ONLY);
+        
+        InputStream is = findOne(finder);
+        try {
+            Assert.assertNull(BinaryDescriptorFile.getBinaryContents(is));
+            Assert.assertTrue(finder.getDescriptorFileInformation().get(0).endsWith(TEXT_ONLY));
+        }
+        finally {
+            is.close();
+        }
+    }
+    
+    /**
+     * Tests that the binary file next to the text file is found
+     * in place of the text file, and that it is read directly
+     * from the file system
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryPreferred() throws IOException {
+        ClasspathDescriptorFileFinder finder = new ClasspathDescriptorFileFinder(getClass().getClassLoader(), TEXT_AND_BINARY);
+        
+        InputStream is = findOne(finder);
+        try {
+            Assert.assertTrue(is instanceof FileInputStream);
+            Assert.assertTrue(finder.getDescriptorFileInformation().get(0).endsWith(
+                    TEXT_AND_BINARY + BinaryDescriptorFile.BINARY_SUFFIX));
+            
+            ByteBuffer contents = BinaryDescriptorFile.getBinaryContents(is);
+            Assert.assertNotNull(contents);
+            
+            BinaryDescriptorFile binary = new BinaryDescriptorFile(contents);
+            Assert.assertEquals(1, binary.getNumberOfDescriptors());
+            Assert.assertEquals(BINARY_IMPL, binary.getDescriptor(0).getImplementation());
+        }
+        finally {
+            is.close();
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the HK2 benchmarks in the two configurations used when
+ * comparing builds:<OL>
+ * <LI>single-threaded average latency, written to latency.json</LI>
+ * <LI>throughput at each thread count, written to throughput-N.json</LI>
+ * </OL>
+ * Usage:
+ * <pre>
+ * java -jar target/benchmarks.jar [output-directory] [benchmark-regexp]
+ * </pre>
+ * The output directory defaults to target/benchmark-results and the regexp
+ * defaults to every benchmark in this module.  The following system properties
+ * can be used to shorten or lengthen a run:<UL>
+ * <LI>{@value #THREADS_PROPERTY} - comma separated thread counts (default {@value #DEFAULT_THREADS})</LI>
+ * <LI>{@value #FORKS_PROPERTY} - the number of forks (default {@value #DEFAULT_FORKS})</LI>
+ * <LI>{@value #ITERATIONS_PROPERTY} - warmup and measurement iterations (default {@value #DEFAULT_ITERATIONS})</LI>
+ * <LI>{@value #ITERATION_TIME_PROPERTY} - seconds per iteration (default {@value #DEFAULT_ITERATION_TIME})</LI>
+ * </UL>
+ * 
+ * @author jwells
+ *
+ */
+public class BenchmarkRunner {
+    /** Comma separated list of thread counts for the throughput runs */
+    public final static String THREADS_PROPERTY = "org.glassfish.hk2.benchmarks.threads";
+    /** The number of forks per benchmark */
+    public final static String FORKS_PROPERTY = "org.glassfish.hk2.benchmarks.forks";
+    /** The number of warmup and measurement iterations */
+    public final static String ITERATIONS_PROPERTY = "org.glassfish.hk2.benchmarks.iterations";
+    /** The number of seconds each iteration runs */
+    public final static String ITERATION_TIME_PROPERTY = "org.glassfish.hk2.benchmarks.iterationTime";
+    
+    private final static String DEFAULT_THREADS = "1,2,4,8,16,32,64";
+    private final static int DEFAULT_FORKS = 1;
+    private final static int DEFAULT_ITERATIONS = 5;
+    private final static int DEFAULT_ITERATION_TIME = 1;
+    
+    private final static String DEFAULT_OUTPUT = "target" + File.separator + "benchmark-results";
+    private final static String DEFAULT_INCLUDE = BenchmarkRunner.class.getPackage().getName() + ".*";
+    
+    private static List<Integer> getThreadCounts() {
+        String threads = System.getProperty(THREADS_PROPERTY, DEFAULT_THREADS);
+        
+        LinkedList<Integer> retVal = new LinkedList<Integer>();
+        StringTokenizer st = new StringTokenizer(threads, ",");
+        while (st.hasMoreTokens()) {
+            retVal.add(Integer.parseInt(st.nextToken().trim()));
+        }
+        
+        return retVal;
+    }
+    
+    private static ChainedOptionsBuilder getBaseOptions(String include) {
+        int iterations = Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS);
+        TimeValue iterationTime = TimeValue.seconds(Integer.getInteger(ITERATION_TIME_PROPERTY, DEFAULT_ITERATION_TIME));
+        
+        return new OptionsBuilder().include(include).
+            forks(Integer.getInteger(FORKS_PROPERTY, DEFAULT_FORKS)).
+            warmupIterations(iterations).
+            warmupTime(iterationTime).
+            measurementIterations(iterations).
+            measurementTime(iterationTime).
+            resultFormat(ResultFormatType.JSON);
+    }
+
+    /**
+     * Runs the benchmarks
+     * 
+     * @param args [output-directory] [benchmark-regexp]
+     * @throws RunnerException if a benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        File outputDirectory = new File((args.length > 0) ? args[0] : DEFAULT_OUTPUT);
+        String include = (args.length > 1) ? args[1] : DEFAULT_INCLUDE;
+        
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create output directory " + outputDirectory.getAbsolutePath());
+        }
+        
+        new Runner(getBaseOptions(include).
+            mode(Mode.AverageTime).
+            timeUnit(TimeUnit.NANOSECONDS).
+            threads(1).
+            result(new File(outputDirectory, "latency.json").getAbsolutePath()).
+            build()).run();
+        
+        for (int threads : getThreadCounts()) {
+            new Runner(getBaseOptions(include).
+                mode(Mode.Throughput).
+                timeUnit(TimeUnit.MILLISECONDS).
+                threads(threads).
+                result(new File(outputDirectory, "throughput-" + threads + ".json").getAbsolutePath()).
+                build()).run();
+        }
+    }
+
+}
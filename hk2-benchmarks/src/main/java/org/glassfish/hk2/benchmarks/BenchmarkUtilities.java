@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+
+/**
+ * Utilities used to set up the locators used by the benchmarks
+ * 
+ * @author jwells
+ *
+ */
+public class BenchmarkUtilities {
+    private final static AtomicInteger LOCATOR_NUMBER = new AtomicInteger();
+    
+    /**
+     * Creates a uniquely named locator with the given parent and
+     * adds the given classes to it
+     * 
+     * @param prefix The prefix of the name of the locator.  May not be null
+     * @param parent The parent of the locator.  May be null
+     * @param classes The classes to add to the locator.  May be empty
+     * @return A new locator with the given classes added to it
+     */
+    public static ServiceLocator createLocator(String prefix, ServiceLocator parent, Class<?>... classes) {
+        String name = prefix + "-" + LOCATOR_NUMBER.getAndIncrement();
+        
+        ServiceLocator retVal = ServiceLocatorFactory.getInstance().create(name, parent);
+        if (classes.length > 0) {
+            ServiceLocatorUtilities.addClasses(retVal, classes);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Adds count singleton descriptors to the locator, each of which is named
+     * {@link #getFillerName(int)} and implemented by the given implementation
+     * class.  The descriptors are not reified, so they behave like descriptors
+     * read from an inhabitants file
+     * 
+     * @param locator The locator to add the descriptors to.  May not be null
+     * @param implementation The implementation class of every descriptor
+     * @param contract The contract advertised by every descriptor
+     * @param count The number of descriptors to add
+     */
+    public static void addFillerDescriptors(ServiceLocator locator,
+            Class<?> implementation,
+            Class<?> contract,
+            int count) {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        
+        for (int lcv = 0; lcv < count; lcv++) {
+            config.bind(BuilderHelper.link(implementation.getName()).
+                to(contract.getName()).
+                named(getFillerName(lcv)).
+                in(Singleton.class.getName()).build());
+        }
+        
+        config.commit();
+    }
+    
+    /**
+     * Gets the name of the given filler descriptor
+     * 
+     * @param index The index of the filler descriptor
+     * @return The name given to that filler descriptor
+     */
+    public static String getFillerName(int index) {
+        return "filler-" + index;
+    }
+    
+    /**
+     * Used during setup to ensure that a benchmark is measuring
+     * a successful lookup rather than a lookup returning null
+     * 
+     * @param found The result of the lookup
+     * @param what A description of what was looked up
+     * @throws IllegalStateException if found is null
+     */
+    public static void checkFound(Object found, String what) {
+        if (found == null) {
+            throw new IllegalStateException("The benchmark could not find the " + what);
+        }
+    }
+    
+    /**
+     * Destroys the given locator.  Does nothing if the locator is null
+     * 
+     * @param locator The locator to destroy, may be null
+     */
+    public static void destroy(ServiceLocator locator) {
+        if (locator == null) return;
+        
+        ServiceLocatorFactory.getInstance().destroy(locator);
+    }
+
+}
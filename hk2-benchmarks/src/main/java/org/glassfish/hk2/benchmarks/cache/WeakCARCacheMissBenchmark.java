@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a {@link WeakCARCache} under a stream of misses, where
+ * every operation computes a new value.  When the cache does not
+ * compute in parallel every miss is serialized on the cache, so
+ * comparing the two modes at several thread counts shows the
+ * contention caused by the computation
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+public class WeakCARCacheMissBenchmark {
+    private final static int CACHE_SIZE = 20000;
+    
+    @Param({ "false", "true" })
+    private boolean computeInParallel;
+    
+    /** The amount of work done by each computation, in Blackhole tokens */
+    @Param({ "500" })
+    private long computeTokens;
+    
+    private final AtomicLong nextKey = new AtomicLong();
+    private WeakCARCache<Long, Long> cache;
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        final long tokens = computeTokens;
+        
+        cache = CacheUtilities.createWeakCARCache(new Computable<Long, Long>() {
+
+            @Override
+            public Long compute(Long key) {
+                Blackhole.consumeCPU(tokens);
+                return key;
+            }
+            
+        }, CACHE_SIZE, false, computeInParallel);
+    }
+    
+    @Benchmark
+    public Long miss() {
+        return cache.compute(nextKey.getAndIncrement());
+    }
+    
+    /**
+     * One miss for every fifteen hits, roughly the ratio of a warm locator
+     * with a working set slightly larger than its cache
+     */
+    @Benchmark
+    public Long mixed() {
+        long key = nextKey.getAndIncrement();
+        if ((key & 0xF) != 0) {
+            key = 0;
+        }
+        
+        return cache.compute(key);
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.benchmarks.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.benchmarks.BenchmarkUtilities;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorBuilder;
+import org.jvnet.hk2.config.ConfigInjector;
+import org.jvnet.hk2.config.ConfigParser;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.InjectionTarget;
+import org.jvnet.hk2.config.NoopConfigInjector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link ConfigParser} on a large synthetic domain, with the global
+ * element names taken once per parse and with a locator query per element.
+ * Every server is a global element with several attributes and
+ * propertiesPerServer property elements.  Each parse registers its config
+ * beans in a new locator, and registration commits once per bean, so the
+ * default size is kept small enough that registration does not swamp the
+ * parse itself
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConfigParserBenchmark {
+    @Param({ "true", "false" })
+    private boolean precomputeElementNames;
+    
+    @Param({ "200" })
+    private int servers;
+    
+    @Param({ "10" })
+    private int propertiesPerServer;
+    
+    private final XMLInputFactory xif = XMLInputFactory.newInstance();
+    
+    private byte[] domainXml;
+    private ServiceLocator locator;
+    
+    @Setup(Level.Trial)
+    public void setupDocument() throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<bench-domain version=\"1.0\">\n");
+        
+        for (int server = 0; server < servers; server++) {
+            sb.append("  <bench-server name=\"server-").append(server).
+                append("\" host=\"host-").append(server).append(".example.com\" port=\"").
+                append(8000 + (server % 1000)).append("\" enabled=\"true\">\n");
+            
+            for (int property = 0; property < propertiesPerServer; property++) {
+                sb.append("    <property name=\"property-").append(property).
+                    append("\" value=\"${com.example.value-").append(property).
+                    append("}\" description=\"Synthetic property ").append(property).
+                    append(" of server ").append(server).append(", used to pad the document to a realistic size\"/>\n");
+            }
+            
+            sb.append("  </bench-server>\n");
+        }
+        
+        sb.append("</bench-domain>\n");
+        
+        domainXml = sb.toString().getBytes("UTF-8");
+    }
+    
+    @Setup(Level.Invocation)
+    public void setupLocator() {
+        locator = BenchmarkUtilities.createLocator("ConfigParserBenchmark", null);
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        
+        bindInjector(config, BenchDomainInjector.class, BenchDomain.class,
+                BenchDomainInjector.ELEMENT_NAME, BenchDomainInjector.METADATA);
+        bindInjector(config, BenchServerInjector.class, BenchServer.class,
+                BenchServerInjector.ELEMENT_NAME, BenchServerInjector.METADATA);
+        bindInjector(config, BenchPropertyInjector.class, BenchProperty.class,
+                BenchPropertyInjector.ELEMENT_NAME, BenchPropertyInjector.METADATA);
+        
+        config.commit();
+    }
+    
+    @TearDown(Level.Invocation)
+    public void tearDownLocator() {
+        BenchmarkUtilities.destroy(locator);
+        locator = null;
+    }
+    
+    private static void bindInjector(DynamicConfiguration config,
+            Class<? extends NoopConfigInjector> injector,
+            Class<?> contract,
+            String elementName,
+            String metadata[]) {
+        DescriptorBuilder builder = BuilderHelper.link(injector).
+                to(ConfigInjector.class).
+                to(InjectionTarget.class).
+                to(contract).
+                in(Singleton.class.getName()).
+                qualifiedBy(injector.getAnnotation(InjectionTarget.class)).
+                named(elementName);
+        
+        Map<String, List<String>> metadataMap = new LinkedHashMap<String, List<String>>();
+        for (String entry : metadata) {
+            int index = entry.indexOf('=');
+            
+            String key = entry.substring(0, index);
+            List<String> values = metadataMap.get(key);
+            if (values == null) {
+                values = new LinkedList<String>();
+                metadataMap.put(key, values);
+            }
+            
+            values.add(entry.substring(index + 1));
+        }
+        
+        for (Map.Entry<String, List<String>> entry : metadataMap.entrySet()) {
+            builder.has(entry.getKey(), entry.getValue());
+        }
+        
+        config.bind(builder.build());
+    }
+    
+    @Benchmark
+    public DomDocument<?> parse() throws XMLStreamException {
+        ConfigParser parser = new ConfigParser(locator);
+        parser.setPrecomputeElementNames(precomputeElementNames);
+        
+        return parser.parse(xif.createXMLStreamReader(new ByteArrayInputStream(domainXml)));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.benchmarks.BenchmarkUtilities;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures lookups and injection of a generic contract with many
+ * implementations.  The uncached lookups clear the service cache
+ * first, so that every candidate is narrowed by type safety
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+public class GenericInjectionBenchmark {
+    private final static Type NESTED_LIST_REPOSITORY = new TypeLiteral<Repository<List<List<String>>>>() {}.getType();
+    private final static Type LONG_REPOSITORY = new TypeLiteral<Repository<Long>>() {}.getType();
+    
+    private ServiceLocator locator;
+    private ServiceLocatorRuntimeBean runtime;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        locator = BenchmarkUtilities.createLocator("GenericInjectionBenchmark", null, Repositories.ALL);
+        ServiceLocatorUtilities.addClasses(locator, GenericInjectedService.class);
+        
+        runtime = locator.getService(ServiceLocatorRuntimeBean.class);
+        
+        BenchmarkUtilities.checkFound(getNestedListRepository(), "nested list repository");
+        BenchmarkUtilities.checkFound(getLongRepository(), "long repository");
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkUtilities.destroy(locator);
+        locator = null;
+        runtime = null;
+    }
+    
+    @Benchmark
+    public Repository<List<List<String>>> getNestedListRepository() {
+        return locator.getService(NESTED_LIST_REPOSITORY);
+    }
+    
+    @Benchmark
+    public Repository<List<List<String>>> getNestedListRepositoryUncached() {
+        runtime.clearServiceCache();
+        
+        return locator.getService(NESTED_LIST_REPOSITORY);
+    }
+    
+    @Benchmark
+    public Repository<Long> getLongRepository() {
+        return locator.getService(LONG_REPOSITORY);
+    }
+    
+    @Benchmark
+    public Repository<Long> getLongRepositoryUncached() {
+        runtime.clearServiceCache();
+        
+        return locator.getService(LONG_REPOSITORY);
+    }
+    
+    @Benchmark
+    public int createGenericInjected() {
+        return locator.getService(GenericInjectedService.class).doWork();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.benchmarks.BenchmarkUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures lookups that must walk a chain of parent locators.  The
+ * services are all bound in the root locator and are looked up from
+ * the leaf locator, which is depth locators below the root
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+public class ParentChildBenchmark {
+    @Param({ "1", "4" })
+    private int depth;
+    
+    private ServiceLocator locators[];
+    private ServiceLocator leaf;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        locators = new ServiceLocator[depth + 1];
+        
+        locators[0] = BenchmarkUtilities.createLocator("ParentChildBenchmark", null,
+                SingletonService.class,
+                PerLookupService.class,
+                NamedService.class,
+                BlueService.class);
+        
+        for (int lcv = 1; lcv <= depth; lcv++) {
+            locators[lcv] = BenchmarkUtilities.createLocator("ParentChildBenchmark", locators[lcv - 1]);
+        }
+        
+        leaf = locators[depth];
+        
+        BenchmarkUtilities.checkFound(getNamedFromLeaf(), "named service");
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int lcv = locators.length - 1; lcv >= 0; lcv--) {
+            BenchmarkUtilities.destroy(locators[lcv]);
+        }
+        
+        locators = null;
+        leaf = null;
+    }
+    
+    @Benchmark
+    public SingletonService getSingletonFromLeaf() {
+        return leaf.getService(SingletonService.class);
+    }
+    
+    @Benchmark
+    public PerLookupService getPerLookupFromLeaf() {
+        return leaf.getService(PerLookupService.class);
+    }
+    
+    @Benchmark
+    public SimpleContract getNamedFromLeaf() {
+        return leaf.getService(SimpleContract.class, NamedService.NAME);
+    }
+    
+    @Benchmark
+    public List<SimpleContract> getAllServicesFromLeaf() {
+        return leaf.getAllServices(SimpleContract.class);
+    }
+
+}
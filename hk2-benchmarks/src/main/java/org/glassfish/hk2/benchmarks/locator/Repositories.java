@@ -0,0 +1,134 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+/**
+ * The implementations of {@link Repository}.  Each is type safe for
+ * exactly one parameterization of the contract, so that a lookup of any
+ * parameterization must check the type safety of all of them
+ * 
+ * @author jwells
+ *
+ */
+public class Repositories {
+    /** All of the implementations of {@link Repository} */
+    public final static Class<?> ALL[] = {
+        StringRepository.class,
+        IntegerRepository.class,
+        LongRepository.class,
+        DoubleRepository.class,
+        StringListRepository.class,
+        IntegerListRepository.class,
+        StringMapRepository.class,
+        NestedListRepository.class
+    };
+    
+    @Singleton
+    public static class StringRepository implements Repository<String> {
+        @Override
+        public String get() {
+            return "";
+        }
+    }
+    
+    @Singleton
+    public static class IntegerRepository implements Repository<Integer> {
+        @Override
+        public Integer get() {
+            return 0;
+        }
+    }
+    
+    @Singleton
+    public static class LongRepository implements Repository<Long> {
+        @Override
+        public Long get() {
+            return 0L;
+        }
+    }
+    
+    @Singleton
+    public static class DoubleRepository implements Repository<Double> {
+        @Override
+        public Double get() {
+            return 0.0;
+        }
+    }
+    
+    @Singleton
+    public static class StringListRepository implements Repository<List<String>> {
+        @Override
+        public List<String> get() {
+            return Collections.emptyList();
+        }
+    }
+    
+    @Singleton
+    public static class IntegerListRepository implements Repository<List<Integer>> {
+        @Override
+        public List<Integer> get() {
+            return Collections.emptyList();
+        }
+    }
+    
+    @Singleton
+    public static class StringMapRepository implements Repository<Map<String, Integer>> {
+        @Override
+        public Map<String, Integer> get() {
+            return Collections.emptyMap();
+        }
+    }
+    
+    @Singleton
+    public static class NestedListRepository implements Repository<List<List<String>>> {
+        @Override
+        public List<List<String>> get() {
+            return Collections.emptyList();
+        }
+    }
+
+}
@@ -82,7 +82,9 @@ import java.io.PrintStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -94,36 +96,47 @@ import org.glassfish.hk2.configuration.hub.api.Type;
  */
 public class BeanDatabaseImpl implements BeanDatabase {
     private final long revision;
-    private final HashMap<String, TypeImpl> types = new HashMap<String, TypeImpl>();
+    private final PersistentHashMap<String, TypeImpl> types;
+    
+    // The copies of the shared types given out by this revision
+    private final ConcurrentHashMap<String, TypeImpl> givenTypes = new ConcurrentHashMap<String, TypeImpl>();
     
     /**
      * Creates a new, fresh database
      */
     /* package */ BeanDatabaseImpl(long revision) {
         this.revision = revision;
+        this.types = PersistentHashMap.empty();
     }
     
-    /* package */ BeanDatabaseImpl(long revision, BeanDatabase beanDatabase) {
-        this(revision);
-        
-        for (Type type : beanDatabase.getAllTypes()) {
-            types.put(type.getName(), new TypeImpl(type, ((WriteableTypeImpl) type).getHelper()));
-        }
+    /**
+     * Creates the database resulting from committing the given writeable
+     * database.  Types not modified in the writeable database are shared
+     * with the database it was copied from
+     */
+    /* package */ BeanDatabaseImpl(long revision, WriteableBeanDatabaseImpl beanDatabase) {
+        this.revision = revision;
+        this.types = beanDatabase.getCommittedTypes();
     }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getAllTypes()
      */
     @Override
-    public synchronized Set<Type> getAllTypes() {
-        return Collections.unmodifiableSet(new HashSet<Type>(types.values()));
+    public Set<Type> getAllTypes() {
+        HashSet<Type> retVal = new HashSet<Type>();
+        for (Map.Entry<String, TypeImpl> entry : types) {
+            retVal.add(getGivenType(entry.getKey(), entry.getValue()));
+        }
+        
+        return Collections.unmodifiableSet(retVal);
     }
     
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getInstance(java.lang.String, java.lang.Object)
      */
     @Override
-    public synchronized Instance getInstance(String type, String instanceKey) {
+    public Instance getInstance(String type, String instanceKey) {
         Type t = getType(type);
         if (t == null) return null;
         
@@ -134,8 +147,52 @@ public class BeanDatabaseImpl implements BeanDatabase {
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getType(java.lang.String)
      */
     @Override
-    public synchronized Type getType(String type) {
-        return types.get(type);
+    public Type getType(String type) {
+        if (type == null) return null;
+        
+        TypeImpl shared = types.get(type);
+        if (shared == null) return null;
+        
+        return getGivenType(type, shared);
+    }
+    
+    private TypeImpl getGivenType(String type, TypeImpl shared) {
+        TypeImpl retVal = givenTypes.get(type);
+        if (retVal != null) return retVal;
+        
+        retVal = new TypeImpl(shared);
+        TypeImpl existing = givenTypes.putIfAbsent(type, retVal);
+        
+        return (existing == null) ? retVal : existing;
+    }
+    
+    /**
+     * Gets the types of this database as they are shared with
+     * other revisions, which must not be given out
+     * 
+     * @return The shared types of this database
+     */
+    /* package */ PersistentHashMap<String, TypeImpl> getTypes() {
+        return types;
+    }
+    
+    /**
+     * Gets the metadata that has been set on the types given
+     * out by this database, for the types where it is no longer
+     * the metadata of the shared type
+     * 
+     * @return The changed metadata, keyed by type name
+     */
+    /* package */ Map<String, Object> getChangedMetadata() {
+        HashMap<String, Object> retVal = new HashMap<String, Object>();
+        for (Map.Entry<String, TypeImpl> entry : givenTypes.entrySet()) {
+            Object metadata = entry.getValue().getMetadata();
+            if (metadata != types.get(entry.getKey()).getMetadata()) {
+                retVal.put(entry.getKey(), metadata);
+            }
+        }
+        
+        return retVal;
     }
     
     /* package */ long getRevision() {
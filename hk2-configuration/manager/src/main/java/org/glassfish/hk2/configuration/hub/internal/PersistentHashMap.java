@@ -0,0 +1,521 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie.  Every
+ * modification returns a new map which shares all untouched branches of
+ * the trie with the map it was derived from, so that taking a copy is free
+ * and a modification costs O(log32 n) rather than O(n).
+ * <p>
+ * Keys may not be null.  This class is thread safe since no instance
+ * of it can ever change
+ * 
+ * @author jwells
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private final static int BITS = 5;
+    private final static int MASK = (1 << BITS) - 1;
+    private final static Object NOT_FOUND = new Object();
+    
+    @SuppressWarnings("rawtypes")
+    private final static PersistentHashMap EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+    
+    private final Node root;
+    private final int size;
+    private volatile Map<K, V> view;
+    
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the empty map
+     * 
+     * @return An empty map, which may be shared
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * The number of entries in this map
+     * 
+     * @return The number of entries in this map
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the value associated with the given key
+     * 
+     * @param key The non-null key to look up
+     * @return The value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object retVal = find(key);
+        if (retVal == NOT_FOUND) return null;
+        
+        return (V) retVal;
+    }
+    
+    /**
+     * Tells whether or not this map has an entry for the given key
+     * 
+     * @param key The non-null key to look up
+     * @return true if this map has an entry for the given key
+     */
+    public boolean containsKey(Object key) {
+        return find(key) != NOT_FOUND;
+    }
+    
+    private Object find(Object key) {
+        if (key == null) throw new IllegalArgumentException();
+        if (root == null) return NOT_FOUND;
+        
+        return root.get(0, hash(key), key);
+    }
+    
+    /**
+     * Returns a map with the given key associated with the given value.
+     * This map is not modified
+     * 
+     * @param key The non-null key to add or replace
+     * @param value The value to associate with the key
+     * @return A map containing the new association.  If the association
+     * already exists this map is returned
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        if (key == null) throw new IllegalArgumentException();
+        
+        boolean added[] = new boolean[1];
+        Node start = (root == null) ? BitmapNode.EMPTY : root;
+        
+        Node newRoot = start.put(0, hash(key), key, value, added);
+        if (newRoot == root) return this;
+        
+        return new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+    }
+    
+    /**
+     * Returns a map without any association for the given key.
+     * This map is not modified
+     * 
+     * @param key The non-null key to remove
+     * @return A map without the given key.  If this map does not
+     * contain the key this map is returned
+     */
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (key == null) throw new IllegalArgumentException();
+        if (root == null) return this;
+        
+        Node newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) return this;
+        if (newRoot == null) return empty();
+        
+        return new PersistentHashMap<K, V>(newRoot, size - 1);
+    }
+    
+    /**
+     * Returns an unmodifiable {@link Map} view of this map
+     * 
+     * @return An unmodifiable view of this map
+     */
+    public Map<K, V> asMap() {
+        Map<K, V> retVal = view;
+        if (retVal == null) {
+            retVal = new MapView();
+            view = retVal;
+        }
+        
+        return retVal;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new TrieIterator<K, V>(root);
+    }
+    
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+    
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+    
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+    
+    /**
+     * A node of the trie.  The array holds key/value pairs.  A null key
+     * means the paired value is a sub-node rather than a value
+     */
+    private static abstract class Node {
+        protected final Object array[];
+        
+        protected Node(Object array[]) {
+            this.array = array;
+        }
+        
+        abstract Object get(int shift, int hash, Object key);
+        
+        abstract Node put(int shift, int hash, Object key, Object value, boolean added[]);
+        
+        abstract Node remove(int shift, int hash, Object key);
+    }
+    
+    private static final class BitmapNode extends Node {
+        private final static BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        
+        private final int bitmap;
+        
+        private BitmapNode(int bitmap, Object array[]) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return NOT_FOUND;
+            
+            int idx = 2 * index(bit);
+            Object k = array[idx];
+            Object v = array[idx + 1];
+            
+            if (k == null) return ((Node) v).get(shift + BITS, hash, key);
+            if (key.equals(k)) return v;
+            
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean added[]) {
+            int bit = bitpos(hash, shift);
+            int idx = 2 * index(bit);
+            
+            if ((bitmap & bit) == 0) {
+                Object newArray[] = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, idx);
+                newArray[idx] = key;
+                newArray[idx + 1] = value;
+                System.arraycopy(array, idx, newArray, idx + 2, array.length - idx);
+                
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            
+            Object k = array[idx];
+            Object v = array[idx + 1];
+            
+            if (k == null) {
+                Node child = ((Node) v).put(shift + BITS, hash, key, value, added);
+                if (child == v) return this;
+                
+                return replace(idx + 1, child);
+            }
+            
+            if (key.equals(k)) {
+                if (v == value) return this;
+                
+                return replace(idx + 1, value);
+            }
+            
+            added[0] = true;
+            
+            Node child = createNode(shift + BITS, k, v, hash, key, value);
+            Object newArray[] = array.clone();
+            newArray[idx] = null;
+            newArray[idx + 1] = child;
+            
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            
+            int idx = 2 * index(bit);
+            Object k = array[idx];
+            Object v = array[idx + 1];
+            
+            if (k == null) {
+                Node child = ((Node) v).remove(shift + BITS, hash, key);
+                if (child == v) return this;
+                if (child != null) return replace(idx + 1, child);
+            }
+            else if (!key.equals(k)) {
+                return this;
+            }
+            
+            if (bitmap == bit) return null;
+            
+            Object newArray[] = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+        
+        private BitmapNode replace(int idx, Object value) {
+            Object newArray[] = array.clone();
+            newArray[idx] = value;
+            
+            return new BitmapNode(bitmap, newArray);
+        }
+        
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            
+            boolean ignored[] = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+        }
+    }
+    
+    /**
+     * Holds keys whose full hash codes are identical
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        
+        private CollisionNode(int hash, Object array[]) {
+            super(array);
+            this.hash = hash;
+        }
+        
+        private int indexOf(Object key) {
+            for (int lcv = 0; lcv < array.length; lcv += 2) {
+                if (key.equals(array[lcv])) return lcv;
+            }
+            
+            return -1;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            if (hash != this.hash) return NOT_FOUND;
+            
+            int idx = indexOf(key);
+            if (idx < 0) return NOT_FOUND;
+            
+            return array[idx + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean added[]) {
+            if (hash != this.hash) {
+                Node nest = new BitmapNode(bitpos(this.hash, shift), new Object[] { null, this });
+                
+                return nest.put(shift, hash, key, value, added);
+            }
+            
+            int idx = indexOf(key);
+            if (idx >= 0) {
+                if (array[idx + 1] == value) return this;
+                
+                Object newArray[] = array.clone();
+                newArray[idx + 1] = value;
+                
+                return new CollisionNode(hash, newArray);
+            }
+            
+            Object newArray[] = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            if (hash != this.hash) return this;
+            
+            int idx = indexOf(key);
+            if (idx < 0) return this;
+            if (array.length == 2) return null;
+            
+            Object newArray[] = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            
+            return new CollisionNode(hash, newArray);
+        }
+    }
+    
+    /**
+     * Walks the trie depth first.  Since the depth of the trie is
+     * bounded by the number of bits in the hash the stack is small
+     */
+    private static final class TrieIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object arrays[][] = new Object[8][];
+        private final int indexes[] = new int[8];
+        private int depth = -1;
+        private Map.Entry<K, V> next;
+        
+        private TrieIterator(Node root) {
+            if (root != null) {
+                depth = 0;
+                arrays[0] = root.array;
+            }
+            
+            advance();
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            while (depth >= 0) {
+                Object array[] = arrays[depth];
+                int idx = indexes[depth];
+                
+                if (idx >= array.length) {
+                    arrays[depth] = null;
+                    indexes[depth] = 0;
+                    depth--;
+                    continue;
+                }
+                
+                indexes[depth] = idx + 2;
+                
+                Object k = array[idx];
+                Object v = array[idx + 1];
+                
+                if (k == null) {
+                    depth++;
+                    arrays[depth] = ((Node) v).array;
+                    continue;
+                }
+                
+                next = new AbstractMap.SimpleImmutableEntry<K, V>((K) k, (V) v);
+                return;
+            }
+            
+            next = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            
+            Map.Entry<K, V> retVal = next;
+            advance();
+            
+            return retVal;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    private final class MapView extends AbstractMap<K, V> {
+        private final Set<Map.Entry<K, V>> entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return PersistentHashMap.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+            
+        };
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return entrySet;
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public V get(Object key) {
+            if (key == null) return null;
+            return PersistentHashMap.this.get(key);
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            if (key == null) return false;
+            return PersistentHashMap.this.containsKey(key);
+        }
+    }
+}
@@ -39,7 +39,6 @@
  */
 package org.glassfish.hk2.configuration.hub.internal;
 
-import java.util.Collections;
 import java.util.Map;
 
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -47,20 +46,29 @@ import org.glassfish.hk2.configuration.hub.api.Type;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 
 /**
+ * The read-only type of a committed database.  The types kept in
+ * the maps shared between revisions are never given out, so their
+ * metadata never changes.  Each database gives out its own copy of
+ * a type, so that metadata set on it stays with that revision
+ * 
  * @author jwells
  *
  */
 public class TypeImpl implements Type {
     private final String name;
-    private final Map<String, Instance> instances;
+    private final PersistentHashMap<String, Instance> beans;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
-    /* package */ TypeImpl(Type baseType, ClassReflectionHelper helper) {
-        name = baseType.getName();
-        instances = Collections.unmodifiableMap(baseType.getInstances());
+    /* package */ TypeImpl(String name, PersistentHashMap<String, Instance> beans, ClassReflectionHelper helper, Object metadata) {
+        this.name = name;
+        this.beans = beans;
         this.helper = helper;
-        this.metadata = baseType.getMetadata();
+        this.metadata = metadata;
+    }
+    
+    /* package */ TypeImpl(TypeImpl shared) {
+        this(shared.name, shared.beans, shared.helper, shared.getMetadata());
     }
 
     /* (non-Javadoc)
@@ -76,7 +84,7 @@ public class TypeImpl implements Type {
      */
     @Override
     public Map<String, Instance> getInstances() {
-        return instances;
+        return beans.asMap();
     }
 
     /* (non-Javadoc)
@@ -84,7 +92,11 @@ public class TypeImpl implements Type {
      */
     @Override
     public Instance getInstance(String key) {
-        return instances.get(key);
+        return beans.get(key);
+    }
+    
+    /* package */ PersistentHashMap<String, Instance> getBeans() {
+        return beans;
     }
     
     /* package */ ClassReflectionHelper getHelper() {
@@ -64,6 +64,7 @@ import org.glassfish.hk2.configuration.hub.api.WriteableType;
 public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     private final long baseRevision;
     private final HashMap<String, WriteableTypeImpl> types = new HashMap<String, WriteableTypeImpl>();
+    private PersistentHashMap<String, TypeImpl> untouchedTypes;
     private final HubImpl hub;
     private final TwoPhaseResourceImpl resource = new TwoPhaseResourceImpl();
     
@@ -76,10 +77,50 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         this.hub = hub;
         baseRevision = currentDatabase.getRevision();
         
-        for (Type type : currentDatabase.getAllTypes()) {
-            types.put(type.getName(), new WriteableTypeImpl(this, (TypeImpl) type));
+        // Writeable types are only created when a type is first asked for,
+        // or when metadata has been set on the type in the current database
+        untouchedTypes = currentDatabase.getTypes();
+        
+        for (Map.Entry<String, Object> changed : currentDatabase.getChangedMetadata().entrySet()) {
+            getWriteableTypeImpl(changed.getKey()).setMetadata(changed.getValue());
         }
+    }
+    
+    private WriteableTypeImpl getWriteableTypeImpl(String typeName) {
+        WriteableTypeImpl retVal = types.get(typeName);
+        if (retVal != null || typeName == null) return retVal;
+        
+        TypeImpl mother = untouchedTypes.get(typeName);
+        if (mother == null) return null;
+        
+        retVal = new WriteableTypeImpl(this, mother);
+        types.put(typeName, retVal);
+        untouchedTypes = untouchedTypes.remove(typeName);
         
+        return retVal;
+    }
+    
+    private void wrapAllTypes() {
+        for (Map.Entry<String, TypeImpl> entry : untouchedTypes) {
+            types.put(entry.getKey(), new WriteableTypeImpl(this, entry.getValue()));
+        }
+        
+        untouchedTypes = PersistentHashMap.empty();
+    }
+    
+    /**
+     * Gets the set of types that should be in the database
+     * produced by committing this database
+     * 
+     * @return The types of the committed database
+     */
+    /* package */ synchronized PersistentHashMap<String, TypeImpl> getCommittedTypes() {
+        PersistentHashMap<String, TypeImpl> retVal = untouchedTypes;
+        for (WriteableTypeImpl wti : types.values()) {
+            retVal = retVal.put(wti.getName(), wti.getCommittedType());
+        }
+        
+        return retVal;
     }
 
     /* (non-Javadoc)
@@ -87,6 +128,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
      */
     @Override
     public synchronized Set<Type> getAllTypes() {
+        wrapAllTypes();
         return Collections.unmodifiableSet(new HashSet<Type>(types.values()));
     }
     
@@ -94,7 +136,8 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
      * @see org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase#getAllWriteableTypes()
      */
     @Override
-    public Set<WriteableType> getAllWriteableTypes() {
+    public synchronized Set<WriteableType> getAllWriteableTypes() {
+        wrapAllTypes();
         return Collections.unmodifiableSet(new HashSet<WriteableType>(types.values()));
     }
 
@@ -103,7 +146,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
      */
     @Override
     public synchronized Type getType(String type) {
-        return types.get(type);
+        return getWriteableTypeImpl(type);
     }
     
     /* (non-Javadoc)
@@ -139,6 +182,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
                                    null));
         
         types.put(typeName, wti);
+        untouchedTypes = untouchedTypes.remove(typeName);
         
         return wti;
     }
@@ -151,9 +195,11 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         if (typeName == null) throw new IllegalArgumentException();
         checkState();
         
-        WriteableTypeImpl retVal = types.remove(typeName);
+        WriteableTypeImpl retVal = getWriteableTypeImpl(typeName);
         if (retVal == null) return null;
         
+        types.remove(typeName);
+        
         Map<String, Instance> instances = retVal.getInstances();
         for (String key : new HashSet<String>(instances.keySet())) {
             retVal.removeInstance(key);
@@ -177,7 +223,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     @Override
     public synchronized WriteableType getWriteableType(String typeName) {
         checkState();
-        return types.get(typeName);
+        return getWriteableTypeImpl(typeName);
     }
 
     /* (non-Javadoc)
@@ -188,7 +234,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         if (typeName == null) throw new IllegalArgumentException();
         checkState();
         
-        WriteableTypeImpl wti = types.get(typeName);
+        WriteableTypeImpl wti = getWriteableTypeImpl(typeName);
         if (wti == null) {
             return addType(typeName);
         }
@@ -40,10 +40,10 @@
 package org.glassfish.hk2.configuration.hub.internal;
 
 import java.beans.PropertyChangeEvent;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -59,21 +59,26 @@ import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl
 public class WriteableTypeImpl implements WriteableType {
     private final WriteableBeanDatabaseImpl parent;
     private final String name;
-    private final HashMap<String, Instance> beanMap = new HashMap<String, Instance>();
+    private final TypeImpl mother;
     private final ClassReflectionHelper helper;
+    private final InstancesView instancesView = new InstancesView();
+    private PersistentHashMap<String, Instance> beanMap;
     private Object metadata;
     
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, TypeImpl mother) {
         this.parent = parent;
+        this.mother = mother;
         this.name = mother.getName();
         this.metadata = mother.getMetadata();
-        beanMap.putAll(mother.getInstances());
+        beanMap = mother.getBeans();
         helper = mother.getHelper();
     }
     
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, String name) {
         this.parent = parent;
+        this.mother = null;
         this.name = name;
+        beanMap = PersistentHashMap.empty();
         helper = new ClassReflectionHelperImpl();
     }
 
@@ -89,8 +94,8 @@ public class WriteableTypeImpl implements WriteableType {
      * @see org.glassfish.hk2.configuration.hub.api.Type#getInstances()
      */
     @Override
-    public synchronized Map<String, Instance> getInstances() {
-        return Collections.unmodifiableMap(beanMap);
+    public Map<String, Instance> getInstances() {
+        return instancesView;
     }
     
     /* (non-Javadoc)
@@ -125,7 +130,7 @@ public class WriteableTypeImpl implements WriteableType {
                                    null,
                                    null));
         
-        beanMap.put(key, ii);
+        beanMap = beanMap.put(key, ii);
         
         return ii;
     }
@@ -137,9 +142,11 @@ public class WriteableTypeImpl implements WriteableType {
     public synchronized Instance removeInstance(String key) {
         if (key == null) throw new IllegalArgumentException();
         
-        Instance removedValue = beanMap.remove(key);
+        Instance removedValue = beanMap.get(key);
         if (removedValue == null) return null;
         
+        beanMap = beanMap.remove(key);
+        
         parent.addChange(new ChangeImpl(Change.ChangeCategory.REMOVE_INSTANCE,
                 this,
                 key,
@@ -169,7 +176,7 @@ public class WriteableTypeImpl implements WriteableType {
             propChanges = BeanReflectionHelper.getChangeEvents(helper, oldInstance.getBean(), newInstance.getBean());
         }
         
-        beanMap.put(key, newInstance);
+        beanMap = beanMap.put(key, newInstance);
 
         ArrayList<PropertyChangeEvent> propChangesList = new ArrayList<PropertyChangeEvent>(propChanges.length);
         for (PropertyChangeEvent pce : propChanges) {
@@ -189,6 +196,25 @@ public class WriteableTypeImpl implements WriteableType {
     ClassReflectionHelper getHelper() {
         return helper;
     }
+    
+    /* package */ synchronized PersistentHashMap<String, Instance> getBeans() {
+        return beanMap;
+    }
+    
+    /**
+     * Returns the read-only type to put into the committed database.
+     * If nothing about this type has changed then the type it was
+     * copied from is returned, so that it is shared between revisions
+     * 
+     * @return The read-only version of this type
+     */
+    /* package */ synchronized TypeImpl getCommittedType() {
+        if (mother != null && mother.getBeans() == beanMap && mother.getMetadata() == metadata) {
+            return mother;
+        }
+        
+        return new TypeImpl(name, beanMap, helper, metadata);
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.Type#getMetadata()
@@ -206,6 +232,32 @@ public class WriteableTypeImpl implements WriteableType {
         this.metadata = metadata;
     }
     
+    /**
+     * A live, unmodifiable view of the instances of this type
+     */
+    private class InstancesView extends AbstractMap<String, Instance> {
+
+        @Override
+        public Set<Map.Entry<String, Instance>> entrySet() {
+            return getBeans().asMap().entrySet();
+        }
+        
+        @Override
+        public int size() {
+            return getBeans().size();
+        }
+        
+        @Override
+        public Instance get(Object key) {
+            return getBeans().asMap().get(key);
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return getBeans().asMap().containsKey(key);
+        }
+    }
+    
     @Override
     public String toString() {
         return "WriteableTypeImpl(" + name + "," + metadata + "," + System.identityHashCode(this) + ")";
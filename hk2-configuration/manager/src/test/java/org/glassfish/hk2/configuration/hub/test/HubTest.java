@@ -48,6 +48,7 @@ import java.util.Map;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.CommitFailedException;
 import org.glassfish.hk2.configuration.hub.api.Hub;
@@ -80,6 +81,12 @@ public class HubTest extends HubTestBase {
     private final static String TYPE_TEN = "TypeTen";
     private final static String TYPE_ELEVEN = "TypeEleven";
     private final static String TYPE_TWELVE = "TypeTwelve";
+    private final static String TYPE_THIRTEEN = "TypeThirteen";
+    private final static String TYPE_FOURTEEN = "TypeFourteen";
+    private final static String TYPE_FIFTEEN = "TypeFifteen";
+    private final static String TYPE_SIXTEEN = "TypeSixteen";
+    private final static String TYPE_SEVENTEEN = "TypeSeventeen";
+    private final static String TYPE_EIGHTEEN = "TypeEighteen";
     
     private final static String NAME_PROPERTY = "name";
     private final static String OTHER_PROPERTY = "other";
@@ -1306,4 +1313,105 @@ public class HubTest extends HubTestBase {
         }
     }
 
+    /**
+     * Tests that the instances of types untouched by a commit are shared
+     * between the old and new database, while the old database is not changed
+     */
+    @Test
+    public void testUntouchedTypesSharedBetweenRevisions() {
+        addTypeAndInstance(TYPE_THIRTEEN, ALICE, new GenericJavaBean(ALICE, OTHER_PROPERTY_VALUE1));
+        addTypeAndInstance(TYPE_FOURTEEN, BOB, new GenericJavaBean(BOB, OTHER_PROPERTY_VALUE1));
+        
+        try {
+            BeanDatabase oldDatabase = hub.getCurrentDatabase();
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            
+            // Looking at a type without modifying it must not break sharing
+            Assert.assertNotNull(wbd.getWriteableType(TYPE_FOURTEEN).getInstance(BOB));
+            
+            wbd.getWriteableType(TYPE_THIRTEEN).addInstance(CAROL, new GenericJavaBean(CAROL, OTHER_PROPERTY_VALUE2));
+            wbd.commit();
+            
+            BeanDatabase newDatabase = hub.getCurrentDatabase();
+            
+            Assert.assertSame(oldDatabase.getInstance(TYPE_FOURTEEN, BOB), newDatabase.getInstance(TYPE_FOURTEEN, BOB));
+            Assert.assertSame(oldDatabase.getInstance(TYPE_THIRTEEN, ALICE), newDatabase.getInstance(TYPE_THIRTEEN, ALICE));
+            
+            Assert.assertEquals(1, oldDatabase.getType(TYPE_THIRTEEN).getInstances().size());
+            Assert.assertNull(oldDatabase.getInstance(TYPE_THIRTEEN, CAROL));
+            
+            Assert.assertEquals(2, newDatabase.getType(TYPE_THIRTEEN).getInstances().size());
+            Assert.assertNotNull(newDatabase.getInstance(TYPE_THIRTEEN, ALICE));
+            Assert.assertNotNull(newDatabase.getInstance(TYPE_THIRTEEN, CAROL));
+        }
+        finally {
+            removeType(TYPE_THIRTEEN);
+            removeType(TYPE_FOURTEEN);
+        }
+    }
+    
+    /**
+     * Tests that metadata set on a type of a writeable database that
+     * is never committed does not change the type in the current database
+     */
+    @Test
+    public void testMetadataOnAbandonedWriteableDatabase() {
+        addType(TYPE_FIFTEEN);
+        
+        try {
+            Object committedMetadata = new Object();
+            hub.getCurrentDatabase().getType(TYPE_FIFTEEN).setMetadata(committedMetadata);
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            WriteableType wt = wbd.getWriteableType(TYPE_FIFTEEN);
+            Assert.assertEquals(committedMetadata, wt.getMetadata());
+            
+            wt.setMetadata(new Object());
+            
+            // wbd is abandoned
+            Assert.assertEquals(committedMetadata, hub.getCurrentDatabase().getType(TYPE_FIFTEEN).getMetadata());
+            
+            // A commit not touching the type keeps the metadata of the current database
+            WriteableBeanDatabase other = hub.getWriteableDatabaseCopy();
+            other.addType(TYPE_SIXTEEN);
+            other.commit();
+            
+            Assert.assertEquals(committedMetadata, hub.getCurrentDatabase().getType(TYPE_FIFTEEN).getMetadata());
+        }
+        finally {
+            removeType(TYPE_FIFTEEN);
+            removeType(TYPE_SIXTEEN);
+        }
+    }
+    
+    /**
+     * Tests that metadata set on a type of an old database does not
+     * change the type of a newer database that shares its instances
+     */
+    @Test
+    public void testMetadataNotSharedBetweenRevisions() {
+        addTypeAndInstance(TYPE_SEVENTEEN, ALICE, new GenericJavaBean(ALICE, OTHER_PROPERTY_VALUE1));
+        
+        try {
+            BeanDatabase oldDatabase = hub.getCurrentDatabase();
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            wbd.addType(TYPE_EIGHTEEN);
+            wbd.commit();
+            
+            BeanDatabase newDatabase = hub.getCurrentDatabase();
+            Assert.assertSame(oldDatabase.getInstance(TYPE_SEVENTEEN, ALICE), newDatabase.getInstance(TYPE_SEVENTEEN, ALICE));
+            
+            oldDatabase.getType(TYPE_SEVENTEEN).setMetadata(new Object());
+            
+            Assert.assertNull(newDatabase.getType(TYPE_SEVENTEEN).getMetadata());
+            Assert.assertNull(hub.getWriteableDatabaseCopy().getType(TYPE_SEVENTEEN).getMetadata());
+        }
+        finally {
+            removeType(TYPE_SEVENTEEN);
+            removeType(TYPE_EIGHTEEN);
+        }
+    }
+
 }
@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.glassfish.hk2.configuration.hub.internal.PersistentHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the persistent map backing the hub databases
+ * 
+ * @author jwells
+ *
+ */
+public class PersistentHashMapTest {
+    private final static String ALICE = "Alice";
+    private final static String BOB = "Bob";
+    
+    /**
+     * Tests that modifications do not change the original map
+     */
+    @Test
+    public void testModificationsDoNotChangeOriginal() {
+        PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, String> one = empty.put(ALICE, BOB);
+        PersistentHashMap<String, String> none = one.remove(ALICE);
+        
+        Assert.assertEquals(0, empty.size());
+        Assert.assertNull(empty.get(ALICE));
+        
+        Assert.assertEquals(1, one.size());
+        Assert.assertEquals(BOB, one.get(ALICE));
+        
+        Assert.assertEquals(0, none.size());
+        Assert.assertFalse(none.containsKey(ALICE));
+        
+        // No-op modifications return the same map
+        Assert.assertSame(one, one.put(ALICE, BOB));
+        Assert.assertSame(one, one.remove(BOB));
+    }
+    
+    /**
+     * Tests keys whose hash codes collide completely
+     */
+    @Test
+    public void testCollidingKeys() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int lcv = 0; lcv < 10; lcv++) {
+            map = map.put(new CollidingKey(lcv), lcv);
+        }
+        map = map.put(new CollidingKey(100, 7), 100);
+        
+        Assert.assertEquals(11, map.size());
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertEquals(new Integer(lcv), map.get(new CollidingKey(lcv)));
+        }
+        Assert.assertEquals(new Integer(100), map.get(new CollidingKey(100, 7)));
+        
+        for (int lcv = 0; lcv < 10; lcv += 2) {
+            map = map.remove(new CollidingKey(lcv));
+        }
+        
+        Assert.assertEquals(6, map.size());
+        Assert.assertEquals(6, map.asMap().entrySet().size());
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertEquals(lcv % 2 != 0, map.containsKey(new CollidingKey(lcv)));
+        }
+    }
+    
+    /**
+     * Runs random operations against both a HashMap and
+     * the persistent map and makes sure they agree
+     */
+    @Test
+    public void testAgreesWithHashMap() {
+        Random random = new Random(13L);
+        
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        
+        for (int lcv = 0; lcv < 20000; lcv++) {
+            Integer key = random.nextInt(5000);
+            
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            }
+            else {
+                expected.put(key, lcv);
+                map = map.put(key, lcv);
+            }
+            
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        
+        Assert.assertEquals(expected, map.asMap());
+        
+        int count = 0;
+        for (Map.Entry<Integer, Integer> entry : map) {
+            Assert.assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        
+        Assert.assertEquals(expected.size(), count);
+    }
+    
+    /**
+     * Tests that the map view can not be modified
+     */
+    @Test(expected=UnsupportedOperationException.class)
+    public void testViewIsUnmodifiable() {
+        PersistentHashMap<String, String> map = PersistentHashMap.empty();
+        
+        map.put(ALICE, BOB).asMap().put(BOB, ALICE);
+    }
+    
+    private static class CollidingKey {
+        private final int id;
+        private final int hash;
+        
+        private CollidingKey(int id) {
+            this(id, 42);
+        }
+        
+        private CollidingKey(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CollidingKey)) return false;
+            
+            return ((CollidingKey) o).id == id;
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.config;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The raw attribute values of a {@link Dom}.  The attributes known to the
+ * {@link ConfigModel} are kept in an array indexed by the ordinal of their
+ * {@link ConfigModel.AttributeLeaf}, which is allocated on the first write,
+ * so that elements do not each carry a hash table.  Any other names are
+ * kept in a separate map.  A null value means the attribute is not set
+ * 
+ * @author jwells
+ *
+ */
+class AttributeMap extends AbstractMap<String, String> {
+    private final ConfigModel model;
+    
+    /** Indexed by attribute ordinal, null until something is written */
+    private String values[];
+    
+    /** Attributes not known to the model, null until one is written */
+    private Map<String, String> others;
+    
+    /** The number of non-null entries in values */
+    private int known;
+    
+    /* package */ AttributeMap(ConfigModel model) {
+        this.model = model;
+    }
+    
+    private ConfigModel.AttributeLeaf getLeaf(Object key) {
+        return model.attributes.get(key);
+    }
+    
+    @Override
+    public String get(Object key) {
+        ConfigModel.AttributeLeaf leaf = getLeaf(key);
+        if (leaf != null) {
+            return (values == null) ? null : values[leaf.ordinal] ;
+        }
+        
+        return (others == null) ? null : others.get(key) ;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        ConfigModel.AttributeLeaf leaf = getLeaf(key);
+        if (leaf != null) {
+            return (values != null) && (values[leaf.ordinal] != null);
+        }
+        
+        return (others != null) && others.containsKey(key);
+    }
+    
+    @Override
+    public String put(String key, String value) {
+        ConfigModel.AttributeLeaf leaf = getLeaf(key);
+        if (leaf != null) {
+            return put(leaf, value);
+        }
+        
+        if (others == null) {
+            if (value == null) return null;
+            others = new HashMap<String, String>();
+        }
+        
+        return (value == null) ? others.remove(key) : others.put(key, value) ;
+    }
+    
+    /**
+     * Sets the value of an attribute known to the model without looking it up again
+     * 
+     * @param leaf An attribute of the model of this map
+     * @param value The new value, or null to remove the attribute
+     * @return The previous value, or null if the attribute was not set
+     */
+    /* package */ String put(ConfigModel.AttributeLeaf leaf, String value) {
+        if (values == null) {
+            if (value == null) return null;
+            values = new String[model.attributeNamesByOrdinal.length];
+        }
+        
+        String retVal = values[leaf.ordinal];
+        values[leaf.ordinal] = value;
+        
+        if (retVal == null && value != null) known++;
+        else if (retVal != null && value == null) known--;
+        
+        return retVal;
+    }
+    
+    @Override
+    public String remove(Object key) {
+        ConfigModel.AttributeLeaf leaf = getLeaf(key);
+        if (leaf != null) {
+            return put(leaf, null);
+        }
+        
+        return (others == null) ? null : others.remove(key) ;
+    }
+    
+    @Override
+    public int size() {
+        return known + ((others == null) ? 0 : others.size()) ;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return AttributeMap.this.size();
+            }
+            
+        };
+    }
+    
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private final Iterator<Map.Entry<String, String>> othersIterator =
+                (others == null) ? null : others.entrySet().iterator();
+        private int nextOrdinal = advance(0);
+        private int lastOrdinal = -1;
+        private boolean lastWasOther;
+        
+        private int advance(int from) {
+            if (values == null) return -1;
+            
+            for (int lcv = from; lcv < values.length; lcv++) {
+                if (values[lcv] != null) return lcv;
+            }
+            
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextOrdinal >= 0) return true;
+            
+            return (othersIterator != null) && othersIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (nextOrdinal >= 0) {
+                lastOrdinal = nextOrdinal;
+                lastWasOther = false;
+                nextOrdinal = advance(nextOrdinal + 1);
+                
+                return new SimpleImmutableEntry<String, String>(model.attributeNamesByOrdinal[lastOrdinal], values[lastOrdinal]);
+            }
+            
+            if (othersIterator == null) throw new NoSuchElementException();
+            
+            Map.Entry<String, String> retVal = othersIterator.next();
+            lastWasOther = true;
+            
+            return retVal;
+        }
+
+        @Override
+        public void remove() {
+            if (lastWasOther) {
+                othersIterator.remove();
+                lastWasOther = false;
+                return;
+            }
+            
+            if (lastOrdinal < 0) throw new IllegalStateException();
+            
+            values[lastOrdinal] = null;
+            known--;
+            lastOrdinal = -1;
+        }
+        
+    }
+
+}
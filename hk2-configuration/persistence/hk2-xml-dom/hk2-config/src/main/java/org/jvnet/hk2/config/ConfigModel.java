@@ -62,6 +62,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Describes the configuration model for a particular class (called "target type" in this class.)
@@ -81,6 +82,11 @@ public final class ConfigModel {
      * Legal attribute names.
      */
     final Map<String,AttributeLeaf> attributes = new HashMap<String,AttributeLeaf>();
+    
+    /**
+     * Attribute names indexed by {@link AttributeLeaf#ordinal}.
+     */
+    final String[] attributeNamesByOrdinal;
 
     /**
      * Legal child element names and how they should be handled
@@ -94,6 +100,12 @@ public final class ConfigModel {
      */
     final Map<Method,Property> methodCache = new HashMap<Method,Property>();
     
+    /**
+     * How {@link Dom#invoke(Object, Method, Object[])} serves each method of the
+     * proxy type, filled in the first time each method is invoked
+     */
+    private final ConcurrentHashMap<Method,MethodDispatch> dispatchTable = new ConcurrentHashMap<Method,MethodDispatch>();
+    
     /**
      * Contracts under which the inhabitant should be registered.
      */
@@ -263,6 +275,71 @@ public final class ConfigModel {
         }
     }
 
+    /**
+     * Returns how the given method of the proxy type is served, working it out
+     * (annotations, duck method, property and generic return type) only the first
+     * time the method is seen
+     */
+    /*package*/ MethodDispatch getMethodDispatch(Method method) throws ClassNotFoundException, NoSuchMethodException {
+        MethodDispatch retVal = dispatchTable.get(method);
+        if (retVal != null) return retVal;
+        
+        if (method.getDeclaringClass() == Object.class) {
+            retVal = new MethodDispatch(MethodDispatch.Kind.OBJECT, null, null, null, null);
+        }
+        else if (method.getAnnotation(DuckTyped.class) != null) {
+            retVal = new MethodDispatch(MethodDispatch.Kind.DUCK, getDuckMethod(method), null, null, null);
+        }
+        else {
+            ConfigExtensionMethod cem = method.getAnnotation(ConfigExtensionMethod.class);
+            if (cem != null) {
+                retVal = new MethodDispatch(MethodDispatch.Kind.EXTENSION, null, cem.value(), null, null);
+            }
+            else {
+                Property property;
+                synchronized (methodCache) {
+                    property = toProperty(method);
+                }
+                
+                retVal = new MethodDispatch(MethodDispatch.Kind.PROPERTY, null, null,
+                        property, method.getGenericReturnType());
+            }
+        }
+        
+        MethodDispatch existing = dispatchTable.putIfAbsent(method, retVal);
+        return (existing == null) ? retVal : existing ;
+    }
+    
+    /**
+     * One entry of the dispatch table of a model
+     */
+    /*package*/ static final class MethodDispatch {
+        enum Kind { OBJECT, DUCK, EXTENSION, PROPERTY }
+        
+        final Kind kind;
+        
+        /** The duck method, for {@link Kind#DUCK} */
+        final Method duckMethod;
+        
+        /** The name of the {@link ConfigExtensionHandler}, for {@link Kind#EXTENSION} */
+        final String extensionName;
+        
+        /** The property, or null if there is none, for {@link Kind#PROPERTY} */
+        final Property property;
+        
+        /** The generic return type of the method, for {@link Kind#PROPERTY} */
+        final Type returnType;
+        
+        private MethodDispatch(Kind kind, Method duckMethod, String extensionName,
+                Property property, Type returnType) {
+            this.kind = kind;
+            this.duckMethod = duckMethod;
+            this.extensionName = extensionName;
+            this.property = property;
+            this.returnType = returnType;
+        }
+    }
+
     /**
      * Obtain XML names (like "abc-def") from strings like "getAbcDef" and "hasAbcDef".
      * <p>
@@ -385,6 +462,19 @@ public final class ConfigModel {
          *      possible types.
          */
         public abstract void set(Dom dom, Object arg);
+        
+        /**
+         * Returns the raw (untranslated) value of this property in the given {@link Dom}
+         * if its converted value can be cached by the {@link Dom}.  Only single-valued
+         * leaves that are not references can be cached, since their converted values
+         * are immutable and depend only on the raw value and the {@link Translator}
+         *
+         * @return The raw value, or null if there is no raw value or the converted
+         *      value cannot be cached
+         */
+        /*package*/ String getCacheableRawValue(Dom dom) {
+            return null;
+        }
 
         public List<String> getAnnotations() {
             return annotations;
@@ -670,6 +760,11 @@ public final class ConfigModel {
 
         public final String dataType;
         
+        /**
+         * Position of this attribute in the model, used to index {@link AttributeMap}
+         */
+        int ordinal;
+        
         AttributeLeaf(String xmlName, String dataType) {
             super(xmlName);
             this.dataType = dataType;
@@ -701,6 +796,11 @@ public final class ConfigModel {
             String v = dom.attribute(xmlName);
             return convertLeafValue(dom, Types.erasure(returnType), v);
         }
+        
+        @Override
+        String getCacheableRawValue(Dom dom) {
+            return dom.rawAttribute(xmlName);
+        }
 
         /**
          * Sets the value to {@link Dom}.
@@ -741,6 +841,11 @@ public final class ConfigModel {
         public boolean isReference() {
             return true;
         }
+        
+        @Override
+        String getCacheableRawValue(Dom dom) {
+            return null;
+        }
 
         @Override
         public Object get(Dom dom, Type returnType) {
@@ -783,6 +888,11 @@ public final class ConfigModel {
             String v = dom.leafElement(xmlName);
             return convertLeafValue(dom, Types.erasure(returnType), v);
         }
+        
+        @Override
+        String getCacheableRawValue(Dom dom) {
+            return dom.rawLeafElement(xmlName);
+        }
 
         public void set(Dom dom, Object arg) {
             if(arg==null) {
@@ -866,6 +976,7 @@ public final class ConfigModel {
                     }
                 } else
                     leaf = new AttributeLeafWithDefaultValue(attributeName, dt, dv);
+                leaf.ordinal = attributes.size();
                 attributes.put(attributeName, leaf);
             } else
             if(name.startsWith("<")) {
@@ -890,6 +1001,10 @@ public final class ConfigModel {
                 ConfigMetadata.KEY, key, ConfigMetadata.TARGET, indexTypeName);
         this.targetTypeName = targetTypeName;
         this.keyedAs = indexTypeName;
+        this.attributeNamesByOrdinal = new String[attributes.size()];
+        for (AttributeLeaf leaf : attributes.values()) {
+            attributeNamesByOrdinal[leaf.ordinal] = leaf.xmlName;
+        }
         this.key = key;
         this.contracts = getMetadataFromDescription(description, ConfigMetadata.TARGET_CONTRACTS);
         this.symbolSpaces = new HashSet<String>(getMetadataFromDescription(description, "symbolSpaces"));
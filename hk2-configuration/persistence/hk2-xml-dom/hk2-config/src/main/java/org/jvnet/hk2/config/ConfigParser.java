@@ -78,11 +78,36 @@ public class ConfigParser {
      * This is where we put parsed inhabitants into.
      */
     protected final ServiceLocator habitat;
+    
+    private volatile boolean precomputeElementNames = true;
 
 
     public ConfigParser(ServiceLocator habitat) {
         this.habitat = habitat;
     }
+    
+    /**
+     * Sets whether the {@link ConfigInjector}s of the global element names are
+     * taken from the locator once at the start of each parse.  When true (the default)
+     * the locator is not queried for each element whose model is not known from its
+     * parent, but {@link ConfigInjector}s added to the locator during the parse are
+     * not seen by that parse
+     *
+     * @param precomputeElementNames true to take the element names once per parse,
+     *      false to query the locator for each element
+     */
+    public void setPrecomputeElementNames(boolean precomputeElementNames) {
+        this.precomputeElementNames = precomputeElementNames;
+    }
+    
+    /**
+     * Tells whether the global element names are taken once per parse
+     *
+     * @return true if the element names are taken once per parse
+     */
+    public boolean isPrecomputeElementNames() {
+        return precomputeElementNames;
+    }
 
 
     public DomDocument parse(XMLStreamReader in) throws XMLStreamException {
@@ -96,11 +121,16 @@ public class ConfigParser {
     }
 
     public void parse(XMLStreamReader in, DomDocument document, Dom parent) throws XMLStreamException {
+        boolean precomputed = precomputeElementNames && document.precomputeElementInjectors();
         try {
             in.nextTag();
             document.root = handleElement(in, document, parent);
         }
         finally {
+            if (precomputed) {
+                document.clearElementInjectors();
+            }
+            
             in.close();
         }
     }
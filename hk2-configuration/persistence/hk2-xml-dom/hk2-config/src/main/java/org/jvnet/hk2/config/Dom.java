@@ -51,6 +51,7 @@ import org.glassfish.hk2.utilities.cache.ComputationErrorException;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
 import org.jvnet.hk2.config.provider.internal.Creator;
 import org.jvnet.hk2.config.provider.internal.CreatorImpl;
+import org.jvnet.tiger_types.Types;
 
 import javax.inject.Singleton;
 import javax.validation.constraints.NotNull;
@@ -65,6 +66,7 @@ import java.lang.annotation.Annotation;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -296,7 +298,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
     /**
      * All attributes and their raw values before {@link Translator} processing.
      */
-    private Map<String,String> attributes = new HashMap<String, String>();
+    private final AttributeMap attributes;
     /**
      * List of all child elements, both leaves and nodes.
      *
@@ -304,6 +306,13 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * The list is read-only and copy-on-write to support concurrent access.
      */
     private volatile List<Child> children = Collections.emptyList();
+    
+    /**
+     * Converted values of the single-valued leaves of this node, each kept with the
+     * raw value it came from so that a write to the leaf makes it stale
+     */
+    private final Map<ConfigModel.Property,LeafValue> leafValues =
+            new ConcurrentHashMap<ConfigModel.Property,LeafValue>(4, 0.75f, 1);
     private final Location location;
 
     /**
@@ -332,6 +341,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         this.model = model;
         this.document = document;
         this.parent = parent;
+        this.attributes = new AttributeMap(model);
         
         // TODO: This code is disabled as it does fail from time to time when assertions are enabled
         // assert (parent==null || parent.document==document); // all the nodes in the tree must belong to the same document
@@ -414,14 +424,11 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
     /*package*/ void fillAttributes(XMLStreamReader in) {
         for( int i=in.getAttributeCount()-1; i>=0; i-- ) {
             String n = in.getAttributeLocalName(i);
-            if(model.attributes.containsKey(n)) {
-                if(attributes==null)
-                    attributes = new HashMap<String, String>();
-                attributes.put(n,in.getAttributeValue(i));
+            ConfigModel.AttributeLeaf leaf = model.attributes.get(n);
+            if(leaf!=null) {
+                attributes.put(leaf,in.getAttributeValue(i));
             }
         }
-        if(attributes==null)
-            attributes = Collections.emptyMap();
     }
 
     /**
@@ -1066,34 +1073,34 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * code that does this during the development time by looking at the interface.
      */
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        // serve java.lang.Object methods by ourselves
-        Class<?> clazz = method.getDeclaringClass();
-        if(clazz ==Object.class) {
+        ConfigModel.MethodDispatch dispatch = model.getMethodDispatch(method);
+        
+        switch (dispatch.kind) {
+        case OBJECT:
+            // serve java.lang.Object methods by ourselves
             try {
                 return method.invoke(this,args);
             } catch (InvocationTargetException e) {
                 throw e.getTargetException();
             }
-        }
-        
-        if(method.getAnnotation(DuckTyped.class)!=null) {
-            return invokeDuckMethod(method,proxy,args);
-        }
-        if(method.getAnnotation(ConfigExtensionMethod.class) != null) {
-            ConfigExtensionMethod cem = method.getAnnotation(ConfigExtensionMethod.class);
-            ConfigExtensionHandler handler = (ConfigExtensionHandler) ((cem.value() != null)
-                ? getServiceLocator().getService(ConfigExtensionHandler.class, cem.value())
+        case DUCK:
+            return callDuckMethod(dispatch.duckMethod,proxy,args);
+        case EXTENSION:
+            ConfigExtensionHandler handler = (ConfigExtensionHandler) ((dispatch.extensionName != null)
+                ? getServiceLocator().getService(ConfigExtensionHandler.class, dispatch.extensionName)
                 : getServiceLocator().getService(ConfigExtensionHandler.class));
             return invokeConfigExtensionMethod(handler, this, model.getProxyType(), args);
+        default:
+            break;
         }
 
-        ConfigModel.Property p = model.toProperty(method);
+        ConfigModel.Property p = dispatch.property;
         if(p==null)
             throw new IllegalArgumentException("No corresponding property found for method: "+method);
 
         if(args==null || args.length==0) {
             // getter
-            return getter(p, method.getGenericReturnType());
+            return getter(p, dispatch.returnType);
         } else {
             throw new PropertyVetoException("Instance of " + getImplementation() + " named '" + getKey() +
                     "' is not locked for writing when invoking method " + method.getName()
@@ -1114,8 +1121,10 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * the user can define convenience methods on the config beans.
      */
     Object invokeDuckMethod(Method method, Object proxy, Object[] args) throws Exception {
-        Method duckMethod = model.getDuckMethod(method);
-
+        return callDuckMethod(model.getDuckMethod(method), proxy, args);
+    }
+    
+    private static Object callDuckMethod(Method duckMethod, Object proxy, Object[] args) throws Exception {
         Object[] duckArgs;
         if(args==null) {
             duckArgs = new Object[]{proxy};
@@ -1147,7 +1156,28 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
     }
 
     protected Object getter(ConfigModel.Property target, Type t) {
-        return target.get(this, t);
+        String raw = target.getCacheableRawValue(this);
+        if (raw == null) {
+            return target.get(this, t);
+        }
+        
+        Class<?> type = Types.erasure(t);
+        Translator translator = document.getTranslator();
+        
+        LeafValue cached = leafValues.get(target);
+        if (cached != null && cached.raw.equals(raw) && cached.type == type && cached.translator == translator) {
+            return cached.value;
+        }
+        
+        Object value = ((ConfigModel.Leaf) target).convertLeafValue(this, type, translator.translate(raw));
+        
+        // Variables may change at any time, so only values that were not translated are kept
+        if (translator == Translator.NOOP ||
+                (raw.indexOf('$') < 0 && document.translatesOnlyVariables(translator))) {
+            leafValues.put(target, new LeafValue(raw, type, translator, value));
+        }
+        
+        return value;
     }
 
     protected void setter(ConfigModel.Property target, Object value) throws Exception {
@@ -1457,4 +1487,18 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         
         
     }
+
+    private static final class LeafValue {
+        private final String raw;
+        private final Class<?> type;
+        private final Translator translator;
+        private final Object value;
+        
+        private LeafValue(String raw, Class<?> type, Translator translator, Object value) {
+            this.raw = raw;
+            this.type = type;
+            this.translator = translator;
+            this.value = value;
+        }
+    }
 }
@@ -84,6 +84,19 @@ public class DomDocument<T extends Dom> {
     
     private final Map<String, ActiveDescriptor<? extends ConfigInjector<?>>> cache = new HashMap<String, ActiveDescriptor<? extends ConfigInjector<?>>>();
     
+    /**
+     * The {@link ConfigInjector} of each global element name, taken from the locator
+     * once at the start of a parse and used instead of a locator query for every element.
+     * Null when no parse is using it
+     */
+    private volatile Map<String, ActiveDescriptor<?>> elementInjectors;
+    
+    /**
+     * The last translator checked by {@link #translatesOnlyVariables(Translator)}
+     * along with the result of the check
+     */
+    private volatile TranslatorCheck translatorCheck;
+    
     public DomDocument(ServiceLocator habitat) {
         this.habitat = habitat;
         for (String prim : PRIMS) {
@@ -105,6 +118,30 @@ public class DomDocument<T extends Dom> {
         this.translator = translator;
     }
 
+    /**
+     * Returns true if the given translator is a {@link VariableResolver} that
+     * does not override {@link VariableResolver#translate(String)}, in which case
+     * a value with no variable reference in it is always returned unchanged
+     */
+    /*package*/ boolean translatesOnlyVariables(Translator translator) {
+        TranslatorCheck check = translatorCheck;
+        if (check != null && check.translator == translator) return check.onlyVariables;
+        
+        boolean onlyVariables = false;
+        if (translator instanceof VariableResolver) {
+            try {
+                onlyVariables = translator.getClass().getMethod("translate", String.class).getDeclaringClass() ==
+                        VariableResolver.class;
+            }
+            catch (NoSuchMethodException e) {
+                // Cannot happen, translate is public
+            }
+        }
+        
+        translatorCheck = new TranslatorCheck(translator, onlyVariables);
+        return onlyVariables;
+    }
+
     /**
      * Creates {@link ConfigModel} for the given {@link ConfigInjector} if we haven't done so.
      */
@@ -156,12 +193,45 @@ public class DomDocument<T extends Dom> {
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public ConfigModel getModelByElementName(String elementName) {
-        ActiveDescriptor<?> i = habitat.getBestDescriptor(
+        Map<String, ActiveDescriptor<?>> localInjectors = elementInjectors;
+        ActiveDescriptor<?> i = (localInjectors != null) ? localInjectors.get(elementName) :
+            habitat.getBestDescriptor(
                 BuilderHelper.createNameAndContractFilter(ConfigInjector.class.getName(), elementName));
         if(i==null) return null;
         return buildModel((ActiveDescriptor<? extends ConfigInjector>) i);
     }
 
+    /**
+     * Takes the {@link ConfigInjector} of every global element name from the locator
+     * in one query, so that {@link #getModelByElementName(String)} does not query the
+     * locator until {@link #clearElementInjectors()} is called.  The injector chosen
+     * for a name is the one the locator would have returned as the best descriptor
+     *
+     * @return false if the injectors had already been taken, in which case the caller
+     *      should not clear them
+     */
+    /*package*/ boolean precomputeElementInjectors() {
+        if (elementInjectors != null) return false;
+        
+        Map<String, ActiveDescriptor<?>> injectors = new HashMap<String, ActiveDescriptor<?>>();
+        for (ActiveDescriptor<?> injector : habitat.getDescriptors(
+                BuilderHelper.createContractFilter(ConfigInjector.class.getName()))) {
+            String name = injector.getName();
+            
+            // The descriptors are in best-first order
+            if (name != null && !injectors.containsKey(name)) {
+                injectors.put(name, injector);
+            }
+        }
+        
+        elementInjectors = injectors;
+        return true;
+    }
+    
+    /*package*/ void clearElementInjectors() {
+        elementInjectors = null;
+    }
+
     private class InjectionTargetFilter
         implements IndexedFilter {
 
@@ -294,4 +364,14 @@ public class DomDocument<T extends Dom> {
         }
     }
     
+    
+    private static final class TranslatorCheck {
+        private final Translator translator;
+        private final boolean onlyVariables;
+        
+        private TranslatorCheck(Translator translator, boolean onlyVariables) {
+            this.translator = translator;
+            this.onlyVariables = onlyVariables;
+        }
+    }
 }
@@ -71,6 +71,7 @@ import org.jvnet.hk2.config.SingleConfigCode;
 import org.jvnet.hk2.config.TransactionFailure;
 import org.jvnet.hk2.config.Transactions;
 import org.jvnet.hk2.config.UnprocessedChangeEvents;
+import org.jvnet.hk2.config.VariableResolver;
 import org.jvnet.hk2.config.provider.internal.ConfigInstanceListener;
 
 import java.beans.PropertyChangeEvent;
@@ -438,6 +439,138 @@ public class ConfigTest {
         
     }
     
+    /**
+     * Ensures that leaf values read through the proxy follow writes to
+     * the attribute and changes to the variables they reference
+     */
+    @Test
+    public void testLeafValuesFollowWritesAndVariables() throws Exception {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(locator).configure(config);
+        config.commit();
+        
+        DomDocument doc = new ConfigParser(locator).parse(getClass().getResource("/domain.xml"));
+        
+        GenericContainer gc = locator.getService(GenericContainer.class);
+        Dom dom = Dom.unwrap(gc);
+        
+        Assert.assertEquals(1234, gc.getIntValue());
+        Assert.assertEquals(1234, gc.getIntValue());
+        Assert.assertEquals(1234L, gc.getStartupTime());
+        
+        dom.attribute("int-value", "42");
+        Assert.assertEquals(42, gc.getIntValue());
+        Assert.assertEquals("42", dom.attribute("int-value"));
+        
+        final Map<String, String> variables = new HashMap<String, String>();
+        variables.put("value", "5");
+        doc.setTranslator(new VariableResolver() {
+
+            @Override
+            protected String getVariableValue(String varName) {
+                return variables.get(varName);
+            }
+            
+        });
+        
+        Assert.assertEquals(42, gc.getIntValue());
+        
+        dom.attribute("int-value", "${value}");
+        Assert.assertEquals(5, gc.getIntValue());
+        
+        variables.put("value", "6");
+        Assert.assertEquals(6, gc.getIntValue());
+        
+        // A resolver that overrides translate may change values with no variable in them
+        dom.attribute("int-value", "10");
+        final int offset[] = new int[1];
+        doc.setTranslator(new VariableResolver() {
+
+            @Override
+            public String translate(String str) {
+                return Integer.toString(Integer.parseInt(str) + offset[0]);
+            }
+
+            @Override
+            protected String getVariableValue(String varName) {
+                return null;
+            }
+            
+        });
+        
+        Assert.assertEquals(10, gc.getIntValue());
+        
+        offset[0] = 1;
+        Assert.assertEquals(11, gc.getIntValue());
+    }
+    
+    private static SimpleConnector parseDomainXml(boolean precomputeElementNames) {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(locator).configure(config);
+        config.commit();
+        
+        ConfigParser parser = new ConfigParser(locator);
+        parser.setPrecomputeElementNames(precomputeElementNames);
+        Assert.assertEquals(precomputeElementNames, parser.isPrecomputeElementNames());
+        
+        DomDocument doc = parser.parse(ConfigTest.class.getResource("/domain.xml"));
+        Assert.assertEquals("simple-connector", doc.getRoot().model.getTagName());
+        
+        return locator.getService(SimpleConnector.class);
+    }
+    
+    /**
+     * Ensures that a parse that takes the global element names once builds
+     * the same tree as one that queries the locator for each element
+     */
+    @Test
+    public void testParseWithPrecomputedElementNames() {
+        for (boolean precompute : new boolean[] { true, false }) {
+            SimpleConnector sc = parseDomainXml(precompute);
+            
+            Assert.assertEquals("8080", sc.getPort());
+            Assert.assertNotNull(sc.getEjbContainerAvailability());
+            Assert.assertNotNull(sc.getWebContainerAvailability());
+            
+            List<GenericContainer> containers = sc.getExtensions();
+            Assert.assertEquals(1, containers.size());
+            
+            List<GenericConfig> configs = containers.get(0).getExtensions();
+            Assert.assertEquals(2, configs.size());
+            Assert.assertEquals("test1", configs.get(0).getName());
+            Assert.assertEquals("test2", configs.get(1).getName());
+        }
+    }
+    
+    /**
+     * Ensures attributes known and unknown to the model can be set,
+     * read, listed and removed
+     */
+    @Test
+    public void testDomAttributes() {
+        SimpleConnector sc = parseDomainXml(true);
+        GenericConfig gc = sc.getExtensions().get(0).getExtensions().get(0);
+        Dom dom = Dom.unwrap(gc);
+        
+        Assert.assertEquals(Collections.singleton("name"), dom.getAttributeNames());
+        Assert.assertEquals("test1", dom.attribute("name"));
+        
+        dom.attribute("not-in-model", "value");
+        Assert.assertEquals("value", dom.attribute("not-in-model"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("name", "not-in-model")), dom.getAttributeNames());
+        
+        dom.attribute("not-in-model", null);
+        Assert.assertNull(dom.attribute("not-in-model"));
+        Assert.assertEquals(Collections.singleton("name"), dom.getAttributeNames());
+        
+        Dom copy = new Dom(dom, dom.parent());
+        Assert.assertEquals("test1", copy.attribute("name"));
+    }
+    
     @Test
     public void testEnableConfigUtilities() {
         ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
@@ -40,6 +40,8 @@
 
 package org.glassfish.hk2.extras;
 
+import java.util.concurrent.Executor;
+
 import org.glassfish.hk2.api.DuplicateServiceException;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
@@ -49,6 +51,7 @@ import org.glassfish.hk2.extras.events.internal.DefaultTopicDistributionService;
 import org.glassfish.hk2.extras.hk2bridge.internal.Hk2BridgeImpl;
 import org.glassfish.hk2.extras.interception.internal.DefaultInterceptionService;
 import org.glassfish.hk2.extras.operation.internal.OperationManagerImpl;
+import org.glassfish.hk2.extras.task.internal.PerTaskContext;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
@@ -110,6 +113,27 @@ public class ExtrasUtilities {
         }
     }
     
+    /**
+     * This method adds the ability to use the {@link org.glassfish.hk2.extras.task.PerTask}
+     * scope to the given locator, enabling HK2 Operations support if it is not already
+     * enabled.  This method is idempotent, if the scope is already enabled it will not
+     * add it again
+     * 
+     * @param locator The locator to add the PerTask scope to.  May not be null
+     */
+    public static void enablePerTaskScope(ServiceLocator locator) {
+        enableOperations(locator);
+        
+        if (locator.getBestDescriptor(BuilderHelper.createContractFilter(PerTaskContext.class.getName())) != null) return;
+        
+        try {
+            ServiceLocatorUtilities.addClasses(locator, true, PerTaskContext.class);
+        }
+        catch (MultiException me) {
+            if (!isDupException(me)) throw me;
+        }
+    }
+    
     private final static String BRIDGE_NAME_PREFIX = "LocatorBridge(";
     private final static String COMMA = ",";
     private final static String BRIDGE_NAME_POSTFIX = ")";
@@ -220,6 +244,38 @@ public class ExtrasUtilities {
         }
     }
     
+    /**
+     * This method will enable the default topic distribution service
+     * and make it distribute messages asynchronously.
+     * <p>
+     * Every subscriber has its own queue of messages, which is drained
+     * on the given executor.  A subscriber receives the messages in
+     * the order in which they were published, and a slow subscriber does
+     * not hold up the publisher or the other subscribers.  Subscribers that
+     * use {@link org.glassfish.hk2.extras.events.Batched} receive the
+     * messages that arrived while they were busy together in one list.
+     * <p>
+     * This method may be called again to change the executor or the
+     * maximum batch size
+     * 
+     * @param locator The service locator to enable topic distribution on.  May not be null
+     * @param executor The executor on which subscribers will be called.  If null
+     * messages will be distributed on the thread of the publisher
+     * @param maximumBatchSize The maximum number of messages given at once to
+     * a batched subscriber.  Must be at least 1
+     */
+    public static void enableAsynchronousTopicDistribution(ServiceLocator locator, Executor executor, int maximumBatchSize) {
+        enableTopicDistribution(locator);
+        
+        TopicDistributionService distributor = locator.getService(TopicDistributionService.class,
+                TopicDistributionService.HK2_DEFAULT_TOPIC_DISTRIBUTOR);
+        if (!(distributor instanceof DefaultTopicDistributionService)) {
+            throw new IllegalStateException("The default topic distribution service has been replaced by " + distributor);
+        }
+        
+        ((DefaultTopicDistributionService) distributor).setAsynchronous(executor, maximumBatchSize);
+    }
+    
     private static boolean isDupException(MultiException me) {
         boolean atLeastOne = false;
         
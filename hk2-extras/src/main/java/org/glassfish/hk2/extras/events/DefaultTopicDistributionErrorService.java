@@ -61,6 +61,11 @@ public interface DefaultTopicDistributionErrorService {
      * The {@link MultiException} will contain the errors from any
      * subscribers that threw exceptions.  This method will
      * not be called if no subscribers threw exceptions
+     * <p>
+     * When messages are distributed asynchronously this method is called
+     * on the thread of the executor once for every subscriber that threw,
+     * and for a subscriber using {@link Batched} the message is the list
+     * of messages it was given
      * 
      * @param topic The topic that the message was sent to
      * @param message The message that was sent to the topic
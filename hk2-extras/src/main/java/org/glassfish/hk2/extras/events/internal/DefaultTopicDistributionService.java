@@ -44,6 +44,7 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -53,6 +54,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -80,9 +86,11 @@ import org.glassfish.hk2.api.messaging.MessageReceiver;
 import org.glassfish.hk2.api.messaging.SubscribeTo;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.extras.events.Batched;
 import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.utilities.MethodParameterImpl;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.MethodWrapper;
 import org.glassfish.hk2.utilities.reflection.Pretty;
@@ -94,6 +102,14 @@ import org.jvnet.hk2.annotations.Optional;
 
 /**
  * This is the default implementation of the TopicDistributionService.
+ * <p>
+ * The subscribers of each topic are found once and kept until the
+ * set of subscribers changes.  By default messages are given to the
+ * subscribers on the thread of the publisher.  If an executor has
+ * been set with {@link #setAsynchronous(Executor, int)} each subscriber
+ * instead has its own queue of messages which is drained on the executor,
+ * so that subscribers receive messages in the order they were published
+ * and slow subscribers do not hold up the publisher
  * 
  * @author jwells
  */
@@ -124,10 +140,60 @@ public class DefaultTopicDistributionService implements
     private final HashMap<ActiveDescriptor<?>, Set<Class<?>>> descriptor2Classes = new HashMap<ActiveDescriptor<?>, Set<Class<?>>>();
     private final HashMap<ActivatorClassKey, List<SubscriberInfo>> class2Subscribers = new HashMap<ActivatorClassKey, List<SubscriberInfo>>();
     
+    /**
+     * The subscribers of each topic.  Filled in with the read lock held,
+     * and cleared with the write lock held whenever subscribers are added
+     * or removed
+     */
+    private final ConcurrentHashMap<TopicKey, SubscriberInfo[]> topic2Subscribers = new ConcurrentHashMap<TopicKey, SubscriberInfo[]>();
+    
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
     
+    private volatile Executor executor;
+    private volatile int maximumBatchSize = 1;
+    
+    /**
+     * Makes this service distribute messages asynchronously.  Every
+     * subscriber gets its own queue of messages, which is drained by
+     * a task run on the given executor.  Subscribers receive the messages
+     * in the order in which they were published
+     * 
+     * @param executor The executor on which subscribers are called.  If
+     * null messages are distributed on the thread of the publisher
+     * @param maximumBatchSize The maximum number of messages given at
+     * once to a subscriber that uses {@link Batched}.  Must be at least 1
+     */
+    public void setAsynchronous(Executor executor, int maximumBatchSize) {
+        if (maximumBatchSize < 1) {
+            throw new IllegalArgumentException("maximumBatchSize must be at least 1, but it is " + maximumBatchSize);
+        }
+        
+        this.maximumBatchSize = maximumBatchSize;
+        this.executor = executor;
+    }
+    
+    /**
+     * Returns the executor on which subscribers are called
+     * 
+     * @return The executor, or null if messages are distributed
+     * on the thread of the publisher
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Returns the maximum number of messages given at once to
+     * a subscriber that uses {@link Batched}
+     * 
+     * @return The maximum batch size, at least 1
+     */
+    public int getMaximumBatchSize() {
+        return maximumBatchSize;
+    }
+    
     private void fire(Object message, Method subscription, SubscriberInfo subscriptionInfo, Object target, ServiceLocator locator) throws Throwable {
         List<MethodParameter> mps = new ArrayList<MethodParameter>(subscriptionInfo.otherInjectees.length);
         
@@ -161,59 +227,70 @@ public class DefaultTopicDistributionService implements
         }
     }
     
-    private List<FireResults> handleDescriptorToClass(ActiveDescriptor<?> descriptor, Class<?> clazz, Type eventType, Topic<?> topic) {
-        LinkedList<FireResults> retVal = new LinkedList<FireResults>();
+    private static boolean isSubscriber(SubscriberInfo subscriberInfo, Type eventType, Topic<?> topic) {
+        Type subscriptionType = subscriberInfo.eventType;
         
-        List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
-        if (subscribers == null) subscribers = Collections.emptyList();
+        if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
+            // Not a type match
+            return false;
+        }
+            
+        if (!subscriberInfo.eventQualifiers.isEmpty()) {
+            if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
+                // The qualifiers do not match
+                return false;
+            }
+        }
         
-        for (SubscriberInfo subscriberInfo : subscribers) {    
-            Type subscriptionType = subscriberInfo.eventType;
+        if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
+            if (subscriberInfo.unqualified.value().length == 0) {
+                // publisher must not have any qualifiers,
+                // but it DOES have some, so forget it!
+                return false;
+            }
             
-            if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
-                // Not a type match
-                continue;
+            Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
+            for (Annotation topicQualifier : topic.getTopicQualifiers()) {
+                topicQualifierClasses.add(topicQualifier.annotationType());
             }
                 
-            if (!subscriberInfo.eventQualifiers.isEmpty()) {
-                if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
-                    // The qualifiers do not match
-                    continue;
+            for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
+                if (topicQualifierClasses.contains(verbotenQualifier)) {
+                    // Found one of the qualifiers we are not allowed to have!
+                    return false;
                 }
             }
-            
-            if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
-                if (subscriberInfo.unqualified.value().length == 0) {
-                    // publisher must not have any qualifiers,
-                    // but it DOES have some, so forget it!
-                    continue;
-                }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Must be called with the read lock held
+     */
+    private SubscriberInfo[] getSubscribers(Type eventType, Topic<?> topic) {
+        TopicKey key = new TopicKey(eventType, topic.getTopicQualifiers());
+        
+        SubscriberInfo retVal[] = topic2Subscribers.get(key);
+        if (retVal != null) return retVal;
+        
+        List<SubscriberInfo> subscribers = new ArrayList<SubscriberInfo>();
+        for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
+            for (Class<?> clazz : d2cEntry.getValue()) {
+                List<SubscriberInfo> classSubscribers = class2Subscribers.get(new ActivatorClassKey(d2cEntry.getKey(), clazz));
+                if (classSubscribers == null) continue;
                 
-                Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
-                for (Annotation topicQualifier : topic.getTopicQualifiers()) {
-                    topicQualifierClasses.add(topicQualifier.annotationType());
-                }
-                    
-                boolean found = false;
-                for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
-                    if (topicQualifierClasses.contains(verbotenQualifier)) {
-                        found = true;
-                        break;
+                for (SubscriberInfo subscriberInfo : classSubscribers) {
+                    if (isSubscriber(subscriberInfo, eventType, topic)) {
+                        subscribers.add(subscriberInfo);
                     }
                 }
-                    
-                if (found) {
-                    // Found one of the qualifiers we are not allowed to have!
-                    continue;
-                }
             }
-            
-            for (WeakReference<Object> targetReference : subscriberInfo.targets) {
-                Object target = targetReference.get();
-                retVal.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
-            }    
         }
         
+        retVal = subscribers.toArray(new SubscriberInfo[subscribers.size()]);
+        topic2Subscribers.put(key, retVal);
+        
         return retVal;
     }
 
@@ -225,12 +302,12 @@ public class DefaultTopicDistributionService implements
         
         Type eventType = topic.getTopicType();
         
-        LinkedList<FireResults> fireResults = new LinkedList<FireResults>();
+        ArrayList<FireResults> fireResults = new ArrayList<FireResults>();
         rLock.lock();
         try {
-            for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
-                for (Class<?> clazz : d2cEntry.getValue()) {
-                    fireResults.addAll(handleDescriptorToClass(d2cEntry.getKey(), clazz, eventType, topic));
+            for (SubscriberInfo subscriberInfo : getSubscribers(eventType, topic)) {
+                for (TargetReference targetReference : subscriberInfo.targets) {
+                    fireResults.add(new FireResults(subscriberInfo, targetReference, targetReference.get()));
                 }
             }
         }
@@ -240,16 +317,20 @@ public class DefaultTopicDistributionService implements
         
         // Do everything else outside the lock
         Set<SubscriberInfo> hasDeadReferences = new HashSet<SubscriberInfo>();
+        Executor localExecutor = executor;
         
         MultiException errors = null;
         for (FireResults fireResult : fireResults) {
             if (fireResult.target == null) {
                 hasDeadReferences.add(fireResult.subscriberInfo);
             }
+            else if (localExecutor != null) {
+                fireResult.targetReference.getQueue().offer(topic, message, localExecutor);
+            }
             else {
                 try {
-                    fire(message,
-                           fireResult.subscriberMethod,
+                    fire((fireResult.subscriberInfo.batched ? Collections.singletonList(message) : message),
+                           fireResult.subscriberInfo.method,
                            fireResult.subscriberInfo,
                            fireResult.target,
                            locator);
@@ -266,28 +347,17 @@ public class DefaultTopicDistributionService implements
         }
         
         if (errors != null) {
-            for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
-                try {
-                    handle.getService().subscribersFailed(topic, message, errors);
-                    
-                    if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
-                        handle.destroy();
-                    }
-                }
-                catch (Throwable ignore) {
-                    // ignore it
-                }
-            }
+            subscribersFailed(topic, message, errors);
         }
         
         if (!hasDeadReferences.isEmpty()) {
             wLock.lock();
             try {
                 for (SubscriberInfo sInfo : hasDeadReferences) {
-                    Iterator<WeakReference<Object>> iterator = sInfo.targets.iterator();
+                    Iterator<TargetReference> iterator = sInfo.targets.iterator();
                 
                     while (iterator.hasNext()) {
-                        WeakReference<Object> ref = iterator.next();
+                        TargetReference ref = iterator.next();
                         if (ref.get() == null) {
                             iterator.remove();
                         }
@@ -301,6 +371,21 @@ public class DefaultTopicDistributionService implements
         }
         
     }
+    
+    private void subscribersFailed(Topic<?> topic, Object message, MultiException errors) {
+        for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
+            try {
+                handle.getService().subscribersFailed(topic, message, errors);
+                
+                if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
+                    handle.destroy();
+                }
+            }
+            catch (Throwable ignore) {
+                // ignore it
+            }
+        }
+    }
 
     @Override
     public Filter getFilter() {
@@ -323,7 +408,7 @@ public class DefaultTopicDistributionService implements
             
                 if (existingMethods != null) {
                     for (SubscriberInfo info : existingMethods) {
-                        info.targets.add(new WeakReference<Object>(target));
+                        info.targets.add(new TargetReference(target, info));
                     }
                 
                     return;
@@ -400,11 +485,16 @@ public class DefaultTopicDistributionService implements
             }
             
             SubscriberInfo si = generateSubscriberInfo(descriptor, methodWrapper.getMethod(), useMethod, foundPosition, paramAnnotations);
-            si.targets.add(new WeakReference<Object>(target));
+            si.targets.add(new TargetReference(target, si));
             
             existingMethods.add(si);
         }
         
+        if (!existingMethods.isEmpty()) {
+            // New subscribers, the subscribers of the topics must be found again
+            topic2Subscribers.clear();
+        }
+        
     }
     
     private Method findMethodOnDifferentClass(Class<?> findOnMe, Method method) {
@@ -444,6 +534,7 @@ public class DefaultTopicDistributionService implements
         // Get the event qualifiers and the Unqualified
         Set<Annotation> eventQualifiers = new HashSet<Annotation>();
         Unqualified eventUnqualified = null;
+        boolean batched = false;
         
         Annotation subscribeToAnnotations[] = paramAnnotations[subscribeToPosition];
         for (Annotation possibleQualifier : subscribeToAnnotations) {
@@ -454,6 +545,24 @@ public class DefaultTopicDistributionService implements
             if (Unqualified.class.equals(possibleQualifier.annotationType())) {
                 eventUnqualified = (Unqualified) possibleQualifier;
             }
+            
+            if (Batched.class.equals(possibleQualifier.annotationType())) {
+                batched = true;
+            }
+        }
+        
+        if (batched) {
+            if (!List.class.equals(ReflectionHelper.getRawClass(eventType))) {
+                throw new IllegalArgumentException("A method " + Pretty.method(subscriber) + " on class " +
+                        subscriber.getDeclaringClass().getName() +
+                        " has a @Batched parameter that is not a java.util.List");
+            }
+            
+            // The subscriber receives a list of these
+            eventType = ReflectionHelper.getFirstTypeArgument(eventType);
+            if (eventType instanceof WildcardType) {
+                eventType = ((WildcardType) eventType).getUpperBounds()[0];
+            }
         }
         
         // Get the injectees for the other parameters
@@ -500,7 +609,7 @@ public class DefaultTopicDistributionService implements
             }
         }
         
-        return new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, injectees);
+        return new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, batched, injectees);
     }
     
     private void preDestruction(InstanceLifecycleEvent lifecycleEvent) {
@@ -514,10 +623,10 @@ public class DefaultTopicDistributionService implements
             List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
             
             for (SubscriberInfo subscriberInfo : subscribers) {
-                Iterator<WeakReference<Object>> targetIterator = subscriberInfo.targets.iterator();
+                Iterator<TargetReference> targetIterator = subscriberInfo.targets.iterator();
                 
                 while (targetIterator.hasNext()) {
-                    WeakReference<Object> ref = targetIterator.next();
+                    TargetReference ref = targetIterator.next();
                     Object subscriberTarget = ref.get();
                     if (subscriberTarget == null) {
                         targetIterator.remove();
@@ -575,6 +684,10 @@ public class DefaultTopicDistributionService implements
                     class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
                 }
             }
+            
+            if (!removeMe.isEmpty()) {
+                topic2Subscribers.clear();
+            }
         }
         finally {
             wLock.unlock();
@@ -585,38 +698,192 @@ public class DefaultTopicDistributionService implements
     
     private static class SubscriberInfo {
         private final Method method;
-        private final LinkedList<WeakReference<Object>> targets = new LinkedList<WeakReference<Object>>();
-        private final Type eventType;
+        private final LinkedList<TargetReference> targets = new LinkedList<TargetReference>();
+        private final Type eventType;  // For batched subscribers the type of the elements of the list
         private final Set<Annotation> eventQualifiers;
         private final Unqualified unqualified;
+        private final boolean batched;
         private final InjecteeImpl otherInjectees[];  // There will be a null in the slot for the event
         
         private SubscriberInfo(Method method,
                 Type eventType,
                 Set<Annotation> eventQualifiers,
                 Unqualified unqualified,
+                boolean batched,
                 InjecteeImpl otherInjectees[]) {
             this.method = method;
             this.eventType = eventType;
             this.eventQualifiers = eventQualifiers;
             this.unqualified = unqualified;
+            this.batched = batched;
             this.otherInjectees = otherInjectees;
         }
     }
     
     private static class FireResults {
-        private final Method subscriberMethod;
         private final SubscriberInfo subscriberInfo;
+        private final TargetReference targetReference;
         private final Object target;
         
-        private FireResults(Method subscriberMethod, SubscriberInfo subscriberInfo, Object target) {
-            this.subscriberMethod = subscriberMethod;
+        private FireResults(SubscriberInfo subscriberInfo, TargetReference targetReference, Object target) {
             this.subscriberInfo = subscriberInfo;
+            this.targetReference = targetReference;
             this.target = target;
         }
         
     }
     
+    /**
+     * A subscriber instance, along with its queue of messages
+     * when distributing asynchronously
+     * 
+     * @author jwells
+     *
+     */
+    private class TargetReference extends WeakReference<Object> {
+        private final SubscriberInfo subscriberInfo;
+        private DeliveryQueue queue;
+        
+        private TargetReference(Object target, SubscriberInfo subscriberInfo) {
+            super(target);
+            
+            this.subscriberInfo = subscriberInfo;
+        }
+        
+        private synchronized DeliveryQueue getQueue() {
+            if (queue == null) {
+                queue = new DeliveryQueue(this);
+            }
+            
+            return queue;
+        }
+    }
+    
+    private static class Delivery {
+        private final Topic<?> topic;
+        private final Object message;
+        
+        private Delivery(Topic<?> topic, Object message) {
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+    
+    /**
+     * The messages waiting for one subscriber instance.  At most one
+     * task drains the queue at a time, which keeps the messages in the
+     * order in which they were published
+     * 
+     * @author jwells
+     *
+     */
+    private class DeliveryQueue implements Runnable {
+        private final TargetReference targetReference;
+        private final ConcurrentLinkedQueue<Delivery> pending = new ConcurrentLinkedQueue<Delivery>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        
+        private DeliveryQueue(TargetReference targetReference) {
+            this.targetReference = targetReference;
+        }
+        
+        private void offer(Topic<?> topic, Object message, Executor executor) {
+            pending.add(new Delivery(topic, message));
+            
+            if (!scheduled.compareAndSet(false, true)) return;
+            
+            try {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException ree) {
+                // Deliver on the thread of the publisher instead
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                drain();
+                
+                scheduled.set(false);
+                
+                // A message may have been offered after the drain
+                if (pending.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+            }
+        }
+        
+        private void drain() {
+            SubscriberInfo subscriberInfo = targetReference.subscriberInfo;
+            
+            Delivery delivery;
+            while ((delivery = pending.poll()) != null) {
+                Object target = targetReference.get();
+                if (target == null) {
+                    pending.clear();
+                    return;
+                }
+                
+                Object message;
+                if (subscriberInfo.batched) {
+                    int localMaximumBatchSize = maximumBatchSize;
+                    
+                    List<Object> batch = new ArrayList<Object>();
+                    batch.add(delivery.message);
+                    while (batch.size() < localMaximumBatchSize) {
+                        Delivery next = pending.poll();
+                        if (next == null) break;
+                        
+                        batch.add(next.message);
+                    }
+                    
+                    message = batch;
+                }
+                else {
+                    message = delivery.message;
+                }
+                
+                try {
+                    fire(message, subscriberInfo.method, subscriberInfo, target, locator);
+                }
+                catch (Throwable th) {
+                    subscribersFailed(delivery.topic, message, new MultiException(th));
+                }
+            }
+        }
+    }
+    
+    /**
+     * The key of the index from topics to their subscribers
+     * 
+     * @author jwells
+     *
+     */
+    private static class TopicKey {
+        private final Type eventType;
+        private final Set<Annotation> qualifiers;
+        private final int hashCode;
+        
+        private TopicKey(Type eventType, Set<Annotation> qualifiers) {
+            this.eventType = eventType;
+            this.qualifiers = qualifiers;
+            this.hashCode = eventType.hashCode() ^ qualifiers.hashCode();
+        }
+        
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof TopicKey)) return false;
+            
+            TopicKey other = (TopicKey) o;
+            
+            return GeneralUtilities.safeEquals(eventType, other.eventType) &&
+                    qualifiers.equals(other.qualifiers);
+        }
+    }
+    
     /**
      * This is here to handle the case where a PerLookup Factory (or the like)
      * could possibly return different classes every time it is looked up.  For
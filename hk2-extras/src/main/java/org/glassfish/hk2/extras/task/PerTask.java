@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.extras.task;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.inject.Scope;
+
+import org.glassfish.hk2.api.Proxiable;
+
+/**
+ * PerTask is a scope that operates like {@link org.glassfish.hk2.api.PerThread}
+ * scope, except that the services belong to a task rather than to a thread.
+ * A task is an HK2 Operation (see {@link org.glassfish.hk2.extras.operation.OperationManager})
+ * of this scope, so it may be started on one thread, suspended, and resumed
+ * on any other thread, taking its services with it.  When the task is closed
+ * with {@link org.glassfish.hk2.extras.operation.OperationHandle#closeOperation()}
+ * all of its services are destroyed.
+ * <p>
+ * This makes the lifecycle of the services independent of the threads that
+ * happen to run the task, which is what is wanted when a thread pool or
+ * very many short-lived threads are used.  A typical use is:
+ * <pre>
+ * OperationHandle&lt;PerTask&gt; task = operationManager.createOperation(PerTaskImpl.INSTANCE);
+ * 
+ * // On whatever thread runs the task
+ * task.resume();
+ * try {
+ *   // PerTask services used here belong to the task
+ * }
+ * finally {
+ *   task.suspend();
+ * }
+ * 
+ * // When the task is complete
+ * task.closeOperation();
+ * </pre>
+ * <p>
+ * The PerTask scope is not automatically handled by a new ServiceLocator.  In
+ * order to enable the PerTask scope use the
+ * {@link org.glassfish.hk2.extras.ExtrasUtilities#enablePerTaskScope} method
+ * 
+ * @author jwells
+ *
+ */
+@Documented
+@Retention(RUNTIME)
+@Scope
+@Target( { TYPE, METHOD })
+@Proxiable(proxyForSameScope=false)
+public @interface PerTask {
+
+}
@@ -0,0 +1,182 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.extras.ExtrasUtilities;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for asynchronous and batched topic distribution
+ * 
+ * @author jwells
+ *
+ */
+public class AsyncTopicTest {
+    private final static int NUM_TICKS = 100;
+    private final static long TIMEOUT = 20 * 1000;
+    
+    /**
+     * Tests that a subscriber that is stuck does not hold up
+     * the publisher, and that it gets its messages in order
+     * once it is unstuck
+     */
+    @Test
+    public void testSlowSubscriberDoesNotBlockPublisher() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ServiceLocator locator = Utilities.getLocatorWithTopics();
+            ExtrasUtilities.enableAsynchronousTopicDistribution(locator, executor, 1);
+            
+            ServiceLocatorUtilities.addClasses(locator, TickPublisher.class, SlowSubscriber.class);
+            
+            SlowSubscriber subscriber = locator.getService(SlowSubscriber.class);
+            TickPublisher publisher = locator.getService(TickPublisher.class);
+            
+            for (int lcv = 0; lcv < NUM_TICKS; lcv++) {
+                publisher.publish(lcv);
+            }
+            
+            // The publisher got here even though the subscriber is stuck
+            Assert.assertTrue(subscriber.getReceived().isEmpty());
+            
+            subscriber.open();
+            
+            List<Integer> received = subscriber.waitForTicks(NUM_TICKS, TIMEOUT);
+            Assert.assertEquals(NUM_TICKS, received.size());
+            for (int lcv = 0; lcv < NUM_TICKS; lcv++) {
+                Assert.assertEquals(lcv, received.get(lcv).intValue());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Tests that messages that queue up while the subscriber
+     * is busy are given to a batched subscriber together
+     */
+    @Test
+    public void testBatchedSubscriber() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ServiceLocator locator = Utilities.getLocatorWithTopics();
+            ExtrasUtilities.enableAsynchronousTopicDistribution(locator, executor, 4);
+            
+            ServiceLocatorUtilities.addClasses(locator, TickPublisher.class, BatchSubscriber.class);
+            
+            BatchSubscriber subscriber = locator.getService(BatchSubscriber.class);
+            TickPublisher publisher = locator.getService(TickPublisher.class);
+            
+            // Keep the only thread of the executor busy while publishing
+            final CountDownLatch busy = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        busy.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                
+            });
+            
+            for (int lcv = 0; lcv < 10; lcv++) {
+                publisher.publish(lcv);
+            }
+            
+            busy.countDown();
+            
+            List<Integer> received = subscriber.waitForTicks(10, TIMEOUT);
+            Assert.assertEquals(10, received.size());
+            for (int lcv = 0; lcv < 10; lcv++) {
+                Assert.assertEquals(lcv, received.get(lcv).intValue());
+            }
+            
+            List<Integer> batchSizes = subscriber.getBatchSizes();
+            Assert.assertEquals(3, batchSizes.size());
+            Assert.assertEquals(4, batchSizes.get(0).intValue());
+            Assert.assertEquals(4, batchSizes.get(1).intValue());
+            Assert.assertEquals(2, batchSizes.get(2).intValue());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Tests that a batched subscriber receives one message at a
+     * time when messages are distributed on the publishing thread
+     */
+    @Test
+    public void testBatchedSubscriberWhenSynchronous() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(TickPublisher.class, BatchSubscriber.class);
+        
+        BatchSubscriber subscriber = locator.getService(BatchSubscriber.class);
+        TickPublisher publisher = locator.getService(TickPublisher.class);
+        
+        publisher.publish(0);
+        publisher.publish(1);
+        
+        List<Integer> received = subscriber.waitForTicks(2, 0L);
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(0, received.get(0).intValue());
+        Assert.assertEquals(1, received.get(1).intValue());
+        
+        List<Integer> batchSizes = subscriber.getBatchSizes();
+        Assert.assertEquals(2, batchSizes.size());
+        Assert.assertEquals(1, batchSizes.get(0).intValue());
+        Assert.assertEquals(1, batchSizes.get(1).intValue());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.messaging.MessageReceiver;
+import org.glassfish.hk2.api.messaging.SubscribeTo;
+
+/**
+ * A subscriber that does not take any message until it is opened
+ * 
+ * @author jwells
+ *
+ */
+@Singleton @MessageReceiver
+public class SlowSubscriber {
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final List<Integer> received = new ArrayList<Integer>();
+    
+    @SuppressWarnings("unused")
+    private void subscribe(@SubscribeTo Tick tick) throws InterruptedException {
+        gate.await();
+        
+        synchronized (this) {
+            received.add(tick.getValue());
+            notifyAll();
+        }
+    }
+    
+    public void open() {
+        gate.countDown();
+    }
+    
+    public synchronized List<Integer> getReceived() {
+        return new ArrayList<Integer>(received);
+    }
+    
+    public synchronized List<Integer> waitForTicks(int count, long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (received.size() < count) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0L) break;
+            
+            wait(remaining);
+        }
+        
+        return new ArrayList<Integer>(received);
+    }
+
+}
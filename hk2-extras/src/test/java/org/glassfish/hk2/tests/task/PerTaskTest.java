@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.task;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.extras.ExtrasUtilities;
+import org.glassfish.hk2.extras.operation.OperationHandle;
+import org.glassfish.hk2.extras.operation.OperationManager;
+import org.glassfish.hk2.extras.task.PerTask;
+import org.glassfish.hk2.extras.task.PerTaskImpl;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the PerTask scope
+ * 
+ * @author jwells
+ *
+ */
+public class PerTaskTest {
+    private static ServiceLocator createLocator() {
+        ServiceLocator locator = Utilities.getCleanLocator(null, TaskService.class);
+        ExtrasUtilities.enablePerTaskScope(locator);
+        
+        // Doing this twice ensures the idempotence of this call
+        ExtrasUtilities.enablePerTaskScope(locator);
+        
+        return locator;
+    }
+    
+    private static int getIdOnNewThread(final ServiceLocator locator,
+            final OperationHandle<PerTask> task) throws InterruptedException {
+        final int retVal[] = new int[1];
+        
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                task.resume();
+                try {
+                    retVal[0] = locator.getService(TaskService.class).getId();
+                }
+                finally {
+                    task.suspend();
+                }
+            }
+            
+        });
+        
+        thread.start();
+        thread.join();
+        
+        return retVal[0];
+    }
+    
+    /**
+     * Tests that the services of a task follow the task from thread
+     * to thread
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testTaskServicesFollowTheTask() throws InterruptedException {
+        ServiceLocator locator = createLocator();
+        OperationManager manager = locator.getService(OperationManager.class);
+        
+        OperationHandle<PerTask> task = manager.createOperation(PerTaskImpl.INSTANCE);
+        
+        int firstId = getIdOnNewThread(locator, task);
+        int secondId = getIdOnNewThread(locator, task);
+        Assert.assertEquals(firstId, secondId);
+        
+        task.resume();
+        try {
+            Assert.assertEquals(firstId, locator.getService(TaskService.class).getId());
+        }
+        finally {
+            task.suspend();
+        }
+        
+        task.closeOperation();
+    }
+    
+    /**
+     * Tests that two tasks run on the same thread get different services
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testTasksHaveTheirOwnServices() throws InterruptedException {
+        ServiceLocator locator = createLocator();
+        OperationManager manager = locator.getService(OperationManager.class);
+        
+        OperationHandle<PerTask> task1 = manager.createOperation(PerTaskImpl.INSTANCE);
+        OperationHandle<PerTask> task2 = manager.createOperation(PerTaskImpl.INSTANCE);
+        
+        task1.resume();
+        int firstId = locator.getService(TaskService.class).getId();
+        task1.suspend();
+        
+        task2.resume();
+        int secondId = locator.getService(TaskService.class).getId();
+        task2.suspend();
+        
+        Assert.assertFalse(firstId == secondId);
+        
+        task1.closeOperation();
+        task2.closeOperation();
+    }
+    
+    /**
+     * Tests that closing a task destroys its services
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testClosingTaskDestroysServices() throws InterruptedException {
+        TaskService.reset();
+        
+        ServiceLocator locator = createLocator();
+        OperationManager manager = locator.getService(OperationManager.class);
+        
+        OperationHandle<PerTask> task = manager.createOperation(PerTaskImpl.INSTANCE);
+        
+        getIdOnNewThread(locator, task);
+        Assert.assertEquals(0, TaskService.getNumDestroyed());
+        
+        task.closeOperation();
+        Assert.assertEquals(1, TaskService.getNumDestroyed());
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.external.runtime;
+
+/**
+ * The statistics of one segment of the HK2 service cache,
+ * as of the time they were gathered.  The service cache is
+ * split into independent segments, each of which uses the
+ * CAR algorithm to decide which entries to keep.  These
+ * statistics can be used to decide on the maximum size
+ * and number of segments of the cache
+ * 
+ * @author jwells
+ *
+ */
+public class ServiceCacheStatistics {
+    private final int segment;
+    private final int maximumSize;
+    private final int size;
+    private final int t1Size;
+    private final int t2Size;
+    private final int b1Size;
+    private final int b2Size;
+    private final double hitRate;
+    private final long evictions;
+    
+    public ServiceCacheStatistics(int segment,
+            int maximumSize,
+            int size,
+            int t1Size,
+            int t2Size,
+            int b1Size,
+            int b2Size,
+            double hitRate,
+            long evictions) {
+        this.segment = segment;
+        this.maximumSize = maximumSize;
+        this.size = size;
+        this.t1Size = t1Size;
+        this.t2Size = t2Size;
+        this.b1Size = b1Size;
+        this.b2Size = b2Size;
+        this.hitRate = hitRate;
+        this.evictions = evictions;
+    }
+    
+    /**
+     * The index of the segment these statistics are for
+     * 
+     * @return The index of the segment, starting at zero
+     */
+    public int getSegment() {
+        return segment;
+    }
+    
+    /**
+     * The maximum number of entries this segment will hold
+     * 
+     * @return The maximum number of entries this segment will hold
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    /**
+     * The number of entries in this segment
+     * 
+     * @return The number of entries in this segment
+     */
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * The number of recently used entries in this segment
+     * 
+     * @return The size of the T1 clock of this segment
+     */
+    public int getT1Size() {
+        return t1Size;
+    }
+    
+    /**
+     * The number of frequently used entries in this segment
+     * 
+     * @return The size of the T2 clock of this segment
+     */
+    public int getT2Size() {
+        return t2Size;
+    }
+    
+    /**
+     * The number of keys recently evicted from T1 that are still
+     * remembered by this segment
+     * 
+     * @return The size of the B1 history of this segment
+     */
+    public int getB1Size() {
+        return b1Size;
+    }
+    
+    /**
+     * The number of keys recently evicted from T2 that are still
+     * remembered by this segment
+     * 
+     * @return The size of the B2 history of this segment
+     */
+    public int getB2Size() {
+        return b2Size;
+    }
+    
+    /**
+     * The percentage of lookups that were found in this segment
+     * since it was last cleared
+     * 
+     * @return The hit rate of this segment as a percentage
+     */
+    public double getHitRate() {
+        return hitRate;
+    }
+    
+    /**
+     * The number of entries removed from this segment in order
+     * to make room for other entries since it was last cleared
+     * 
+     * @return The number of evictions from this segment
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    @Override
+    public String toString() {
+        return "ServiceCacheStatistics(" + segment + ",maximumSize=" + maximumSize +
+                ",size=" + size + ",t1Size=" + t1Size + ",t2Size=" + t2Size +
+                ",b1Size=" + b1Size + ",b2Size=" + b2Size + ",hitRate=" + hitRate +
+                "%,evictions=" + evictions + "," + System.identityHashCode(this) + ")";
+    }
+
+}
@@ -39,6 +39,8 @@
  */
 package org.jvnet.hk2.external.runtime;
 
+import java.util.List;
+
 import org.jvnet.hk2.annotations.Contract;
 
 /**
@@ -106,6 +108,50 @@ public interface ServiceLocatorRuntimeBean {
      */
     public void clearServiceCache();
     
+    /**
+     * Replaces the HK2 service cache with an empty cache
+     * having the given maximum size and the current number
+     * of segments.  The default maximum size can be set with
+     * the org.jvnet.hk2.properties.serviceCache.maximumSize
+     * system property
+     * 
+     * @param maximumSize The maximum number of entries
+     * allowed in the whole HK2 service cache.  Must be at
+     * least the number of segments of the cache
+     * @throws IllegalArgumentException if maximumSize is
+     * less than the number of segments of the cache
+     */
+    public void setServiceCacheMaximumSize(int maximumSize);
+    
+    /**
+     * Replaces the HK2 service cache with an empty cache
+     * having the current maximum size split between the
+     * given number of independent segments.  Threads looking
+     * up services that map to different segments do not
+     * contend with one another.  The default number of
+     * segments can be set with the
+     * org.jvnet.hk2.properties.serviceCache.segments
+     * system property
+     * 
+     * @param numberOfSegments The number of segments of the
+     * HK2 service cache.  Must be at least one and at most
+     * the maximum size of the cache
+     * @throws IllegalArgumentException if numberOfSegments
+     * is not valid
+     */
+    public void setServiceCacheNumberOfSegments(int numberOfSegments);
+    
+    /**
+     * Returns the current statistics of each segment
+     * of the HK2 service cache.  The number of segments
+     * of the cache is the size of the returned list
+     * 
+     * @return The statistics of each segment of the
+     * HK2 service cache, in segment order.  Will not
+     * return null
+     */
+    public List<ServiceCacheStatistics> getServiceCacheStatistics();
+    
     /**
      * Returns the current size of the HK2 reflection
      * cache.  The reflection cache is used to minimize
@@ -118,12 +164,42 @@ public interface ServiceLocatorRuntimeBean {
     
     /**
      * Clears all entries from the HK2 reflection
-     * cache. The reflection cache is used to minimize
+     * cache, along with the results of type safety
+     * checks. The reflection cache is used to minimize
      * the amount of reflection done by HK2.  Calling this
      * method may free up memory but will cause
      * degraded service creation performance
      * until the cache can be built back up
      */
     public void clearReflectionCache();
+    
+    /**
+     * Sets whether or not services created by this ServiceLocator
+     * use compiled injectors.  A compiled injector calls the public
+     * constructor, fields, initializer methods and lifecycle methods
+     * of a frequently created service directly rather than with
+     * reflection.  A service class is compiled once it
+     * has been created a number of times, and only its public members
+     * of public classes can be compiled.  The default for all
+     * ServiceLocators can be set with the
+     * org.jvnet.hk2.properties.compiledInjectors system property
+     * 
+     * @param compiledInjectors true if compiled injectors should be used
+     */
+    public void setCompiledInjectors(boolean compiledInjectors);
+    
+    /**
+     * Sets whether or not proxies created by this ServiceLocator
+     * use compiled dispatch.  A proxy with compiled dispatch calls
+     * the public methods of public classes of the underlying service
+     * directly rather than with reflection.  Each method is compiled the first time
+     * it is called through a proxy, and methods that cannot be compiled
+     * continue to be called with reflection.  The default for all
+     * ServiceLocators can be set with the
+     * org.jvnet.hk2.properties.compiledProxies system property
+     * 
+     * @param compiledProxies true if compiled proxies should be used
+     */
+    public void setCompiledProxies(boolean compiledProxies);
 
 }
@@ -193,6 +193,17 @@ public class CacheKey {
         
         return removalName.equals(name);
     }
+
+    /**
+     * The name of the contract that, when changed in the
+     * system, causes this CacheKey to be removed
+     *
+     * @return The removal name of this key, or null if this
+     * key is never removed by contract
+     */
+    public String getRemovalName() {
+        return removalName;
+    }
     
     public String toString() {
         return "CacheKey(" + Pretty.type(lookupType) + "," + name + "," +
@@ -52,6 +52,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.aopalliance.intercept.ConstructorInterceptor;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -60,7 +61,9 @@ import org.glassfish.hk2.api.ClassAnalyzer;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.api.InjectionResolver;
 import org.glassfish.hk2.api.InstanceLifecycleEventType;
+import org.glassfish.hk2.api.InterceptionService;
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.PerInstanceInterceptors;
 import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.api.PreDestroy;
 import org.glassfish.hk2.api.ServiceHandle;
@@ -72,6 +75,12 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
  *
  */
 public class ClazzCreator<T> implements Creator<T> {
+    /**
+     * The number of creations after which the members of the
+     * class are compiled, when compiled injectors are enabled
+     */
+    private final static int COMPILE_THRESHOLD = 10;
+    
     private final ServiceLocatorImpl locator;
     private final Class<?> implClass;
     private final Set<ResolutionInfo> myInitializers = new LinkedHashSet<ResolutionInfo>();
@@ -83,6 +92,19 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private Method postConstructMethod;
     private Method preDestroyMethod;
+    
+    // The compiled members are written once, before compiled is set
+    private final AtomicInteger creations = new AtomicInteger();
+    private volatile boolean compiled = false;
+    private CompiledInjector compiledPostConstruct;
+    private CompiledInjector compiledPreDestroy;
+    
+    // Rebuilt only when the injection resolvers of the locator change
+    private volatile ResolutionPlan plan;
+    
+    // Found again only when the interception services or the configuration of the locator change
+    private volatile InterceptionFilter<T> interceptionFilter;
+    private volatile Constructor<?> proxyConstructor;
 
     /* package */ ClazzCreator(ServiceLocatorImpl locator,
             Class<?> implClass) {
@@ -197,53 +219,82 @@ public class ClazzCreator<T> implements Creator<T> {
         }
     }
 
-    private void resolve(Map<SystemInjecteeImpl, Object> addToMe,
-                         InjectionResolver<?> resolver,
-                         SystemInjecteeImpl injectee,
-                         ServiceHandle<?> root,
-                         Collector errorCollection) {
-        if (injectee.isSelf()) {
-            addToMe.put(injectee, selfDescriptor);
-            return;
+    /**
+     * Returns the resolution plan for this creator, building a new one
+     * if the injection resolvers of the locator have changed since
+     * the current plan was built
+     */
+    private ResolutionPlan getResolutionPlan() {
+        ResolutionPlan current = plan;
+        int generation = locator.getInjectionResolverGeneration();
+        if (current != null && current.generation == generation) return current;
+        
+        // The slots are assigned in constructor, field, initializer order
+        int numInjectees = 0;
+        myConstructor.slot = numInjectees;
+        numInjectees += myConstructor.injectees.size();
+        for (ResolutionInfo fieldRI : myFields) {
+            fieldRI.slot = numInjectees;
+            numInjectees += fieldRI.injectees.size();
         }
-
-        Object addIn = null;
-        try {
-            addIn = resolver.resolve(injectee, root);
-        } catch (Throwable th) {
-            errorCollection.addThrowable(th);
+        for (ResolutionInfo methodRI : myInitializers) {
+            methodRI.slot = numInjectees;
+            numInjectees += methodRI.injectees.size();
         }
-
-        if (addIn != null) {
-            addToMe.put(injectee, addIn);
+        
+        SystemInjecteeImpl injectees[] = new SystemInjecteeImpl[numInjectees];
+        InjectionResolver<?> resolvers[] = new InjectionResolver<?>[numInjectees];
+        
+        addToPlan(myConstructor, injectees, resolvers);
+        for (ResolutionInfo fieldRI : myFields) {
+            addToPlan(fieldRI, injectees, resolvers);
         }
-    }
-
-    private Map<SystemInjecteeImpl, Object> resolveAllDependencies(final ServiceHandle<?> root) throws MultiException, IllegalStateException {
-        Collector errorCollector = new Collector();
-
-        final Map<SystemInjecteeImpl, Object> retVal = new LinkedHashMap<SystemInjecteeImpl, Object>();
-
-        for (SystemInjecteeImpl injectee : myConstructor.injectees) {
-            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-            resolve(retVal, resolver, injectee, root, errorCollector);
+        for (ResolutionInfo methodRI : myInitializers) {
+            addToPlan(methodRI, injectees, resolvers);
         }
-
-        for (ResolutionInfo fieldRI : myFields) {
-            for (SystemInjecteeImpl injectee : fieldRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+        
+        current = new ResolutionPlan(generation, injectees, resolvers);
+        plan = current;
+        
+        return current;
+    }
+    
+    private void addToPlan(ResolutionInfo ri, SystemInjecteeImpl injectees[], InjectionResolver<?> resolvers[]) {
+        int slot = ri.slot;
+        for (SystemInjecteeImpl injectee : ri.injectees) {
+            injectees[slot] = injectee;
+            if (!injectee.isSelf()) {
+                resolvers[slot] = locator.getInjectionResolverForInjectee(injectee);
             }
+            
+            slot++;
         }
+    }
 
-        for (ResolutionInfo methodRI : myInitializers) {
-            for (SystemInjecteeImpl injectee : methodRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+    private Object[] resolveAllDependencies(ResolutionPlan resolutionPlan, final ServiceHandle<?> root) throws MultiException, IllegalStateException {
+        Collector errorCollector = null;
+        
+        SystemInjecteeImpl injectees[] = resolutionPlan.injectees;
+        InjectionResolver<?> resolvers[] = resolutionPlan.resolvers;
+
+        final Object retVal[] = new Object[injectees.length];
+        for (int lcv = 0; lcv < injectees.length; lcv++) {
+            SystemInjecteeImpl injectee = injectees[lcv];
+            if (injectee.isSelf()) {
+                retVal[lcv] = selfDescriptor;
+                continue;
+            }
+            
+            try {
+                retVal[lcv] = resolvers[lcv].resolve(injectee, root);
+            }
+            catch (Throwable th) {
+                if (errorCollector == null) errorCollector = new Collector();
+                errorCollector.addThrowable(th);
             }
         }
 
-        if (errorCollector.hasErrors()) {
+        if (errorCollector != null) {
             errorCollector.addThrowable(new IllegalArgumentException("While attempting to resolve the dependencies of "
                     + implClass.getName() + " errors were found"));
 
@@ -252,23 +303,47 @@ public class ClazzCreator<T> implements Creator<T> {
 
         return retVal;
     }
-
-    private Object createMe(Map<SystemInjecteeImpl, Object> resolved) throws Throwable {
-        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
-        List<SystemInjecteeImpl> injectees = myConstructor.injectees;
-
+    
+    /**
+     * The map form of the resolved values, as given to the instance lifecycle listeners
+     */
+    private static Map<Injectee, Object> getResolvedMap(ResolutionPlan resolutionPlan, Object resolved[]) {
+        Map<Injectee, Object> retVal = new LinkedHashMap<Injectee, Object>();
+        
+        SystemInjecteeImpl injectees[] = resolutionPlan.injectees;
+        for (int lcv = 0; lcv < injectees.length; lcv++) {
+            if (resolved[lcv] == null) continue;
+            
+            retVal.put(injectees[lcv], resolved[lcv]);
+        }
+        
+        return retVal;
+    }
+    
+    private static Object[] getArguments(ResolutionInfo ri, Object resolved[]) {
+        List<SystemInjecteeImpl> injectees = ri.injectees;
+        
         final Object args[] = new Object[injectees.size()];
+        int slot = ri.slot;
         for (Injectee injectee : injectees) {
-            args[injectee.getPosition()] = resolved.get(injectee);
+            args[injectee.getPosition()] = resolved[slot++];
         }
         
-        Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass, c);
-        final Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
-        List<ConstructorInterceptor> constructorInterceptors = interceptors.getConstructorInterceptors();
+        return args;
+    }
+
+    private Object createMe(Object resolved[], boolean useCompiled) throws Throwable {
+        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
+        final Object args[] = getArguments(myConstructor, resolved);
+        
+        InterceptorChains<T> chains = getInterceptorChains(c);
         
-        if ((methodInterceptors == null || methodInterceptors.isEmpty()) &&
-            ((constructorInterceptors == null) || constructorInterceptors.isEmpty())) {
+        if (!chains.intercepted) {
             // No need for any kind of interception
+            if (useCompiled && myConstructor.compiled != null) {
+                return myConstructor.compiled.newInstance(args);
+            }
+            
             return ReflectionHelper.makeMe(c, args, locator.getNeutralContextClassLoader()); 
         }
         
@@ -278,49 +353,111 @@ public class ClazzCreator<T> implements Creator<T> {
         
         final boolean neutral = locator.getNeutralContextClassLoader();
         
-        if (methodInterceptors == null || methodInterceptors.isEmpty()) {
+        if (chains.constructorAction == null) {
             // No method interceptors means no need for proxy at all
-            return ConstructorInterceptorHandler.construct(c, args, neutral, constructorInterceptors);
+            return ConstructorInterceptorHandler.construct(c, args, neutral, chains.constructorInterceptors);
         }
         
         return ConstructorInterceptorHandler.construct(c,
                 args,
                 neutral,
-                constructorInterceptors,
-                new ConstructorActionImpl<T>(this, methodInterceptors));
+                chains.constructorInterceptors,
+                chains.constructorAction);
+    }
+    
+    /**
+     * Returns the interceptors of this creator.  The interception services
+     * that match this creator are found again if the interception services
+     * or the configuration of the locator have changed since they were last
+     * found.  The configuration matters because interception services commonly
+     * look up their interceptors as services.  The interceptors are kept along
+     * with the matching services unless one of those services is annotated
+     * with {@link PerInstanceInterceptors}, in which case they are asked for
+     * interceptors again for every instance
+     */
+    private InterceptorChains<T> getInterceptorChains(Constructor<?> c) {
+        InterceptionFilter<T> current = interceptionFilter;
+        int generation = locator.getInterceptionServiceGeneration();
+        long configurationGeneration = locator.getConfigurationGeneration();
+        if (current == null ||
+                current.generation != generation ||
+                current.configurationGeneration != configurationGeneration) {
+            List<InterceptionService> interceptionServices =
+                    Utilities.getMatchingInterceptionServices(locator, selfDescriptor, implClass);
+            
+            InterceptorChains<T> chains = null;
+            if (!hasPerInstanceInterceptors(interceptionServices)) {
+                chains = new InterceptorChains<T>(this,
+                        Utilities.getAllInterceptors(locator, interceptionServices, implClass, c));
+            }
+            
+            current = new InterceptionFilter<T>(generation, configurationGeneration, interceptionServices, chains);
+            interceptionFilter = current;
+        }
+        
+        if (current.chains != null) return current.chains;
+        
+        return new InterceptorChains<T>(this,
+                Utilities.getAllInterceptors(locator, current.interceptionServices, implClass, c));
+    }
+    
+    private static boolean hasPerInstanceInterceptors(List<InterceptionService> interceptionServices) {
+        for (InterceptionService interceptionService : interceptionServices) {
+            if (interceptionService.getClass().isAnnotationPresent(PerInstanceInterceptors.class)) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the constructor of the proxy class of this creator
+     * that matches the constructor of the service.  The proxy class
+     * is only generated once no matter how the interceptors change.
+     * Must be called with privileges
+     */
+    /* package */ Constructor<?> getProxyConstructor() throws NoSuchMethodException {
+        Constructor<?> retVal = proxyConstructor;
+        if (retVal != null) return retVal;
+        
+        Class<?> proxyClass = ConstructorActionImpl.createProxyFactory(implClass).createClass();
+        
+        retVal = proxyClass.getConstructor(((Constructor<?>) myConstructor.baseElement).getParameterTypes());
+        proxyConstructor = retVal;
+        
+        return retVal;
     }
 
-    private void fieldMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
+    private void fieldMe(Object resolved[], T t, boolean useCompiled) throws Throwable {
         for (ResolutionInfo ri : myFields) {
             Field field = (Field) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;  // Should be only one injectee, itself!
+            
+            // Should be only one injectee, itself!
+            Object putMeIn = resolved[ri.slot + ri.injectees.size() - 1];
 
-            Injectee fieldInjectee = null;
-            for (Injectee candidate : injectees) {
-                fieldInjectee = candidate;
+            if (useCompiled && ri.compiled != null) {
+                ri.compiled.setField(t, putMeIn);
+                continue;
             }
 
-            Object putMeIn = resolved.get(fieldInjectee);
-
             ReflectionHelper.setField(field, t, putMeIn);
         }
     }
 
-    private void methodMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
+    private void methodMe(Object resolved[], T t, boolean useCompiled) throws Throwable {
         for (ResolutionInfo ri : myInitializers) {
             Method m = (Method) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;
+            Object args[] = getArguments(ri, resolved);
 
-            Object args[] = new Object[injectees.size()];
-            for (Injectee injectee : injectees) {
-                args[injectee.getPosition()] = resolved.get(injectee);
+            if (useCompiled && ri.compiled != null) {
+                ri.compiled.invoke(t, args);
+                continue;
             }
 
             ReflectionHelper.invoke(t, m, args, locator.getNeutralContextClassLoader());
         }
     }
 
-    private void postConstructMe(T t) throws Throwable {
+    private void postConstructMe(T t, boolean useCompiled) throws Throwable {
         if (t == null) return;
 
         if (t instanceof PostConstruct) {
@@ -330,10 +467,15 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (postConstructMethod == null) return;
 
-        ReflectionHelper.invoke(t, postConstructMethod, new Object[0], locator.getNeutralContextClassLoader());
+        if (useCompiled && compiledPostConstruct != null) {
+            compiledPostConstruct.invoke(t, Utilities.NO_ARGS);
+            return;
+        }
+
+        ReflectionHelper.invoke(t, postConstructMethod, Utilities.NO_ARGS, locator.getNeutralContextClassLoader());
     }
 
-    private void preDestroyMe(T t) throws Throwable {
+    private void preDestroyMe(T t, boolean useCompiled) throws Throwable {
         if (t == null) return;
 
         if (t instanceof PreDestroy) {
@@ -343,7 +485,12 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (preDestroyMethod == null) return;
 
-        ReflectionHelper.invoke(t, preDestroyMethod, new Object[0], locator.getNeutralContextClassLoader());
+        if (useCompiled && compiledPreDestroy != null) {
+            compiledPreDestroy.invoke(t, Utilities.NO_ARGS);
+            return;
+        }
+
+        ReflectionHelper.invoke(t, preDestroyMethod, Utilities.NO_ARGS, locator.getNeutralContextClassLoader());
     }
 
     /* (non-Javadoc)
@@ -352,31 +499,40 @@ public class ClazzCreator<T> implements Creator<T> {
     @SuppressWarnings("unchecked")
     @Override
     public T create(ServiceHandle<?> root, SystemDescriptor<?> eventThrower) {
-        String failureLocation = "resolve";
+        String failureLocation = "compile";
+        boolean restoreCCL = false;
+        ClassLoader originalCCL = null;
         try {
+            final boolean useCompiled = isCompiled();
+            if (useCompiled && locator.getNeutralContextClassLoader()) {
+                originalCCL = InjectorGenerator.getContextClassLoader();
+                restoreCCL = true;
+            }
 
-            final Map<SystemInjecteeImpl, Object> allResolved = resolveAllDependencies(root);
+            failureLocation = "resolve";
+            final ResolutionPlan resolutionPlan = getResolutionPlan();
+            final Object allResolved[] = resolveAllDependencies(resolutionPlan, root);
 
-            if (eventThrower != null) {
+            if (eventThrower != null && eventThrower.hasInstanceListeners()) {
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.PRE_PRODUCTION,
-                    null, ReflectionHelper.<Map<Injectee,Object>>cast(allResolved), eventThrower));
+                    null, getResolvedMap(resolutionPlan, allResolved), eventThrower));
             }
 
             failureLocation = "create";
-            T retVal = (T) createMe(allResolved);
+            T retVal = (T) createMe(allResolved, useCompiled);
 
             failureLocation = "field inject";
-            fieldMe(allResolved, retVal);
+            fieldMe(allResolved, retVal, useCompiled);
 
             failureLocation = "method inject";
-            methodMe(allResolved, retVal);
+            methodMe(allResolved, retVal, useCompiled);
 
             failureLocation = "post construct";
-            postConstructMe(retVal);
+            postConstructMe(retVal, useCompiled);
 
-            if (eventThrower != null) {
+            if (eventThrower != null && eventThrower.hasInstanceListeners()) {
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.POST_PRODUCTION,
-                    retVal, ReflectionHelper.<Map<Injectee, Object>>cast(allResolved), eventThrower));
+                    retVal, getResolvedMap(resolutionPlan, allResolved), eventThrower));
             }
 
             return retVal;
@@ -394,6 +550,45 @@ public class ClazzCreator<T> implements Creator<T> {
 
             throw me;
         }
+        finally {
+            // The compiled members do not restore the CCL themselves
+            if (restoreCCL) {
+                InjectorGenerator.setContextClassLoader(originalCCL);
+            }
+        }
+    }
+    
+    /**
+     * Returns true if the compiled members should be used.  When
+     * compiled injectors are enabled, the thread performing creation
+     * number COMPILE_THRESHOLD compiles all members that can be
+     * compiled.  Creations on other threads use reflection until
+     * that is done
+     */
+    private boolean isCompiled() {
+        if (compiled) return true;
+        if (!locator.isCompiledInjectors() || (myConstructor == null)) return false;
+        
+        if (creations.incrementAndGet() != COMPILE_THRESHOLD) return false;
+        
+        InjectorGenerator generator = new InjectorGenerator(implClass);
+        
+        myConstructor.compiled = generator.compileConstructor((Constructor<?>) myConstructor.baseElement);
+        for (ResolutionInfo fieldRI : myFields) {
+            fieldRI.compiled = generator.compileField((Field) fieldRI.baseElement);
+        }
+        for (ResolutionInfo methodRI : myInitializers) {
+            methodRI.compiled = generator.compileMethod((Method) methodRI.baseElement);
+        }
+        if (postConstructMethod != null) {
+            compiledPostConstruct = generator.compileMethod(postConstructMethod);
+        }
+        if (preDestroyMethod != null) {
+            compiledPreDestroy = generator.compileMethod(preDestroyMethod);
+        }
+        
+        compiled = true;
+        return true;
     }
 
     /* (non-Javadoc)
@@ -401,8 +596,11 @@ public class ClazzCreator<T> implements Creator<T> {
      */
     @Override
     public void dispose(T instance) {
+        final boolean useCompiled = compiled;
+        final boolean restoreCCL = useCompiled && locator.getNeutralContextClassLoader();
+        final ClassLoader originalCCL = restoreCCL ? InjectorGenerator.getContextClassLoader() : null;
         try {
-            preDestroyMe(instance);
+            preDestroyMe(instance, useCompiled);
         } catch (Throwable th) {
             if (th instanceof MultiException) {
                 throw (MultiException) th;
@@ -410,6 +608,11 @@ public class ClazzCreator<T> implements Creator<T> {
 
             throw new MultiException(th);
         }
+        finally {
+            if (restoreCCL) {
+                InjectorGenerator.setContextClassLoader(originalCCL);
+            }
+        }
 
     }
 
@@ -440,6 +643,8 @@ public class ClazzCreator<T> implements Creator<T> {
     private static class ResolutionInfo {
         private final AnnotatedElement baseElement;
         private final List<SystemInjecteeImpl> injectees = new LinkedList<SystemInjecteeImpl>();
+        private CompiledInjector compiled;
+        private int slot;
 
         private ResolutionInfo(AnnotatedElement baseElement, List<SystemInjecteeImpl> injectees) {
             this.baseElement = baseElement;
@@ -451,4 +656,62 @@ public class ClazzCreator<T> implements Creator<T> {
             return "ResolutionInfo(" + baseElement + "," + injectees + "," + System.identityHashCode(this) + ")";
         }
     }
+    
+    /**
+     * The interception services matching this creator at a given
+     * interception service and configuration generation
+     */
+    private static class InterceptionFilter<T> {
+        private final int generation;
+        private final long configurationGeneration;
+        private final List<InterceptionService> interceptionServices;
+        /** Null if the interceptors must be found for every instance */
+        private final InterceptorChains<T> chains;
+        
+        private InterceptionFilter(int generation, long configurationGeneration,
+                List<InterceptionService> interceptionServices, InterceptorChains<T> chains) {
+            this.generation = generation;
+            this.configurationGeneration = configurationGeneration;
+            this.interceptionServices = interceptionServices;
+            this.chains = chains;
+        }
+    }
+    
+    /**
+     * The interceptors of this creator, along with the action that
+     * makes proxies calling the method interceptors
+     */
+    private static class InterceptorChains<T> {
+        private final boolean intercepted;
+        private final List<ConstructorInterceptor> constructorInterceptors;
+        /** Null if there are no method interceptors */
+        private final ConstructorActionImpl<T> constructorAction;
+        
+        private InterceptorChains(ClazzCreator<T> creator, Utilities.Interceptors interceptors) {
+            Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
+            constructorInterceptors = interceptors.getConstructorInterceptors();
+            
+            boolean hasMethodInterceptors = (methodInterceptors != null) && !methodInterceptors.isEmpty();
+            boolean hasConstructorInterceptors = (constructorInterceptors != null) && !constructorInterceptors.isEmpty();
+            
+            intercepted = hasMethodInterceptors || hasConstructorInterceptors;
+            constructorAction = hasMethodInterceptors ? new ConstructorActionImpl<T>(creator, methodInterceptors) : null;
+        }
+    }
+    
+    /**
+     * The injectees of this class in slot order along with the
+     * resolver that was found for each of them
+     */
+    private static class ResolutionPlan {
+        private final int generation;
+        private final SystemInjecteeImpl injectees[];
+        private final InjectionResolver<?> resolvers[];
+        
+        private ResolutionPlan(int generation, SystemInjecteeImpl injectees[], InjectionResolver<?> resolvers[]) {
+            this.generation = generation;
+            this.injectees = injectees;
+            this.resolvers = resolvers;
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+/**
+ * The superclass of the classes generated by {@link InjectorGenerator}.
+ * Each generated class calls exactly one constructor, sets exactly one
+ * field or invokes exactly one method of a service implementation class
+ * directly, rather than through reflection.  Only the method matching the
+ * kind of member it was generated for is overridden, the others throw
+ * an IllegalStateException
+ * <p>
+ * This class must be public since the generated classes are defined
+ * in their own class loader
+ * 
+ * @author jwells
+ *
+ */
+public abstract class CompiledInjector {
+    /**
+     * Calls the constructor this injector was generated for
+     * 
+     * @param args The arguments of the constructor, with primitive
+     * values boxed
+     * @return The newly created object
+     * @throws Throwable Anything thrown by the constructor
+     */
+    public Object newInstance(Object args[]) throws Throwable {
+        throw new IllegalStateException("Not a constructor injector: " + this);
+    }
+    
+    /**
+     * Sets the field this injector was generated for
+     * 
+     * @param instance The non-null object to set the field of
+     * @param value The value to set, with primitive values boxed
+     * @throws Throwable If the value is of the wrong type
+     */
+    public void setField(Object instance, Object value) throws Throwable {
+        throw new IllegalStateException("Not a field injector: " + this);
+    }
+    
+    /**
+     * Invokes the method this injector was generated for.  The
+     * return value of the method, if any, is discarded
+     * 
+     * @param instance The non-null object to invoke the method on
+     * @param args The arguments of the method, with primitive values boxed
+     * @throws Throwable Anything thrown by the method
+     */
+    public void invoke(Object instance, Object args[]) throws Throwable {
+        throw new IllegalStateException("Not a method injector: " + this);
+    }
+    
+    /**
+     * Invokes the method this injector was generated for and
+     * returns its result.  Used to dispatch calls made on proxies
+     * 
+     * @param instance The non-null object to invoke the method on
+     * @param args The arguments of the method, with primitive values boxed
+     * @return The result of the method with primitive values boxed,
+     * or null if the method is void
+     * @throws Throwable Anything thrown by the method
+     */
+    public Object call(Object instance, Object args[]) throws Throwable {
+        throw new IllegalStateException("Not a call injector: " + this);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getName() + "(" + System.identityHashCode(this) + ")";
+    }
+
+}
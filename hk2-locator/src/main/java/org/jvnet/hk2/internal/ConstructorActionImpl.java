@@ -40,6 +40,7 @@
 package org.jvnet.hk2.internal;
 
 import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.Proxy;
 import javassist.util.proxy.ProxyFactory;
 
 import java.lang.reflect.Constructor;
@@ -72,39 +73,47 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
         
     };
     
-    /**
-     * 
-     */
     private final ClazzCreator<T> clazzCreator;
     
     /**
-     * 
+     * Shared by every proxy made by this action, since it keeps no
+     * state of its own
      */
-    private final Map<Method, List<MethodInterceptor>> methodInterceptors;
+    private final MethodInterceptorHandler methodInterceptor;
 
     /**
-     * @param methodInterceptors
-     * @param clazzCreator TODO
+     * @param clazzCreator The creator of the service being proxied
+     * @param methodInterceptors The interceptors of each intercepted method
      */
     ConstructorActionImpl(
             ClazzCreator<T> clazzCreator, Map<Method, List<MethodInterceptor>> methodInterceptors) {
         this.clazzCreator = clazzCreator;
-        this.methodInterceptors = methodInterceptors;
-    }
-
-    @Override
-    public Object makeMe(final Constructor<?> c, final Object[] args, final boolean neutralCCL)
-            throws Throwable {
-        final MethodInterceptorHandler methodInterceptor = new MethodInterceptorHandler(
+        
+        methodInterceptor = new MethodInterceptorHandler(
                 clazzCreator.getServiceLocator(),
                 clazzCreator.getUnderlyingDescriptor(),
                 methodInterceptors);
-            
-        final ProxyFactory proxyFactory = new ProxyFactory();
-        proxyFactory.setSuperclass(clazzCreator.getImplClass());
+    }
+    
+    /**
+     * Returns the factory of the proxy class of the given service
+     * class.  Only used the first time a creator needs its proxy class
+     * 
+     * @param implClass The class of the service being proxied
+     * @return A factory that creates the proxy class of implClass
+     */
+    /* package */ static ProxyFactory createProxyFactory(Class<?> implClass) {
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setSuperclass(implClass);
         proxyFactory.setFilter(METHOD_FILTER);
         proxyFactory.setInterfaces(ADDED_INTERFACES);
         
+        return proxyFactory;
+    }
+
+    @Override
+    public Object makeMe(final Constructor<?> c, final Object[] args, final boolean neutralCCL)
+            throws Throwable {
         return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
 
             @Override
@@ -115,7 +124,13 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
                 }
           
                 try {
-                  return proxyFactory.create(c.getParameterTypes(), args, methodInterceptor);
+                    Constructor<?> proxyConstructor = clazzCreator.getProxyConstructor();
+                    
+                    // The handler is set after construction, as is done by ProxyFactory.create
+                    Object retVal = proxyConstructor.newInstance(args);
+                    ((Proxy) retVal).setHandler(methodInterceptor);
+                    
+                    return retVal;
                 }
                 catch (InvocationTargetException ite) {
                     Throwable targetException = ite.getTargetException();
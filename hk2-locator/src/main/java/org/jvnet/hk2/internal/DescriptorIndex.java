@@ -0,0 +1,160 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, sorted view of the descriptors of a ServiceLocator.
+ * A new index is published by the locator every time a configuration
+ * change is committed (or a ranking is changed) and is then read
+ * by lookups without holding any lock.
+ * <p>
+ * Arrays returned from this object are shared and must never be modified
+ * 
+ * @author jwells
+ *
+ */
+public class DescriptorIndex {
+    private final static SystemDescriptor<?>[] EMPTY = new SystemDescriptor<?>[0];
+    
+    /* package */ final static DescriptorIndex EMPTY_INDEX = new DescriptorIndex(EMPTY,
+            Collections.<String, SystemDescriptor<?>[]>emptyMap(),
+            Collections.<String, SystemDescriptor<?>[]>emptyMap());
+    
+    private final SystemDescriptor<?>[] allDescriptors;
+    private final Map<String, SystemDescriptor<?>[]> byContract;
+    private final Map<String, SystemDescriptor<?>[]> byName;
+    
+    private DescriptorIndex(SystemDescriptor<?>[] allDescriptors,
+            Map<String, SystemDescriptor<?>[]> byContract,
+            Map<String, SystemDescriptor<?>[]> byName) {
+        this.allDescriptors = allDescriptors;
+        this.byContract = byContract;
+        this.byName = byName;
+    }
+    
+    /**
+     * Gets every descriptor, sorted
+     * 
+     * @return All descriptors sorted by rank then service id.  Will
+     * not return null
+     */
+    public SystemDescriptor<?>[] getAllDescriptors() {
+        return allDescriptors;
+    }
+    
+    /**
+     * Gets the descriptors indexed under the given contract
+     * (which includes qualifiers and scopes)
+     * 
+     * @param contract The contract to look up
+     * @return The sorted descriptors for the contract, or an
+     * empty array if there are none.  Will not return null
+     */
+    public SystemDescriptor<?>[] getByContract(String contract) {
+        SystemDescriptor<?>[] retVal = byContract.get(contract);
+        return (retVal == null) ? EMPTY : retVal ;
+    }
+    
+    /**
+     * Gets the descriptors with the given name
+     * 
+     * @param name The name to look up
+     * @return The sorted descriptors with the name, or an
+     * empty array if there are none.  Will not return null
+     */
+    public SystemDescriptor<?>[] getByName(String name) {
+        SystemDescriptor<?>[] retVal = byName.get(name);
+        return (retVal == null) ? EMPTY : retVal ;
+    }
+    
+    /**
+     * Creates a new index from the current state of the mutable
+     * indexes of the locator.  Only the keys in the changed sets are
+     * recomputed, all other keys share the arrays of this index.
+     * Must be called with the locator write lock held
+     * 
+     * @param all The list of all descriptors
+     * @param contractLists The mutable contract index of the locator
+     * @param nameLists The mutable name index of the locator
+     * @param changedContracts The contracts that have been modified
+     * @param changedNames The names that have been modified
+     * @return A new immutable index reflecting the current state
+     */
+    /* package */ DescriptorIndex update(IndexedListData all,
+            Map<String, IndexedListData> contractLists,
+            Map<String, IndexedListData> nameLists,
+            Set<String> changedContracts,
+            Set<String> changedNames) {
+        return new DescriptorIndex(toArray(all),
+                update(byContract, contractLists, changedContracts),
+                update(byName, nameLists, changedNames));
+    }
+    
+    private static Map<String, SystemDescriptor<?>[]> update(Map<String, SystemDescriptor<?>[]> previous,
+            Map<String, IndexedListData> lists,
+            Set<String> changed) {
+        if (changed.isEmpty()) return previous;
+        
+        HashMap<String, SystemDescriptor<?>[]> retVal = new HashMap<String, SystemDescriptor<?>[]>(previous);
+        for (String key : changed) {
+            IndexedListData ild = lists.get(key);
+            if (ild == null) {
+                retVal.remove(key);
+            }
+            else {
+                retVal.put(key, toArray(ild));
+            }
+        }
+        
+        return retVal;
+    }
+    
+    private static SystemDescriptor<?>[] toArray(IndexedListData ild) {
+        if (ild.isEmpty()) return EMPTY;
+        
+        return ild.getSortedList().toArray(new SystemDescriptor<?>[ild.size()]);
+    }
+
+}
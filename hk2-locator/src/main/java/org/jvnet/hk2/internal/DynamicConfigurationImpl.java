@@ -298,7 +298,10 @@ public class DynamicConfigurationImpl implements DynamicConfiguration {
         if (d.getAdvertisedContracts() == null) throw new IllegalArgumentException();
         if (d.getDescriptorType() == null) throw new IllegalArgumentException();
         if (d.getDescriptorVisibility() == null) throw new IllegalArgumentException();
-        if (d.getMetadata() == null) throw new IllegalArgumentException();
+        if (!(d instanceof LazyDescriptorImpl) && (d.getMetadata() == null)) {
+            // Lazy descriptors always have metadata, asking would parse it
+            throw new IllegalArgumentException();
+        }
         if (d.getQualifiers() == null) throw new IllegalArgumentException();
     }
     
@@ -0,0 +1,481 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.ProtectionDomain;
+
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.DuplicateMemberException;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * Generates {@link CompiledInjector} classes for the members of one
+ * service implementation class.  The generated classes are defined in
+ * a class loader of their own, whose parent is the class loader of the
+ * implementation class, and so can only call public members of public
+ * classes.  Any member that cannot be compiled is left to reflection
+ * <p>
+ * The bytecode is written directly with the javassist bytecode API, which
+ * does not need to read the class file of the implementation class
+ * 
+ * @author jwells
+ *
+ */
+class InjectorGenerator {
+    private final static String INJECTOR_SUFFIX = "$$Hk2Injector";
+    private final static String SUPERCLASS = CompiledInjector.class.getName();
+    private final static String INIT = "<init>";
+    private final static String OBJECT_ARRAY = "[Ljava/lang/Object;";
+    private final static String OBJECT = "Ljava/lang/Object;";
+    
+    private final Class<?> implClass;
+    private InjectorClassLoader loader;
+    private int count = 0;
+    
+    /* package */ InjectorGenerator(Class<?> implClass) {
+        this.implClass = implClass;
+    }
+    
+    /**
+     * Compiles a constructor of the implementation class
+     * 
+     * @param c The constructor to compile
+     * @return The compiled constructor, or null if the constructor
+     * could not be compiled
+     */
+    /* package */ CompiledInjector compileConstructor(Constructor<?> c) {
+        if (!isCompilable(c) || Modifier.isAbstract(implClass.getModifiers())) return null;
+        
+        String className = c.getDeclaringClass().getName();
+        Class<?> params[] = c.getParameterTypes();
+        
+        ClassFile cf = createClassFile();
+        ConstPool cp = cf.getConstPool();
+        
+        Bytecode code = new Bytecode(cp);
+        code.setMaxLocals(2);
+        code.addNew(className);
+        code.addOpcode(Opcode.DUP);
+        for (int lcv = 0; lcv < params.length; lcv++) {
+            addArgument(code, 1, lcv, params[lcv]);
+        }
+        code.addInvokespecial(className, INIT, getMethodDescriptor(params, void.class));
+        code.addOpcode(Opcode.ARETURN);
+        
+        addMethod(cf, "newInstance", "(" + OBJECT_ARRAY + ")" + OBJECT, code);
+        
+        return define(cf, c);
+    }
+    
+    /**
+     * Compiles the setting of a field of the implementation class
+     * 
+     * @param field The field to compile
+     * @return The compiled field setter, or null if the field
+     * could not be compiled
+     */
+    /* package */ CompiledInjector compileField(Field field) {
+        if (!isCompilable(field) || Modifier.isFinal(field.getModifiers())) return null;
+        
+        String className = field.getDeclaringClass().getName();
+        
+        ClassFile cf = createClassFile();
+        ConstPool cp = cf.getConstPool();
+        
+        Bytecode code = new Bytecode(cp);
+        code.setMaxLocals(3);
+        code.addAload(1);
+        code.addCheckcast(className);
+        code.addAload(2);
+        addCast(code, field.getType());
+        code.addPutfield(className, field.getName(), getDescriptor(field.getType()));
+        code.addReturn(null);
+        
+        addMethod(cf, "setField", "(" + OBJECT + OBJECT + ")V", code);
+        
+        return define(cf, field);
+    }
+    
+    /**
+     * Compiles the invocation of a method of the implementation class
+     * 
+     * @param method The method to compile
+     * @return The compiled method invoker, or null if the method
+     * could not be compiled
+     */
+    /* package */ CompiledInjector compileMethod(Method method) {
+        if (!isCompilable(method) || method.getDeclaringClass().isInterface()) return null;
+        
+        String className = method.getDeclaringClass().getName();
+        Class<?> params[] = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        if (!isCompilable(returnType)) return null;
+        
+        ClassFile cf = createClassFile();
+        ConstPool cp = cf.getConstPool();
+        
+        Bytecode code = new Bytecode(cp);
+        code.setMaxLocals(3);
+        code.addAload(1);
+        code.addCheckcast(className);
+        for (int lcv = 0; lcv < params.length; lcv++) {
+            addArgument(code, 2, lcv, params[lcv]);
+        }
+        code.addInvokevirtual(className, method.getName(), getMethodDescriptor(params, returnType));
+        if (long.class.equals(returnType) || double.class.equals(returnType)) {
+            code.addOpcode(Opcode.POP2);
+        }
+        else if (!void.class.equals(returnType)) {
+            code.addOpcode(Opcode.POP);
+        }
+        code.addReturn(null);
+        
+        addMethod(cf, "invoke", "(" + OBJECT + OBJECT_ARRAY + ")V", code);
+        
+        return define(cf, method);
+    }
+    
+    /**
+     * Compiles a call of a method of the implementation class, or of
+     * an interface, that returns the result of the method.  Unlike
+     * {@link #compileMethod(Method)} the declaring class of the method
+     * may be an interface
+     * 
+     * @param method The method to compile
+     * @return The compiled method call, or null if the method
+     * could not be compiled
+     */
+    /* package */ CompiledInjector compileCall(Method method) {
+        if (!isCompilable(method)) return null;
+        
+        Class<?> declaringClass = method.getDeclaringClass();
+        String className = declaringClass.getName();
+        Class<?> params[] = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        if (!isCompilable(returnType)) return null;
+        
+        ClassFile cf = createClassFile();
+        ConstPool cp = cf.getConstPool();
+        
+        Bytecode code = new Bytecode(cp);
+        code.setMaxLocals(3);
+        code.addAload(1);
+        code.addCheckcast(className);
+        int slots = 1;
+        for (int lcv = 0; lcv < params.length; lcv++) {
+            addArgument(code, 2, lcv, params[lcv]);
+            slots += (long.class.equals(params[lcv]) || double.class.equals(params[lcv])) ? 2 : 1;
+        }
+        
+        String descriptor = getMethodDescriptor(params, returnType);
+        if (declaringClass.isInterface()) {
+            code.addInvokeinterface(className, method.getName(), descriptor, slots);
+        }
+        else {
+            code.addInvokevirtual(className, method.getName(), descriptor);
+        }
+        
+        if (void.class.equals(returnType)) {
+            code.addOpcode(Opcode.ACONST_NULL);
+        }
+        else if (returnType.isPrimitive()) {
+            String boxed = getBoxedClass(returnType).getName();
+            code.addInvokestatic(boxed, "valueOf", "(" + getDescriptor(returnType) + ")L" +
+                boxed.replace('.', '/') + ";");
+        }
+        code.addOpcode(Opcode.ARETURN);
+        
+        addMethod(cf, "call", "(" + OBJECT + OBJECT_ARRAY + ")" + OBJECT, code);
+        
+        return define(cf, method);
+    }
+    
+    private ClassFile createClassFile() {
+        String name = implClass.getName() + INJECTOR_SUFFIX + count++;
+        
+        ClassFile cf = new ClassFile(false, name, SUPERCLASS);
+        
+        // Version 49 class files need no stack map frames
+        cf.setMajorVersion(ClassFile.JAVA_5);
+        cf.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.SUPER);
+        
+        Bytecode code = new Bytecode(cf.getConstPool());
+        code.setMaxLocals(1);
+        code.addAload(0);
+        code.addInvokespecial(SUPERCLASS, INIT, "()V");
+        code.addReturn(null);
+        
+        addMethod(cf, INIT, "()V", code);
+        
+        return cf;
+    }
+    
+    private static void addMethod(ClassFile cf, String name, String descriptor, Bytecode code) {
+        MethodInfo mi = new MethodInfo(cf.getConstPool(), name, descriptor);
+        mi.setAccessFlags(AccessFlag.PUBLIC);
+        mi.setCodeAttribute(code.toCodeAttribute());
+        
+        try {
+            cf.addMethod(mi);
+        }
+        catch (DuplicateMemberException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Pushes element index of the Object[] in the given local variable,
+     * cast or unboxed to the given type
+     */
+    private static void addArgument(Bytecode code, int arrayVariable, int index, Class<?> type) {
+        code.addAload(arrayVariable);
+        code.addIconst(index);
+        code.addOpcode(Opcode.AALOAD);
+        addCast(code, type);
+    }
+    
+    private static void addCast(Bytecode code, Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (!Object.class.equals(type)) {
+                code.addCheckcast(type.getName());
+            }
+            return;
+        }
+        
+        Class<?> boxed = getBoxedClass(type);
+        
+        code.addCheckcast(boxed.getName());
+        code.addInvokevirtual(boxed.getName(), type.getName() + "Value", "()" + getDescriptor(type));
+    }
+    
+    private static Class<?> getBoxedClass(Class<?> type) {
+        if (boolean.class.equals(type)) return Boolean.class;
+        if (byte.class.equals(type)) return Byte.class;
+        if (char.class.equals(type)) return Character.class;
+        if (short.class.equals(type)) return Short.class;
+        if (int.class.equals(type)) return Integer.class;
+        if (long.class.equals(type)) return Long.class;
+        if (float.class.equals(type)) return Float.class;
+        return Double.class;
+    }
+    
+    private static String getMethodDescriptor(Class<?> params[], Class<?> returnType) {
+        StringBuffer sb = new StringBuffer("(");
+        for (Class<?> param : params) {
+            sb.append(getDescriptor(param));
+        }
+        sb.append(")");
+        sb.append(getDescriptor(returnType));
+        
+        return sb.toString();
+    }
+    
+    private static String getDescriptor(Class<?> type) {
+        if (type.isArray()) return type.getName().replace('.', '/');
+        if (!type.isPrimitive()) return "L" + type.getName().replace('.', '/') + ";";
+        
+        if (void.class.equals(type)) return "V";
+        if (boolean.class.equals(type)) return "Z";
+        if (byte.class.equals(type)) return "B";
+        if (char.class.equals(type)) return "C";
+        if (short.class.equals(type)) return "S";
+        if (int.class.equals(type)) return "I";
+        if (long.class.equals(type)) return "J";
+        if (float.class.equals(type)) return "F";
+        return "D";
+    }
+    
+    /**
+     * A member can be called from the generated class if it and every type
+     * in its signature can be accessed from any package
+     */
+    private static boolean isCompilable(Member member) {
+        int modifiers = member.getModifiers();
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)) return false;
+        if (!isCompilable(member.getDeclaringClass())) return false;
+        
+        Class<?> types[];
+        if (member instanceof Field) {
+            types = new Class<?>[] { ((Field) member).getType() };
+        }
+        else if (member instanceof Method) {
+            types = ((Method) member).getParameterTypes();
+        }
+        else {
+            types = ((Constructor<?>) member).getParameterTypes();
+        }
+        
+        for (Class<?> type : types) {
+            if (!isCompilable(type)) return false;
+        }
+        
+        return true;
+    }
+    
+    private static boolean isCompilable(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) return true;
+        
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) return false;
+        }
+        
+        return true;
+    }
+    
+    private CompiledInjector define(ClassFile cf, Member member) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            cf.write(dos);
+            dos.close();
+            
+            Class<?> injectorClass = getLoader().defineInjector(cf.getName(), baos.toByteArray());
+            
+            return (CompiledInjector) injectorClass.newInstance();
+        }
+        catch (IOException e) {
+            Logger.getLogger().debug("Could not compile " + member + ", reflection will be used", e);
+            return null;
+        }
+        catch (Throwable th) {
+            // For example a SecurityException or a LinkageError
+            Logger.getLogger().debug("Could not compile " + member + ", reflection will be used", th);
+            return null;
+        }
+    }
+    
+    private InjectorClassLoader getLoader() {
+        if (loader != null) return loader;
+        
+        loader = AccessController.doPrivileged(new PrivilegedAction<InjectorClassLoader>() {
+
+            @Override
+            public InjectorClassLoader run() {
+                return new InjectorClassLoader(implClass.getClassLoader(),
+                        implClass.getProtectionDomain());
+            }
+            
+        });
+        
+        return loader;
+    }
+    
+    /**
+     * Gets the context class loader of the current thread
+     * 
+     * @return The context class loader of the current thread
+     */
+    /* package */ static ClassLoader getContextClassLoader() {
+        return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+
+            @Override
+            public ClassLoader run() {
+                return Thread.currentThread().getContextClassLoader();
+            }
+            
+        });
+    }
+    
+    /**
+     * Sets the context class loader of the current thread,
+     * if it is not already set to the given loader
+     * 
+     * @param ccl The loader to set as the context class loader
+     */
+    /* package */ static void setContextClassLoader(final ClassLoader ccl) {
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+
+            @Override
+            public Object run() {
+                Thread current = Thread.currentThread();
+                if (current.getContextClassLoader() != ccl) {
+                    current.setContextClassLoader(ccl);
+                }
+                return null;
+            }
+            
+        });
+    }
+    
+    /**
+     * The class loader of the generated classes.  Sees the implementation
+     * class and its dependencies through its parent, and always resolves
+     * {@link CompiledInjector} to the class in this module
+     */
+    private static class InjectorClassLoader extends DelegatingClassLoader {
+        private final ProtectionDomain domain;
+        
+        private InjectorClassLoader(ClassLoader parent, ProtectionDomain domain) {
+            super(parent, CompiledInjector.class.getClassLoader());
+            this.domain = domain;
+        }
+        
+        @Override
+        public Class<?> loadClass(String clazz) throws ClassNotFoundException {
+            if (SUPERCLASS.equals(clazz)) return CompiledInjector.class;
+            
+            return super.loadClass(clazz);
+        }
+        
+        private Class<?> defineInjector(String name, byte bytes[]) {
+            return defineClass(name, bytes, 0, bytes.length, domain);
+        }
+    }
+
+}
@@ -42,14 +42,15 @@ package org.jvnet.hk2.internal;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.api.IterableProvider;
@@ -60,6 +61,12 @@ import org.glassfish.hk2.utilities.reflection.Pretty;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 
 /**
+ * The descriptors found by iterator, getSize and handleIterator are
+ * kept along with the configuration generation of the locator at
+ * the time they were found, and are reused until that generation changes.
+ * New handles are still created on every iteration, so the scoping of
+ * the services is not changed
+ * 
  * @author jwells
  * 
  * @param <T> The type for this provider
@@ -71,6 +78,10 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
     private final Unqualified unqualified;
     private final Injectee originalInjectee;
     private final boolean isIterable;
+    private final Annotation qualifiersAsArray[];
+    
+    private volatile Snapshot iterableSnapshot;
+    private volatile Snapshot handleSnapshot;
     
     /* package */ IterableProviderImpl(
             ServiceLocatorImpl locator,
@@ -85,6 +96,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         this.unqualified = unqualified;
         this.originalInjectee = originalInjectee;
         this.isIterable = isIterable;
+        this.qualifiersAsArray = requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]);
     }
     
     private void justInTime() {
@@ -109,7 +121,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         
         // Must do this in this way to ensure that the generated item is properly associated with the root
         return (T) locator.getUnqualifiedService(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifiersAsArray);
     }
     
     /* (non-Javadoc)
@@ -121,22 +133,39 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         justInTime();
         
         return (ServiceHandle<T>) locator.getUnqualifiedServiceHandle(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifiersAsArray);
     }
     
 
+    /**
+     * Gets the descriptors that the handles of iterator and getSize are created from
+     */
+    private List<ActiveDescriptor<?>> getIterableDescriptors() {
+        long generation = locator.getConfigurationGeneration();
+        
+        Snapshot snapshot = iterableSnapshot;
+        if (snapshot != null && snapshot.generation == generation) {
+            return snapshot.descriptors;
+        }
+        
+        justInTime();
+        
+        boolean reusable[] = new boolean[1];
+        List<ActiveDescriptor<?>> descriptors = locator.getAllUnqualifiedDescriptors(requiredType,
+                unqualified, isIterable, reusable, qualifiersAsArray);
+        
+        snapshot = new Snapshot(generation, descriptors);
+        if (reusable[0]) iterableSnapshot = snapshot;
+        
+        return snapshot.descriptors;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Iterable#iterator()
      */
     @Override
     public Iterator<T> iterator() {
-        justInTime();
-        
-        List<ServiceHandle<T>> handles;
-        handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllUnqualifiedServiceHandles(requiredType,
-                    unqualified, isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
-        
-        return new MyIterator<T>(handles);
+        return new MyIterator<T>(locator, requiredType, getIterableDescriptors());
     }
 
     /* (non-Javadoc)
@@ -144,10 +173,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public int getSize() {
-        justInTime();
-        
-        return locator.getAllUnqualifiedServiceHandles(requiredType, unqualified, isIterable,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])).size();
+        return getIterableDescriptors().size();
     }
 
     /* (non-Javadoc)
@@ -184,74 +210,55 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public Iterable<ServiceHandle<T>> handleIterator() {
-        justInTime();
-        
-        List<ServiceHandle<T>> handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllServiceHandles(requiredType,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
-        
-        return new HandleIterable<T>(handles);
-    }
-    
-    private static class MyIterator<U> implements Iterator<U> {
-        private final LinkedList<ServiceHandle<U>> handles;
+        long generation = locator.getConfigurationGeneration();
         
-        private MyIterator(List<ServiceHandle<U>> handles) {
-            this.handles = new LinkedList<ServiceHandle<U>>(handles);
-        }
-
-        /* (non-Javadoc)
-         * @see java.util.Iterator#hasNext()
-         */
-        @Override
-        public boolean hasNext() {
-            return !handles.isEmpty();
-        }
-
-        /* (non-Javadoc)
-         * @see java.util.Iterator#next()
-         */
-        @Override
-        public U next() {
-            if (handles.isEmpty()) throw new NoSuchElementException();
+        Snapshot snapshot = handleSnapshot;
+        if (snapshot == null || snapshot.generation != generation) {
+            justInTime();
             
-            ServiceHandle<U> nextHandle = handles.removeFirst();
+            // Same lookup as getAllServiceHandles(Type, Annotation...)
+            boolean reusable[] = new boolean[1];
+            List<ActiveDescriptor<?>> descriptors = locator.getAllUnqualifiedDescriptors(requiredType,
+                    null, false, reusable, qualifiersAsArray);
             
-            return nextHandle.getService();
+            snapshot = new Snapshot(generation, descriptors);
+            if (reusable[0]) handleSnapshot = snapshot;
         }
-
-        /* (non-Javadoc)
-         * @see java.util.Iterator#remove()
-         */
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
-            
+        
+        ArrayList<ServiceHandle<T>> handles = new ArrayList<ServiceHandle<T>>(snapshot.descriptors.size());
+        for (ActiveDescriptor<?> descriptor : snapshot.descriptors) {
+            handles.add(ReflectionHelper.<ServiceHandle<T>>cast(locator.getIterableServiceHandle(descriptor, requiredType)));
         }
         
+        return Collections.unmodifiableList(handles);
     }
     
-    private static class HandleIterable<U> implements Iterable<ServiceHandle<U>> {
-        private final List<ServiceHandle<U>> handles;
+    /**
+     * The descriptors found at a given configuration generation
+     */
+    private static class Snapshot {
+        private final long generation;
+        private final List<ActiveDescriptor<?>> descriptors;
         
-        private HandleIterable(List<ServiceHandle<U>> handles) {
-            this.handles = new LinkedList<ServiceHandle<U>>(handles);
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Iterable#iterator()
-         */
-        @Override
-        public Iterator<ServiceHandle<U>> iterator() {
-            return new MyHandleIterator<U>(handles);
+        private Snapshot(long generation, List<ActiveDescriptor<?>> descriptors) {
+            this.generation = generation;
+            this.descriptors = Collections.unmodifiableList(new ArrayList<ActiveDescriptor<?>>(descriptors));
         }
-        
     }
     
-    private static class MyHandleIterator<U> implements Iterator<ServiceHandle<U>> {
-        private final LinkedList<ServiceHandle<U>> handles;
+    /**
+     * Creates the handle of each descriptor as it is reached
+     */
+    private static class MyIterator<U> implements Iterator<U> {
+        private final ServiceLocatorImpl locator;
+        private final Type requiredType;
+        private final List<ActiveDescriptor<?>> descriptors;
+        private int index = 0;
         
-        private MyHandleIterator(List<ServiceHandle<U>> handles) {
-            this.handles = new LinkedList<ServiceHandle<U>>(handles);
+        private MyIterator(ServiceLocatorImpl locator, Type requiredType, List<ActiveDescriptor<?>> descriptors) {
+            this.locator = locator;
+            this.requiredType = requiredType;
+            this.descriptors = descriptors;
         }
 
         /* (non-Javadoc)
@@ -259,15 +266,20 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
          */
         @Override
         public boolean hasNext() {
-            return !handles.isEmpty();
+            return index < descriptors.size();
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
+        @SuppressWarnings("unchecked")
         @Override
-        public ServiceHandle<U> next() {
-            return handles.removeFirst();
+        public U next() {
+            if (index >= descriptors.size()) throw new NoSuchElementException();
+            
+            ServiceHandle<?> nextHandle = locator.getIterableServiceHandle(descriptors.get(index++), requiredType);
+            
+            return (U) nextHandle.getService();
         }
 
         /* (non-Javadoc)
@@ -0,0 +1,282 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+
+/**
+ * A descriptor read by the populator in lazy mode.  Everything the
+ * locator needs in order to index and look up the descriptor is read
+ * right away, but the metadata, which is by far the largest part of
+ * most descriptors, is only parsed the first time it is asked for
+ * 
+ * @author jwells
+ *
+ */
+public class LazyDescriptorImpl extends DescriptorImpl {
+    private static final long serialVersionUID = -1829438117262932424L;
+    
+    private final static String METADATA_KEY = "metadata=";
+    private final static String START_START = "[";
+    
+    /** The right hand side of the metadata line from the text format */
+    private transient String metadataText;
+    
+    /** The binary file and record from which to read the metadata */
+    private transient BinaryDescriptorFile binaryFile;
+    private transient int binaryIndex;
+    
+    private transient volatile boolean metadataLoaded = true;
+    
+    /**
+     * Creates a lazy descriptor for a record of a binary descriptor file
+     * 
+     * @param binaryFile The file containing the record
+     * @param index The index of the record in the file
+     * @throws IOException if the record is corrupt
+     */
+    /* package */ LazyDescriptorImpl(BinaryDescriptorFile binaryFile, int index) throws IOException {
+        super(binaryFile.getDescriptor(index, false));
+        
+        this.binaryFile = binaryFile;
+        this.binaryIndex = index;
+        metadataLoaded = false;
+    }
+    
+    /**
+     * Creates a lazy descriptor that must be filled in
+     * with {@link #readLazily(MetadataSkippingReader)}
+     */
+    /* package */ LazyDescriptorImpl() {
+    }
+    
+    /**
+     * Reads the next record of the text format, saving the metadata
+     * line to be parsed later
+     * 
+     * @param in The reader to read from
+     * @return true if a descriptor was read, false otherwise
+     * @throws IOException on failure
+     */
+    /* package */ boolean readLazily(MetadataSkippingReader in) throws IOException {
+        in.startRecord();
+        boolean retVal = super.readObject(in);
+        
+        metadataText = in.getSkippedMetadata();
+        binaryFile = null;
+        metadataLoaded = (metadataText == null);
+        
+        return retVal;
+    }
+    
+    private void loadMetadata() {
+        if (metadataLoaded) return;
+        
+        synchronized (this) {
+            if (metadataLoaded) return;
+            
+            Map<String, List<String>> metadata;
+            try {
+                if (binaryFile != null) {
+                    metadata = binaryFile.getMetadata(binaryIndex);
+                }
+                else {
+                    metadata = new LinkedHashMap<String, List<String>>();
+                    ReflectionHelper.readMetadataMap(metadataText, metadata);
+                }
+            }
+            catch (IOException ioe) {
+                throw new MultiException(ioe);
+            }
+            
+            if (!metadata.isEmpty()) {
+                super.addMetadata(metadata);
+            }
+            
+            metadataText = null;
+            binaryFile = null;
+            metadataLoaded = true;
+        }
+    }
+    
+    /**
+     * Tells whether or not the metadata of this descriptor has been parsed
+     * 
+     * @return true if the metadata has been parsed
+     */
+    public boolean isMetadataLoaded() {
+        return metadataLoaded;
+    }
+    
+    @Override
+    public Map<String, List<String>> getMetadata() {
+        loadMetadata();
+        return super.getMetadata();
+    }
+    
+    @Override
+    public void setMetadata(Map<String, List<String>> metadata) {
+        loadMetadata();
+        super.setMetadata(metadata);
+    }
+    
+    @Override
+    public void addMetadata(Map<String, List<String>> metadata) {
+        loadMetadata();
+        super.addMetadata(metadata);
+    }
+    
+    @Override
+    public void addMetadata(String key, String value) {
+        loadMetadata();
+        super.addMetadata(key, value);
+    }
+    
+    @Override
+    public boolean removeMetadata(String key, String value) {
+        loadMetadata();
+        return super.removeMetadata(key, value);
+    }
+    
+    @Override
+    public boolean removeAllMetadata(String key) {
+        loadMetadata();
+        return super.removeAllMetadata(key);
+    }
+    
+    @Override
+    public void clearMetadata() {
+        loadMetadata();
+        super.clearMetadata();
+    }
+    
+    @Override
+    public int hashCode() {
+        loadMetadata();
+        return super.hashCode();
+    }
+    
+    // equals is not overridden, it compares the metadata with getMetadata
+    // and only once every other field has matched
+    
+    @Override
+    public void writeObject(PrintWriter out) throws IOException {
+        loadMetadata();
+        super.writeObject(out);
+    }
+    
+    @Override
+    public boolean readObject(BufferedReader in) throws IOException {
+        synchronized (this) {
+            metadataText = null;
+            binaryFile = null;
+            metadataLoaded = true;
+        }
+        
+        return super.readObject(in);
+    }
+    
+    /**
+     * Gives the text format records to {@link DescriptorImpl#readObject(BufferedReader)}
+     * without their metadata lines, which are kept aside.  Only
+     * {@link #readLine()} may be used
+     * 
+     * @author jwells
+     *
+     */
+    /* package */ static class MetadataSkippingReader extends BufferedReader {
+        private final BufferedReader delegate;
+        private boolean inRecord;
+        private String skippedMetadata;
+        
+        /* package */ MetadataSkippingReader(BufferedReader delegate) {
+            super(delegate, 1);
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public String readLine() throws IOException {
+            String line = delegate.readLine();
+            while (line != null) {
+                String trimmed = line.trim();
+                
+                if (!inRecord) {
+                    inRecord = trimmed.startsWith(START_START);
+                    return line;
+                }
+                if (trimmed.length() <= 0) {
+                    inRecord = false;
+                    return line;
+                }
+                if (!trimmed.startsWith(METADATA_KEY)) return line;
+                
+                skippedMetadata = trimmed.substring(METADATA_KEY.length());
+                line = delegate.readLine();
+            }
+            
+            return null;
+        }
+        
+        /* package */ void startRecord() {
+            inRecord = false;
+            skippedMetadata = null;
+        }
+        
+        /* package */ String getSkippedMetadata() {
+            return skippedMetadata;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -44,11 +44,9 @@ import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.RandomAccess;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -77,15 +75,23 @@ public class MethodInterceptorHandler implements MethodHandler {
     });
     
     private final ServiceLocatorImpl locator;
-    private final Map<Method, List<MethodInterceptor>> interceptorLists;
+    private final HashMap<Method, MethodInterceptor[]> interceptorLists;
     private final ActiveDescriptor<?> underlyingDescriptor;
     
     /* package */ MethodInterceptorHandler(ServiceLocatorImpl locator,
             ActiveDescriptor<?> underlyingDescriptor,
             Map<Method, List<MethodInterceptor>> interceptorLists) {
         this.locator = locator;
-        this.interceptorLists = interceptorLists;
         this.underlyingDescriptor = underlyingDescriptor;
+        
+        // Flattened once so that invocations need not copy or check the lists
+        this.interceptorLists = new HashMap<Method, MethodInterceptor[]>();
+        for (Map.Entry<Method, List<MethodInterceptor>> entry : interceptorLists.entrySet()) {
+            List<MethodInterceptor> interceptors = entry.getValue();
+            if (interceptors == null || interceptors.isEmpty()) continue;
+            
+            this.interceptorLists.put(entry.getKey(), interceptors.toArray(new MethodInterceptor[interceptors.size()]));
+        }
     }
 
     /* (non-Javadoc)
@@ -98,23 +104,18 @@ public class MethodInterceptorHandler implements MethodHandler {
             return underlyingDescriptor;
         }
         
-        List<MethodInterceptor> interceptors = interceptorLists.get(thisMethod);
-        if (interceptors == null || interceptors.isEmpty()) {
+        MethodInterceptor interceptors[] = interceptorLists.get(thisMethod);
+        if (interceptors == null) {
             return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
         }
         
-        if (!(interceptors instanceof RandomAccess)) {
-            // Make sure we are indexable
-            interceptors = new ArrayList<MethodInterceptor>(interceptors);
-        }
-        
-        MethodInterceptor nextInterceptor = interceptors.get(0);
+        MethodInterceptor nextInterceptor = interceptors[0];
         
         long aggregateInterceptionTime = 0L;
         if (DEBUG_INTERCEPTION) {
             aggregateInterceptionTime = System.currentTimeMillis();
             Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                    " index 0 in stack of " + interceptors.size() + " of method " + thisMethod);
+                     " index 0 in stack of " + interceptors.length + " of method " + thisMethod);
         }
         
         try {
@@ -134,7 +135,7 @@ public class MethodInterceptorHandler implements MethodHandler {
         private final Object[] arguments;  // Live!
         private final Method method;
         private final Object myself;
-        private final List<MethodInterceptor> interceptors;
+        private final MethodInterceptor interceptors[];
         private final int index;
         private final Method proceed;
         private HashMap<String, Object> userData;
@@ -142,7 +143,7 @@ public class MethodInterceptorHandler implements MethodHandler {
         private MethodInvocationImpl(Object[] arguments,
                 Method method,
                 Object myself,
-                List<MethodInterceptor> interceptors,
+                MethodInterceptor interceptors[],
                 int index,
                 Method proceed,
                 HashMap<String, Object> userData) {
@@ -178,7 +179,7 @@ public class MethodInterceptorHandler implements MethodHandler {
         @Override
         public Object proceed() throws Throwable {
             int newIndex = index + 1;
-            if (newIndex >= interceptors.size()) {
+            if (newIndex >= interceptors.length) {
                 long methodTime = 0L;
                 if (DEBUG_INTERCEPTION) {
                     methodTime = System.currentTimeMillis();
@@ -197,13 +198,13 @@ public class MethodInterceptorHandler implements MethodHandler {
             }
             
             // Invoke the next interceptor
-            MethodInterceptor nextInterceptor = interceptors.get(newIndex);
+            MethodInterceptor nextInterceptor = interceptors[newIndex];
             
             long aggregateInterceptionTime = 0L;
             if (DEBUG_INTERCEPTION) {
                 aggregateInterceptionTime = System.currentTimeMillis();
                 Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                        " index " + newIndex + " in stack of " + interceptors.size() +
+                        " index " + newIndex +  " in stack of " + interceptors.length +
                         " of method " + method);
             }
             
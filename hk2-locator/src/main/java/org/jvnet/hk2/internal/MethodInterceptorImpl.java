@@ -60,17 +60,22 @@ public class MethodInterceptorImpl implements MethodHandler {
     private final static String PROXY_MORE_METHOD_NAME = "__make";
     
     private final ServiceLocatorImpl locator;
+    private final ProxyUtilities proxyUtilities;
     private final ActiveDescriptor<?> descriptor;
     /** Original root node, needed for proper destruction */
     private final ServiceHandleImpl<?> root;
     /** Actual injectee, needed for InstantiationService */
     private final WeakReference<Injectee> myInjectee;
+    /** The context of the descriptor, as of the last call */
+    private volatile CachedContext cachedContext;
     
     /* package */ MethodInterceptorImpl(ServiceLocatorImpl sli,
+            ProxyUtilities proxyUtilities,
             ActiveDescriptor<?> descriptor,
             ServiceHandleImpl<?> root,
             Injectee injectee) {
         this.locator = sli;
+        this.proxyUtilities = proxyUtilities;
         this.descriptor = descriptor;
         this.root = root;
         if (injectee != null) {
@@ -85,7 +90,7 @@ public class MethodInterceptorImpl implements MethodHandler {
         Context<?> context;
         Object service;
 
-        context = locator.resolveContext(descriptor.getScopeAnnotation());
+        context = getContext();
         service = context.findOrCreate(descriptor, root);
 
         if (service == null) {
@@ -106,9 +111,45 @@ public class MethodInterceptorImpl implements MethodHandler {
             params[0] = equalsProxy.__make();
         }
 
+        if (locator.isCompiledProxies()) {
+            CompiledInjector compiled = proxyUtilities.getCompiledCall(method);
+            if (compiled != null) {
+                if (!locator.getNeutralContextClassLoader()) {
+                    return compiled.call(service, params);
+                }
+                
+                ClassLoader originalCCL = InjectorGenerator.getContextClassLoader();
+                try {
+                    return compiled.call(service, params);
+                }
+                finally {
+                    InjectorGenerator.setContextClassLoader(originalCCL);
+                }
+            }
+        }
+
         return ReflectionHelper.invoke(service, method, params, locator.getNeutralContextClassLoader());
         
     }
+    
+    /**
+     * Gets the context of the descriptor.  The context found is kept
+     * until it is no longer active or the configuration of the
+     * locator changes, since either may change which context is found
+     */
+    private Context<?> getContext() {
+        long generation = locator.getConfigurationGeneration();
+        
+        CachedContext cached = cachedContext;
+        if (cached != null && cached.generation == generation && cached.context.isActive()) {
+            return cached.context;
+        }
+        
+        Context<?> context = locator.resolveContext(descriptor.getScopeAnnotation());
+        cachedContext = new CachedContext(context, generation);
+        
+        return context;
+    }
 
     @Override
     public Object invoke(Object target, Method method, Method proceed, Object[] params) throws Throwable {
@@ -132,6 +173,16 @@ public class MethodInterceptorImpl implements MethodHandler {
 
     }
     
+    private static class CachedContext {
+        private final Context<?> context;
+        private final long generation;
+        
+        private CachedContext(Context<?> context, long generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
+    
     private final static String EQUALS_NAME = "equals";
     
     private static boolean isEquals(Method m) {
@@ -43,6 +43,9 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.WeakHashMap;
 
 import javax.inject.Inject;
@@ -50,6 +53,9 @@ import javax.inject.Inject;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.api.InjectionPointIndicator;
 import org.glassfish.hk2.api.InjectionResolver;
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache;
 import org.glassfish.hk2.utilities.general.Hk2ThreadLocal;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 import org.jvnet.hk2.annotations.Service;
@@ -62,6 +68,16 @@ import org.jvnet.hk2.annotations.Service;
  *
  */
 public class PerLocatorUtilities {
+    private final static String TYPE_SAFETY_CACHE_SIZE_PROPERTY = "org.jvnet.hk2.properties.typeSafetyCache.maximumSize";
+    private final static int TYPE_SAFETY_CACHE_SIZE = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        @Override
+        public Integer run() {
+            return Integer.getInteger(TYPE_SAFETY_CACHE_SIZE_PROPERTY, 4096);
+        }
+        
+    });
+    private final static int TYPE_SAFETY_CACHE_SEGMENTS = 8;
+    
     /** Must not be static, otherwise it can leak when using thread pools */
     private final Hk2ThreadLocal<WeakHashMap<Class<?>, String>> threadLocalAutoAnalyzerNameCache =
             new Hk2ThreadLocal<WeakHashMap<Class<?>, String>>() {
@@ -89,6 +105,21 @@ public class PerLocatorUtilities {
                 }
             };
             
+    /**
+     * The results of {@link Utilities#isTypeSafe(Type, Type)}, which only
+     * depend on the two types.  The keys are hard, since a new key is made
+     * for every check, so the cache is cleared along with the other caches
+     */
+    private final SegmentedWeakCARCache<TypeSafetyKey, Boolean> typeSafetyCache =
+            CacheUtilities.createSegmentedWeakCARCache(new Computable<TypeSafetyKey, Boolean>() {
+
+                @Override
+                public Boolean compute(TypeSafetyKey key) {
+                    return Utilities.isTypeSafe(key.getRequiredType(), key.getBeanType());
+                }
+                
+            }, TYPE_SAFETY_CACHE_SIZE, TYPE_SAFETY_CACHE_SEGMENTS, false, true);
+            
     private volatile ProxyUtilities proxyUtilities;
     private final ServiceLocatorImpl parent;
     
@@ -279,8 +310,32 @@ public class PerLocatorUtilities {
         return hard;
     }
     
+    /**
+     * Returns the result of {@link Utilities#isTypeSafe(Type, Type)},
+     * from the cache if the same two types have been checked before.
+     * A raw required type that is not an annotation is cheaper to
+     * check than to look up, and so is never cached
+     * 
+     * @param requiredType The type being assigned into
+     * @param beanType the type being assigned
+     * @return true if things are type safe
+     */
+    /* package */ boolean isTypeSafe(Type requiredType, Type beanType) {
+        if ((requiredType instanceof Class) && (beanType instanceof Class) &&
+                !((Class<?>) requiredType).isAnnotation()) {
+            return Utilities.isTypeSafe(requiredType, beanType);
+        }
+        
+        return typeSafetyCache.compute(new TypeSafetyKey(requiredType, beanType));
+    }
+    
+    /* package */ void clearTypeSafetyCache() {
+        typeSafetyCache.clear();
+    }
+    
     public synchronized void releaseCaches() {
         hasInjectCache.removeAll();
+        typeSafetyCache.clear();
         if (proxyUtilities != null) {
             proxyUtilities.releaseCache();
         }
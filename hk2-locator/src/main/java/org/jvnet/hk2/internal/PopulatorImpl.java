@@ -40,22 +40,42 @@
 
 package org.jvnet.hk2.internal;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ConfigurablePopulator;
 import org.glassfish.hk2.api.DescriptorFileFinder;
 import org.glassfish.hk2.api.DescriptorFileFinderInformation;
 import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.MultiException;
-import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
@@ -64,9 +84,32 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  * 
  * @author jwells
  */
-public class PopulatorImpl implements Populator {
+public class PopulatorImpl implements ConfigurablePopulator {
+    private final static String LAZY_PROPERTY = "org.jvnet.hk2.properties.populator.lazy";
+    private final static boolean LAZY = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(LAZY_PROPERTY, "false"));
+        }
+        
+    });
+    
+    private final static String PARALLEL_PROPERTY = "org.jvnet.hk2.properties.populator.parallel";
+    private final static boolean PARALLEL = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(PARALLEL_PROPERTY, "false"));
+        }
+        
+    });
+    
     private final ServiceLocator serviceLocator;
     private final DynamicConfigurationService dcs;
+    private volatile boolean lazy = LAZY;
+    private volatile boolean parallel = PARALLEL;
+    private volatile Executor executor;
     
     /* package */ PopulatorImpl(ServiceLocator serviceLocator,
             DynamicConfigurationService dcs) {
@@ -111,74 +154,301 @@ public class PopulatorImpl implements Populator {
             throw new MultiException(th);
         }
         
+        List<FileResult> results;
+        if (parallel && (descriptorFileInputStreams.size() > 1)) {
+            Executor localExecutor = executor;
+            if (localExecutor == null) localExecutor = DefaultExecutorHolder.DEFAULT_EXECUTOR;
+            
+            results = readFilesInParallel(descriptorFileInputStreams, descriptorInformation, localExecutor);
+        }
+        else {
+            results = new ArrayList<FileResult>(descriptorFileInputStreams.size());
+            
+            int lcv = 0;
+            for (InputStream is : descriptorFileInputStreams) {
+                String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+                lcv++;
+                
+                results.add(readFile(is, identifier));
+            }
+        }
+        
         Collector collector = new Collector();
 
         DynamicConfiguration config = dcs.createDynamicConfiguration();
+        
+        // Post processed and bound on this thread in file order, then record order,
+        // no matter which thread read the file, so that post processors need not
+        // be thread safe and see the descriptors in a predictable order
+        for (FileResult result : results) {
+            try {
+                result.collector.throwIfErrors();
+            }
+            catch (MultiException me) {
+                collector.addMultiException(me);
+            }
+            
+            for (DescriptorImpl read : result.descriptors) {
+                DescriptorImpl descriptorImpl = postProcess(read, result.identifier, postProcessors, collector);
+                
+                if (descriptorImpl != null) {
+                    descriptors.add(config.bind(descriptorImpl, false));
+                }
+            }
+        }
+        
+        // Prior to commit!
+        collector.throwIfErrors();
+
+        config.commit();
 
+        return descriptors;
+    }
+    
+    /**
+     * Reads every file on the given executor.  The calling thread also reads
+     * (in file order) any file that no executor thread has started yet, which
+     * keeps this from waiting on an executor that is busy or that rejected
+     * the work.  The descriptors read are not yet post processed
+     */
+    private List<FileResult> readFilesInParallel(List<InputStream> descriptorFileInputStreams,
+            List<String> descriptorInformation,
+            Executor localExecutor) {
+        final AccessControlContext context = AccessController.getContext();
+        final ClassLoader contextLoader = InjectorGenerator.getContextClassLoader();
+        
+        List<FutureTask<FileResult>> tasks = new ArrayList<FutureTask<FileResult>>(descriptorFileInputStreams.size());
+        
         int lcv = 0;
-        for (InputStream is : descriptorFileInputStreams) {
-            String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+        for (final InputStream is : descriptorFileInputStreams) {
+            final String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
             lcv++;
+            
+            FutureTask<FileResult> task = new FutureTask<FileResult>(new Callable<FileResult>() {
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-            try {
-                boolean readOne = false;
-
-                do {
-                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
+                @Override
+                public FileResult call() throws Exception {
+                    // Reading sees the context class loader of the caller,
+                    // not that of whoever made this thread
+                    ClassLoader previousLoader = InjectorGenerator.getContextClassLoader();
+                    if (previousLoader != contextLoader) {
+                        InjectorGenerator.setContextClassLoader(contextLoader);
+                    }
+                    
                     try {
-                        readOne = descriptorImpl.readObject(br);
+                        return AccessController.doPrivileged(new PrivilegedExceptionAction<FileResult>() {
+
+                            @Override
+                            public FileResult run() throws Exception {
+                                return readFile(is, identifier);
+                            }
+                            
+                        }, context);
                     }
-                    catch (IOException ioe) {
-                        if (identifier != null) {
-                            collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", ioe));
-                        }
-                        else {
-                            collector.addThrowable(ioe);
+                    catch (PrivilegedActionException pae) {
+                        throw pae.getException();
+                    }
+                    finally {
+                        if (previousLoader != contextLoader) {
+                            InjectorGenerator.setContextClassLoader(previousLoader);
                         }
                     }
+                }
+                
+            });
+            
+            tasks.add(task);
+            
+            try {
+                localExecutor.execute(task);
+            }
+            catch (RejectedExecutionException ree) {
+                // Read below on the calling thread
+            }
+        }
+        
+        List<FileResult> results = new ArrayList<FileResult>(tasks.size());
+        boolean interrupted = false;
+        
+        lcv = 0;
+        for (FutureTask<FileResult> task : tasks) {
+            String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+            lcv++;
+            
+            // Does nothing if an executor thread has already started this file
+            task.run();
+            
+            FileResult result = null;
+            while (result == null) {
+                try {
+                    result = task.get();
+                }
+                catch (InterruptedException ie) {
+                    // Every file must still be read and closed
+                    interrupted = true;
+                }
+                catch (ExecutionException ee) {
+                    result = new FileResult(identifier);
+                    result.collector.addThrowable(wrap(identifier, ee.getCause()));
+                }
+            }
+            
+            results.add(result);
+        }
+        
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        return results;
+    }
+    
+    private FileResult readFile(InputStream is, String identifier) throws IOException {
+        FileResult result = new FileResult(identifier);
+        Collector collector = result.collector;
+        
+        if (!(is instanceof FileInputStream) && !is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        
+        ByteBuffer binaryContents;
+        try {
+            binaryContents = BinaryDescriptorFile.getBinaryContents(is);
+        }
+        catch (IOException ioe) {
+            is.close();
+            collector.addThrowable(wrap(identifier, ioe));
+            return result;
+        }
+        
+        if (binaryContents != null) {
+            try {
+                BinaryDescriptorFile binaryFile = new BinaryDescriptorFile(binaryContents);
+                
+                int numDescriptors = binaryFile.getNumberOfDescriptors();
+                for (int index = 0; index < numDescriptors; index++) {
+                    DescriptorImpl read = (lazy) ?
+                            new LazyDescriptorImpl(binaryFile, index) :
+                            binaryFile.getDescriptor(index) ;
+                    
+                    result.descriptors.add(read);
+                }
+            }
+            catch (IOException ioe) {
+                collector.addThrowable(wrap(identifier, ioe));
+            }
+            finally {
+                is.close();
+            }
+            
+            return result;
+        }
 
-                    if (readOne) {
-                            
-                        for (PopulatorPostProcessor pp : postProcessors) {
-                            try {
-                                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
-                            }
-                            catch (Throwable th) {
-                                if (identifier != null) {
-                                    collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
-                                }
-                                else {
-                                    collector.addThrowable(th);
-                                }
-                                descriptorImpl = null;
-                            }
+        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        LazyDescriptorImpl.MetadataSkippingReader lazyReader = (lazy) ?
+                new LazyDescriptorImpl.MetadataSkippingReader(br) : null ;
 
-                            if (descriptorImpl == null) {
-                                break;
-                            }
-                        }
-                            
-                        if (descriptorImpl != null) {
-                            descriptors.add(config.bind(descriptorImpl, false));
-                        }
+        try {
+            boolean readOne = false;
 
-                    }
-                } while (readOne);
+            do {
+                LazyDescriptorImpl lazyDescriptor = (lazyReader != null) ? new LazyDescriptorImpl() : null ;
+                DescriptorImpl descriptorImpl = (lazyDescriptor != null) ? lazyDescriptor : new DescriptorImpl() ;
+
+                try {
+                    readOne = (lazyDescriptor != null) ?
+                            lazyDescriptor.readLazily(lazyReader) :
+                            descriptorImpl.readObject(br) ;
+                }
+                catch (IOException ioe) {
+                    collector.addThrowable(wrap(identifier, ioe));
+                }
+
+                if (readOne) {
+                    result.descriptors.add(descriptorImpl);
+                }
+            } while (readOne);
+
+        } finally {
+            br.close();
+        }
+        
+        return result;
+    }
 
-            } finally {
-                br.close();
+    private DescriptorImpl postProcess(DescriptorImpl descriptorImpl,
+            String identifier,
+            PopulatorPostProcessor postProcessors[],
+            Collector collector) {
+        for (PopulatorPostProcessor pp : postProcessors) {
+            try {
+                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
+            }
+            catch (Throwable th) {
+                collector.addThrowable(wrap(identifier, th));
+                descriptorImpl = null;
+            }
+
+            if (descriptorImpl == null) {
+                break;
             }
         }
         
-        // Prior to commit!
-        collector.throwIfErrors();
+        return descriptorImpl;
+    }
+    
+    private static Throwable wrap(String identifier, Throwable th) {
+        if (identifier == null) return th;
+        
+        return new IOException("InputStream with identifier \"" + identifier + "\" failed", th);
+    }
 
-        config.commit();
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#setLazy(boolean)
+     */
+    @Override
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#isLazy()
+     */
+    @Override
+    public boolean isLazy() {
+        return lazy;
+    }
 
-        return descriptors;
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#setParallel(boolean)
+     */
+    @Override
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#isParallel()
+     */
+    @Override
+    public boolean isParallel() {
+        return parallel;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#setExecutor(java.util.concurrent.Executor)
+     */
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.ConfigurablePopulator#getExecutor()
+     */
+    @Override
+    public Executor getExecutor() {
+        return executor;
     }
 
     /* (non-Javadoc)
@@ -189,4 +459,55 @@ public class PopulatorImpl implements Populator {
         return populate(new ClasspathDescriptorFileFinder());
     }
 
+    private static class FileResult {
+        private final String identifier;
+        private final List<DescriptorImpl> descriptors = new LinkedList<DescriptorImpl>();
+        private final Collector collector = new Collector();
+        
+        private FileResult(String identifier) {
+            this.identifier = identifier;
+        }
+    }
+    
+    private static class DefaultExecutorHolder {
+        private static final Executor DEFAULT_EXECUTOR;
+        
+        static {
+            int processors = Runtime.getRuntime().availableProcessors();
+            
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(processors, processors,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new PopulatorThreadFactory());
+            tpe.allowCoreThreadTimeOut(true);
+            
+            DEFAULT_EXECUTOR = tpe;
+        }
+    }
+    
+    /**
+     * The threads are shared by every caller of populate, so they are made
+     * with privilege and no context class loader in order to not keep the
+     * loader or protection domains of the first caller alive
+     */
+    private static class PopulatorThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+
+                @Override
+                public Thread run() {
+                    Thread thread = new Thread(runnable, "hk2-populator-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(null);
+                    
+                    return thread;
+                }
+                
+            });
+        }
+    }
+
 }
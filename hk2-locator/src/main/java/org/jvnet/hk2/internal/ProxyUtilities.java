@@ -40,11 +40,14 @@
 
 package org.jvnet.hk2.internal;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.security.AccessControlException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
@@ -63,8 +66,28 @@ import javassist.util.proxy.ProxyObject;
  *
  */
 public class ProxyUtilities {
-    private final static Object proxyCreationLock = new Object();
-    private final HashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new HashMap<ClassLoader, DelegatingClassLoader>();
+    private final ConcurrentHashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator =
+            new ConcurrentHashMap<ClassLoader, DelegatingClassLoader>();
+    
+    /**
+     * The generated javassist proxy classes, so that each proxy after the
+     * first of a given superclass and set of interfaces only needs to be
+     * instantiated.  Cleared along with the delegating loaders
+     */
+    private final ConcurrentHashMap<ProxyKey, Class<?>> proxyClasses =
+            new ConcurrentHashMap<ProxyKey, Class<?>>();
+    
+    /** Marks methods that could not be compiled, and must be called with reflection */
+    private final static CompiledInjector NOT_COMPILED = new CompiledInjector() {};
+    
+    /**
+     * The compiled dispatch of methods called through proxies, when
+     * compiled proxies are enabled.  Cleared along with the proxy classes
+     */
+    private final ConcurrentHashMap<Method, CompiledInjector> compiledCalls =
+            new ConcurrentHashMap<Method, CompiledInjector>();
+    private final HashMap<Class<?>, InjectorGenerator> callGenerators =
+            new HashMap<Class<?>, InjectorGenerator>();
     
     /**
      * We put the anchor as the value even though we don't use it in order to
@@ -113,24 +136,22 @@ public class ProxyUtilities {
             
         });
         
-        DelegatingClassLoader initDelegatingLoader;
-        synchronized (superClassToDelegator) {
-            initDelegatingLoader = superClassToDelegator.get(loader);
-            if (initDelegatingLoader == null) {
-                initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
-
-                    @Override
-                    public DelegatingClassLoader run() {
-                        return new DelegatingClassLoader(
-                                loader,
-                                ProxyFactory.class.getClassLoader(),
-                                ProxyCtl.class.getClassLoader());
-                    }
-                    
-                });
+        DelegatingClassLoader initDelegatingLoader = superClassToDelegator.get(loader);
+        if (initDelegatingLoader == null) {
+            DelegatingClassLoader created = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
+
+                @Override
+                public DelegatingClassLoader run() {
+                    return new DelegatingClassLoader(
+                            loader,
+                            ProxyFactory.class.getClassLoader(),
+                            ProxyCtl.class.getClassLoader());
+                }
                 
-                superClassToDelegator.put(loader, initDelegatingLoader);
-            }
+            });
+            
+            initDelegatingLoader = superClassToDelegator.putIfAbsent(loader, created);
+            if (initDelegatingLoader == null) initDelegatingLoader = created;
         }
         
         final DelegatingClassLoader delegatingLoader = initDelegatingLoader;
@@ -149,41 +170,23 @@ public class ProxyUtilities {
 
         }
 
+        final ProxyKey key = new ProxyKey(superclass, interfaces, delegatingLoader);
+        
         return AccessController.doPrivileged(new PrivilegedAction<T>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public T run() {
-                synchronized (proxyCreationLock) {
-                    ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
-                    ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
-                        
-                        @Override
-                        public ClassLoader get(ProxyFactory arg0) {
-                            return delegatingLoader;
-                        }
-                    };
-                    
-                    try {
-                        ProxyFactory proxyFactory = new ProxyFactory();
-                        proxyFactory.setInterfaces(interfaces);
-                        proxyFactory.setSuperclass(superclass);
-
-                        Class<?> proxyClass = proxyFactory.createClass();
+                Class<?> proxyClass = getProxyClass(key);
 
-                        try {
-                            T proxy = (T) proxyClass.newInstance();
+                try {
+                    T proxy = (T) proxyClass.newInstance();
 
-                            ((ProxyObject) proxy).setHandler(callback);
+                    ((ProxyObject) proxy).setHandler(callback);
 
-                            return proxy;
-                        } catch (Exception e1) {
-                            throw new RuntimeException(e1);
-                        }
-                    }
-                    finally {
-                        ProxyFactory.classLoaderProvider = originalProvider;
-                    }
+                    return proxy;
+                } catch (Exception e1) {
+                    throw new RuntimeException(e1);
                 }
             }
 
@@ -191,6 +194,33 @@ public class ProxyUtilities {
 
     }
     
+    /**
+     * Gets the proxy class for the given key, generating it if this
+     * is the first time it has been asked for.  Generation is only
+     * serialized per delegating loader, so that classes for different
+     * loaders can be generated at the same time.  Must be called
+     * with privileges
+     */
+    private Class<?> getProxyClass(ProxyKey key) {
+        Class<?> retVal = proxyClasses.get(key);
+        if (retVal != null) return retVal;
+        
+        synchronized (key.loader) {
+            retVal = proxyClasses.get(key);
+            if (retVal != null) return retVal;
+            
+            ProxyFactory proxyFactory = new DelegatingProxyFactory(key.loader);
+            proxyFactory.setInterfaces(key.interfaces);
+            proxyFactory.setSuperclass(key.superclass);
+
+            retVal = proxyFactory.createClass();
+            
+            proxyClasses.put(key, retVal);
+        }
+        
+        return retVal;
+    }
+    
     @SuppressWarnings("unchecked")
     public <T> T generateProxy(Class<?> requestedClass,
             ServiceLocatorImpl locator,
@@ -217,7 +247,7 @@ public class ProxyUtilities {
         try {
             proxy = (T) secureCreate(proxyClass,
                 iFaces,
-                new MethodInterceptorImpl(locator, root, handle, injectee),
+                new MethodInterceptorImpl(locator, this, root, handle, injectee),
                 isInterface, locator);
         }
         catch (Throwable th) {
@@ -240,9 +270,107 @@ public class ProxyUtilities {
         return proxy;
     }
     
+    /**
+     * Gets the compiled dispatch of the given method, compiling it if
+     * this is the first time it has been asked for
+     * 
+     * @param method The method called on a proxy
+     * @return The compiled call of the method, or null if the method
+     * cannot be compiled and must be called with reflection
+     */
+    /* package */ CompiledInjector getCompiledCall(Method method) {
+        CompiledInjector retVal = compiledCalls.get(method);
+        if (retVal == null) {
+            retVal = compileCall(method);
+            
+            CompiledInjector existing = compiledCalls.putIfAbsent(method, retVal);
+            if (existing != null) retVal = existing;
+        }
+        
+        return (retVal == NOT_COMPILED) ? null : retVal;
+    }
+    
+    private CompiledInjector compileCall(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        
+        // Classes of the bootstrap loader (like Object) cannot be the
+        // parent of the generated loader
+        if (declaringClass.getClassLoader() == null) return NOT_COMPILED;
+        
+        CompiledInjector retVal;
+        synchronized (callGenerators) {
+            InjectorGenerator generator = callGenerators.get(declaringClass);
+            if (generator == null) {
+                generator = new InjectorGenerator(declaringClass);
+                callGenerators.put(declaringClass, generator);
+            }
+            
+            retVal = generator.compileCall(method);
+        }
+        
+        return (retVal == null) ? NOT_COMPILED : retVal;
+    }
+    
     public void releaseCache() {
-        synchronized (superClassToDelegator) {
-            superClassToDelegator.clear();
+        proxyClasses.clear();
+        compiledCalls.clear();
+        synchronized (callGenerators) {
+            callGenerators.clear();
+        }
+        superClassToDelegator.clear();
+    }
+    
+    /**
+     * Defines its classes in the given loader rather than going through
+     * the static {@link ProxyFactory#classLoaderProvider}, which would have
+     * to be swapped under a global lock
+     */
+    private static class DelegatingProxyFactory extends ProxyFactory {
+        private final DelegatingClassLoader loader;
+        
+        private DelegatingProxyFactory(DelegatingClassLoader loader) {
+            this.loader = loader;
+        }
+        
+        @Override
+        protected ClassLoader getClassLoader() {
+            return loader;
+        }
+    }
+    
+    private static class ProxyKey {
+        private final Class<?> superclass;
+        private final Class<?> interfaces[];
+        private final DelegatingClassLoader loader;
+        private final int hashCode;
+        
+        private ProxyKey(Class<?> superclass, Class<?> interfaces[], DelegatingClassLoader loader) {
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+            this.loader = loader;
+            
+            int hash = superclass.hashCode();
+            hash = 31 * hash + Arrays.hashCode(interfaces);
+            hash = 31 * hash + System.identityHashCode(loader);
+            
+            hashCode = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof ProxyKey)) return false;
+            
+            ProxyKey other = (ProxyKey) o;
+            
+            return (superclass == other.superclass) &&
+                    (loader == other.loader) &&
+                    Arrays.equals(interfaces, other.interfaces);
         }
     }
 }
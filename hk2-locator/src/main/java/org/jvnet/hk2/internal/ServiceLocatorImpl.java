@@ -49,6 +49,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -111,10 +112,10 @@ import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.InjecteeImpl;
-import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
-import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
@@ -145,7 +146,44 @@ public class ServiceLocatorImpl implements ServiceLocator {
             
     });
 
-    private final static int CACHE_SIZE = 20000;
+    private final static String COMPILED_INJECTORS_PROPERTY = "org.jvnet.hk2.properties.compiledInjectors";
+    private final static boolean COMPILED_INJECTORS = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(COMPILED_INJECTORS_PROPERTY, "false"));
+        }
+        
+    });
+    
+    private final static String COMPILED_PROXIES_PROPERTY = "org.jvnet.hk2.properties.compiledProxies";
+    private final static boolean COMPILED_PROXIES = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(COMPILED_PROXIES_PROPERTY, "false"));
+        }
+        
+    });
+    
+    private final static String CACHE_SIZE_PROPERTY = "org.jvnet.hk2.properties.serviceCache.maximumSize";
+    private final static int CACHE_SIZE = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        @Override
+        public Integer run() {
+            return Integer.getInteger(CACHE_SIZE_PROPERTY, 20000);
+        }
+        
+    });
+    
+    private final static String CACHE_SEGMENTS_PROPERTY = "org.jvnet.hk2.properties.serviceCache.segments";
+    private final static int CACHE_SEGMENTS = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        @Override
+        public Integer run() {
+            return Integer.getInteger(CACHE_SEGMENTS_PROPERTY, 1);
+        }
+        
+    });
+    
     private final static Object sLock = new Object();
     private static long currentLocatorId = 0L;
 
@@ -160,6 +198,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private final long id;
     private final ServiceLocatorImpl parent;
     private volatile boolean neutralContextClassLoader = true;
+    private volatile boolean compiledInjectors = COMPILED_INJECTORS;
+    private volatile boolean compiledProxies = COMPILED_PROXIES;
     private final ClassReflectionHelper classReflectionHelper = new ClassReflectionHelperImpl();
     private final PerLocatorUtilities perLocatorUtilities = new PerLocatorUtilities(this);
 
@@ -168,9 +208,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
             new HashMap<String, IndexedListData>();
     private final HashMap<String, IndexedListData> descriptorsByName =
             new HashMap<String, IndexedListData>();
+    
+    // The index read by lookups, republished under the write lock whenever
+    // the mutable indexes above change.  The changed sets are guarded by the write lock
+    private volatile DescriptorIndex descriptorIndex = DescriptorIndex.EMPTY_INDEX;
+    private final HashSet<String> changedContracts = new HashSet<String>();
+    private final HashSet<String> changedNames = new HashSet<String>();
+    
     private final Context<Singleton> singletonContext = new SingletonContext(this);
     private final Context<PerLookup> perLookupContext = new PerLookupContext();
-    private final LinkedHashSet<ValidationService> allValidators =
+    // Copy on write, read without the lock during lookups
+    private volatile LinkedHashSet<ValidationService> allValidators =
             new LinkedHashSet<ValidationService>();
     private final LinkedList<ErrorService> errorHandlers =
             new LinkedList<ErrorService>();
@@ -209,6 +257,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
         
     });
 
+    // Incremented whenever the set of injection resolvers changes
+    private volatile int injectionResolverGeneration = 0;
+    private volatile int interceptionServiceGeneration = 0;
+    // Incremented with the write lock held whenever the results of lookups may have changed
+    private volatile long configurationGeneration = 0L;
+
     private ServiceLocatorState state = ServiceLocatorState.RUNNING;
 
     private static long getAndIncrementLocatorId() {
@@ -240,7 +294,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
     
     /**
-     * Must have read lock held
+     * May be called with or without the lock held
      * 
      * @param vi The non-null validation
      * @return
@@ -250,7 +304,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             return vs.getValidator().validate(vi);
         }
         catch (Throwable th) {
-            List<ErrorService> localErrorServices = new LinkedList<ErrorService>(errorHandlers);
+            List<ErrorService> localErrorServices = getErrorHandlers();
             
             MultiException useException;
             if (th instanceof MultiException) {
@@ -281,7 +335,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     /**
-     * Must be called under lock
+     * May be called with or without the lock held
      *
      * @param descriptor The descriptor to validate
      * @param onBehalfOf The fella who is being validated (or null)
@@ -307,70 +361,47 @@ public class ServiceLocatorImpl implements ServiceLocator {
             boolean getLocals) {
         if (filter == null) throw new IllegalArgumentException("filter is null");
 
-        LinkedList<SystemDescriptor<?>> retVal;
-        rLock.lock();
-        try {
-            Collection<SystemDescriptor<?>> sortMeOut;
-            if (filter instanceof IndexedFilter) {
-                IndexedFilter df = (IndexedFilter) filter;
+        // No lock is needed, the index is immutable and is replaced on every change
+        final DescriptorIndex index = descriptorIndex;
 
-                if (df.getName() != null) {
-                    Collection<SystemDescriptor<?>> scopedByName;
+        SystemDescriptor<?> sortMeOut[];
+        String requiredContract = null;
+        if (filter instanceof IndexedFilter) {
+            IndexedFilter df = (IndexedFilter) filter;
 
-                    String name = df.getName();
+            if (df.getName() != null) {
+                sortMeOut = index.getByName(df.getName());
 
-                    IndexedListData ild = descriptorsByName.get(name);
-                    scopedByName = (ild == null) ? null : ild.getSortedList();
-                    if (scopedByName == null) {
-                        scopedByName = Collections.emptyList();
-                    }
-
-                    if (df.getAdvertisedContract() != null) {
-                        sortMeOut = new LinkedList<SystemDescriptor<?>>();
-
-                        for (SystemDescriptor<?> candidate : scopedByName) {
-                            if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
-                                sortMeOut.add(candidate);
-                            }
-                        }
-                    }
-                    else {
-                        sortMeOut = scopedByName;
-                    }
-                }
-                else if (df.getAdvertisedContract() != null) {
-                    String advertisedContract = df.getAdvertisedContract();
-
-                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                    sortMeOut = (ild == null) ? null : ild.getSortedList();
-                    if (sortMeOut == null) {
-                        sortMeOut = Collections.emptyList();
-
-                    }
-                }
-                else {
-                    sortMeOut = allDescriptors.getSortedList();
-                }
+                // Must be checked for each candidate since the index is by name
+                requiredContract = df.getAdvertisedContract();
+            }
+            else if (df.getAdvertisedContract() != null) {
+                sortMeOut = index.getByContract(df.getAdvertisedContract());
             }
             else {
-                sortMeOut = allDescriptors.getSortedList();
+                sortMeOut = index.getAllDescriptors();
             }
+        }
+        else {
+            sortMeOut = index.getAllDescriptors();
+        }
 
-            retVal = new LinkedList<SystemDescriptor<?>>();
+        List<SystemDescriptor<?>> retVal = new ArrayList<SystemDescriptor<?>>();
 
-            for (SystemDescriptor<?> candidate : sortMeOut) {
-                if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
-                    continue;
-                }
+        for (SystemDescriptor<?> candidate : sortMeOut) {
+            if (requiredContract != null && !candidate.getAdvertisedContracts().contains(requiredContract)) {
+                continue;
+            }
 
-                if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+            if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
+                continue;
+            }
 
-                if (filter.matches(candidate)) {
-                    retVal.add(candidate);
-                }
+            if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+
+            if (filter.matches(candidate)) {
+                retVal.add(candidate);
             }
-        } finally {
-            rLock.unlock();
         }
 
         // Must be done outside of lock, or there can be a deadlock between child and parent
@@ -936,9 +967,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
             allDescriptors.clear();
             descriptorsByAdvertisedContract.clear();
             descriptorsByName.clear();
+            changedContracts.clear();
+            changedNames.clear();
+            descriptorIndex = DescriptorIndex.EMPTY_INDEX;
             allResolvers.clear();
             injecteeToResolverCache.clear();
-            allValidators.clear();
+            allValidators = new LinkedHashSet<ValidationService>();
             errorHandlers.clear();
             igdCache.clear();
             igashCache.clear();
@@ -1173,13 +1207,29 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
 
-    private final WeakCARCache<IgdCacheKey, IgdValue> igdCache = CacheUtilities.createWeakCARCache(
-            new Computable<IgdCacheKey, IgdValue>() {
-                @Override
-                public IgdValue compute(final IgdCacheKey key) {
-                    return igdCacheCompute(key);
-                }
-            }, CACHE_SIZE, false);
+    /**
+     * Indexes the lookup caches by the contract being looked up, so that
+     * a configuration change only releases the entries of the contracts it affects
+     */
+    private final static CacheKeyIndexer<IgdCacheKey> CACHE_KEY_INDEXER = new CacheKeyIndexer<IgdCacheKey>() {
+        @Override
+        public Object getIndexKey(IgdCacheKey key) {
+            return key.cacheKey.getRemovalName();
+        }
+    };
+
+    // Misses are computed in parallel.  They are always computed with the read lock
+    // held while the caches are only released or replaced with the write lock held
+    private volatile SegmentedWeakCARCache<IgdCacheKey, IgdValue> igdCache = createIgdCache(CACHE_SIZE, CACHE_SEGMENTS);
+    
+    private SegmentedWeakCARCache<IgdCacheKey, IgdValue> createIgdCache(int maximumSize, int numberOfSegments) {
+        return CacheUtilities.createSegmentedWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
+            @Override
+            public IgdValue compute(final IgdCacheKey key) {
+                return igdCacheCompute(key);
+            }
+        }, maximumSize, numberOfSegments, false, true, CACHE_KEY_INDEXER);
+    }
     
     private IgdValue igdCacheCompute(final IgdCacheKey key) {
         final List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, key.onBehalfOf, true, false, true);
@@ -1386,31 +1436,34 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 internalGetAllServiceHandles(contractOrImpl, unqualified, true, isIterable, qualifiers);
     }
 
-    final private WeakCARCache<IgdCacheKey, IgdValue> igashCache =
-            CacheUtilities.createWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
-        @Override
-        public IgdValue compute(final IgdCacheKey key) {
-
-            List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
-            ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
-                    candidates,
-                    key.contractOrImpl,
-                    null,
-                    null,
-                    false,
-                    true,
-                    null,
-                    key.filter,
-                    key.qualifiers);
-            NarrowResults results = immediate.getTimelessResults();
-            if (!results.getErrors().isEmpty()) {
-                Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                throw new ComputationErrorException(new IgdValue(results, immediate)) ;
-            }
+    private volatile SegmentedWeakCARCache<IgdCacheKey, IgdValue> igashCache = createIgashCache(CACHE_SIZE, CACHE_SEGMENTS);
+    
+    private SegmentedWeakCARCache<IgdCacheKey, IgdValue> createIgashCache(int maximumSize, int numberOfSegments) {
+        return CacheUtilities.createSegmentedWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
+            @Override
+            public IgdValue compute(final IgdCacheKey key) {
+
+                List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
+                ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
+                        candidates,
+                        key.contractOrImpl,
+                        null,
+                        null,
+                        false,
+                        true,
+                        null,
+                        key.filter,
+                        key.qualifiers);
+                NarrowResults results = immediate.getTimelessResults();
+                if (!results.getErrors().isEmpty()) {
+                    Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
+                    throw new ComputationErrorException(new IgdValue(results, immediate)) ;
+                }
             
-            return new IgdValue(results, immediate);
-        }
-    }, CACHE_SIZE, false);
+                return new IgdValue(results, immediate);
+            }
+        }, maximumSize, numberOfSegments, false, true, CACHE_KEY_INDEXER);
+    }
 
     private List<?> internalGetAllServiceHandles(
             Type contractOrImpl,
@@ -1419,6 +1472,39 @@ public class ServiceLocatorImpl implements ServiceLocator {
             boolean isIterable,
             Annotation... qualifiers)
             throws MultiException {
+        List<ActiveDescriptor<?>> candidates = internalGetAllDescriptors(contractOrImpl, unqualified, isIterable, null, qualifiers);
+        Class<?> rawClass = ReflectionHelper.getRawClass(contractOrImpl);
+
+        LinkedList<Object> retVal = new LinkedList<Object>();
+        for (ActiveDescriptor<?> candidate : candidates) {
+            if (getHandles) {
+                retVal.add(internalGetServiceHandle(candidate, contractOrImpl, null));
+            }
+            else {
+                Object service = Utilities.createService(candidate, null, this, null, rawClass);
+
+                retVal.add(service);
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Gets the validated descriptors that match the given lookup
+     *
+     * @param reusable If not null the first element is set to true if
+     * the returned descriptors may be reused until the configuration
+     * generation changes, which is not the case if there were errors
+     * or if lookups are being validated
+     */
+    private List<ActiveDescriptor<?>> internalGetAllDescriptors(
+            Type contractOrImpl,
+            Unqualified unqualified,
+            boolean isIterable,
+            boolean reusable[],
+            Annotation... qualifiers)
+            throws MultiException {
 
         if (contractOrImpl == null) throw new IllegalArgumentException();
         checkState();
@@ -1482,19 +1568,35 @@ public class ServiceLocatorImpl implements ServiceLocator {
             Utilities.handleErrors(results, currentErrorHandlers);
         }
 
-        LinkedList<Object> retVal = new LinkedList<Object>();
-        for (ActiveDescriptor<?> candidate : immediate.getImmediateResults()) {
-            if (getHandles) {
-                retVal.add(internalGetServiceHandle(candidate, contractOrImpl, null));
-            }
-            else {
-                Object service = Utilities.createService(candidate, null, this, null, rawClass);
-
-                retVal.add(service);
-            }
+        if (reusable != null) {
+            reusable[0] = (currentErrorHandlers == null) && !hasValidators();
         }
 
-        return retVal;
+        return immediate.getImmediateResults();
+    }
+
+    /**
+     * Gets the descriptors that {@link #getAllUnqualifiedServiceHandles(Type, Unqualified, boolean, Annotation...)}
+     * would create handles for
+     *
+     * @param reusable The first element is set to true if the returned
+     * descriptors may be reused until {@link #getConfigurationGeneration()} changes
+     */
+    /* package */ List<ActiveDescriptor<?>> getAllUnqualifiedDescriptors(
+            Type contractOrImpl, Unqualified unqualified, boolean isIterable, boolean reusable[], Annotation... qualifiers)
+            throws MultiException {
+        return internalGetAllDescriptors(contractOrImpl, unqualified, isIterable, reusable, qualifiers);
+    }
+
+    /* package */ <T> ServiceHandleImpl<T> getIterableServiceHandle(ActiveDescriptor<T> descriptor, Type contractOrImpl) {
+        return internalGetServiceHandle(descriptor, contractOrImpl, null);
+    }
+
+    private boolean hasValidators() {
+        if (!allValidators.isEmpty()) return true;
+        if (parent == null) return false;
+
+        return parent.hasValidators();
     }
 
     @Override
@@ -1818,12 +1920,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
                 if (ild == null) continue;
 
+                changedContracts.add(advertisedContract);
                 ild.removeDescriptor(unbind);
                 if (ild.isEmpty()) descriptorsByAdvertisedContract.remove(advertisedContract);
             }
 
             String unbindName = unbind.getName();
             if (unbindName != null) {
+                changedNames.add(unbindName);
                 IndexedListData ild = descriptorsByName.get(unbindName);
                 if (ild != null) {
                     ild.removeDescriptor(unbind);
@@ -1836,7 +1940,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
             if (unbind.getAdvertisedContracts().contains(ValidationService.class.getName())) {
                 ServiceHandle<ValidationService> handle = (ServiceHandle<ValidationService>) getServiceHandle(unbind);
                 ValidationService vs = handle.getService();
-                allValidators.remove(vs);
+                
+                LinkedHashSet<ValidationService> newValidators = new LinkedHashSet<ValidationService>(allValidators);
+                newValidators.remove(vs);
+                allValidators = newValidators;
             }
             
             if (unbind.isReified()) {
@@ -1849,7 +1956,16 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 classReflectionHelper.clean(unbind.getImplementationClass());
             }
         }
-        
+    }
+    
+    /**
+     * Must be called with the write lock held, and only after the
+     * index without the unbinds has been published, since lookups
+     * do not take the lock and must never find a closed descriptor
+     * 
+     * @param unbinds The descriptors that have been removed
+     */
+    private void closeUnbinds(List<SystemDescriptor<?>> unbinds) {
         boolean hasOneUnbind = false;
         for (SystemDescriptor<?> unbind : unbinds) {
             hasOneUnbind = true;
@@ -1887,7 +2003,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     @SuppressWarnings("unchecked")
-    private List<SystemDescriptor<?>> addConfigurationInternal(DynamicConfigurationImpl dci) {
+    private List<SystemDescriptor<?>> addConfigurationInternal(DynamicConfigurationImpl dci,
+            List<SystemDescriptor<?>> unbinds) {
         List<SystemDescriptor<?>> thingsAdded = new LinkedList<SystemDescriptor<?>>();
 
         for (SystemDescriptor<?> sd : dci.getAllDescriptors()) {
@@ -1910,6 +2027,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     descriptorsByAdvertisedContract.put(advertisedContract, ild);
                 }
 
+                changedContracts.add(advertisedContract);
                 ild.addDescriptor(sd);
             }
 
@@ -1921,18 +2039,47 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     descriptorsByName.put(name, ild);
                 }
 
+                changedNames.add(name);
                 ild.addDescriptor(sd);
             }
-
+        }
+        
+        // Removals and additions become visible to lookups at the same time,
+        // and before any of the new services are created below
+        publishDescriptorIndex();
+        
+        closeUnbinds(unbinds);
+        
+        for (SystemDescriptor<?> sd : thingsAdded) {
             if (sd.getAdvertisedContracts().contains(ValidationService.class.getName())) {
                 ServiceHandle<ValidationService> handle = getServiceHandle((ActiveDescriptor<ValidationService>) sd);
                 ValidationService vs = handle.getService();
-                allValidators.add(vs);
+                
+                LinkedHashSet<ValidationService> newValidators = new LinkedHashSet<ValidationService>(allValidators);
+                newValidators.add(vs);
+                allValidators = newValidators;
             }
         }
 
         return thingsAdded;
     }
+    
+    /**
+     * Must be called with the write lock held.  Publishes a new
+     * index containing the changes made since the last publish
+     */
+    private void publishDescriptorIndex() {
+        if (changedContracts.isEmpty() && changedNames.isEmpty()) return;
+        
+        descriptorIndex = descriptorIndex.update(allDescriptors,
+                descriptorsByAdvertisedContract,
+                descriptorsByName,
+                changedContracts,
+                changedNames);
+        
+        changedContracts.clear();
+        changedNames.clear();
+    }
 
     private void reupInjectionResolvers() {
         HashMap<Class<? extends Annotation>, InjectionResolver<?>> newResolvers =
@@ -1959,6 +2106,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             allResolvers.putAll(newResolvers);
         }
         injecteeToResolverCache.clear();
+        injectionResolverGeneration++;
     }
     
     private void reupInterceptionServices() {
@@ -1968,6 +2116,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         interceptionServices.addAll(allInterceptionServices);
         
         hasInterceptionServices = !interceptionServices.isEmpty();
+        interceptionServiceGeneration++;
     }
 
     private void reupErrorHandlers() {
@@ -2016,17 +2165,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
         // This lock must be acquired as reupCache is called on children
         wLock.lock();
         try {
-            for (String affectedContract : affectedContracts) {
-                final String fAffectedContract = affectedContract;
-                final CacheKeyFilter<IgdCacheKey> cacheKeyFilter = new CacheKeyFilter<IgdCacheKey>() {
-                    @Override
-                    public boolean matches(IgdCacheKey key) {
-                        return key.cacheKey.matchesRemovalName(fAffectedContract);
-                    }
-                };
+            configurationGeneration++;
 
-                igdCache.releaseMatching(cacheKeyFilter);
-                igashCache.releaseMatching(cacheKeyFilter);
+            for (String affectedContract : affectedContracts) {
+                igdCache.releaseIndexed(affectedContract);
+                igashCache.releaseIndexed(affectedContract);
             }
         } finally {
             wLock.unlock();
@@ -2119,7 +2262,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
             removeConfigurationInternal(checkData.getUnbinds());
 
-            List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci);
+            List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci, checkData.getUnbinds());
 
             reup(thingsAdded,
                     checkData.getInstanceLifecycleModificationsMade(),
@@ -2323,7 +2466,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             if (requiredType != null) {
                 boolean safe = false;
                 for (Type candidateType : candidate.getContractTypes()) {
-                    if (Utilities.isTypeSafe(requiredType, candidateType)) {
+                    if (perLocatorUtilities.isTypeSafe(requiredType, candidateType)) {
                         safe = true;
                         break;
                     }
@@ -2441,6 +2584,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         wLock.lock();
         try {
             defaultUnqualified = unqualified;
+            configurationGeneration++;
         }
         finally {
             wLock.unlock();
@@ -2625,6 +2769,41 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return injecteeToResolverCache.compute(injectee);  
     }
     
+    /**
+     * Returns a counter that changes whenever a configuration
+     * change to this locator or any of its parents may have
+     * changed the results of lookups
+     *
+     * @return The current configuration generation
+     */
+    /* package */ long getConfigurationGeneration() {
+        return configurationGeneration;
+    }
+
+    /**
+     * Returns a number that changes every time the set of
+     * interception services is changed.  Anything that holds onto
+     * the interception services matching a descriptor can use this
+     * to know when it must find them again
+     * 
+     * @return The current interception service generation
+     */
+    /* package */ int getInterceptionServiceGeneration() {
+        return interceptionServiceGeneration;
+    }
+
+    /**
+     * Returns a number that changes every time the set of
+     * injection resolvers is changed.  Anything that holds onto
+     * the result of getInjectionResolverForInjectee can use this
+     * to know when it must look the resolvers up again
+     * 
+     * @return The current injection resolver generation
+     */
+    /* package */ int getInjectionResolverGeneration() {
+        return injectionResolverGeneration;
+    }
+    
     /* package */ ClassReflectionHelper getClassReflectionHelper() {
         return classReflectionHelper;
     }
@@ -2669,6 +2848,57 @@ public class ServiceLocatorImpl implements ServiceLocator {
         igdCache.clear();
         
     }
+    
+    /* package */ SegmentedWeakCARCache<?, ?> getServiceCache() {
+        return igdCache;
+    }
+    
+    /* package */ void setServiceCacheMaximumSize(int maximumSize) {
+        wLock.lock();
+        try {
+            replaceServiceCaches(maximumSize, igdCache.getNumberOfSegments());
+        }
+        finally {
+            wLock.unlock();
+        }
+    }
+    
+    /* package */ void setServiceCacheNumberOfSegments(int numberOfSegments) {
+        wLock.lock();
+        try {
+            replaceServiceCaches(igdCache.getMaxSize(), numberOfSegments);
+        }
+        finally {
+            wLock.unlock();
+        }
+    }
+    
+    /**
+     * Must have the write lock held
+     */
+    private void replaceServiceCaches(int maximumSize, int numberOfSegments) {
+        SegmentedWeakCARCache<IgdCacheKey, IgdValue> newIgdCache = createIgdCache(maximumSize, numberOfSegments);
+        SegmentedWeakCARCache<IgdCacheKey, IgdValue> newIgashCache = createIgashCache(maximumSize, numberOfSegments);
+        
+        igdCache = newIgdCache;
+        igashCache = newIgashCache;
+    }
+    
+    /* package */ boolean isCompiledInjectors() {
+        return compiledInjectors;
+    }
+    
+    /* package */ void setCompiledInjectors(boolean compiledInjectors) {
+        this.compiledInjectors = compiledInjectors;
+    }
+    
+    /* package */ boolean isCompiledProxies() {
+        return compiledProxies;
+    }
+    
+    /* package */ void setCompiledProxies(boolean compiledProxies) {
+        this.compiledProxies = compiledProxies;
+    }
 
     /* package */ int getReflectionCacheSize() {
         return classReflectionHelper.size();
@@ -2678,6 +2908,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         wLock.lock();
         try {
             classReflectionHelper.dispose();
+            perLocatorUtilities.clearTypeSafetyCache();
         }
         finally {
             wLock.unlock();
@@ -2685,20 +2916,38 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
     
     /* package */ int unsortIndexes(int newRank, SystemDescriptor<?> desc, Set<IndexedListData> myLists) {
+        HashSet<String> affectedContracts = new HashSet<String>(getAllContracts(desc));
+        int retVal;
+        
         wLock.lock();
         try {
-            int retVal = desc.setRankWithLock(newRank);
+            retVal = desc.setRankWithLock(newRank);
             
             for (IndexedListData myList : myLists) {
                 myList.unSort();
             }
             
-            return retVal;
+            // Only the lists the descriptor is in can have changed order
+            changedContracts.addAll(affectedContracts);
+            if (desc.getName() != null) {
+                changedNames.add(desc.getName());
+            }
+            publishDescriptorIndex();
+            
+            reupCache(affectedContracts);
         }
         finally {
             wLock.unlock();
         }
         
+        LinkedList<ServiceLocatorImpl> allMyChildren = new LinkedList<ServiceLocatorImpl>();
+        getAllChildren(allMyChildren);
+        
+        for (ServiceLocatorImpl sli : allMyChildren) {
+            sli.reupCache(affectedContracts);
+        }
+        
+        return retVal;
     }
 
     @Override
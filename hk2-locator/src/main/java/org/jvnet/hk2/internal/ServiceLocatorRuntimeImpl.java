@@ -39,12 +39,18 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.jvnet.hk2.external.runtime.ServiceCacheStatistics;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
@@ -102,6 +108,47 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setServiceCacheMaximumSize(int)
+     */
+    @Override
+    public void setServiceCacheMaximumSize(int maximumSize) {
+        locator.setServiceCacheMaximumSize(maximumSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setServiceCacheNumberOfSegments(int)
+     */
+    @Override
+    public void setServiceCacheNumberOfSegments(int numberOfSegments) {
+        locator.setServiceCacheNumberOfSegments(numberOfSegments);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getServiceCacheStatistics()
+     */
+    @Override
+    public List<ServiceCacheStatistics> getServiceCacheStatistics() {
+        SegmentedWeakCARCache<?, ?> cache = locator.getServiceCache();
+        
+        List<ServiceCacheStatistics> retVal = new ArrayList<ServiceCacheStatistics>(cache.getNumberOfSegments());
+        for (int lcv = 0; lcv < cache.getNumberOfSegments(); lcv++) {
+            WeakCARCache<?, ?> segment = cache.getSegment(lcv);
+            
+            retVal.add(new ServiceCacheStatistics(lcv,
+                    segment.getMaxSize(),
+                    segment.getValueSize(),
+                    segment.getT1Size(),
+                    segment.getT2Size(),
+                    segment.getB1Size(),
+                    segment.getB2Size(),
+                    segment.getHitRate(),
+                    cache.getSegmentEvictions(lcv)));
+        }
+        
+        return retVal;
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getReflectionCacheSize()
      */
@@ -119,4 +166,20 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setCompiledInjectors(boolean)
+     */
+    @Override
+    public void setCompiledInjectors(boolean compiledInjectors) {
+        locator.setCompiledInjectors(compiledInjectors);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setCompiledProxies(boolean)
+     */
+    @Override
+    public void setCompiledProxies(boolean compiledProxies) {
+        locator.setCompiledProxies(compiledProxies);
+    }
+
 }
@@ -455,6 +455,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         this.factoryServiceId = factoryServiceId;
     }
 
+    /* package */ boolean hasInstanceListeners() {
+        return !instanceListeners.isEmpty();
+    }
+
     /* package */ void invokeInstanceListeners(InstanceLifecycleEvent event) {
         for (InstanceLifecycleListener listener : instanceListeners) {
             listener.lifecycleEvent(event);
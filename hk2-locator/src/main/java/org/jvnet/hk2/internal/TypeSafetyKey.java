@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
+
+/**
+ * The key of the type safety cache, which is a required type and
+ * a bean type.  Parameterized types are converted to
+ * {@link ParameterizedTypeImpl} (recursively through their type arguments)
+ * so that a type from the JDK and an equal type built by hand have the
+ * same hashCode and are equal in both directions
+ * 
+ * @author jwells
+ *
+ */
+final class TypeSafetyKey {
+    private final Type requiredType;
+    private final Type beanType;
+    
+    /** Pre-calculated in order to improve hashMap lookups */
+    private final int hashCode;
+    
+    /* package */ TypeSafetyKey(Type requiredType, Type beanType) {
+        this.requiredType = canonicalize(requiredType);
+        this.beanType = canonicalize(beanType);
+        
+        hashCode = (31 * this.requiredType.hashCode()) ^ this.beanType.hashCode();
+    }
+    
+    /* package */ Type getRequiredType() {
+        return requiredType;
+    }
+    
+    /* package */ Type getBeanType() {
+        return beanType;
+    }
+    
+    /**
+     * Returns a type equal to the given type in which every parameterized
+     * type is a {@link ParameterizedTypeImpl}.  The type itself is returned
+     * if it has no parameterized types that need to be replaced
+     * 
+     * @param type The non-null type to canonicalize
+     * @return The canonical form of the type
+     */
+    private static Type canonicalize(Type type) {
+        if (!(type instanceof ParameterizedType)) return type;
+        
+        ParameterizedType pt = (ParameterizedType) type;
+        Type actuals[] = pt.getActualTypeArguments();
+        
+        Type canonicalActuals[] = null;
+        for (int lcv = 0; lcv < actuals.length; lcv++) {
+            Type canonical = canonicalize(actuals[lcv]);
+            if (canonical != actuals[lcv] && canonicalActuals == null) {
+                canonicalActuals = new Type[actuals.length];
+                System.arraycopy(actuals, 0, canonicalActuals, 0, lcv);
+            }
+            
+            if (canonicalActuals != null) canonicalActuals[lcv] = canonical;
+        }
+        
+        if (canonicalActuals == null) {
+            if (type instanceof ParameterizedTypeImpl) return type;
+            
+            // The actuals of a JDK type are copied on every call
+            canonicalActuals = actuals;
+        }
+        
+        return new ParameterizedTypeImpl(pt.getRawType(), canonicalActuals);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof TypeSafetyKey)) return false;
+        
+        TypeSafetyKey other = (TypeSafetyKey) o;
+        if (hashCode != other.hashCode) return false;
+        
+        return requiredType.equals(other.requiredType) && beanType.equals(other.beanType);
+    }
+    
+    @Override
+    public String toString() {
+        return "TypeSafetyKey(" + requiredType + "," + beanType + "," + System.identityHashCode(this) + ")";
+    }
+
+}
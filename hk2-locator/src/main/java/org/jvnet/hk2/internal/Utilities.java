@@ -145,6 +145,9 @@ public class Utilities {
         });
     }
     
+    /** Shared argument array for no-argument lifecycle invocations */
+    final static Object[] NO_ARGS = new Object[0];
+    
     private final static AnnotationInformation DEFAULT_ANNOTATION_INFORMATION = new AnnotationInformation(
             Collections.<Annotation>emptySet(),
             false,
@@ -883,7 +886,7 @@ public class Utilities {
         if (preDestroy == null) return;
 
         try {
-            ReflectionHelper.invoke(preMe, preDestroy, new Object[0], locator.getNeutralContextClassLoader());
+            ReflectionHelper.invoke(preMe, preDestroy, NO_ARGS, locator.getNeutralContextClassLoader());
         } catch (Throwable e) {
             throw new MultiException(e);
         }
@@ -913,7 +916,7 @@ public class Utilities {
         if (postConstruct == null) return;
 
         try {
-            ReflectionHelper.invoke(postMe, postConstruct, new Object[0], locator.getNeutralContextClassLoader());
+            ReflectionHelper.invoke(postMe, postConstruct, NO_ARGS, locator.getNeutralContextClassLoader());
         } catch (Throwable e) {
             throw new MultiException(e);
         }
@@ -2172,51 +2175,89 @@ public class Utilities {
         
     };
     
-    /* package */ static Interceptors getAllInterceptors(
+    /**
+     * Gets the interception services whose filter matches the given descriptor
+     * 
+     * @param impl The locator whose interception services should be checked
+     * @param descriptor The descriptor of the service being created
+     * @param clazz The implementation class of the service being created
+     * @return The interception services that may intercept the service, in
+     * the order they should be asked for interceptors.  Will not return null
+     */
+    /* package */ static List<InterceptionService> getMatchingInterceptionServices(
             ServiceLocatorImpl impl,
             ActiveDescriptor<?> descriptor,
-            Class<?> clazz,
-            Constructor<?> c) {
-        if (descriptor == null || clazz == null || isFinal(clazz)) return EMTPY_INTERCEPTORS;
-        ClassReflectionHelper crh = impl.getClassReflectionHelper();
+            Class<?> clazz) {
+        if (descriptor == null || clazz == null || isFinal(clazz)) return Collections.emptyList();
         
         List<InterceptionService> interceptionServices = impl.getInterceptionServices();
-        if (interceptionServices == null || interceptionServices.isEmpty()) return EMTPY_INTERCEPTORS;
+        if (interceptionServices == null || interceptionServices.isEmpty()) return Collections.emptyList();
         
         // Make sure it is not one of the special services
         for (String contract : descriptor.getAdvertisedContracts()) {
-            if (NOT_INTERCEPTED.contains(contract)) return EMTPY_INTERCEPTORS;
+            if (NOT_INTERCEPTED.contains(contract)) return Collections.emptyList();
         }
         
+        List<InterceptionService> retVal = null;
+        for (InterceptionService interceptionService : interceptionServices) {
+            Filter filter = interceptionService.getDescriptorFilter();
+            if (BuilderHelper.filterMatches(descriptor, filter)) {
+                if (retVal == null) retVal = new ArrayList<InterceptionService>(interceptionServices.size());
+                
+                retVal.add(interceptionService);
+            }
+        }
+        
+        if (retVal == null) return Collections.emptyList();
+        return retVal;
+    }
+    
+    /**
+     * Asks the given interception services for the interceptors of a new
+     * instance of the given class.  The interception services are asked every
+     * time, since they are free to return new interceptors for every instance
+     * 
+     * @param impl The locator creating the service
+     * @param interceptionServices The interception services that match the
+     * service, as returned by {@link #getMatchingInterceptionServices(ServiceLocatorImpl, ActiveDescriptor, Class)}
+     * @param clazz The implementation class of the service being created
+     * @param c The constructor that will be used to create the service
+     * @return The interceptors of the new instance
+     */
+    /* package */ static Interceptors getAllInterceptors(
+            ServiceLocatorImpl impl,
+            List<InterceptionService> interceptionServices,
+            Class<?> clazz,
+            Constructor<?> c) {
+        if (interceptionServices.isEmpty()) return EMTPY_INTERCEPTORS;
+        ClassReflectionHelper crh = impl.getClassReflectionHelper();
+        
         final LinkedHashMap<Method, List<MethodInterceptor>> retVal =
                 new LinkedHashMap<Method, List<MethodInterceptor>>();
         final ArrayList<ConstructorInterceptor> cRetVal = new ArrayList<ConstructorInterceptor>();
         
         for (InterceptionService interceptionService : interceptionServices) {
-            Filter filter = interceptionService.getDescriptorFilter();
-            if (BuilderHelper.filterMatches(descriptor, filter)) {
-                for (MethodWrapper methodWrapper : crh.getAllMethods(clazz)) {
-                    Method method = methodWrapper.getMethod();
-                    
-                    if (isFinal(method)) continue;
-                    
-                    List<MethodInterceptor> interceptors = interceptionService.getMethodInterceptors(method);
-                    if (interceptors != null && !interceptors.isEmpty()) {
-                        List<MethodInterceptor> addToMe = retVal.get(method);
-                        if (addToMe == null) {
-                            addToMe = new ArrayList<MethodInterceptor>();
-                            retVal.put(method, addToMe);
-                        }
-                        
-                        addToMe.addAll(interceptors);
-                    }
-                }
+            for (MethodWrapper methodWrapper : crh.getAllMethods(clazz)) {
+                Method method = methodWrapper.getMethod();
+                
+                if (isFinal(method)) continue;
                 
-                List<ConstructorInterceptor> cInterceptors = interceptionService.getConstructorInterceptors(c);
-                if (cInterceptors != null && !cInterceptors.isEmpty()) {
-                    cRetVal.addAll(cInterceptors);
+                List<MethodInterceptor> interceptors = interceptionService.getMethodInterceptors(method);
+                if (interceptors != null && !interceptors.isEmpty()) {
+                    List<MethodInterceptor> addToMe = retVal.get(method);
+                    if (addToMe == null) {
+                        addToMe = new ArrayList<MethodInterceptor>();
+                        retVal.put(method, addToMe);
+                    }
+                    
+                    addToMe.addAll(interceptors);
                 }
             }
+            
+            List<ConstructorInterceptor> cInterceptors = interceptionService.getConstructorInterceptors(c);
+            if (cInterceptors != null && !cInterceptors.isEmpty()) {
+                cRetVal.addAll(cInterceptors);
+            }
         }
         
         return new Interceptors() {
@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.compiledinjector;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+
+/**
+ * Tests for compiled injectors
+ * 
+ * @author jwells
+ *
+ */
+public class CompiledInjectorTest {
+    private final static String INJECTOR_SUFFIX = "$$Hk2Injector";
+    
+    /** More than the number of creations needed before a class is compiled */
+    private final static int CREATIONS = 20;
+    
+    private static ServiceLocator createLocator(boolean compiled, Class<?>... classes) {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(classes);
+        locator.getService(ServiceLocatorRuntimeBean.class).setCompiledInjectors(compiled);
+        
+        return locator;
+    }
+    
+    /**
+     * Services are compiled after being created a number of times,
+     * and are still fully injected once compiled, including
+     * the private field which is still set with reflection
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCompiledAfterRepeatedCreation() {
+        ServiceLocator locator = createLocator(true, Dependency.class, CompiledService.class);
+        
+        CompiledService first = locator.getService(CompiledService.class);
+        Assert.assertTrue(first.isFullyInjected());
+        Assert.assertFalse(first.getConstructorCaller(), first.getConstructorCaller().contains(INJECTOR_SUFFIX));
+        
+        CompiledService last = null;
+        for (int lcv = 0; lcv < CREATIONS; lcv++) {
+            last = locator.getService(CompiledService.class);
+            Assert.assertTrue(last.isFullyInjected());
+        }
+        
+        Assert.assertTrue(last.getConstructorCaller(), last.getConstructorCaller().contains(INJECTOR_SUFFIX));
+    }
+    
+    /**
+     * Services are never compiled unless compiled injectors are enabled
+     */
+    @Test // @org.junit.Ignore
+    public void testNotCompiledWhenDisabled() {
+        ServiceLocator locator = createLocator(false, Dependency.class, CompiledService.class);
+        
+        for (int lcv = 0; lcv < CREATIONS; lcv++) {
+            CompiledService service = locator.getService(CompiledService.class);
+            
+            Assert.assertTrue(service.isFullyInjected());
+            Assert.assertFalse(service.getConstructorCaller(), service.getConstructorCaller().contains(INJECTOR_SUFFIX));
+        }
+    }
+    
+    /**
+     * The compiled pre destroy method is called
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledPreDestroy() {
+        ServiceLocator locator = createLocator(true, Dependency.class, CompiledService.class);
+        
+        for (int lcv = 0; lcv < CREATIONS; lcv++) {
+            ServiceHandle<CompiledService> handle = locator.getServiceHandle(CompiledService.class);
+            CompiledService service = handle.getService();
+            
+            handle.destroy();
+            
+            Assert.assertTrue(service.isPreDestroyCalled());
+        }
+    }
+    
+    /**
+     * Classes that are not public are created with reflection
+     */
+    @Test // @org.junit.Ignore
+    public void testPackageClassUsesReflection() {
+        ServiceLocator locator = createLocator(true, Dependency.class, PackageService.class);
+        
+        for (int lcv = 0; lcv < CREATIONS; lcv++) {
+            PackageService service = locator.getService(PackageService.class);
+            
+            Assert.assertNotNull(service.dependency);
+            Assert.assertFalse(service.getConstructorCaller(), service.getConstructorCaller().contains(INJECTOR_SUFFIX));
+        }
+    }
+    
+    /**
+     * Exceptions from compiled constructors are reported
+     * the same way as exceptions from reflection
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledConstructorFailure() {
+        ServiceLocator locator = createLocator(true, FailingService.class);
+        
+        for (int lcv = 0; lcv < CREATIONS; lcv++) {
+            Assert.assertNotNull(locator.getService(FailingService.class));
+        }
+        
+        FailingService.setFail(true);
+        try {
+            locator.getService(FailingService.class);
+            Assert.fail("Creation should have failed");
+        }
+        catch (MultiException me) {
+            boolean found = false;
+            for (Throwable th : me.getErrors()) {
+                if (th instanceof IllegalStateException && FailingService.FAILURE_MESSAGE.equals(th.getMessage())) {
+                    found = true;
+                }
+            }
+            
+            Assert.assertTrue(me.toString(), found);
+        }
+        finally {
+            FailingService.setFail(false);
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.descriptorindex;
+
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the immutable descriptor index used by lookups
+ * 
+ * @author jwells
+ *
+ */
+public class DescriptorIndexTest {
+    private final static String SHARED_NAME = "Shared";
+    
+    /**
+     * Changing the rank of a descriptor must be reflected
+     * in the order of subsequent lookups
+     */
+    @Test
+    public void testRankChangeReordersLookups() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(ServiceA.class, ServiceB.class);
+        
+        List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(
+                BuilderHelper.createContractFilter(IndexedContract.class.getName()));
+        Assert.assertEquals(2, descriptors.size());
+        
+        ActiveDescriptor<?> last = descriptors.get(1);
+        last.setRanking(10);
+        
+        descriptors = locator.getDescriptors(
+                BuilderHelper.createContractFilter(IndexedContract.class.getName()));
+        Assert.assertEquals(2, descriptors.size());
+        Assert.assertEquals(last, descriptors.get(0));
+        
+        // And the all-descriptors index
+        descriptors = locator.getDescriptors(BuilderHelper.allFilter());
+        ActiveDescriptor<?> firstIndexed = null;
+        for (ActiveDescriptor<?> descriptor : descriptors) {
+            if (descriptor.getAdvertisedContracts().contains(IndexedContract.class.getName())) {
+                firstIndexed = descriptor;
+                break;
+            }
+        }
+        
+        Assert.assertEquals(last, firstIndexed);
+    }
+    
+    /**
+     * Changing the rank of a descriptor must be reflected in
+     * lookups that have already been cached, and in the name index
+     */
+    @Test
+    public void testRankChangeReordersCachedLookups() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(ServiceA.class,
+                ServiceB.class,
+                NamedUnrelatedService.class);
+        
+        IndexedContract best = locator.getService(IndexedContract.class);
+        Assert.assertNotNull(best);
+        
+        ActiveDescriptor<?> other = null;
+        for (ActiveDescriptor<?> descriptor : locator.getDescriptors(
+                BuilderHelper.createContractFilter(IndexedContract.class.getName()))) {
+            if (!descriptor.getImplementation().equals(best.getClass().getName())) {
+                other = descriptor;
+            }
+        }
+        Assert.assertNotNull(other);
+        
+        other.setRanking(10);
+        
+        Assert.assertEquals(other.getImplementation(), locator.getService(IndexedContract.class).getClass().getName());
+        Assert.assertEquals(other.getImplementation(),
+                locator.getAllServices(IndexedContract.class).get(0).getClass().getName());
+        
+        ActiveDescriptor<?> unrelated = locator.getBestDescriptor(
+                BuilderHelper.createContractFilter(NamedUnrelatedService.class.getName()));
+        unrelated.setRanking(20);
+        
+        Assert.assertEquals(unrelated, locator.getDescriptors(
+                BuilderHelper.createNameFilter(SHARED_NAME)).get(0));
+    }
+    
+    /**
+     * A list returned from getDescriptors is not modified by
+     * subsequent changes to the locator
+     */
+    @Test
+    public void testReturnedListIsNotModifiedByLaterCommits() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(ServiceA.class);
+        
+        Filter filter = BuilderHelper.createContractFilter(IndexedContract.class.getName());
+        
+        List<ActiveDescriptor<?>> before = locator.getDescriptors(filter);
+        Assert.assertEquals(1, before.size());
+        
+        ServiceLocatorUtilities.addClasses(locator, ServiceB.class);
+        
+        Assert.assertEquals(1, before.size());
+        Assert.assertEquals(2, locator.getDescriptors(filter).size());
+        
+        ServiceLocatorUtilities.removeFilter(locator, filter);
+        
+        Assert.assertEquals(1, before.size());
+        Assert.assertEquals(0, locator.getDescriptors(filter).size());
+    }
+    
+    /**
+     * Ensures a lookup by name and contract only returns the
+     * services with that name that also advertise the contract
+     */
+    @Test
+    public void testNameAndContractLookup() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(ServiceA.class,
+                ServiceB.class,
+                NamedUnrelatedService.class);
+        
+        List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(
+                BuilderHelper.createNameFilter(SHARED_NAME));
+        Assert.assertEquals(2, descriptors.size());
+        
+        descriptors = locator.getDescriptors(
+                BuilderHelper.createNameAndContractFilter(IndexedContract.class.getName(), SHARED_NAME));
+        Assert.assertEquals(1, descriptors.size());
+        Assert.assertEquals(ServiceB.class.getName(), descriptors.get(0).getImplementation());
+    }
+    
+    /**
+     * Filters are no longer called with the locator lock held, and
+     * hence a filter can modify the locator it is filtering
+     */
+    @Test(timeout=20000)
+    public void testFilterMayModifyLocator() {
+        final ServiceLocator locator = LocatorHelper.getServiceLocator(ServiceA.class);
+        
+        List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(new Filter() {
+            private boolean added = false;
+
+            @Override
+            public boolean matches(Descriptor d) {
+                if (!added) {
+                    added = true;
+                    ServiceLocatorUtilities.addClasses(locator, ServiceB.class);
+                }
+                
+                return d.getAdvertisedContracts().contains(IndexedContract.class.getName());
+            }
+            
+        });
+        
+        // The lookup sees the index as it was when the lookup started
+        Assert.assertEquals(1, descriptors.size());
+        Assert.assertEquals(2, locator.getDescriptors(
+                BuilderHelper.createContractFilter(IndexedContract.class.getName())).size());
+    }
+    
+    @Singleton
+    private static class ServiceA implements IndexedContract {
+    }
+    
+    @Singleton @Named(SHARED_NAME)
+    private static class ServiceB implements IndexedContract {
+    }
+    
+    @Singleton @Named(SHARED_NAME)
+    private static class NamedUnrelatedService {
+    }
+
+}
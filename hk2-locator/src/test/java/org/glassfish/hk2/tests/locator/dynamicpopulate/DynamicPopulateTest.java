@@ -45,10 +45,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ConfigurablePopulator;
 import org.glassfish.hk2.api.DescriptorFileFinder;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.MultiException;
@@ -56,6 +61,7 @@ import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.DuplicatePostProcessor;
@@ -63,6 +69,7 @@ import org.glassfish.hk2.utilities.DuplicatePostProcessorMode;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hk2.internal.LazyDescriptorImpl;
 
 /**
  * @author jwells
@@ -83,6 +90,20 @@ public class DynamicPopulateTest {
     private final static String DUMMY_IMPL_9 = "com.acme.dummy.Dummy9";
     private final static String DUMMY_IMPL_10 = "com.acme.dummy.Dummy10";
     private final static String DUMMY_IMPL_11 = "com.acme.dummy.Dummy11";
+    private final static String DUMMY_IMPL_12 = "com.acme.dummy.Dummy12";
+    private final static String DUMMY_IMPL_13 = "com.acme.dummy.Dummy13";
+    private final static String DUMMY_IMPL_14 = "com.acme.dummy.Dummy14";
+    private final static String DUMMY_IMPL_15 = "com.acme.dummy.Dummy15";
+    private final static String DUMMY_IMPL_16 = "com.acme.dummy.Dummy16";
+    
+    private final static String PARALLEL_CONTRACT = "com.acme.parallel.Parallel";
+    private final static String PARALLEL_FAILING_CONTRACT = "com.acme.parallel.ParallelFailing";
+    private final static String PARALLEL_FAILING_IMPL = "com.acme.parallel.Failing";
+    private final static String PARALLEL_LOADER_CONTRACT = "com.acme.parallel.ParallelLoader";
+    private final static String PARALLEL_DUPLICATE_CONTRACT = "com.acme.parallel.ParallelDuplicate";
+    private final static String PARALLEL_DUPLICATE_IMPL = "com.acme.parallel.Duplicate";
+    private final static int NUM_PARALLEL_FILES = 16;
+    private final static int NUM_PARALLEL_RECORDS = 3;
     
     private final static String KEY = "key";
     private final static String VALUE = "value";
@@ -528,6 +549,354 @@ public class DynamicPopulateTest {
         Assert.assertEquals(1, lucky11list.size());
     }
     
+    /**
+     * Tests that a binary descriptor file is read by the populator
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryPopulation() throws IOException {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(DUMMY_IMPL_12);
+        di.addAdvertisedContract(DUMMY_IMPL_12);
+        di.setName(DUMMY_IMPL_12);
+        di.addMetadata(KEY, VALUE);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(baos, Collections.singletonList(di));
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Populator populator = dcs.getPopulator();
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        populator.populate(new MyDescriptorFinder(bais), new MetadataPostProcessor2());
+        
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL_12));
+        Assert.assertNotNull(ad);
+        
+        Assert.assertEquals(DUMMY_IMPL_12, ad.getImplementation());
+        Assert.assertEquals(DUMMY_IMPL_12, ad.getName());
+        
+        List<String> values = ad.getMetadata().get(KEY);
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(VALUE, values.get(0));
+        Assert.assertEquals(VALUE2, values.get(1));
+    }
+    
+    private static void checkLazy(String implementation, boolean binary) throws IOException {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(implementation);
+        di.addAdvertisedContract(implementation);
+        di.setName(implementation);
+        di.setRanking(5);
+        di.addMetadata(KEY, VALUE);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (binary) {
+            BinaryDescriptorFile.write(baos, Collections.singletonList(di));
+        }
+        else {
+            PrintWriter pw = new PrintWriter(baos);
+            di.writeObject(pw);
+            pw.close();
+        }
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        CapturingPostProcessor capturer = new CapturingPostProcessor();
+        
+        populator.setLazy(true);
+        try {
+            populator.populate(new MyDescriptorFinder(new ByteArrayInputStream(baos.toByteArray())), capturer);
+        }
+        finally {
+            populator.setLazy(false);
+        }
+        
+        Assert.assertTrue(capturer.captured instanceof LazyDescriptorImpl);
+        LazyDescriptorImpl lazy = (LazyDescriptorImpl) capturer.captured;
+        
+        // Looking it up by contract and name does not need the metadata
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createNameAndContractFilter(
+                implementation, implementation));
+        Assert.assertNotNull(ad);
+        Assert.assertEquals(implementation, ad.getImplementation());
+        Assert.assertEquals(5, ad.getRanking());
+        Assert.assertFalse(lazy.isMetadataLoaded());
+        
+        List<String> values = ad.getMetadata().get(KEY);
+        Assert.assertTrue(lazy.isMetadataLoaded());
+        
+        Assert.assertEquals(1, values.size());
+        Assert.assertEquals(VALUE, values.get(0));
+        
+        Assert.assertEquals(di, lazy);
+    }
+    
+    /**
+     * Tests that the metadata of a text descriptor is only
+     * parsed when it is asked for in lazy mode
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testLazyTextPopulation() throws IOException {
+        checkLazy(DUMMY_IMPL_13, false);
+    }
+    
+    /**
+     * Tests that the metadata of a binary descriptor is only
+     * read when it is asked for in lazy mode
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testLazyBinaryPopulation() throws IOException {
+        checkLazy(DUMMY_IMPL_14, true);
+    }
+    
+    /**
+     * Tests that the strict duplicate post processor only reads the
+     * metadata of lazy descriptors that match another descriptor in
+     * every other field
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testLazyStrictDuplicates() throws IOException {
+        List<DescriptorImpl> written = new LinkedList<DescriptorImpl>();
+        for (String implementation : new String[] { DUMMY_IMPL_15, DUMMY_IMPL_16, DUMMY_IMPL_16 }) {
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation(implementation);
+            di.addAdvertisedContract(implementation);
+            di.addMetadata(KEY, VALUE);
+            
+            written.add(di);
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BinaryDescriptorFile.write(baos, written);
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        CapturingPostProcessor capturer = new CapturingPostProcessor();
+        
+        List<ActiveDescriptor<?>> added;
+        populator.setLazy(true);
+        try {
+            added = populator.populate(new MyDescriptorFinder(new ByteArrayInputStream(baos.toByteArray())),
+                    capturer,
+                    new DuplicatePostProcessor(DuplicatePostProcessorMode.STRICT));
+        }
+        finally {
+            populator.setLazy(false);
+        }
+        
+        Assert.assertEquals(2, added.size());
+        Assert.assertEquals(3, capturer.all.size());
+        
+        // Nothing else looks like DUMMY_IMPL_15
+        Assert.assertFalse(((LazyDescriptorImpl) capturer.all.get(0)).isMetadataLoaded());
+        
+        // The metadata of the two DUMMY_IMPL_16 had to be compared
+        Assert.assertTrue(((LazyDescriptorImpl) capturer.all.get(2)).isMetadataLoaded());
+    }
+    
+    private static List<InputStream> createParallelFiles(String contract, String failingImpl) throws IOException {
+        List<InputStream> retVal = new LinkedList<InputStream>();
+        
+        for (int file = 0; file < NUM_PARALLEL_FILES; file++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PrintWriter pw = new PrintWriter(baos);
+            
+            for (int record = 0; record < NUM_PARALLEL_RECORDS; record++) {
+                String impl = ((failingImpl != null) && (file == NUM_PARALLEL_FILES / 2) && (record == 1)) ?
+                        failingImpl :
+                        contract + "_" + file + "_" + record ;
+                
+                DescriptorImpl di = new DescriptorImpl();
+                di.setImplementation(impl);
+                di.addAdvertisedContract(contract);
+                di.setName(impl);
+                
+                di.writeObject(pw);
+            }
+            
+            pw.close();
+            
+            retVal.add(new ByteArrayInputStream(baos.toByteArray()));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Tests that files read in parallel are bound in file
+     * order and then record order
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulation() throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor();
+        
+        populator.setParallel(true);
+        populator.setExecutor(executor);
+        List<ActiveDescriptor<?>> added;
+        try {
+            added = populator.populate(new ListDescriptorFinder(createParallelFiles(PARALLEL_CONTRACT, null)));
+        }
+        finally {
+            populator.setParallel(false);
+            populator.setExecutor(null);
+        }
+        
+        Assert.assertEquals(NUM_PARALLEL_FILES, executor.executed.get());
+        
+        List<ActiveDescriptor<?>> found = locator.getDescriptors(BuilderHelper.createContractFilter(PARALLEL_CONTRACT));
+        Assert.assertEquals(NUM_PARALLEL_FILES * NUM_PARALLEL_RECORDS, added.size());
+        Assert.assertEquals(added.size(), found.size());
+        
+        int lcv = 0;
+        for (int file = 0; file < NUM_PARALLEL_FILES; file++) {
+            for (int record = 0; record < NUM_PARALLEL_RECORDS; record++) {
+                String expected = PARALLEL_CONTRACT + "_" + file + "_" + record;
+                
+                Assert.assertEquals(expected, added.get(lcv).getImplementation());
+                Assert.assertEquals(expected, found.get(lcv).getImplementation());
+                
+                lcv++;
+            }
+        }
+    }
+    
+    /**
+     * Tests that nothing is committed if one of the files
+     * read in parallel fails
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulationFailure() throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        
+        populator.setParallel(true);
+        populator.setExecutor(new ThreadPerTaskExecutor());
+        try {
+            populator.populate(new ListDescriptorFinder(createParallelFiles(PARALLEL_FAILING_CONTRACT, PARALLEL_FAILING_IMPL)),
+                    new ThrowOnImplementationPostProcessor(PARALLEL_FAILING_IMPL));
+            Assert.fail("Should not have succeded, the post-processor threw");
+        }
+        catch (MultiException me) {
+            Assert.assertEquals(1, me.getErrors().size());
+            Assert.assertEquals(EXPECTED, me.getErrors().get(0).getMessage());
+        }
+        finally {
+            populator.setParallel(false);
+            populator.setExecutor(null);
+        }
+        
+        Assert.assertTrue(locator.getDescriptors(BuilderHelper.createContractFilter(PARALLEL_FAILING_CONTRACT)).isEmpty());
+    }
+    
+    /**
+     * Tests that in parallel mode the post processors are called on
+     * the thread calling populate in file order, so that the first
+     * of the duplicates found in different files is always the one kept
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulationWithDuplicatesAcrossFiles() throws IOException {
+        List<InputStream> files = new LinkedList<InputStream>();
+        for (int file = 0; file < NUM_PARALLEL_FILES; file++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PrintWriter pw = new PrintWriter(baos);
+            
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation(PARALLEL_DUPLICATE_IMPL);
+            di.addAdvertisedContract(PARALLEL_DUPLICATE_CONTRACT);
+            di.setName(PARALLEL_DUPLICATE_CONTRACT + "_" + file);
+            
+            di.writeObject(pw);
+            pw.close();
+            
+            files.add(new ByteArrayInputStream(baos.toByteArray()));
+        }
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        ThreadRecordingPostProcessor recorder = new ThreadRecordingPostProcessor();
+        
+        populator.setParallel(true);
+        populator.setExecutor(new ThreadPerTaskExecutor());
+        try {
+            populator.populate(new ListDescriptorFinder(files), recorder,
+                    new DuplicatePostProcessor(DuplicatePostProcessorMode.IMPLEMENTATION_ONLY));
+        }
+        finally {
+            populator.setParallel(false);
+            populator.setExecutor(null);
+        }
+        
+        List<ActiveDescriptor<?>> found = locator.getDescriptors(BuilderHelper.createContractFilter(PARALLEL_DUPLICATE_CONTRACT));
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals(PARALLEL_DUPLICATE_CONTRACT + "_0", found.get(0).getName());
+        
+        Assert.assertEquals(NUM_PARALLEL_FILES, recorder.names.size());
+        for (int file = 0; file < NUM_PARALLEL_FILES; file++) {
+            Assert.assertEquals(PARALLEL_DUPLICATE_CONTRACT + "_" + file, recorder.names.get(file));
+            Assert.assertSame(Thread.currentThread(), recorder.threads.get(file));
+        }
+    }
+    
+    /**
+     * Tests that post processors run with the context class loader
+     * of the caller of populate, even when the files are read on executor
+     * threads that have some other context class loader, and that the
+     * executor threads get their own context class loader back
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulationUsesCallerContextClassLoader() throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        ConfigurablePopulator populator = (ConfigurablePopulator) dcs.getPopulator();
+        
+        ClassLoader executorLoader = new ClassLoader() {};
+        OtherLoaderExecutor executor = new OtherLoaderExecutor(executorLoader);
+        LoaderRecordingPostProcessor recorder = new LoaderRecordingPostProcessor();
+        
+        ClassLoader callerLoader = new ClassLoader() {};
+        ClassLoader originalLoader = Thread.currentThread().getContextClassLoader();
+        
+        Thread.currentThread().setContextClassLoader(callerLoader);
+        populator.setParallel(true);
+        populator.setExecutor(executor);
+        try {
+            populator.populate(new ListDescriptorFinder(createParallelFiles(PARALLEL_LOADER_CONTRACT, null)), recorder);
+        }
+        finally {
+            populator.setParallel(false);
+            populator.setExecutor(null);
+            Thread.currentThread().setContextClassLoader(originalLoader);
+        }
+        
+        Assert.assertEquals(NUM_PARALLEL_FILES * NUM_PARALLEL_RECORDS, recorder.loaders.size());
+        for (ClassLoader loader : recorder.loaders) {
+            Assert.assertSame(callerLoader, loader);
+        }
+        
+        executor.awaitAll();
+        Assert.assertEquals(NUM_PARALLEL_FILES, executor.loadersAfter.size());
+        for (ClassLoader loader : executor.loadersAfter) {
+            Assert.assertSame(executorLoader, loader);
+        }
+    }
+    
     private static class MyDescriptorFinder implements DescriptorFileFinder {
         private final ByteArrayInputStream bais;
         
@@ -545,6 +914,100 @@ public class DynamicPopulateTest {
         
     }
     
+    private static class ListDescriptorFinder implements DescriptorFileFinder {
+        private final List<InputStream> streams;
+        
+        private ListDescriptorFinder(List<InputStream> streams) {
+            this.streams = streams;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            return streams;
+        }
+        
+    }
+    
+    private static class ThreadPerTaskExecutor implements Executor {
+        private final AtomicInteger executed = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            executed.incrementAndGet();
+            
+            new Thread(command).start();
+        }
+        
+    }
+    
+    private static class OtherLoaderExecutor implements Executor {
+        private final ClassLoader loader;
+        private final List<Thread> threads = new LinkedList<Thread>();
+        private final ConcurrentLinkedQueue<ClassLoader> loadersAfter = new ConcurrentLinkedQueue<ClassLoader>();
+        
+        private OtherLoaderExecutor(ClassLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    command.run();
+                    
+                    loadersAfter.add(Thread.currentThread().getContextClassLoader());
+                }
+                
+            });
+            thread.setContextClassLoader(loader);
+            
+            threads.add(thread);
+            thread.start();
+        }
+        
+        private void awaitAll() {
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                }
+                catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        
+    }
+    
+    private static class LoaderRecordingPostProcessor implements PopulatorPostProcessor {
+        private final ConcurrentLinkedQueue<ClassLoader> loaders = new ConcurrentLinkedQueue<ClassLoader>();
+        
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            loaders.add(Thread.currentThread().getContextClassLoader());
+            
+            return descriptorImpl;
+        }
+        
+    }
+    
+    private static class ThreadRecordingPostProcessor implements PopulatorPostProcessor {
+        private final List<String> names = Collections.synchronizedList(new LinkedList<String>());
+        private final List<Thread> threads = Collections.synchronizedList(new LinkedList<Thread>());
+        
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            names.add(descriptorImpl.getName());
+            threads.add(Thread.currentThread());
+            
+            return descriptorImpl;
+        }
+        
+    }
+    
     private static class MetadataPostProcessor implements PopulatorPostProcessor {
         private final ServiceLocator locator;
         
@@ -598,6 +1061,40 @@ public class DynamicPopulateTest {
         
     }
     
+    private static class ThrowOnImplementationPostProcessor implements PopulatorPostProcessor {
+        private final String implementation;
+        
+        private ThrowOnImplementationPostProcessor(String implementation) {
+            this.implementation = implementation;
+        }
+        
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            if (implementation.equals(descriptorImpl.getImplementation())) {
+                throw new RuntimeException(EXPECTED);
+            }
+            
+            return descriptorImpl;
+        }
+        
+    }
+    
+    private static class CapturingPostProcessor implements PopulatorPostProcessor {
+        private DescriptorImpl captured;
+        private final List<DescriptorImpl> all = new LinkedList<DescriptorImpl>();
+        
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            captured = descriptorImpl;
+            all.add(descriptorImpl);
+            
+            return descriptorImpl;
+        }
+        
+    }
+    
     private static class ThrowIOExceptionFinder implements DescriptorFileFinder {
         @Override
         public List<InputStream> findDescriptorFiles() throws IOException {
@@ -303,4 +303,93 @@ public class InterceptorTest {
         Assert.assertEquals("callMe", inMethods.get(0));
         Assert.assertEquals("callMe", inMethods.get(1));
     }
+    
+    /**
+     * Tests that the interceptors of a per lookup service follow
+     * interception services being added and removed, and that
+     * every proxied instance shares the same proxy class
+     */
+    @Test
+    public void testInterceptorsFollowInterceptionServiceChanges() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                PerLookupCountingService.class);
+        
+        PerLookupCountingService counter = locator.getService(PerLookupCountingService.class);
+        counter.callMe();
+        Assert.assertEquals(1, counter.gotCalled());
+        Assert.assertEquals(PerLookupCountingService.class, counter.getClass());
+        
+        List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator,
+                NoProceedInterceptorService.class);
+        
+        PerLookupCountingService proxied1 = locator.getService(PerLookupCountingService.class);
+        PerLookupCountingService proxied2 = locator.getService(PerLookupCountingService.class);
+        Assert.assertNotSame(proxied1, proxied2);
+        Assert.assertSame(proxied1.getClass(), proxied2.getClass());
+        Assert.assertNotSame(PerLookupCountingService.class, proxied1.getClass());
+        
+        proxied1.callMe();
+        proxied2.callMe();
+        Assert.assertEquals(0, proxied1.gotCalled());
+        Assert.assertEquals(0, proxied2.gotCalled());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        
+        counter = locator.getService(PerLookupCountingService.class);
+        counter.callMe();
+        Assert.assertEquals(1, counter.gotCalled());
+        Assert.assertEquals(PerLookupCountingService.class, counter.getClass());
+    }
+    
+    /**
+     * Tests that an interception service annotated with
+     * PerInstanceInterceptors is asked for interceptors
+     * every time a per lookup service is created, so that every
+     * instance can have its own stateful interceptors
+     */
+    @Test
+    public void testInterceptorsAreFoundForEveryInstance() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                PerLookupCountingService.class,
+                PerInstanceInterceptorService.class);
+        
+        PerLookupCountingService counter1 = locator.getService(PerLookupCountingService.class);
+        PerLookupCountingService counter2 = locator.getService(PerLookupCountingService.class);
+        Assert.assertSame(counter1.getClass(), counter2.getClass());
+        
+        counter1.callMe();
+        counter1.callMe();
+        counter2.callMe();
+        
+        List<PerInstanceInterceptorService.CallCountingInterceptor> interceptors =
+                locator.getService(PerInstanceInterceptorService.class).getInterceptors();
+        Assert.assertEquals(2, interceptors.size());
+        Assert.assertEquals(2, interceptors.get(0).getCalls());
+        Assert.assertEquals(1, interceptors.get(1).getCalls());
+    }
+    
+    /**
+     * Tests that the interceptors of a per lookup service are found
+     * once and shared by every instance when the interception service
+     * is not annotated with PerInstanceInterceptors
+     */
+    @Test
+    public void testInterceptorsAreSharedByEveryInstance() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                PerLookupCountingService.class,
+                SharedInterceptorService.class);
+        
+        PerLookupCountingService counter1 = locator.getService(PerLookupCountingService.class);
+        PerLookupCountingService counter2 = locator.getService(PerLookupCountingService.class);
+        Assert.assertNotSame(counter1, counter2);
+        
+        counter1.callMe();
+        counter1.callMe();
+        counter2.callMe();
+        
+        List<PerInstanceInterceptorService.CallCountingInterceptor> interceptors =
+                locator.getService(SharedInterceptorService.class).getInterceptors();
+        Assert.assertEquals(1, interceptors.size());
+        Assert.assertEquals(3, interceptors.get(0).getCalls());
+    }
 }
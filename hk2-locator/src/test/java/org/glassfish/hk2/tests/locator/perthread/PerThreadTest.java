@@ -45,6 +45,7 @@ import java.util.HashSet;
 import junit.framework.Assert;
 
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.internal.PerThreadContext;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.PerThreadScopeModule;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
@@ -280,6 +281,86 @@ public class PerThreadTest {
         }
     }
     
+    private final static int NUM_EXITING_THREADS = 40;
+    
+    private static void runAndExit(final ServiceLocator locator, int numThreads) throws InterruptedException {
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    locator.getService(Sock.class);
+                }
+                
+            });
+            
+            thread.start();
+            thread.join();
+        }
+    }
+    
+    /**
+     * Tests that the services of terminated threads are destroyed
+     * as new threads use the scope, and that the remaining
+     * services are destroyed when the locator is shut down
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testDestroyOnThreadExit() throws InterruptedException {
+        Sock.reset();
+        
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.enablePerThreadScope(locator, true);
+        
+        // Doing this twice ensures the idempotence of this call
+        ServiceLocatorUtilities.enablePerThreadScope(locator, true);
+        ServiceLocatorUtilities.addClasses(locator, Sock.class);
+        
+        Sock mySock = locator.getService(Sock.class);
+        
+        runAndExit(locator, NUM_EXITING_THREADS);
+        
+        // Some were destroyed as the later threads started
+        int destroyed = Sock.getNumDestroyed();
+        Assert.assertTrue("destroyed=" + destroyed, destroyed > 0);
+        Assert.assertTrue("destroyed=" + destroyed, destroyed < NUM_EXITING_THREADS);
+        
+        locator.getService(PerThreadContext.class).destroyTerminatedThreadInstances();
+        
+        // The rest of the exited threads, but not this thread
+        Assert.assertEquals(NUM_EXITING_THREADS, Sock.getNumDestroyed());
+        Assert.assertFalse(mySock.isDestroyed());
+        Assert.assertSame(mySock, locator.getService(Sock.class));
+        
+        locator.shutdown();
+        
+        Assert.assertTrue(mySock.isDestroyed());
+        Assert.assertEquals(NUM_EXITING_THREADS + 1, Sock.getNumDestroyed());
+    }
+    
+    /**
+     * Tests that by default the services of terminated threads
+     * are not destroyed
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testNoDestroyByDefault() throws InterruptedException {
+        Sock.reset();
+        
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.enablePerThreadScope(locator, false);
+        ServiceLocatorUtilities.addClasses(locator, Sock.class);
+        
+        runAndExit(locator, NUM_EXITING_THREADS);
+        
+        locator.getService(PerThreadContext.class).destroyTerminatedThreadInstances();
+        locator.shutdown();
+        
+        Assert.assertEquals(0, Sock.getNumDestroyed());
+    }
+    
     public class StoreRunner implements Runnable {
         private final ServiceLocator locator;
         private ClothingStore store;
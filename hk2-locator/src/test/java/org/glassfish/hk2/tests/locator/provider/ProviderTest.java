@@ -52,6 +52,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Test;
 
 /**
@@ -220,4 +221,49 @@ public class ProviderTest {
         Assert.assertTrue(foundEli);
         Assert.assertTrue(foundShady);
     }
+    
+    /**
+     * Tests that an IterableProvider that is used more than once sees
+     * configuration changes made between the uses, in its own locator
+     * and in its parent, and that per lookup services are still
+     * created on every iteration
+     */
+    @Test // @org.junit.Ignore
+    public void testIterableProviderReusedAcrossConfigurationChanges() {
+        ServiceLocator parent = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(parent, PerLookupService.class);
+        
+        ServiceLocator child = LocatorHelper.create(parent);
+        
+        IterableProvider<PerLookupService> provider = child.getService((new TypeLiteral<IterableProvider<PerLookupService>>() {}).getType());
+        
+        Assert.assertEquals(1, provider.getSize());
+        
+        PerLookupService first = provider.iterator().next();
+        PerLookupService second = provider.iterator().next();
+        Assert.assertNotSame(first, second);
+        
+        PerLookupService constant = new PerLookupService();
+        ActiveDescriptor<?> constantDescriptor = ServiceLocatorUtilities.addOneConstant(child, constant);
+        
+        Assert.assertEquals(2, provider.getSize());
+        
+        boolean foundConstant = false;
+        for (ServiceHandle<PerLookupService> handle : provider.handleIterator()) {
+            if (handle.getService() == constant) foundConstant = true;
+        }
+        Assert.assertTrue(foundConstant);
+        
+        ServiceLocatorUtilities.addClasses(parent, PerLookupService.class);
+        Assert.assertEquals(3, provider.getSize());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(child, constantDescriptor);
+        
+        int count = 0;
+        for (PerLookupService pls : provider) {
+            Assert.assertNotSame(constant, pls);
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
 }
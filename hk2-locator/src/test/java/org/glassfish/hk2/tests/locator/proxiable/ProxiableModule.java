@@ -78,6 +78,10 @@ public class ProxiableModule implements TestModule {
         		BuilderHelper.link(NorthernHemisphere.class).in(SeasonScope.class).build());
         configurator.bind(
         		BuilderHelper.link(SouthernHemisphere.class).in(Singleton.class).build());
+        
+        // For the compiled proxy test
+        configurator.bind(
+                BuilderHelper.link(Almanac.class).in(SeasonScope.class).build());
     }
 
 }
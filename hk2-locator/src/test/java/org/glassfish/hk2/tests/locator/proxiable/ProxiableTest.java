@@ -46,6 +46,7 @@ import org.glassfish.hk2.api.ProxyCtl;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
  * @author jwells
@@ -125,4 +126,62 @@ public class ProxiableTest {
     	// If this doesn't bomb, this test works
     	sh.check();
     }
+    
+    /**
+     * Tests that every proxy of the same service is an instance
+     * of the same generated proxy class, but is a distinct proxy
+     */
+    @Test // @org.junit.Ignore
+    public void testProxyClassReused() {
+        Winter winter1 = locator.getService(Winter.class);
+        Winter winter2 = locator.getService(Winter.class);
+        
+        Assert.assertTrue(winter1 instanceof ProxyCtl);
+        Assert.assertNotSame(winter1, winter2);
+        Assert.assertSame(winter1.getClass(), winter2.getClass());
+        
+        Assert.assertEquals(WINTER, winter1.getName());
+        Assert.assertEquals(WINTER, winter2.getName());
+    }
+    
+    /**
+     * Tests that proxies with compiled dispatch pass arguments, return
+     * values and exceptions through exactly as reflective dispatch does,
+     * for both class and interface proxies
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledProxyDispatch() {
+        ServiceLocator compiledLocator = LocatorHelper.create(TEST_NAME + "Compiled", new ProxiableModule());
+        compiledLocator.getService(ServiceLocatorRuntimeBean.class).setCompiledProxies(true);
+        
+        Almanac almanac = compiledLocator.getService(Almanac.class);
+        Assert.assertTrue(almanac instanceof ProxyCtl);
+        
+        // Twice, so that the second call uses the already compiled methods
+        for (int lcv = 0; lcv < 2; lcv++) {
+            Assert.assertEquals(60, almanac.getDays(2));
+            Assert.assertEquals(5000000000L, almanac.add(2000000000L, 3000000000L));
+            Assert.assertEquals(2.0, almanac.average(new double[] { 1.0, 2.0, 3.0 }), 0.0);
+            
+            almanac.record(FALL + lcv);
+            Assert.assertEquals(lcv + 1, almanac.getEntries().size());
+            
+            try {
+                almanac.fail(WINTER);
+                Assert.fail("fail should have thrown an exception");
+            }
+            catch (IllegalArgumentException iae) {
+                Assert.assertEquals(WINTER, iae.getMessage());
+            }
+        }
+        
+        // The injected nextSeason field is an interface proxy
+        Winter winter = compiledLocator.getService(Winter.class);
+        Season spring = winter.getNextSeason();
+        Assert.assertTrue(spring instanceof ProxyCtl);
+        Assert.assertEquals(SPRING, spring.getName());
+        Assert.assertEquals(SUMMER, spring.getNextSeason().getName());
+        
+        compiledLocator.shutdown();
+    }
 }
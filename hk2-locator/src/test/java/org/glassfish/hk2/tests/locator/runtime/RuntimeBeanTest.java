@@ -47,6 +47,7 @@ import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceCacheStatistics;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
@@ -153,6 +154,73 @@ public class RuntimeBeanTest {
         Assert.assertEquals(1, bean.getServiceCacheSize());
     }
     
+    /**
+     * Tests that the service cache can be resized and segmented
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCacheSegments() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorRuntimeBean bean = locator.getService(ServiceLocatorRuntimeBean.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        
+        bean.setServiceCacheNumberOfSegments(4);
+        Assert.assertEquals(4, bean.getServiceCacheStatistics().size());
+        Assert.assertEquals(0, bean.getServiceCacheSize());
+        
+        bean.setServiceCacheMaximumSize(100);
+        
+        Assert.assertEquals(100, bean.getServiceCacheMaximumSize());
+        Assert.assertEquals(4, bean.getServiceCacheStatistics().size());
+        
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        
+        List<ServiceCacheStatistics> statistics = bean.getServiceCacheStatistics();
+        Assert.assertEquals(4, statistics.size());
+        
+        int totalMax = 0;
+        int totalSize = 0;
+        for (int lcv = 0; lcv < statistics.size(); lcv++) {
+            ServiceCacheStatistics segment = statistics.get(lcv);
+            
+            Assert.assertEquals(lcv, segment.getSegment());
+            Assert.assertEquals(0L, segment.getEvictions());
+            Assert.assertEquals(segment.getSize(), segment.getT1Size() + segment.getT2Size());
+            
+            totalMax += segment.getMaximumSize();
+            totalSize += segment.getSize();
+            
+            if (segment.getSize() > 0) {
+                Assert.assertEquals(50.0, segment.getHitRate(), 0.01);
+            }
+        }
+        
+        Assert.assertEquals(100, totalMax);
+        Assert.assertEquals(1, totalSize);
+        Assert.assertEquals(1, bean.getServiceCacheSize());
+        
+        try {
+            bean.setServiceCacheNumberOfSegments(0);
+            Assert.fail("Zero segments should have failed");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+        
+        try {
+            bean.setServiceCacheMaximumSize(3);
+            Assert.fail("A maximum size less than the number of segments should have failed");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+        
+        Assert.assertEquals(100, bean.getServiceCacheMaximumSize());
+        Assert.assertEquals(4, bean.getServiceCacheStatistics().size());
+    }
+    
     /**
      * Tests that the service cache can be zeroed
      */
@@ -42,9 +42,14 @@ package org.glassfish.hk2.tests.locator.typesafety;
 
 import junit.framework.Assert;
 
+import java.lang.reflect.Type;
+
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
 import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
  * @author jwells
@@ -150,4 +155,37 @@ public class TypeSafetyTest {
         rpi.validate();
     }
 
+    
+    /**
+     * Ensures that parameterized types from the JDK and those built
+     * with ParameterizedTypeImpl find the same services when the
+     * lookups are not cached, and do not share the results of
+     * type safety checks of other type arguments
+     */
+    @Test
+    public void testJDKAndHandBuiltParameterizedTypesEquivalent() {
+        ServiceLocatorRuntimeBean runtime = locator.getService(ServiceLocatorRuntimeBean.class);
+        
+        Type handBuiltInteger = new ParameterizedTypeImpl(ParameterizedService.class, Integer.class);
+        Type jdkInteger = new TypeLiteral<ParameterizedService<Integer>>() {}.getType();
+        Type jdkString = new TypeLiteral<ParameterizedService<String>>() {}.getType();
+        
+        for (int lcv = 0; lcv < 2; lcv++) {
+            ParameterizedService<Integer> handBuilt = locator.getService(handBuiltInteger);
+            Assert.assertEquals(CHECK_INTEGER, handBuilt.getSomethingOfMyType().intValue());
+            
+            runtime.clearServiceCache();
+            
+            ParameterizedService<Integer> jdk = locator.getService(jdkInteger);
+            Assert.assertEquals(CHECK_INTEGER, jdk.getSomethingOfMyType().intValue());
+            
+            runtime.clearServiceCache();
+            
+            ParameterizedService<String> string = locator.getService(jdkString);
+            Assert.assertEquals(CHECK_STRING, string.getSomethingOfMyType());
+            
+            runtime.clearServiceCache();
+        }
+    }
+
 }
@@ -40,6 +40,7 @@
 package org.glassfish.hk2.metadata.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -61,6 +62,7 @@ import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
 /**
@@ -70,10 +72,11 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  *
  */
 @SupportedAnnotationTypes("org.jvnet.hk2.annotations.Service")
-@SupportedOptions("org.glassfish.hk2.metadata.location")
+@SupportedOptions({ "org.glassfish.hk2.metadata.location", "org.glassfish.hk2.metadata.binary" })
 public class ServiceProcessor extends AbstractProcessor {
     private static final String LOCATION_OPTION = "org.glassfish.hk2.metadata.location";
     private static final String LOCATION_DEFAULT = "META-INF/hk2-locator/default";
+    private static final String BINARY_OPTION = "org.glassfish.hk2.metadata.binary";
     
     private final TreeSet<DescriptorImpl> allDescriptors = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
     private final ArrayList<Element> originators = new ArrayList<Element>();
@@ -180,6 +183,27 @@ public class ServiceProcessor extends AbstractProcessor {
             fileWriter.close();
         }
         
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(BINARY_OPTION))) {
+            createBinaryFile(filer, location + BinaryDescriptorFile.BINARY_SUFFIX);
+        }
+    }
+    
+    /**
+     * The binary file is written next to the text file, which
+     * remains the fallback for readers that do not find it
+     */
+    private void createBinaryFile(Filer filer, String location) throws IOException {
+        FileObject fileObject = filer.createResource(StandardLocation.CLASS_OUTPUT,
+                "", location,
+                originators.toArray(new Element[originators.size()]));
+        
+        OutputStream outputStream = fileObject.openOutputStream();
+        try {
+            BinaryDescriptorFile.write(outputStream, allDescriptors);
+        }
+        finally {
+            outputStream.close();
+        }
     }
     
     /**
@@ -39,6 +39,7 @@
  */
 package org.jvnet.hk2.metadata.tests;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -60,6 +61,7 @@ import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.junit.Test;
 
@@ -670,4 +672,48 @@ public class InhabitantsGeneratorTest {
         
         checkDescriptors(generatedImpls);
     }
+    
+    /**
+     * Tests that the binary file generated next to the text
+     * file contains the same descriptors
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryFileGeneration() throws IOException {
+        Enumeration<URL> binaryFiles = getClass().getClassLoader().getResources(
+                ZIP_FILE_INHABITANT_NAME + BinaryDescriptorFile.BINARY_SUFFIX);
+        
+        int numFound = 0;
+        while (binaryFiles.hasMoreElements()) {
+            URL binaryURL = binaryFiles.nextElement();
+            numFound++;
+            
+            String binaryName = binaryURL.toString();
+            URL textURL = new URL(binaryName.substring(0, binaryName.length() - BinaryDescriptorFile.BINARY_SUFFIX.length()));
+            
+            Set<DescriptorImpl> textImpls = new HashSet<DescriptorImpl>();
+            InputStream textStream = textURL.openStream();
+            try {
+                getAllDescriptorsFromInputStream(textStream, textImpls);
+            }
+            finally {
+                textStream.close();
+            }
+            
+            InputStream binaryStream = new BufferedInputStream(binaryURL.openStream());
+            try {
+                BinaryDescriptorFile binaryFile = new BinaryDescriptorFile(BinaryDescriptorFile.getBinaryContents(binaryStream));
+                
+                List<DescriptorImpl> binaryImpls = binaryFile.getDescriptors();
+                Assert.assertEquals(textImpls.size(), binaryImpls.size());
+                Assert.assertEquals(textImpls, new HashSet<DescriptorImpl>(binaryImpls));
+            }
+            finally {
+                binaryStream.close();
+            }
+        }
+        
+        Assert.assertEquals(1, numFound);
+    }
 }
@@ -244,6 +244,35 @@ public interface RunLevelController {
      */
     public void setValidationOverride(Integer validationMode);
     
+    /**
+     * Turns the run level profiler on or off.  When profiling is
+     * turned on a new, empty {@link RunLevelProfile} is started, and
+     * the timings of the services created while proceeding upward
+     * are recorded in it until profiling is turned off.  Profiling
+     * is off by default
+     * 
+     * @param enabled true if profiling should be turned on, false if
+     * it should be turned off
+     */
+    public void setProfilingEnabled(boolean enabled);
+    
+    /**
+     * Tells whether or not the run level profiler is on
+     * 
+     * @return true if profiling is on
+     */
+    public boolean isProfilingEnabled();
+    
+    /**
+     * Returns the profile started the last time profiling was
+     * turned on.  The profile remains available after profiling
+     * has been turned off
+     * 
+     * @return The most recent profile, or null if profiling has
+     * never been turned on for this controller
+     */
+    public RunLevelProfile getProfile();
+    
     /**
      * These are the policies for how the RunLevelController
      * will use threads
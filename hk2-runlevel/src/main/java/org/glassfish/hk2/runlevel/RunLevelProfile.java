@@ -0,0 +1,237 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+
+/**
+ * The timings recorded by the run level profiler, which is turned
+ * on with {@link RunLevelController#setProfilingEnabled(boolean)}.
+ * All times are in nanoseconds, and all start times are relative
+ * to the moment profiling was turned on
+ * 
+ * @author jwells
+ *
+ */
+public interface RunLevelProfile {
+    /**
+     * Returns the timings of the run level services created while
+     * this profile was being recorded, in the order in which they
+     * finished
+     * 
+     * @return A non-null copy of the service timings recorded so far
+     */
+    public List<ServiceTiming> getServiceTimings();
+    
+    /**
+     * Returns the timings of the levels brought up while this
+     * profile was being recorded, in the order in which they were
+     * started
+     * 
+     * @return A non-null copy of the level timings recorded so far
+     */
+    public List<LevelTiming> getLevelTimings();
+    
+    /**
+     * Writes this profile in the Chrome trace event format, which can
+     * be loaded into chrome://tracing or any other viewer of that format.
+     * Every service is a span on the thread that created it, with the
+     * services it created while resolving its dependencies nested within
+     * it, and the time threads spent waiting on services being created
+     * by other threads is shown as separate spans
+     * 
+     * @param writer The writer to write the JSON document to.  It is
+     * not closed by this method
+     * @throws IOException if the writer throws
+     */
+    public void writeChromeTrace(Writer writer) throws IOException;
+    
+    /**
+     * Writes this profile as a plain text report, with a summary of
+     * every level followed by the services ordered from the one that
+     * took the longest to construct to the one that took the least
+     * 
+     * @param writer The writer to write the report to.  It is not
+     * closed by this method
+     * @throws IOException if the writer throws
+     */
+    public void writeReport(Writer writer) throws IOException;
+    
+    /**
+     * The timing of the creation of one run level service
+     * 
+     * @author jwells
+     *
+     */
+    public interface ServiceTiming {
+        /**
+         * The descriptor of the service that was created
+         * 
+         * @return The non-null descriptor of the service
+         */
+        public ActiveDescriptor<?> getDescriptor();
+        
+        /**
+         * The level being worked on when the service was created
+         * 
+         * @return The level being worked on
+         */
+        public int getLevel();
+        
+        /**
+         * The name of the thread that created the service
+         * 
+         * @return The non-null name of the creating thread
+         */
+        public String getThreadName();
+        
+        /**
+         * When the creation of the service started
+         * 
+         * @return The start time in nanoseconds since profiling
+         * was turned on
+         */
+        public long getStartTime();
+        
+        /**
+         * The time between the start of the level and the start of the
+         * creation of the service.  This is zero for services created
+         * while resolving the dependencies of another service
+         * 
+         * @return The queue time in nanoseconds
+         */
+        public long getQueueTime();
+        
+        /**
+         * The time spent resolving the dependencies of the service before
+         * it could be constructed.  This includes the time spent creating
+         * the services it injects and the time spent waiting on services
+         * being created by other threads
+         * 
+         * @return The dependency time in nanoseconds
+         */
+        public long getDependencyTime();
+        
+        /**
+         * The time spent constructing the service once its dependencies
+         * were resolved.  This includes the constructor, field and
+         * method injection and the postConstruct method of the service
+         * 
+         * @return The construction time in nanoseconds
+         */
+        public long getConstructionTime();
+        
+        /**
+         * The full time of the creation of the service, which is its
+         * dependency time plus its construction time
+         * 
+         * @return The total time in nanoseconds
+         */
+        public long getTotalTime();
+        
+        /**
+         * Tells whether the creation of the service failed
+         * 
+         * @return true if the service could not be created
+         */
+        public boolean isFailed();
+    }
+    
+    /**
+     * The timing of one level brought up by the controller
+     * 
+     * @author jwells
+     *
+     */
+    public interface LevelTiming {
+        /**
+         * The level that was brought up
+         * 
+         * @return The level
+         */
+        public int getLevel();
+        
+        /**
+         * When work on the level started
+         * 
+         * @return The start time in nanoseconds since profiling
+         * was turned on
+         */
+        public long getStartTime();
+        
+        /**
+         * How long it took to bring up the level.  This is -1 if
+         * the level had not finished when the timing was taken
+         * 
+         * @return The elapsed time of the level in nanoseconds
+         */
+        public long getElapsedTime();
+        
+        /**
+         * The number of threads that worked on the level
+         * 
+         * @return The number of threads used for the level
+         */
+        public int getNumberOfThreads();
+        
+        /**
+         * The sum of the time each thread spent working on the level,
+         * whether busy with a service or waiting for one to be ready
+         * 
+         * @return The thread time in nanoseconds
+         */
+        public long getThreadTime();
+        
+        /**
+         * The sum of the time each thread spent busy with a service
+         * of the level.  Dividing this by the thread time gives how
+         * busy the threads were
+         * 
+         * @return The busy time in nanoseconds
+         */
+        public long getBusyTime();
+    }
+
+}
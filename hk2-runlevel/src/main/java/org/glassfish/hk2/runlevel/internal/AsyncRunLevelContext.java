@@ -42,12 +42,10 @@ package org.glassfish.hk2.runlevel.internal;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -70,6 +68,7 @@ import org.glassfish.hk2.runlevel.RunLevel;
 import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelFuture;
 import org.glassfish.hk2.runlevel.utilities.Utilities;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.jvnet.hk2.annotations.Service;
 
 /**
@@ -87,6 +86,24 @@ public class AsyncRunLevelContext {
             
     });
     
+    private final static SchedulingPolicy DEFAULT_SCHEDULING_POLICY = AccessController.doPrivileged(new PrivilegedAction<SchedulingPolicy>() {
+        @Override
+        public SchedulingPolicy run() {
+            String value = System.getProperty(RunLevelControllerImpl.SCHEDULING_POLICY_PROPERTY);
+            if (value == null) return SchedulingPolicy.SORTED;
+            
+            try {
+                return SchedulingPolicy.valueOf(value.trim());
+            }
+            catch (IllegalArgumentException iae) {
+                Logger.getLogger(AsyncRunLevelContext.class.getName()).warning("Unknown scheduling policy " + value +
+                        ", using " + SchedulingPolicy.SORTED);
+                return SchedulingPolicy.SORTED;
+            }
+        }
+            
+    });
+    
     private static final Logger logger = Logger.getLogger(AsyncRunLevelContext.class.getName());
     
     private static final Timer timer = new Timer(true);
@@ -95,8 +112,10 @@ public class AsyncRunLevelContext {
     
     private final org.glassfish.hk2.utilities.reflection.Logger hk2Logger = org.glassfish.hk2.utilities.reflection.Logger.getLogger();
     
-    private int currentLevel = RunLevel.RUNLEVEL_VAL_INITIAL;
-    private CurrentTaskFutureWrapper currentTask = null;
+    private volatile int currentLevel = RunLevel.RUNLEVEL_VAL_INITIAL;
+    
+    /** Set and cleared with this object locked, read without the lock */
+    private volatile CurrentTaskFutureWrapper currentTask = null;
     
     private static final Executor DEFAULT_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
             60L, TimeUnit.SECONDS,
@@ -104,38 +123,44 @@ public class AsyncRunLevelContext {
             THREAD_FACTORY);
     
     /**
-     * The backing maps for this context.
+     * The backing maps for this context.  A service is put here
+     * before its creation is removed from creatingDescriptors
      */
-    private final Map<ActiveDescriptor<?>, Object> backingMap =
-            new HashMap<ActiveDescriptor<?>, Object>();
+    private final ConcurrentHashMap<ActiveDescriptor<?>, Object> backingMap =
+            new ConcurrentHashMap<ActiveDescriptor<?>, Object>();
     
     /*
      * The within level errors thrown.  This prevents double
      * starting a service that failed within a level
      */
-    private final Map<ActiveDescriptor<?>, Throwable> levelErrorMap =
-            new HashMap<ActiveDescriptor<?>, Throwable>();
-    
-    private boolean wasCancelled = false;
+    private final ConcurrentHashMap<ActiveDescriptor<?>, Throwable> levelErrorMap =
+            new ConcurrentHashMap<ActiveDescriptor<?>, Throwable>();
     
-    /**
-     * The set of services currently being created
-     */
-    private final HashMap<ActiveDescriptor<?>, Long> creatingDescriptors = new HashMap<ActiveDescriptor<?>, Long>();
+    private volatile boolean wasCancelled = false;
     
     /**
-     * The set of descriptors that have been hard cancelled
+     * The services currently being created.  Threads that need a
+     * service being created by another thread wait on its creation
+     * rather than on this context
      */
-    private final HashSet<ActiveDescriptor<?>> hardCancelledDescriptors = new HashSet<ActiveDescriptor<?>>();
+    private final ConcurrentHashMap<ActiveDescriptor<?>, Creation> creatingDescriptors =
+            new ConcurrentHashMap<ActiveDescriptor<?>, Creation>();
     
+    /** Guarded by itself */
     private final LinkedList<ActiveDescriptor<?>> orderedCreationList = new LinkedList<ActiveDescriptor<?>>();
     
-    private Executor executor = DEFAULT_EXECUTOR;
+    private volatile Executor executor = DEFAULT_EXECUTOR;
     private final ServiceLocator locator;
-    private int maxThreads = Integer.MAX_VALUE;
-    private RunLevelController.ThreadingPolicy policy = RunLevelController.ThreadingPolicy.FULLY_THREADED;
-    private long cancelTimeout = 5 * 1000;
-    private Integer modeOverride = null;
+    private volatile int maxThreads = Integer.MAX_VALUE;
+    private volatile RunLevelController.ThreadingPolicy policy = RunLevelController.ThreadingPolicy.FULLY_THREADED;
+    private volatile SchedulingPolicy schedulingPolicy = DEFAULT_SCHEDULING_POLICY;
+    private volatile long cancelTimeout = 5 * 1000;
+    private volatile Integer modeOverride = null;
+    
+    /** The profile being recorded, null when profiling is off */
+    private volatile RunLevelProfileImpl profile = null;
+    private RunLevelProfileImpl lastProfile = null;
+    private ActiveDescriptor<?> profileDescriptor = null;
     
     /**
      * Constructor for the guy who does the work
@@ -179,13 +204,13 @@ public class AsyncRunLevelContext {
         
         U retVal = null;
         
-        int localCurrentLevel;
-        Integer localModeOverride;
-        long tid = -1L;
+        Integer localModeOverride = modeOverride;
+        RunLevelProfileImpl localProfile = profile;
+        long tid = Thread.currentThread().getId();
+        Creation creation = null;
+        boolean firstTry = true;
         
-        synchronized (this) {
-            localModeOverride = modeOverride;
-            
+        while (creation == null) {
             retVal = (U) backingMap.get(activeDescriptor);
             if (retVal != null) {
                 if (DEBUG_CONTEXT) {
@@ -194,103 +219,99 @@ public class AsyncRunLevelContext {
                 return retVal;
             }
             
-            Throwable previousException = levelErrorMap.get(activeDescriptor);
-            if (previousException != null) {
-                if (DEBUG_CONTEXT) {
-                    hk2Logger.debug("AsyncRunLevelController tried once, it failed, rethrowing " + oneLineDescriptor, previousException);
-                }
+            throwPreviousException(activeDescriptor, oneLineDescriptor);
+            
+            Creation existing = creatingDescriptors.get(activeDescriptor);
+            if (existing == null) {
+                Creation mine = new Creation(tid);
                 
-                if (previousException instanceof RuntimeException) {
-                    throw (RuntimeException) previousException;
+                existing = creatingDescriptors.putIfAbsent(activeDescriptor, mine);
+                if (existing == null) {
+                    // The service may have been finished by another thread between
+                    // the checks above and the creation being registered
+                    retVal = (U) backingMap.get(activeDescriptor);
+                    Throwable previousException = levelErrorMap.get(activeDescriptor);
+                    if (retVal != null || previousException != null) {
+                        creatingDescriptors.remove(activeDescriptor, mine);
+                        mine.release();
+                        
+                        if (retVal != null) {
+                            if (DEBUG_CONTEXT) {
+                                hk2Logger.debug("AsyncRunLevelController second chance found " + oneLineDescriptor);
+                            }
+                            return retVal;
+                        }
+                        
+                        throwPreviousException(activeDescriptor, oneLineDescriptor);
+                    }
+                    
+                    creation = mine;
+                    break;
                 }
-                
-                throw new RuntimeException(previousException);
             }
             
-            if (hardCancelledDescriptors.contains(activeDescriptor)) {
+            if (firstTry && existing.isHardCancelled()) {
                 if (DEBUG_CONTEXT) {
                     hk2Logger.debug("AsyncRunLevelController hard cancelled " + oneLineDescriptor);
                 }
                 throw new MultiException(new WasCancelledException(activeDescriptor), false);
             }
+            firstTry = false;
             
-            while (creatingDescriptors.containsKey(activeDescriptor)) {
-                if (DEBUG_CONTEXT) {
-                    hk2Logger.debug("AsyncRunLevelController already being created " + oneLineDescriptor);
-                }
-                
-                long holdingLock = creatingDescriptors.get(activeDescriptor);
-                if (holdingLock == Thread.currentThread().getId()) {
-                    if (DEBUG_CONTEXT) {
-                        hk2Logger.debug("AsyncRunLevelController circular dependency " + oneLineDescriptor);
-                    }
-                    throw new MultiException(new IllegalStateException(
-                            "Circular dependency involving " + activeDescriptor.getImplementation() +
-                            " was found.  Full descriptor is " + activeDescriptor));
-                }
-                
-                if (throwWouldBlock) {
-                    if (DEBUG_CONTEXT) {
-                        hk2Logger.debug("AsyncRunLevelController would block optimization " + oneLineDescriptor);
-                    }
-                    throw new MultiException(new WouldBlockException(activeDescriptor), false);
-                }
-                
-                try {
-                    this.wait();
-                }
-                catch (InterruptedException ie) {
-                    throw new MultiException(ie);
-                }
-            }
             if (DEBUG_CONTEXT) {
-                hk2Logger.debug("AsyncRunLevelController finished creating wait for " + oneLineDescriptor);
+                hk2Logger.debug("AsyncRunLevelController already being created " + oneLineDescriptor);
             }
             
-            retVal = (U) backingMap.get(activeDescriptor);
-            if (retVal != null) {
+            if (existing.getCreatorId() == tid) {
                 if (DEBUG_CONTEXT) {
-                    hk2Logger.debug("AsyncRunLevelController second chance found " + oneLineDescriptor);
+                    hk2Logger.debug("AsyncRunLevelController circular dependency " + oneLineDescriptor);
                 }
-                return retVal;
+                throw new MultiException(new IllegalStateException(
+                        "Circular dependency involving " + activeDescriptor.getImplementation() +
+                        " was found.  Full descriptor is " + activeDescriptor));
             }
             
-            previousException = levelErrorMap.get(activeDescriptor);
-            if (previousException != null) {
+            if (throwWouldBlock) {
                 if (DEBUG_CONTEXT) {
-                    hk2Logger.debug("AsyncRunLevelController service already threw " + oneLineDescriptor);
-                }
-                
-                if (previousException instanceof RuntimeException) {
-                    throw (RuntimeException) previousException;
+                    hk2Logger.debug("AsyncRunLevelController would block optimization " + oneLineDescriptor);
                 }
-                
-                throw new RuntimeException(previousException);
+                throw new MultiException(new WouldBlockException(activeDescriptor), false);
             }
             
-            if (hardCancelledDescriptors.contains(activeDescriptor)) {
-                if (DEBUG_CONTEXT) {
-                    hk2Logger.debug("AsyncRunLevelController second chance hard cancel " + oneLineDescriptor);
-                }
-                throw new MultiException(new WasCancelledException(activeDescriptor), false);
+            long waitStart = (localProfile == null) ? 0L : System.nanoTime();
+            try {
+                existing.waitForRelease();
+            }
+            catch (InterruptedException ie) {
+                throw new MultiException(ie);
+            }
+            
+            if (localProfile != null) {
+                localProfile.waited(activeDescriptor, waitStart);
             }
             
-            tid = Thread.currentThread().getId();
             if (DEBUG_CONTEXT) {
-                hk2Logger.debug("AsyncRunLevelController am creating " + oneLineDescriptor + " in thread " + tid);
+                hk2Logger.debug("AsyncRunLevelController finished creating wait for " + oneLineDescriptor);
             }
-            creatingDescriptors.put(activeDescriptor, tid);
+        }
+        
+        if (DEBUG_CONTEXT) {
+            hk2Logger.debug("AsyncRunLevelController am creating " + oneLineDescriptor + " in thread " + tid);
+        }
+        
+        int localCurrentLevel = currentLevel;
+        CurrentTaskFutureWrapper localCurrentTask = currentTask;
+        if (localCurrentTask != null && localCurrentTask.isUp()) {
+            localCurrentLevel++;
             
-            localCurrentLevel = currentLevel;
-            if (currentTask != null && currentTask.isUp()) {
-                localCurrentLevel++;
-                
-                if (localCurrentLevel > currentTask.getProposedLevel()) {
-                    localCurrentLevel = currentTask.getProposedLevel();
-                }
+            if (localCurrentLevel > localCurrentTask.getProposedLevel()) {
+                localCurrentLevel = localCurrentTask.getProposedLevel();
             }
         }
         
+        RunLevelProfileImpl.ServiceTimingImpl timing = (localProfile == null) ? null :
+            localProfile.serviceStarted(activeDescriptor, localCurrentLevel);
+        
         Throwable error = null;
         try {
             int mode = Utilities.getRunLevelMode(locator, activeDescriptor, localModeOverride);
@@ -332,13 +353,26 @@ public class AsyncRunLevelContext {
             throw new RuntimeException(th);
         }
         finally {
-            synchronized (this) {
-                boolean hardCancelled = hardCancelledDescriptors.remove(activeDescriptor);
-                
+            if (timing != null) {
+                if (retVal == null && error == null) {
+                    // WouldBlock, the service is created again later
+                    localProfile.serviceAbandoned(timing);
+                }
+                else {
+                    localProfile.serviceFinished(timing, (retVal == null));
+                }
+            }
+            
+            // After this the creation can no longer be hard cancelled
+            boolean hardCancelled = creation.finish();
+            
+            try {
                 if (retVal != null) {
                     if (!hardCancelled) {
                         backingMap.put(activeDescriptor, retVal);
-                        orderedCreationList.addFirst(activeDescriptor);
+                        synchronized (orderedCreationList) {
+                            orderedCreationList.addFirst(activeDescriptor);
+                        }
                     }
                     
                     if (wasCancelled || hardCancelled) {
@@ -355,13 +389,6 @@ public class AsyncRunLevelContext {
                             levelErrorMap.put(activeDescriptor, cancelledException);
                         }
                         
-                        creatingDescriptors.remove(activeDescriptor);
-                        this.notifyAll();
-                        if (DEBUG_CONTEXT) {
-                            hk2Logger.debug("AsyncRunLevelController other threads notified cancellation path for " +
-                                oneLineDescriptor + " in thread " + tid);
-                        }
-                        
                         throw cancelledException;
                     }
                 }
@@ -370,9 +397,10 @@ public class AsyncRunLevelContext {
                         levelErrorMap.put(activeDescriptor, error);
                     }
                 }
-                
-                creatingDescriptors.remove(activeDescriptor);
-                this.notifyAll();
+            }
+            finally {
+                creatingDescriptors.remove(activeDescriptor, creation);
+                creation.release();
                 if (DEBUG_CONTEXT) {
                     hk2Logger.debug("AsyncRunLevelController other threads notified for " +
                         oneLineDescriptor + " in thread " + tid);
@@ -380,6 +408,21 @@ public class AsyncRunLevelContext {
             }
         }
     }
+    
+    private void throwPreviousException(ActiveDescriptor<?> activeDescriptor, String oneLineDescriptor) {
+        Throwable previousException = levelErrorMap.get(activeDescriptor);
+        if (previousException == null) return;
+        
+        if (DEBUG_CONTEXT) {
+            hk2Logger.debug("AsyncRunLevelController tried once, it failed, rethrowing " + oneLineDescriptor, previousException);
+        }
+        
+        if (previousException instanceof RuntimeException) {
+            throw (RuntimeException) previousException;
+        }
+        
+        throw new RuntimeException(previousException);
+    }
 
     /**
      * The {@link Context} API for discovering if a descriptor has been created
@@ -388,26 +431,25 @@ public class AsyncRunLevelContext {
      * @return true if already created, false otherwise
      */
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        synchronized (this) {
-            return backingMap.containsKey(descriptor);
-        }
+        return backingMap.containsKey(descriptor);
     }
     
     /* package */ boolean wouldBlockRightNow(ActiveDescriptor<?> desc) {
-        synchronized (this) {
-            return creatingDescriptors.containsKey(desc);
-        }
+        return creatingDescriptors.containsKey(desc);
     }
     
     /**
-     * No need to lock this, it is called with the lock already held
+     * Marks the creation of the given descriptor as hard cancelled, if
+     * it is still being created.  A hard cancelled service is not kept
+     * even if its creation later succeeds
      * 
      * @param descriptor the non-null descriptor to hard cancel
      */
     /* package */ void hardCancelOne(ActiveDescriptor<?> descriptor) {
-        if (creatingDescriptors.containsKey(descriptor)) {
+        Creation creation = creatingDescriptors.get(descriptor);
+        if (creation != null) {
             // This guy has been hard-cancelled, mark it down
-            hardCancelledDescriptors.add(descriptor);
+            creation.hardCancel();
         }
     }
     
@@ -418,11 +460,8 @@ public class AsyncRunLevelContext {
      */
     @SuppressWarnings("unchecked")
     public void destroyOne(ActiveDescriptor<?> descriptor) {
-        Object retVal = null;
-        synchronized (this) {
-            retVal = backingMap.remove(descriptor);
-            if (retVal == null) return;
-        }
+        Object retVal = backingMap.remove(descriptor);
+        if (retVal == null) return;
             
         ((ActiveDescriptor<Object>) descriptor).dispose(retVal);
     }
@@ -450,23 +489,23 @@ public class AsyncRunLevelContext {
     }
 
     
-    /* package */ synchronized int getCurrentLevel() {
+    /* package */ int getCurrentLevel() {
         return currentLevel;
     }
     
-    /* package */ synchronized void levelCancelled() {
+    /* package */ void levelCancelled() {
         wasCancelled = true;
     }
     
-    /* package */ synchronized void setCurrentLevel(int currentLevel) {
+    /* package */ void setCurrentLevel(int currentLevel) {
         this.currentLevel = currentLevel;
     }
     
-    /* package */ synchronized void setPolicy(RunLevelController.ThreadingPolicy policy) {
+    /* package */ void setPolicy(RunLevelController.ThreadingPolicy policy) {
         this.policy = policy;
     }
     
-    /* package */ synchronized void setExecutor(Executor executor) {
+    /* package */ void setExecutor(Executor executor) {
         if (executor == null) {
             this.executor = DEFAULT_EXECUTOR;
         }
@@ -475,16 +514,24 @@ public class AsyncRunLevelContext {
         }
     }
     
-    /* package */ synchronized Executor getExecutor() {
+    /* package */ Executor getExecutor() {
         return executor;
     }
     
-    /* package */ synchronized RunLevelController.ThreadingPolicy getPolicy() {
+    /* package */ RunLevelController.ThreadingPolicy getPolicy() {
         return policy;
     }
     
+    /* package */ void setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+    }
+    
+    /* package */ SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+    
     /* package */ List<ActiveDescriptor<?>> getOrderedListOfServicesAtLevel(int level) {
-        synchronized (this) {
+        synchronized (orderedCreationList) {
             LinkedList<ActiveDescriptor<?>> retVal = new LinkedList<ActiveDescriptor<?>>();
             
             while (!orderedCreationList.isEmpty()) {
@@ -524,6 +571,7 @@ public class AsyncRunLevelContext {
                     level,
                     maxThreads,
                     fullyThreaded,
+                    schedulingPolicy,
                     cancelTimeout,
                     timer));
             
@@ -546,11 +594,11 @@ public class AsyncRunLevelContext {
      * 
      * @return The current task, may be null if there is no current task
      */
-    public synchronized RunLevelFuture getCurrentFuture() {
+    public RunLevelFuture getCurrentFuture() {
         return currentTask;
     }
     
-    /* package */ synchronized void setMaximumThreads(int maximum) {
+    /* package */ void setMaximumThreads(int maximum) {
         if (maximum < 1) {
             maxThreads = 1;
         }
@@ -559,31 +607,111 @@ public class AsyncRunLevelContext {
         }
     }
     
-    /* package */ synchronized int getMaximumThreads() {
+    /* package */ int getMaximumThreads() {
         return maxThreads;
     }
     
-    /* package */ synchronized void clearErrors() {
+    /* package */ void clearErrors() {
         levelErrorMap.clear();
         wasCancelled = false;
     }
     
-    /* package */ synchronized void setCancelTimeout(long cancelTimeout) {
+    /* package */ void setCancelTimeout(long cancelTimeout) {
         this.cancelTimeout = cancelTimeout;
     }
     
-    /* package */ synchronized long getCancelTimeout() {
+    /* package */ long getCancelTimeout() {
         return cancelTimeout;
     }
     
-    /* package */ synchronized Integer getModeOverride() {
+    /* package */ RunLevelProfileImpl getProfile() {
+        return profile;
+    }
+    
+    /* package */ synchronized RunLevelProfileImpl getLastProfile() {
+        return lastProfile;
+    }
+    
+    /* package */ synchronized void setProfilingEnabled(boolean enabled) {
+        if (enabled == (profile != null)) return;
+        
+        if (enabled) {
+            RunLevelProfileImpl newProfile = new RunLevelProfileImpl();
+            
+            // Registered as a lifecycle listener to find where construction starts
+            profileDescriptor = ServiceLocatorUtilities.addOneConstant(locator, newProfile);
+            
+            lastProfile = newProfile;
+            profile = newProfile;
+            return;
+        }
+        
+        profile = null;
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, profileDescriptor);
+        profileDescriptor = null;
+    }
+    
+    /* package */ Integer getModeOverride() {
         return modeOverride;
     }
     
-    /* package */ synchronized void setModeOverride(Integer modeOverride) {
+    /* package */ void setModeOverride(Integer modeOverride) {
         this.modeOverride = modeOverride;
     }
     
+    /**
+     * The creation of one service by one thread.  Other threads
+     * that need the service wait on this object until it is released
+     */
+    private static class Creation {
+        private final long creatorId;
+        private boolean hardCancelled = false;
+        private boolean finished = false;
+        private boolean released = false;
+        
+        private Creation(long creatorId) {
+            this.creatorId = creatorId;
+        }
+        
+        private long getCreatorId() {
+            return creatorId;
+        }
+        
+        private synchronized void hardCancel() {
+            if (finished) return;
+            
+            hardCancelled = true;
+        }
+        
+        private synchronized boolean isHardCancelled() {
+            return hardCancelled;
+        }
+        
+        /**
+         * Called by the creating thread once creation is over
+         * 
+         * @return true if the creation was hard cancelled
+         */
+        private synchronized boolean finish() {
+            finished = true;
+            
+            return hardCancelled;
+        }
+        
+        private synchronized void release() {
+            released = true;
+            
+            notifyAll();
+        }
+        
+        private synchronized void waitForRelease() throws InterruptedException {
+            while (!released) {
+                wait();
+            }
+        }
+    }
+    
     private static class RunLevelControllerThread extends Thread {
         private RunLevelControllerThread(Runnable r) {
             super(r);
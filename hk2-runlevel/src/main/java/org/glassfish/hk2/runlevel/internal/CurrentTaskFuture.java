@@ -61,6 +61,7 @@ import org.glassfish.hk2.runlevel.ChangeableRunLevelFuture;
 import org.glassfish.hk2.runlevel.ErrorInformation;
 import org.glassfish.hk2.runlevel.ProgressStartedListener;
 import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelListener;
 import org.glassfish.hk2.runlevel.Sorter;
 import org.glassfish.hk2.runlevel.utilities.Utilities;
@@ -80,6 +81,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
     private final ServiceLocator locator;
     private int proposedLevel;
     private final boolean useThreads;
+    private final SchedulingPolicy schedulingPolicy;
     private final List<ServiceHandle<RunLevelListener>> allListenerHandles;
     private final List<ServiceHandle<ProgressStartedListener>> allProgressStartedHandles;
     private final List<ServiceHandle<Sorter>> allSorterHandles;
@@ -100,6 +102,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             int proposedLevel,
             int maxThreads,
             boolean useThreads,
+            SchedulingPolicy schedulingPolicy,
             long cancelTimeout,
             Timer timer) {
         this.asyncContext = asyncContext;
@@ -107,6 +110,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         this.locator = locator;
         this.proposedLevel = proposedLevel;
         this.useThreads = useThreads;
+        this.schedulingPolicy = schedulingPolicy;
         this.maxThreads = maxThreads;
         this.cancelTimeout = cancelTimeout;
         this.timer = timer;
@@ -666,8 +670,10 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         private boolean cancelled = false;
         private CancelTimer hardCanceller;
         private int numJobsRunning = 0;
-        private boolean hardCancelled = false;
+        private volatile boolean hardCancelled = false;
         private final HashSet<ServiceHandle<?>> outstandingHandles = new HashSet<ServiceHandle<?>>();
+        private RunLevelProfileImpl profile;
+        private RunLevelProfileImpl.LevelTimingImpl levelTiming;
         
         private UpOneLevel(int paramUpToThisLevel,
                 UpAllTheWay master,
@@ -703,6 +709,9 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 synchronized (queueLock) {
                     poisonMe = new HashSet<ServiceHandle<?>>(outstandingHandles);
                     outstandingHandles.clear();
+                    
+                    // Runners waiting on the dependency graph must drain the queue
+                    queueLock.notifyAll();
                 }
                 
                 for (ServiceHandle<?> handle : poisonMe) {
@@ -710,6 +719,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 }
             }
             
+            levelFinished();
             master.currentJobComplete(null);
         }
         
@@ -743,8 +753,19 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             return retVal;
         }
 
+        private void levelFinished() {
+            if (profile != null) {
+                profile.levelFinished(levelTiming);
+            }
+        }
+
         @Override
         public void run() {
+            profile = asyncContext.getProfile();
+            if (profile != null) {
+                levelTiming = profile.levelStarted(upToThisLevel);
+            }
+            
             Object jobsLock = new Object();
             List<ServiceHandle<?>> jobs = locator.getAllServiceHandles(new IndexedFilter() {
 
@@ -773,16 +794,23 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 return;
             }
             
+            RunLevelJobGraph graph = null;
+            if (SchedulingPolicy.DEPENDENCY_GRAPH.equals(schedulingPolicy)) {
+                graph = new RunLevelJobGraph(locator, jobs);
+                
+                jobs = graph.getReady();
+            }
+            
             int runnersToCreate = ((numJobs < maxThreads) ? numJobs : maxThreads) - 1;
             if (!useThreads) runnersToCreate = 0;
             
             for (int lcv = 0; lcv < runnersToCreate; lcv++) {
-                QueueRunner runner = new QueueRunner(locator, asyncContext, jobsLock, jobs, this, lock, maxThreads);
+                QueueRunner runner = new QueueRunner(locator, asyncContext, jobsLock, jobs, graph, this, lock, maxThreads);
                 
                 executor.execute(runner);
             }
             
-            QueueRunner myRunner = new QueueRunner(locator, asyncContext, jobsLock, jobs, this, lock, maxThreads);
+            QueueRunner myRunner = new QueueRunner(locator, asyncContext, jobsLock, jobs, graph, this, lock, maxThreads);
             myRunner.run();
         }
         
@@ -821,6 +849,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             }
             
             if (complete) {
+                levelFinished();
                 master.currentJobComplete(accumulatedExceptions);
             }
         }
@@ -1093,16 +1122,19 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         private final AsyncRunLevelContext asyncContext;
         private final Object queueLock;
         private final List<ServiceHandle<?>> queue;
+        private final RunLevelJobGraph graph;
         private final UpOneLevel parent;
         private final Object parentLock;
         private final int maxThreads;
         private ServiceHandle<?> wouldHaveBlocked;
         private final HashSet<ActiveDescriptor<?>> alreadyTried = new HashSet<ActiveDescriptor<?>>();
+        private long busyTime;
         
         private QueueRunner(ServiceLocator locator,
                 AsyncRunLevelContext asyncContext,
                 Object queueLock,
                 List<ServiceHandle<?>> queue,
+                RunLevelJobGraph graph,
                 UpOneLevel parent,
                 Object parentLock,
                 int maxThreads) {
@@ -1110,6 +1142,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             this.asyncContext = asyncContext;
             this.queueLock = queueLock;
             this.queue = queue;
+            this.graph = graph;
             this.parent = parent;
             this.parentLock = parentLock;
             this.maxThreads = maxThreads;
@@ -1117,12 +1150,32 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
 
         @Override
         public void run() {
+            RunLevelProfileImpl.LevelTimingImpl levelTiming = parent.levelTiming;
+            long runStart = (levelTiming == null) ? 0L : System.nanoTime();
+            try {
+                runJobs(levelTiming);
+            }
+            finally {
+                if (levelTiming != null) {
+                    levelTiming.threadFinished(System.nanoTime() - runStart, busyTime);
+                }
+            }
+        }
+        
+        private void runJobs(RunLevelProfileImpl.LevelTimingImpl levelTiming) {
             ServiceHandle<?> runningHandle = null;
             for (;;) {
                 ServiceHandle<?> job;
                 boolean block;
                 synchronized(queueLock) {
-                    if (runningHandle != null) parent.jobFinished(runningHandle);
+                    if (runningHandle != null) {
+                        parent.jobFinished(runningHandle);
+                        
+                        if (graph != null && wouldHaveBlocked == null) {
+                            graph.jobFinished(runningHandle, queue);
+                            queueLock.notifyAll();
+                        }
+                    }
                     
                     if (wouldHaveBlocked != null) {
                         alreadyTried.add(wouldHaveBlocked.getActiveDescriptor());
@@ -1131,14 +1184,19 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                         wouldHaveBlocked = null;
                     }
                     
+                    if (graph != null) waitForReadyJob();
+                    
                     if (queue.isEmpty()) return;
                     
+                    int remainingJobs = queue.size();
+                    if (graph != null) remainingJobs += graph.getNumPending();
+                    
                     if (maxThreads <= 0) {
                         block = true;
                     }
                     else {
                         int currentlyEmptyThreads = maxThreads - parent.getJobsRunning();
-                        block = (queue.size() <= currentlyEmptyThreads);
+                        block = (remainingJobs <= currentlyEmptyThreads);
                     }
                     
                     if (block) {
@@ -1165,11 +1223,43 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                     runningHandle = job;
                 }
                 
-                oneJob(job, block);
+                if (levelTiming == null) {
+                    oneJob(job, block);
+                }
+                else {
+                    long jobStart = System.nanoTime();
+                    oneJob(job, block);
+                    busyTime += System.nanoTime() - jobStart;
+                }
             }
             
         }
         
+        /**
+         * Waits until a job of the dependency graph is ready, or until
+         * there are no jobs left to wait for.  If no job is running that
+         * could release the pending jobs, or if the level has been hard
+         * cancelled, all of the pending jobs are released at once.
+         * Must be called with the queueLock held
+         */
+        private void waitForReadyJob() {
+            while (queue.isEmpty() && graph.hasPending()) {
+                if (parent.getJobsRunning() <= 0 || parent.hardCancelled) {
+                    graph.releaseAll(queue);
+                    return;
+                }
+                
+                try {
+                    queueLock.wait();
+                }
+                catch (InterruptedException ie) {
+                    graph.releaseAll(queue);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        
         /**
          * This method does a preliminary check of whether or not the descriptor (or any children) would cause
          * the thread to block.  If this method returns true then we do not try this service, which can save
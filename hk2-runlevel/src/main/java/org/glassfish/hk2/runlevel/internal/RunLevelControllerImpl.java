@@ -52,6 +52,7 @@ import org.glassfish.hk2.runlevel.CurrentlyRunningException;
 import org.glassfish.hk2.runlevel.RunLevel;
 import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.RunLevelProfile;
 import org.jvnet.hk2.annotations.ContractsProvided;
 import org.jvnet.hk2.annotations.Service;
 
@@ -64,6 +65,13 @@ import org.jvnet.hk2.annotations.Service;
 @ContractsProvided(RunLevelController.class)
 @Visibility(DescriptorVisibility.LOCAL)
 public class RunLevelControllerImpl implements RunLevelController {
+    /**
+     * The system property that sets the {@link SchedulingPolicy}
+     * every controller starts with.  The value is the name of
+     * the policy, and is SORTED if not set
+     */
+    public final static String SCHEDULING_POLICY_PROPERTY = "org.jvnet.hk2.properties.runlevel.scheduling";
+    
     @Inject
     private AsyncRunLevelContext context;
      
@@ -154,6 +162,30 @@ public class RunLevelControllerImpl implements RunLevelController {
         return context.getPolicy();
     }
 
+    /**
+     * Sets the scheduling policy that will be used by
+     * this controller when bringing up the services of
+     * a level.  This is not part of {@link RunLevelController},
+     * the policy of all controllers can instead be set with the
+     * {@link #SCHEDULING_POLICY_PROPERTY} system property
+     * 
+     * @param policy The non-null policy that should be used by this controller
+     */
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        if (policy == null) throw new IllegalArgumentException();
+        context.setSchedulingPolicy(policy);
+    }
+
+    /**
+     * Returns the scheduling policy currently being used by
+     * this controller
+     * 
+     * @return The scheduling policy currently in use with this controller
+     */
+    public SchedulingPolicy getSchedulingPolicy() {
+        return context.getSchedulingPolicy();
+    }
+
     @Override
     public void setExecutor(Executor executor) {
         context.setExecutor(executor);
@@ -199,4 +231,28 @@ public class RunLevelControllerImpl implements RunLevelController {
         context.setModeOverride(validationMode);
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelController#setProfilingEnabled(boolean)
+     */
+    @Override
+    public void setProfilingEnabled(boolean enabled) {
+        context.setProfilingEnabled(enabled);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelController#isProfilingEnabled()
+     */
+    @Override
+    public boolean isProfilingEnabled() {
+        return (context.getProfile() != null);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelController#getProfile()
+     */
+    @Override
+    public RunLevelProfile getProfile() {
+        return context.getLastProfile();
+    }
+
 }
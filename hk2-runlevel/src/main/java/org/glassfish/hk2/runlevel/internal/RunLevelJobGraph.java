@@ -0,0 +1,308 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevel;
+
+/**
+ * The injection dependencies between the jobs of a single level, used
+ * by the DEPENDENCY_GRAPH scheduling policy.  A job depends on every
+ * other job of the level it injects, directly or through services
+ * that are not in a run level.  A job is released to the ready queue
+ * once all of the jobs it depends on have finished
+ * <p>
+ * Every job is given a priority, which is the length of the longest
+ * chain of jobs waiting on it, so that the critical path of the level
+ * is started first.  Jobs that are part of a cycle, or that wait on a
+ * cycle, are released immediately with the lowest priority and are
+ * left to the blocking logic of the runners
+ * <p>
+ * This class is not thread safe.  It is built before the runners
+ * are started, and afterwards it is only used with the queue lock held
+ * 
+ * @author jwells
+ *
+ */
+class RunLevelJobGraph {
+    private final ServiceLocator locator;
+    private final HashMap<ActiveDescriptor<?>, Node> nodes = new HashMap<ActiveDescriptor<?>, Node>();
+    private final List<Node> allNodes;
+    private int numPending;
+    
+    /**
+     * Builds the graph of the given jobs
+     * 
+     * @param locator The locator used to find the dependencies of the jobs
+     * @param jobs The jobs of the level, in sorted order
+     */
+    /* package */ RunLevelJobGraph(ServiceLocator locator, List<ServiceHandle<?>> jobs) {
+        this.locator = locator;
+        
+        allNodes = new ArrayList<Node>(jobs.size());
+        for (ServiceHandle<?> job : jobs) {
+            Node node = new Node(job, allNodes.size());
+            
+            allNodes.add(node);
+            nodes.put(job.getActiveDescriptor(), node);
+        }
+        
+        for (Node node : allNodes) {
+            addDependencies(node, node.job.getActiveDescriptor(), new HashSet<ActiveDescriptor<?>>());
+        }
+        
+        computePriorities();
+        
+        numPending = allNodes.size();
+    }
+    
+    private void addDependencies(Node node, ActiveDescriptor<?> descriptor, HashSet<ActiveDescriptor<?>> visited) {
+        if (!visited.add(descriptor)) return;
+        
+        List<Injectee> injectees;
+        try {
+            if (!descriptor.isReified()) {
+                descriptor = locator.reifyDescriptor(descriptor);
+            }
+            
+            injectees = descriptor.getInjectees();
+        }
+        catch (MultiException me) {
+            // The error will be reported when the job is run
+            return;
+        }
+        
+        for (Injectee injectee : injectees) {
+            ActiveDescriptor<?> child;
+            try {
+                child = locator.getInjecteeDescriptor(injectee);
+            }
+            catch (MultiException me) {
+                continue;
+            }
+            
+            if (child == null) continue;
+            
+            Node dependency = nodes.get(child);
+            if (dependency != null) {
+                if (dependency != node && node.dependencies.add(dependency)) {
+                    dependency.dependents.add(node);
+                    node.waitingOn++;
+                }
+                
+                continue;
+            }
+            
+            // Services of other levels are either already up or
+            // will fail on their own
+            if (RunLevel.class.getName().equals(child.getScope())) continue;
+            
+            addDependencies(node, child, visited);
+        }
+    }
+    
+    /**
+     * Orders the jobs so that every job comes after the jobs it depends
+     * on, and then walks that order backwards so that the priority of every
+     * dependent is known before the priority of the job it waits on
+     */
+    private void computePriorities() {
+        HashMap<Node, Integer> remaining = new HashMap<Node, Integer>();
+        LinkedList<Node> ready = new LinkedList<Node>();
+        for (Node node : allNodes) {
+            if (node.waitingOn == 0) {
+                ready.add(node);
+            }
+            else {
+                remaining.put(node, node.waitingOn);
+            }
+        }
+        
+        ArrayList<Node> order = new ArrayList<Node>(allNodes.size());
+        while (!ready.isEmpty()) {
+            Node node = ready.removeFirst();
+            order.add(node);
+            
+            for (Node dependent : node.dependents) {
+                int left = remaining.get(dependent) - 1;
+                if (left == 0) {
+                    remaining.remove(dependent);
+                    ready.add(dependent);
+                }
+                else {
+                    remaining.put(dependent, left);
+                }
+            }
+        }
+        
+        for (int lcv = order.size() - 1; lcv >= 0; lcv--) {
+            Node node = order.get(lcv);
+            
+            for (Node dependent : node.dependents) {
+                if (!remaining.containsKey(dependent) && dependent.priority >= node.priority) {
+                    node.priority = dependent.priority + 1;
+                }
+            }
+        }
+        
+        // Whatever is left is in a cycle or waits on one
+        for (Node cyclic : remaining.keySet()) {
+            cyclic.waitingOn = 0;
+        }
+    }
+    
+    /**
+     * Returns the jobs that do not depend on any other job,
+     * highest priority first
+     * 
+     * @return The jobs that can be started right away
+     */
+    /* package */ List<ServiceHandle<?>> getReady() {
+        List<ServiceHandle<?>> retVal = new ArrayList<ServiceHandle<?>>();
+        for (Node node : allNodes) {
+            if (node.waitingOn == 0) {
+                release(node, retVal);
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Records that a job has finished, whether or not it succeeded, and
+     * adds any jobs that were only waiting on it to the queue
+     * 
+     * @param job The job that finished
+     * @param queue The ready queue, highest priority first
+     */
+    /* package */ void jobFinished(ServiceHandle<?> job, List<ServiceHandle<?>> queue) {
+        Node node = nodes.get(job.getActiveDescriptor());
+        if (node == null) return;
+        
+        for (Node dependent : node.dependents) {
+            if (dependent.released) continue;
+            
+            if (--dependent.waitingOn <= 0) {
+                release(dependent, queue);
+            }
+        }
+    }
+    
+    /**
+     * Returns true if there are jobs that have not yet
+     * been released to the ready queue
+     * 
+     * @return true if some jobs are still waiting on others
+     */
+    /* package */ boolean hasPending() {
+        return numPending > 0;
+    }
+    
+    /**
+     * Returns the number of jobs that have not yet
+     * been released to the ready queue
+     * 
+     * @return The number of jobs still waiting on others
+     */
+    /* package */ int getNumPending() {
+        return numPending;
+    }
+    
+    /**
+     * Releases every job that has not yet been released.  Used when
+     * none of the jobs the pending jobs wait on are running anymore
+     * 
+     * @param queue The ready queue, highest priority first
+     */
+    /* package */ void releaseAll(List<ServiceHandle<?>> queue) {
+        for (Node node : allNodes) {
+            if (!node.released) {
+                release(node, queue);
+            }
+        }
+    }
+    
+    private void release(Node node, List<ServiceHandle<?>> queue) {
+        node.released = true;
+        numPending--;
+        
+        // Insert after every job of the same or higher priority, and
+        // among those of the same priority in the sorted order
+        ListIterator<ServiceHandle<?>> iterator = queue.listIterator(queue.size());
+        while (iterator.hasPrevious()) {
+            Node previous = nodes.get(iterator.previous().getActiveDescriptor());
+            if (previous == null || previous.priority > node.priority ||
+                    (previous.priority == node.priority && previous.sortOrder < node.sortOrder)) {
+                iterator.next();
+                break;
+            }
+        }
+        
+        iterator.add(node.job);
+    }
+    
+    private static class Node {
+        private final ServiceHandle<?> job;
+        private final int sortOrder;
+        private final HashSet<Node> dependencies = new HashSet<Node>();
+        private final List<Node> dependents = new LinkedList<Node>();
+        private int waitingOn;
+        private int priority = 1;
+        private boolean released;
+        
+        private Node(ServiceHandle<?> job, int sortOrder) {
+            this.job = job;
+            this.sortOrder = sortOrder;
+        }
+    }
+
+}
@@ -0,0 +1,601 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.InstanceLifecycleEvent;
+import org.glassfish.hk2.api.InstanceLifecycleEventType;
+import org.glassfish.hk2.api.InstanceLifecycleListener;
+import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.RunLevelProfile;
+
+/**
+ * The run level profiler.  The creations of services are timed by the
+ * {@link AsyncRunLevelContext}, and the point at which the dependencies
+ * of a service have been resolved comes from the PRE_PRODUCTION event,
+ * which is why this is also an {@link InstanceLifecycleListener} for
+ * run level services while profiling is on
+ * 
+ * @author jwells
+ *
+ */
+@Singleton
+@Visibility(DescriptorVisibility.LOCAL)
+public class RunLevelProfileImpl implements RunLevelProfile, InstanceLifecycleListener {
+    private final static Filter RUN_LEVEL_FILTER = new Filter() {
+
+        @Override
+        public boolean matches(Descriptor d) {
+            return RunLevel.class.getName().equals(d.getScope());
+        }
+        
+    };
+    
+    private final long profileStart = System.nanoTime();
+    
+    /**
+     * The services being created by each thread, innermost first.  The
+     * entry of a thread is removed once it is not creating any service,
+     * so that pooled threads do not keep the profile alive
+     */
+    private final ThreadLocal<LinkedList<ServiceTimingImpl>> creating = new ThreadLocal<LinkedList<ServiceTimingImpl>>();
+    
+    /** The lists below are guarded by this lock */
+    private final Object lock = new Object();
+    private final List<ServiceTimingImpl> services = new ArrayList<ServiceTimingImpl>();
+    private final List<LevelTimingImpl> levels = new ArrayList<LevelTimingImpl>();
+    private final List<WaitSpan> waits = new ArrayList<WaitSpan>();
+    private final Map<Long, String> threadNames = new LinkedHashMap<Long, String>();
+    
+    private volatile LevelTimingImpl currentLevel;
+    
+    /* package */ LevelTimingImpl levelStarted(int level) {
+        LevelTimingImpl retVal = new LevelTimingImpl(level, System.nanoTime() - profileStart);
+        
+        synchronized (lock) {
+            levels.add(retVal);
+        }
+        
+        currentLevel = retVal;
+        return retVal;
+    }
+    
+    /* package */ void levelFinished(LevelTimingImpl level) {
+        level.finish(System.nanoTime() - profileStart);
+        
+        if (currentLevel == level) {
+            currentLevel = null;
+        }
+    }
+    
+    /**
+     * Called by the thread that is about to create the service
+     * 
+     * @param descriptor The service about to be created
+     * @param level The level being worked on
+     * @return The timing to give back to {@link #serviceFinished(ServiceTimingImpl, boolean)}
+     */
+    /* package */ ServiceTimingImpl serviceStarted(ActiveDescriptor<?> descriptor, int level) {
+        long now = System.nanoTime();
+        LinkedList<ServiceTimingImpl> stack = creating.get();
+        if (stack == null) {
+            stack = new LinkedList<ServiceTimingImpl>();
+            creating.set(stack);
+        }
+        
+        long queueTime = 0L;
+        LevelTimingImpl localLevel = currentLevel;
+        if (stack.isEmpty() && localLevel != null) {
+            queueTime = Math.max(0L, (now - profileStart) - localLevel.startTime);
+        }
+        
+        Thread thread = Thread.currentThread();
+        ServiceTimingImpl retVal = new ServiceTimingImpl(descriptor, level, thread.getId(),
+                thread.getName(), now, queueTime);
+        stack.addFirst(retVal);
+        
+        return retVal;
+    }
+    
+    /**
+     * Called by the thread that created or failed to create the service
+     * 
+     * @param timing The timing returned by {@link #serviceStarted(ActiveDescriptor, int)}
+     * @param failed true if the service could not be created
+     */
+    /* package */ void serviceFinished(ServiceTimingImpl timing, boolean failed) {
+        timing.end = System.nanoTime();
+        timing.failed = failed;
+        
+        popTiming(timing);
+        
+        synchronized (lock) {
+            services.add(timing);
+            if (!threadNames.containsKey(timing.threadId)) {
+                threadNames.put(timing.threadId, timing.threadName);
+            }
+        }
+    }
+    
+    /**
+     * Called by the thread that gave up creating the service because it
+     * would have blocked.  The service is created again later, so the
+     * abandoned attempt is not recorded
+     * 
+     * @param timing The timing returned by {@link #serviceStarted(ActiveDescriptor, int)}
+     */
+    /* package */ void serviceAbandoned(ServiceTimingImpl timing) {
+        popTiming(timing);
+    }
+    
+    private void popTiming(ServiceTimingImpl timing) {
+        LinkedList<ServiceTimingImpl> stack = creating.get();
+        if (stack == null) return;
+        
+        stack.remove(timing);
+        if (stack.isEmpty()) {
+            creating.remove();
+        }
+    }
+    
+    /**
+     * Called after a thread waited on a service being created by
+     * another thread
+     * 
+     * @param descriptor The service waited on
+     * @param waitStart When the wait started, from {@link System#nanoTime()}
+     */
+    /* package */ void waited(ActiveDescriptor<?> descriptor, long waitStart) {
+        long now = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        
+        WaitSpan span = new WaitSpan(descriptor, thread.getId(), waitStart, now);
+        synchronized (lock) {
+            waits.add(span);
+            if (!threadNames.containsKey(span.threadId)) {
+                threadNames.put(span.threadId, thread.getName());
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.InstanceLifecycleListener#getFilter()
+     */
+    @Override
+    public Filter getFilter() {
+        return RUN_LEVEL_FILTER;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.InstanceLifecycleListener#lifecycleEvent(org.glassfish.hk2.api.InstanceLifecycleEvent)
+     */
+    @Override
+    public void lifecycleEvent(InstanceLifecycleEvent lifecycleEvent) {
+        LinkedList<ServiceTimingImpl> stack = creating.get();
+        if (stack == null || stack.isEmpty()) return;
+        
+        ServiceTimingImpl timing = stack.getFirst();
+        if (!timing.descriptor.equals(lifecycleEvent.getActiveDescriptor())) return;
+        
+        if (InstanceLifecycleEventType.PRE_PRODUCTION.equals(lifecycleEvent.getEventType())) {
+            timing.preProduction = System.nanoTime();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfile#getServiceTimings()
+     */
+    @Override
+    public List<ServiceTiming> getServiceTimings() {
+        synchronized (lock) {
+            return new ArrayList<ServiceTiming>(services);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfile#getLevelTimings()
+     */
+    @Override
+    public List<LevelTiming> getLevelTimings() {
+        synchronized (lock) {
+            return new ArrayList<LevelTiming>(levels);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfile#writeChromeTrace(java.io.Writer)
+     */
+    @Override
+    public void writeChromeTrace(Writer writer) throws IOException {
+        List<ServiceTimingImpl> localServices;
+        List<LevelTimingImpl> localLevels;
+        List<WaitSpan> localWaits;
+        Map<Long, String> localThreadNames;
+        synchronized (lock) {
+            localServices = new ArrayList<ServiceTimingImpl>(services);
+            localLevels = new ArrayList<LevelTimingImpl>(levels);
+            localWaits = new ArrayList<WaitSpan>(waits);
+            localThreadNames = new LinkedHashMap<Long, String>(threadNames);
+        }
+        
+        writer.write("{\"traceEvents\":[\n");
+        writer.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"tid\":0,\"args\":{\"name\":\"hk2 run levels\"}},\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":0,\"args\":{\"name\":\"levels\"}}");
+        
+        for (Map.Entry<Long, String> threadName : localThreadNames.entrySet()) {
+            writer.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + threadName.getKey() +
+                    ",\"args\":{\"name\":" + quote(threadName.getValue()) + "}}");
+        }
+        
+        for (LevelTimingImpl level : localLevels) {
+            long elapsed = level.getElapsedTime();
+            if (elapsed < 0L) continue;
+            
+            writer.write(",\n");
+            writeSpan(writer, "level " + level.level, "level", 0L, level.startTime, elapsed,
+                    "\"threads\":" + level.getNumberOfThreads() +
+                    ",\"threadUs\":" + micros(level.getThreadTime()) +
+                    ",\"busyUs\":" + micros(level.getBusyTime()));
+        }
+        
+        for (ServiceTimingImpl service : localServices) {
+            String name = getName(service.descriptor);
+            
+            writer.write(",\n");
+            writeSpan(writer, name, "service", service.threadId, service.getStartTime(), service.getTotalTime(),
+                    "\"level\":" + service.level +
+                    ",\"queueUs\":" + micros(service.getQueueTime()) +
+                    ",\"dependencyUs\":" + micros(service.getDependencyTime()) +
+                    ",\"constructionUs\":" + micros(service.getConstructionTime()) +
+                    ",\"failed\":" + service.failed);
+            
+            if (service.preProduction != 0L) {
+                writer.write(",\n");
+                writeSpan(writer, "construct " + name, "construction", service.threadId,
+                        service.preProduction - profileStart, service.getConstructionTime(), null);
+            }
+        }
+        
+        for (WaitSpan wait : localWaits) {
+            writer.write(",\n");
+            writeSpan(writer, "wait " + getName(wait.descriptor), "wait", wait.threadId,
+                    wait.start - profileStart, wait.end - wait.start, null);
+        }
+        
+        writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+    
+    private static void writeSpan(Writer writer, String name, String category, long tid,
+            long start, long duration, String args) throws IOException {
+        writer.write("{\"name\":" + quote(name) +
+                ",\"cat\":\"" + category +
+                "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + tid +
+                ",\"ts\":" + micros(start) +
+                ",\"dur\":" + micros(duration));
+        if (args != null) {
+            writer.write(",\"args\":{" + args + "}");
+        }
+        writer.write("}");
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfile#writeReport(java.io.Writer)
+     */
+    @Override
+    public void writeReport(Writer writer) throws IOException {
+        List<ServiceTimingImpl> localServices;
+        List<LevelTimingImpl> localLevels;
+        synchronized (lock) {
+            localServices = new ArrayList<ServiceTimingImpl>(services);
+            localLevels = new ArrayList<LevelTimingImpl>(levels);
+        }
+        
+        writer.write("Run level profile: " + localLevels.size() + " levels, " + localServices.size() + " services\n");
+        writer.write(String.format("%6s %12s %8s %8s%n", "Level", "Elapsed ms", "Threads", "Busy %"));
+        for (LevelTimingImpl level : localLevels) {
+            long elapsed = level.getElapsedTime();
+            long threadTime = level.getThreadTime();
+            
+            writer.write(String.format("%6d %12s %8d %8s%n",
+                    level.level,
+                    (elapsed < 0L) ? "-" : millis(elapsed),
+                    level.getNumberOfThreads(),
+                    (threadTime <= 0L) ? "-" : String.format("%.1f", (100.0 * level.getBusyTime()) / threadTime)));
+        }
+        
+        Collections.sort(localServices, new Comparator<ServiceTimingImpl>() {
+
+            @Override
+            public int compare(ServiceTimingImpl o1, ServiceTimingImpl o2) {
+                long c1 = o1.getConstructionTime();
+                long c2 = o2.getConstructionTime();
+                
+                if (c1 == c2) return 0;
+                return (c1 > c2) ? -1 : 1;
+            }
+            
+        });
+        
+        writer.write(String.format("%n%-6s %12s %12s %12s %12s %-20s %s%n",
+                "Level", "Construct ms", "Depend ms", "Queue ms", "Total ms", "Thread", "Service"));
+        for (ServiceTimingImpl service : localServices) {
+            writer.write(String.format("%-6d %12s %12s %12s %12s %-20s %s%s%n",
+                    service.level,
+                    millis(service.getConstructionTime()),
+                    millis(service.getDependencyTime()),
+                    millis(service.getQueueTime()),
+                    millis(service.getTotalTime()),
+                    service.threadName,
+                    getName(service.descriptor),
+                    (service.failed ? " (failed)" : "")));
+        }
+        
+        writer.flush();
+    }
+    
+    private static String getName(ActiveDescriptor<?> descriptor) {
+        String retVal = descriptor.getImplementation();
+        if (descriptor.getName() != null) {
+            retVal = retVal + "(" + descriptor.getName() + ")";
+        }
+        
+        return retVal;
+    }
+    
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+    
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int lcv = 0; lcv < value.length(); lcv++) {
+            char c = value.charAt(lcv);
+            
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            default:
+                if (c < ' ') {
+                    sb.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+        
+        return sb.toString();
+    }
+    
+    /**
+     * The timing of one service.  Written only by the creating thread
+     * before it is added to the list of services
+     */
+    /* package */ class ServiceTimingImpl implements ServiceTiming {
+        private final ActiveDescriptor<?> descriptor;
+        private final int level;
+        private final long threadId;
+        private final String threadName;
+        private final long start;
+        private final long queueTime;
+        private long preProduction;
+        private long end;
+        private boolean failed;
+        
+        private ServiceTimingImpl(ActiveDescriptor<?> descriptor, int level, long threadId,
+                String threadName, long start, long queueTime) {
+            this.descriptor = descriptor;
+            this.level = level;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.start = start;
+            this.queueTime = queueTime;
+        }
+
+        @Override
+        public ActiveDescriptor<?> getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public String getThreadName() {
+            return threadName;
+        }
+
+        @Override
+        public long getStartTime() {
+            return start - profileStart;
+        }
+
+        @Override
+        public long getQueueTime() {
+            return queueTime;
+        }
+
+        @Override
+        public long getDependencyTime() {
+            if (preProduction == 0L) return end - start;
+            
+            return preProduction - start;
+        }
+
+        @Override
+        public long getConstructionTime() {
+            if (preProduction == 0L) return 0L;
+            
+            return end - preProduction;
+        }
+
+        @Override
+        public long getTotalTime() {
+            return end - start;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return failed;
+        }
+        
+        @Override
+        public String toString() {
+            return "ServiceTimingImpl(" + getName(descriptor) + "," + level + "," + threadName + "," +
+                millis(getConstructionTime()) + "," + System.identityHashCode(this) + ")";
+        }
+    }
+    
+    /**
+     * The timing of one level
+     */
+    /* package */ static class LevelTimingImpl implements LevelTiming {
+        private final int level;
+        private final long startTime;
+        private long elapsedTime = -1L;
+        private int threads;
+        private long threadTime;
+        private long busyTime;
+        
+        private LevelTimingImpl(int level, long startTime) {
+            this.level = level;
+            this.startTime = startTime;
+        }
+        
+        private synchronized void finish(long endTime) {
+            if (elapsedTime >= 0L) return;
+            
+            elapsedTime = endTime - startTime;
+        }
+        
+        /**
+         * Called by each thread that worked on the level once it is done
+         * 
+         * @param threadTime How long the thread worked on the level
+         * @param busyTime How long the thread was busy with services
+         */
+        /* package */ synchronized void threadFinished(long threadTime, long busyTime) {
+            threads++;
+            this.threadTime += threadTime;
+            this.busyTime += busyTime;
+        }
+
+        @Override
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public long getStartTime() {
+            return startTime;
+        }
+
+        @Override
+        public synchronized long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        @Override
+        public synchronized int getNumberOfThreads() {
+            return threads;
+        }
+
+        @Override
+        public synchronized long getThreadTime() {
+            return threadTime;
+        }
+
+        @Override
+        public synchronized long getBusyTime() {
+            return busyTime;
+        }
+        
+        @Override
+        public String toString() {
+            return "LevelTimingImpl(" + level + "," + getElapsedTime() + "," + System.identityHashCode(this) + ")";
+        }
+    }
+    
+    private static class WaitSpan {
+        private final ActiveDescriptor<?> descriptor;
+        private final long threadId;
+        private final long start;
+        private final long end;
+        
+        private WaitSpan(ActiveDescriptor<?> descriptor, long threadId, long start, long end) {
+            this.descriptor = descriptor;
+            this.threadId = threadId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+}
@@ -40,6 +40,7 @@
 
 package org.glassfish.hk2.runlevel.tests.blocking1;
 
+import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -47,6 +48,7 @@ import java.util.concurrent.TimeoutException;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.RunLevelProfile;
 import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
 import org.junit.Assert;
 import org.junit.Test;
@@ -81,6 +83,9 @@ public class Blocking1Test {
                 DependingService2.class,
                 CountingDependency.class);
         
+        BlockingService.stop();
+        CountingDependency.reset();
+        
         RunLevelController controller = locator.getService(RunLevelController.class);
         controller.setMaximumUseableThreads(2);
         
@@ -102,5 +107,51 @@ public class Blocking1Test {
         future.get();
         Assert.assertTrue(future.isDone());
     }
+    
+    /**
+     * The creations that are given up on because they would block
+     * are done again later.  Those that were given up on are not
+     * recorded by the profiler, as failures or otherwise
+     * 
+     * @throws TimeoutException 
+     * @throws ExecutionException 
+     * @throws InterruptedException 
+     */
+    @Test
+    public void testBlockersNotProfiled() throws InterruptedException, ExecutionException, TimeoutException {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                BlockingService.class,
+                DependingService1.class,
+                DependingService2.class,
+                CountingDependency.class);
+        
+        BlockingService.stop();
+        CountingDependency.reset();
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setMaximumUseableThreads(2);
+        controller.setProfilingEnabled(true);
+        
+        RunLevelFuture future = controller.proceedToAsync(5);
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("Should not have succeeded, the blocking service is still blocking");
+        }
+        catch (TimeoutException te) {
+            // success
+        }
+        
+        BlockingService.go();
+        
+        future.get();
+        
+        HashSet<String> profiled = new HashSet<String>();
+        for (RunLevelProfile.ServiceTiming timing : controller.getProfile().getServiceTimings()) {
+            Assert.assertFalse(timing.isFailed());
+            Assert.assertTrue(profiled.add(timing.getDescriptor().getImplementation()));
+        }
+        
+        Assert.assertEquals(3, profiled.size());
+    }
 
 }
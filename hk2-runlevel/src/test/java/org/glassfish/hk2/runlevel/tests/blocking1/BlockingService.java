@@ -73,6 +73,12 @@ public class BlockingService {
         }
     }
     
+    public static void stop() {
+        synchronized (lock) {
+            go = false;
+        }
+    }
+    
     public static void go() {
         synchronized (lock) {
             go = true;
@@ -59,6 +59,12 @@ public class CountingDependency {
         }
     }
     
+    public static void reset() {
+        synchronized (lock) {
+            count = 0;
+        }
+    }
+    
     @SuppressWarnings("unused")
     @PostConstruct
     private void postConstruct() {
@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.concurrent;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests many threads needing the same service at once
+ * 
+ * @author jwells
+ *
+ */
+public class ConcurrentCreationTest {
+    
+    /**
+     * Tests that a service needed by many threads at the same
+     * time is only created once, and that every thread gets
+     * the same instance
+     */
+    @Test
+    public void testSharedServiceCreatedOnce() {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                UserOne.class,
+                UserTwo.class,
+                UserThree.class,
+                UserFour.class,
+                SharedService.class);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        
+        for (int lcv = 0; lcv < 20; lcv++) {
+            SharedService.reset();
+            
+            controller.proceedTo(1);
+            
+            Assert.assertEquals("Failed on iteration " + lcv, 1, SharedService.getCreated());
+            
+            SharedService shared = locator.getService(SharedService.class);
+            Assert.assertSame(shared, locator.getService(UserOne.class).getShared());
+            Assert.assertSame(shared, locator.getService(UserTwo.class).getShared());
+            Assert.assertSame(shared, locator.getService(UserThree.class).getShared());
+            Assert.assertSame(shared, locator.getService(UserFour.class).getShared());
+            
+            controller.proceedTo(0);
+        }
+    }
+
+}
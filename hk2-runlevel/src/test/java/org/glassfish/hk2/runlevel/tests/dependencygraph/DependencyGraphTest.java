@@ -0,0 +1,221 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.dependencygraph;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelProfile;
+import org.glassfish.hk2.runlevel.internal.RunLevelControllerImpl;
+import org.glassfish.hk2.runlevel.internal.SchedulingPolicy;
+import org.glassfish.hk2.runlevel.tests.utilities.SlowService;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the DEPENDENCY_GRAPH scheduling policy
+ * 
+ * @author jwells
+ *
+ */
+public class DependencyGraphTest {
+    /* package */ final static String INDEPENDENT = "independent";
+    /* package */ final static String FIRST = "first";
+    /* package */ final static String SECOND = "second";
+    /* package */ final static String THIRD = "third";
+    
+    /* package */ final static String TOP = "top";
+    /* package */ final static String LEFT = "left";
+    /* package */ final static String RIGHT = "right";
+    /* package */ final static String BOTTOM = "bottom";
+    
+    /**
+     * Tests that SORTED is the default and that null is not allowed
+     */
+    @Test
+    public void testDefaultSchedulingPolicy() {
+        ServiceLocator locator = Utilities.getServiceLocator();
+        
+        RunLevelControllerImpl controller = (RunLevelControllerImpl) locator.getService(RunLevelController.class);
+        Assert.assertEquals(SchedulingPolicy.SORTED, controller.getSchedulingPolicy());
+        
+        try {
+            controller.setSchedulingPolicy(null);
+            Assert.fail("A null scheduling policy should not be allowed");
+        }
+        catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+    
+    /**
+     * Tests that with a single thread the longest chain of dependencies
+     * is started first, from the bottom up, even though its services are
+     * sorted last.  Third depends on Second through a service that is not
+     * in a run level
+     */
+    @Test
+    public void testCriticalPathStartedFirst() {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                Independent.class,
+                Third.class,
+                Second.class,
+                First.class,
+                Middleman.class,
+                RecorderService.class);
+        
+        RunLevelControllerImpl controller = (RunLevelControllerImpl) locator.getService(RunLevelController.class);
+        controller.setMaximumUseableThreads(1);
+        
+        // Sorted, everything is started from Third
+        controller.proceedTo(1);
+        
+        RecorderService recorder = locator.getService(RecorderService.class);
+        
+        {
+            List<String> sorted = recorder.getRecord();
+            Assert.assertEquals(4, sorted.size());
+            
+            Assert.assertEquals(INDEPENDENT, sorted.get(0));
+            Assert.assertEquals(FIRST, sorted.get(1));
+            Assert.assertEquals(SECOND, sorted.get(2));
+            Assert.assertEquals(THIRD, sorted.get(3));
+        }
+        
+        controller.proceedTo(0);
+        recorder.clear();
+        
+        controller.setSchedulingPolicy(SchedulingPolicy.DEPENDENCY_GRAPH);
+        controller.proceedTo(1);
+        
+        {
+            List<String> graphed = recorder.getRecord();
+            Assert.assertEquals(4, graphed.size());
+            
+            Assert.assertEquals(FIRST, graphed.get(0));
+            Assert.assertEquals(SECOND, graphed.get(1));
+            Assert.assertEquals(INDEPENDENT, graphed.get(2));
+            Assert.assertEquals(THIRD, graphed.get(3));
+        }
+        
+        controller.proceedTo(0);
+    }
+    
+    /**
+     * Tests that a diamond of slow services comes up with many threads,
+     * with runners waiting for the services they depend on to finish.
+     * No service is started before the services it depends on have
+     * finished, which is not the case with SORTED where every service
+     * is started at once and waits on its dependencies, and the two
+     * independent sides of the diamond are created at the same time
+     */
+    @Test
+    public void testDiamondWithThreads() {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                Top.class,
+                Left.class,
+                Right.class,
+                Bottom.class,
+                RecorderService.class);
+        
+        RunLevelControllerImpl controller = (RunLevelControllerImpl) locator.getService(RunLevelController.class);
+        controller.setSchedulingPolicy(SchedulingPolicy.DEPENDENCY_GRAPH);
+        
+        RecorderService recorder = locator.getService(RecorderService.class);
+        
+        // Twice, to make sure the level can be brought up again
+        for (int lcv = 0; lcv < 2; lcv++) {
+            controller.setProfilingEnabled(true);
+            controller.proceedTo(2);
+            
+            List<String> record = recorder.getRecord();
+            Assert.assertEquals(4, record.size());
+            
+            Assert.assertEquals(BOTTOM, record.get(0));
+            Assert.assertTrue(record.subList(1, 3).contains(LEFT));
+            Assert.assertTrue(record.subList(1, 3).contains(RIGHT));
+            Assert.assertEquals(TOP, record.get(3));
+            
+            List<RunLevelProfile.ServiceTiming> timings = controller.getProfile().getServiceTimings();
+            controller.setProfilingEnabled(false);
+            
+            RunLevelProfile.ServiceTiming top = getTiming(timings, Top.class);
+            RunLevelProfile.ServiceTiming left = getTiming(timings, Left.class);
+            RunLevelProfile.ServiceTiming right = getTiming(timings, Right.class);
+            RunLevelProfile.ServiceTiming bottom = getTiming(timings, Bottom.class);
+            
+            // Nothing waited on the creation of the services it depends on
+            long slowTime = TimeUnit.MILLISECONDS.toNanos(SlowService.SLOW_TIME);
+            Assert.assertTrue(timings.toString(), left.getDependencyTime() < slowTime);
+            Assert.assertTrue(timings.toString(), right.getDependencyTime() < slowTime);
+            Assert.assertTrue(timings.toString(), top.getDependencyTime() < slowTime);
+            
+            Assert.assertTrue(timings.toString(), left.getStartTime() >= getEndTime(bottom));
+            Assert.assertTrue(timings.toString(), right.getStartTime() >= getEndTime(bottom));
+            Assert.assertTrue(timings.toString(), top.getStartTime() >= getEndTime(left));
+            Assert.assertTrue(timings.toString(), top.getStartTime() >= getEndTime(right));
+            
+            // The two sides of the diamond are created at the same time
+            Assert.assertTrue(timings.toString(), left.getStartTime() < getEndTime(right));
+            Assert.assertTrue(timings.toString(), right.getStartTime() < getEndTime(left));
+            
+            controller.proceedTo(0);
+            recorder.clear();
+        }
+    }
+    
+    private static RunLevelProfile.ServiceTiming getTiming(List<RunLevelProfile.ServiceTiming> timings, Class<?> service) {
+        for (RunLevelProfile.ServiceTiming timing : timings) {
+            if (service.getName().equals(timing.getDescriptor().getImplementation())) return timing;
+        }
+        
+        Assert.fail("There is no timing for " + service.getName() + " in " + timings);
+        return null;
+    }
+    
+    private static long getEndTime(RunLevelProfile.ServiceTiming timing) {
+        return timing.getStartTime() + timing.getTotalTime();
+    }
+
+}
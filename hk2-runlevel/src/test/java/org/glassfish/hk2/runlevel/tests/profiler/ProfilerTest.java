@@ -0,0 +1,166 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.runlevel.tests.profiler;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.InstanceLifecycleListener;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelProfile;
+import org.glassfish.hk2.runlevel.tests.utilities.SlowService;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the run level profiler
+ * 
+ * @author jwells
+ *
+ */
+public class ProfilerTest {
+    private final static long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(SlowService.SLOW_TIME);
+    
+    /**
+     * Tests that the services and levels are timed, and that the
+     * slow postConstruct shows up as construction of the slow service
+     * and as dependency time of the service that injects it
+     */
+    @Test
+    public void testProfileRecorded() throws Exception {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                DependsOnSlowService.class,
+                SlowService.class);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        Assert.assertFalse(controller.isProfilingEnabled());
+        Assert.assertNull(controller.getProfile());
+        
+        controller.setProfilingEnabled(true);
+        Assert.assertTrue(controller.isProfilingEnabled());
+        
+        controller.proceedTo(1);
+        
+        RunLevelProfile profile = controller.getProfile();
+        Assert.assertNotNull(profile);
+        
+        List<RunLevelProfile.ServiceTiming> services = profile.getServiceTimings();
+        Assert.assertEquals(2, services.size());
+        
+        RunLevelProfile.ServiceTiming slow = null;
+        RunLevelProfile.ServiceTiming depends = null;
+        for (RunLevelProfile.ServiceTiming service : services) {
+            Assert.assertEquals(1, service.getLevel());
+            Assert.assertFalse(service.isFailed());
+            Assert.assertEquals(service.getTotalTime(),
+                    service.getDependencyTime() + service.getConstructionTime());
+            
+            if (SlowService.class.getName().equals(service.getDescriptor().getImplementation())) {
+                slow = service;
+            }
+            else if (DependsOnSlowService.class.getName().equals(service.getDescriptor().getImplementation())) {
+                depends = service;
+            }
+        }
+        Assert.assertNotNull(slow);
+        Assert.assertNotNull(depends);
+        
+        Assert.assertTrue(slow.getConstructionTime() >= SLOW_NANOS);
+        Assert.assertTrue(depends.getDependencyTime() >= SLOW_NANOS);
+        Assert.assertTrue(depends.getConstructionTime() < depends.getDependencyTime());
+        
+        // Levels -1 and 0 have no services but are still timed
+        List<RunLevelProfile.LevelTiming> levels = profile.getLevelTimings();
+        Assert.assertEquals(3, levels.size());
+        
+        RunLevelProfile.LevelTiming level = levels.get(2);
+        Assert.assertEquals(1, level.getLevel());
+        Assert.assertTrue(level.getElapsedTime() >= SLOW_NANOS);
+        Assert.assertTrue(level.getNumberOfThreads() >= 1);
+        Assert.assertTrue(level.getBusyTime() <= level.getThreadTime());
+        
+        StringWriter trace = new StringWriter();
+        profile.writeChromeTrace(trace);
+        Assert.assertTrue(trace.toString().startsWith("{\"traceEvents\":["));
+        Assert.assertTrue(trace.toString().contains("\"name\":\"" + SlowService.class.getName() + "\""));
+        Assert.assertTrue(trace.toString().contains("\"name\":\"level 1\""));
+        
+        StringWriter report = new StringWriter();
+        profile.writeReport(report);
+        Assert.assertTrue(report.toString().contains(SlowService.class.getName()));
+        Assert.assertTrue(report.toString().contains(DependsOnSlowService.class.getName()));
+        
+        controller.proceedTo(0);
+    }
+    
+    /**
+     * Tests that nothing is recorded once profiling is turned off, but
+     * that the last profile is still available
+     */
+    @Test
+    public void testProfilingTurnedOff() {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                DependsOnSlowService.class,
+                SlowService.class);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setProfilingEnabled(true);
+        
+        controller.proceedTo(1);
+        controller.proceedTo(0);
+        
+        controller.setProfilingEnabled(false);
+        Assert.assertFalse(controller.isProfilingEnabled());
+        Assert.assertTrue(locator.getAllServices(InstanceLifecycleListener.class).isEmpty());
+        
+        controller.proceedTo(1);
+        
+        RunLevelProfile profile = controller.getProfile();
+        Assert.assertEquals(2, profile.getServiceTimings().size());
+        Assert.assertEquals(3, profile.getLevelTimings().size());
+        
+        controller.proceedTo(0);
+    }
+
+}
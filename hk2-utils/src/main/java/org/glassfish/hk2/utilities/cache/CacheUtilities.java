@@ -39,6 +39,7 @@
  */
 package org.glassfish.hk2.utilities.cache;
 
+import org.glassfish.hk2.utilities.cache.internal.SegmentedWeakCARCacheImpl;
 import org.glassfish.hk2.utilities.cache.internal.WeakCARCacheImpl;
 
 /**
@@ -64,5 +65,73 @@ public class CacheUtilities {
     public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak) {
         return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak);
     }
+    
+    /**
+     * Returns a WEAKCarCache with the given computable and the given maximum value size of the cache.
+     * If computeInParallel is true the computable is not called with the lock of the cache held, so
+     * that misses on different keys are computed in parallel.  Concurrent misses on the same key wait
+     * for the single computation in progress rather than calling the computable again.  A computable
+     * that itself calls the cache it is computing for will not wait for computations in progress on
+     * other threads, in order to prevent deadlocks
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the cache
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param computeInParallel if true the computable is called outside the lock
+     * of the cache, if false all computations are done holding the lock of the cache
+     * @return A WeakCARCache that is empty
+     */
+    public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak,
+            boolean computeInParallel) {
+        return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak, computeInParallel);
+    }
+    
+    /**
+     * Returns a SegmentedWeakCARCache with the given computable.  The maximum value size of the
+     * cache is split as evenly as possible between the given number of segments, each of which
+     * runs the CAR algorithm independently under its own lock
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the whole cache.  Must be at least numberOfSegments
+     * @param numberOfSegments The number of independent segments.  Must be at least one
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param computeInParallel if true the computable is called outside the lock
+     * of the segment, if false all computations are done holding the lock of the segment
+     * @return A SegmentedWeakCARCache that is empty
+     */
+    public static <K,V> SegmentedWeakCARCache<K,V> createSegmentedWeakCARCache(Computable<K,V> computable, int maxSize,
+            int numberOfSegments, boolean isWeak, boolean computeInParallel) {
+        return new SegmentedWeakCARCacheImpl<K,V>(computable, maxSize, numberOfSegments, isWeak, computeInParallel);
+    }
+    
+    /**
+     * Returns a SegmentedWeakCARCache like
+     * {@link #createSegmentedWeakCARCache(Computable, int, int, boolean, boolean)}
+     * that also keeps a reverse index of its keys, so that
+     * {@link SegmentedWeakCARCache#releaseIndexed(Object)} can be used
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the whole cache.  Must be at least numberOfSegments
+     * @param numberOfSegments The number of independent segments.  Must be at least one
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param computeInParallel if true the computable is called outside the lock
+     * of the segment, if false all computations are done holding the lock of the segment
+     * @param indexer The non-null indexer used to find the index key of every key
+     * added to the cache.  If isWeak is true the index holds the keys weakly, so
+     * index keys should not refer to the keys they were found from
+     * @return A SegmentedWeakCARCache that is empty
+     */
+    public static <K,V> SegmentedWeakCARCache<K,V> createSegmentedWeakCARCache(Computable<K,V> computable, int maxSize,
+            int numberOfSegments, boolean isWeak, boolean computeInParallel, CacheKeyIndexer<K> indexer) {
+        if (indexer == null) throw new IllegalArgumentException();
+        
+        return new SegmentedWeakCARCacheImpl<K,V>(computable, maxSize, numberOfSegments, isWeak, computeInParallel, indexer);
+    }
 
 }
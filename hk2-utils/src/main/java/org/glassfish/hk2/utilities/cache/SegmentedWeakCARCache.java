@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache;
+
+/**
+ * A {@link WeakCARCache} that is split into a number of independent
+ * segments, each of which runs the CAR algorithm on its own share of
+ * the keys.  The segment of a key is chosen from its hash code.  Since
+ * each segment has its own lock, threads working with keys in different
+ * segments do not contend with one another.
+ * <p>
+ * The methods of {@link WeakCARCache} return the totals over all segments.
+ * The individual segments can be used to get the statistics of each
+ * segment, but they should not be used to add or remove values
+ * 
+ * @author jwells
+ *
+ */
+public interface SegmentedWeakCARCache<K,V> extends WeakCARCache<K, V> {
+    /**
+     * Returns the number of segments in this cache
+     * 
+     * @return The number of segments in this cache, which
+     * will always be at least one
+     */
+    public int getNumberOfSegments();
+    
+    /**
+     * Returns the segment at the given index
+     * 
+     * @param index The index of the segment, from 0
+     * to {@link #getNumberOfSegments()} - 1
+     * @return The segment at the given index.  Will not
+     * return null
+     * @throws IndexOutOfBoundsException if there is no
+     * segment with the given index
+     */
+    public WeakCARCache<K,V> getSegment(int index);
+    
+    /**
+     * Returns the number of values removed from the T1 or
+     * T2 clocks of all the segments in order to make room
+     * for new values since the last time clear was called
+     * 
+     * @return The number of evictions since the last time
+     * clear was called
+     */
+    public long getEvictions();
+    
+    /**
+     * Returns the number of values removed from the T1 or
+     * T2 clocks of the segment at the given index in order
+     * to make room for new values since the last time clear
+     * was called
+     * 
+     * @param index The index of the segment, from 0
+     * to {@link #getNumberOfSegments()} - 1
+     * @return The number of evictions from the segment
+     * since the last time clear was called
+     * @throws IndexOutOfBoundsException if there is no
+     * segment with the given index
+     */
+    public long getSegmentEvictions(int index);
+    
+    /**
+     * Releases all key/value pairs whose keys have the given
+     * index key.  Unlike {@link #releaseMatching(CacheKeyFilter)}
+     * the cost of this is proportional to the number of keys released
+     * rather than to the size of the cache
+     * 
+     * @param indexKey The index key, as returned by the
+     * {@link CacheKeyIndexer} of this cache.  If null nothing
+     * is released
+     * @throws IllegalStateException if this cache was not
+     * created with a {@link CacheKeyIndexer}
+     */
+    public void releaseIndexed(Object indexKey);
+
+}
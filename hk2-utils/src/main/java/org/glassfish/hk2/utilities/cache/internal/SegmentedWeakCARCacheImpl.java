@@ -0,0 +1,333 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.internal;
+
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache;
+
+/**
+ * A set of independent {@link WeakCARCacheImpl} segments.  The
+ * maximum size of the cache is split as evenly as possible between
+ * the segments
+ * 
+ * @author jwells
+ *
+ */
+public class SegmentedWeakCARCacheImpl<K,V> implements SegmentedWeakCARCache<K, V> {
+    private final Computable<K,V> computable;
+    private final int maxSize;
+    private final WeakCARCacheImpl<K,V> segments[];
+    
+    public SegmentedWeakCARCacheImpl(Computable<K,V> computable, int maxSize, int numberOfSegments,
+            boolean isWeak, boolean computeInParallel) {
+        this(computable, maxSize, numberOfSegments, isWeak, computeInParallel, null);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public SegmentedWeakCARCacheImpl(Computable<K,V> computable, int maxSize, int numberOfSegments,
+            boolean isWeak, boolean computeInParallel, CacheKeyIndexer<K> indexer) {
+        if (numberOfSegments < 1) {
+            throw new IllegalArgumentException("The number of segments must be at least one, it is " + numberOfSegments);
+        }
+        if (maxSize < numberOfSegments) {
+            throw new IllegalArgumentException("The maximum size " + maxSize +
+                    " must be at least the number of segments " + numberOfSegments);
+        }
+        
+        this.computable = computable;
+        this.maxSize = maxSize;
+        
+        segments = new WeakCARCacheImpl[numberOfSegments];
+        
+        int segmentSize = maxSize / numberOfSegments;
+        int remainder = maxSize % numberOfSegments;
+        for (int lcv = 0; lcv < numberOfSegments; lcv++) {
+            int thisSize = (lcv < remainder) ? segmentSize + 1 : segmentSize;
+            
+            segments[lcv] = new WeakCARCacheImpl<K,V>(computable, thisSize, isWeak, computeInParallel, indexer);
+        }
+    }
+    
+    private WeakCARCacheImpl<K,V> getSegmentFor(K key) {
+        if (segments.length == 1) return segments[0];
+        
+        // Spread the bits, since many hash codes differ only in the high bits
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#compute(java.lang.Object)
+     */
+    @Override
+    public V compute(K key) {
+        return getSegmentFor(key).compute(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getKeySize()
+     */
+    @Override
+    public int getKeySize() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getKeySize();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getValueSize()
+     */
+    @Override
+    public int getValueSize() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getValueSize();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT1Size()
+     */
+    @Override
+    public int getT1Size() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getT1Size();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT2Size()
+     */
+    @Override
+    public int getT2Size() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getT2Size();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getB1Size()
+     */
+    @Override
+    public int getB1Size() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getB1Size();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getB2Size()
+     */
+    @Override
+    public int getB2Size() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getB2Size();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#clear()
+     */
+    @Override
+    public void clear() {
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getMaxSize()
+     */
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getComputable()
+     */
+    @Override
+    public Computable<K, V> getComputable() {
+        return computable;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(K key) {
+        return getSegmentFor(key).remove(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#releaseMatching(org.glassfish.hk2.utilities.cache.CacheKeyFilter)
+     */
+    @Override
+    public void releaseMatching(CacheKeyFilter<K> filter) {
+        if (filter == null) return;
+        
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            segment.releaseMatching(filter);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache#releaseIndexed(java.lang.Object)
+     */
+    @Override
+    public void releaseIndexed(Object indexKey) {
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            segment.releaseIndexed(indexKey);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#clearStaleReferences()
+     */
+    @Override
+    public void clearStaleReferences() {
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            segment.clearStaleReferences();
+        }
+    }
+
+    /**
+     * Returns the sum of the p values of all segments
+     * 
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getP()
+     */
+    @Override
+    public int getP() {
+        int retVal = 0;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getP();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#dumpAllLists()
+     */
+    @Override
+    public String dumpAllLists() {
+        StringBuffer sb = new StringBuffer();
+        for (int lcv = 0; lcv < segments.length; lcv++) {
+            sb.append("Segment " + lcv + ":\n");
+            sb.append(segments[lcv].dumpAllLists());
+        }
+        
+        return sb.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getHitRate()
+     */
+    @Override
+    public double getHitRate() {
+        long localHits = 0L;
+        long localTries = 0L;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            localHits += segment.getHits();
+            localTries += segment.getTries();
+        }
+        if (localTries == 0) localTries = 1;
+        
+        return ((double) localHits / (double) localTries) * (double) 100.00;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache#getEvictions()
+     */
+    @Override
+    public long getEvictions() {
+        long retVal = 0L;
+        for (WeakCARCacheImpl<K,V> segment : segments) {
+            retVal += segment.getEvictions();
+        }
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache#getSegmentEvictions(int)
+     */
+    @Override
+    public long getSegmentEvictions(int index) {
+        return segments[index].getEvictions();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache#getNumberOfSegments()
+     */
+    @Override
+    public int getNumberOfSegments() {
+        return segments.length;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache#getSegment(int)
+     */
+    @Override
+    public WeakCARCacheImpl<K, V> getSegment(int index) {
+        return segments[index];
+    }
+    
+    @Override
+    public String toString() {
+        return "SegmentedWeakCARCacheImpl(segments=" + segments.length + ",maxSize=" + maxSize +
+                ",valueSize=" + getValueSize() + ",hitRate=" + getHitRate() + "%," +
+                System.identityHashCode(this) + ")";
+    }
+
+}
@@ -39,10 +39,19 @@
  */
 package org.glassfish.hk2.utilities.cache.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
@@ -54,6 +63,20 @@ import org.glassfish.hk2.utilities.general.WeakHashLRU;
  * Implements the CAR algorithm as found here:
  * 
  * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.105.6057
+ * <p>
+ * If computeInParallel is true the computable is called without
+ * holding the lock of this cache.  Misses on different keys are then
+ * computed in parallel, while concurrent misses on the same key wait
+ * for the one computation already in flight.  Only the maintenance
+ * of the CAR lists is done under the lock
+ * <p>
+ * If an indexer is given the cache keeps a reverse index from index
+ * keys to the keys that were added with them.  The index is allowed
+ * to hold keys that have since left the cache, which are pruned once
+ * the index grows past a multiple of the number of keys the CAR lists
+ * can hold.  If isWeak is true the index only holds its keys weakly,
+ * so the index does not keep keys alive that the CAR lists would
+ * have let go of
  * 
  * @author jwells
  *
@@ -72,15 +95,51 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     
     private final AtomicLong hits = new AtomicLong(0L);
     private final AtomicLong tries = new AtomicLong(0L);
+    private final AtomicLong evictions = new AtomicLong(0L);
+    
+    // Only used when computing in parallel
+    private final ConcurrentHashMap<K, InFlight<V>> inFlight;
+    private final ThreadLocal<Boolean> computing;
+    
+    // Incremented whenever values are removed, so that values computed
+    // before a removal are not added to the cache after the removal
+    private long generation = 0L;
+    
+    // Only used when there is an indexer
+    private final CacheKeyIndexer<K> indexer;
+    private final boolean isWeak;
+    private final HashMap<Object, Set<K>> index;
+    private int indexSize = 0;
     
     public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak) {
+        this(computable, maxSize, isWeak, false);
+    }
+    
+    public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak, boolean computeInParallel) {
+        this(computable, maxSize, isWeak, computeInParallel, null);
+    }
+    
+    public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak, boolean computeInParallel,
+            CacheKeyIndexer<K> indexer) {
         this.computable = computable;
         this.maxSize = maxSize;
+        this.indexer = indexer;
+        this.isWeak = isWeak;
+        index = (indexer == null) ? null : new HashMap<Object, Set<K>>();
         
         t1 = GeneralUtilities.getWeakHashClock(isWeak);
         t2 = GeneralUtilities.getWeakHashClock(isWeak);
         b1 = GeneralUtilities.getWeakHashLRU(isWeak);
         b2 = GeneralUtilities.getWeakHashLRU(isWeak);
+        
+        if (computeInParallel) {
+            inFlight = new ConcurrentHashMap<K, InFlight<V>>();
+            computing = new ThreadLocal<Boolean>();
+        }
+        else {
+            inFlight = null;
+            computing = null;
+        }
     }
     
     private V getValueFromT(K key) {
@@ -115,6 +174,10 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
             return value;
         }
         
+        if (inFlight != null) {
+            return computeInParallel(key);
+        }
+        
         synchronized (this) {
             value = getValueFromT(key);
             if (value != null) {
@@ -132,62 +195,210 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 return (V) cee.getComputation();
             }
             
-            int cacheSize = getValueSize();
-            if (cacheSize >= maxSize) {
-                replace();
-            
-                boolean inB1 = b1.contains(key);
-                boolean inB2 = b2.contains(key);
-                if (!inB1 && !inB2) {
-                    if ((t1.size() + b1.size()) >= maxSize) {
-                        b1.remove();
-                    }
-                    else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
-                        b2.remove();
-                    }
+            add(key, value);
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Called on a miss when computing in parallel.  Only one thread
+     * computes the value of any one key, the others wait for it
+     */
+    @SuppressWarnings("unchecked")
+    private V computeInParallel(K key) {
+        if (Boolean.TRUE.equals(computing.get())) {
+            // A computable is looking up another key.  Waiting here for
+            // another thread could deadlock, so compute without waiting
+            return computeAndAdd(key, null);
+        }
+        
+        for (;;) {
+            InFlight<V> mine = new InFlight<V>();
+            InFlight<V> other = inFlight.putIfAbsent(key, mine);
+            if (other != null) {
+                if (other.await()) {
+                    return other.value;
                 }
+                
+                // The other computation failed, give it a try ourselves
+                continue;
+            }
+            
+            try {
+                return computeAndAdd(key, mine);
+            }
+            finally {
+                inFlight.remove(key, mine);
+                mine.done();
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private V computeAndAdd(K key, InFlight<V> mine) {
+        long startGeneration;
+        synchronized (this) {
+            V value = getValueFromT(key);
+            if (value != null) {
+                hits.getAndIncrement();
+                if (mine != null) mine.succeeded(value);
+                return value;
+            }
+            
+            startGeneration = generation;
+        }
+        
+        V value;
+        Boolean wasComputing = computing.get();
+        computing.set(Boolean.TRUE);
+        try {
+            value = computable.compute(key);
+        }
+        catch (ComputationErrorException cee) {
+            // In this case the value should not be kept in the cache
+            value = (V) cee.getComputation();
+            if (mine != null) mine.succeeded(value);
+            return value;
+        }
+        finally {
+            if (wasComputing == null) {
+                computing.remove();
             }
+        }
+        
+        synchronized (this) {
+            V existing = getValueFromT(key);
+            if (existing != null) {
+                value = existing;
+            }
+            else if (startGeneration == generation) {
+                add(key, value);
+            }
+        }
+        
+        if (mine != null) mine.succeeded(value);
+        return value;
+    }
+    
+    /**
+     * Adds the newly computed value to the CAR lists.
+     * Must be called with this lock held
+     */
+    private void add(K key, V value) {
+        int cacheSize = getValueSize();
+        if (cacheSize >= maxSize) {
+            replace();
         
             boolean inB1 = b1.contains(key);
             boolean inB2 = b2.contains(key);
-        
             if (!inB1 && !inB2) {
-                t1.put(key, new CarValue<V>(value));
+                if ((t1.size() + b1.size()) >= maxSize) {
+                    b1.remove();
+                }
+                else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
+                    b2.remove();
+                }
             }
-            else if (inB1) {
-                int b1size = b1.size();
-                if (b1size == 0) b1size = 1;  // Can happen in a weak situation, we fake the one
-            
-                int b2size = b2.size();
-            
-                int ratio = b2size / b1size;  // integer division
-                if (ratio <= 0) ratio = 1;
-            
-                p = p + ratio;
-                if (p > maxSize) p = maxSize;
-            
-                b1.remove(key);
-                t2.put(key, new CarValue<V>(value));
+        }
+    
+        boolean inB1 = b1.contains(key);
+        boolean inB2 = b2.contains(key);
+    
+        if (!inB1 && !inB2) {
+            t1.put(key, new CarValue<V>(value));
+        }
+        else if (inB1) {
+            int b1size = b1.size();
+            if (b1size == 0) b1size = 1;  // Can happen in a weak situation, we fake the one
+        
+            int b2size = b2.size();
+        
+            int ratio = b2size / b1size;  // integer division
+            if (ratio <= 0) ratio = 1;
+        
+            p = p + ratio;
+            if (p > maxSize) p = maxSize;
+        
+            b1.remove(key);
+            t2.put(key, new CarValue<V>(value));
+        }
+        else {
+            // Must be in B2
+            int b2size = b2.size();
+            if (b2size == 0) b2size = 1;  // Can happen in a weak situation, we fake the one
+        
+            int b1size = b1.size();
+        
+            int ratio = b1size / b2size;
+            if (ratio <= 0) ratio = 1;
+        
+            p = p - ratio;
+            if (p < 0) p = 0;
+        
+            b2.remove(key);
+            t2.put(key, new CarValue<V>(value));
+        }
+        
+        // Must be done after the key is in the lists, since the index may be pruned
+        addToIndex(key);
+    }
+    
+    /**
+     * Must be called with this lock held
+     */
+    private void addToIndex(K key) {
+        if (indexer == null) return;
+        
+        Object indexKey = indexer.getIndexKey(key);
+        if (indexKey == null) return;
+        
+        Set<K> keys = index.get(indexKey);
+        if (keys == null) {
+            if (isWeak) {
+                keys = Collections.newSetFromMap(new WeakHashMap<K, Boolean>());
             }
             else {
-                // Must be in B2
-                int b2size = b2.size();
-                if (b2size == 0) b2size = 1;  // Can happen in a weak situation, we fake the one
-            
-                int b1size = b1.size();
-            
-                int ratio = b1size / b2size;
-                if (ratio <= 0) ratio = 1;
+                keys = new HashSet<K>();
+            }
+            index.put(indexKey, keys);
+        }
+        
+        if (!keys.add(key)) return;
+        
+        indexSize++;
+        if (indexSize > (4 * maxSize) + 16) {
+            pruneIndex();
+        }
+    }
+    
+    /**
+     * Removes the keys that are no longer in any of the CAR lists from
+     * the index.  Must be called with this lock held
+     */
+    private void pruneIndex() {
+        indexSize = 0;
+        
+        Iterator<Set<K>> iterator = index.values().iterator();
+        while (iterator.hasNext()) {
+            Set<K> keys = iterator.next();
             
-                p = p - ratio;
-                if (p < 0) p = 0;
+            Iterator<K> keyIterator = keys.iterator();
+            while (keyIterator.hasNext()) {
+                K key = keyIterator.next();
+                
+                if (t1.get(key) == null && t2.get(key) == null && !b1.contains(key) && !b2.contains(key)) {
+                    keyIterator.remove();
+                }
+            }
             
-                b2.remove(key);
-                t2.put(key, new CarValue<V>(value));
+            if (keys.isEmpty()) {
+                iterator.remove();
+            }
+            else {
+                indexSize += keys.size();
             }
         }
-        
-        return value;
     }
     
     private void replace() {
@@ -204,6 +415,7 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                     
                     t1.remove(entry.getKey());
                     b1.add(entry.getKey());
+                    evictions.getAndIncrement();
                 }
                 else {
                     CarValue<V> entryValue = entry.getValue();
@@ -221,6 +433,7 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                     
                     t2.remove(entry.getKey());
                     b2.add(entry.getKey());
+                    evictions.getAndIncrement();
                 }
                 else {
                     CarValue<V> entryValue = entry.getValue();
@@ -251,15 +464,23 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized void clear() {
+        generation++;
+        
         t1.clear();
         t2.clear();
         b1.clear();
         b2.clear();
         
+        if (index != null) {
+            index.clear();
+            indexSize = 0;
+        }
+        
         p = 0;
         
         tries.set(0);
         hits.set(0);
+        evictions.set(0);
     }
 
     /* (non-Javadoc)
@@ -283,6 +504,8 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized boolean remove(K key) {
+        generation++;
+        
         if (t1.remove(key) == null) {
             if (t2.remove(key) == null) {
                 if (!b1.remove(key)) {
@@ -305,12 +528,50 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     public synchronized void releaseMatching(CacheKeyFilter<K> filter) {
         if (filter == null) return;
         
+        generation++;
+        
         b2.releaseMatching(filter);
         b1.releaseMatching(filter);
         t1.releaseMatching(filter);
         t2.releaseMatching(filter);
     }
 
+    /**
+     * Releases all key/value pairs whose keys have the given
+     * index key.  Unlike {@link #releaseMatching(CacheKeyFilter)}
+     * the cost of this is proportional to the number of keys released
+     * rather than to the size of the cache
+     * 
+     * @param indexKey The index key, as returned by the
+     * {@link CacheKeyIndexer} of this cache.  If null nothing
+     * is released
+     * @throws IllegalStateException if this cache was not
+     * created with a {@link CacheKeyIndexer}
+     */
+    public synchronized void releaseIndexed(Object indexKey) {
+        if (indexer == null) {
+            throw new IllegalStateException("This cache was not created with an indexer");
+        }
+        if (indexKey == null) return;
+        
+        generation++;
+        
+        Set<K> keys = index.remove(indexKey);
+        if (keys == null) return;
+        
+        // Weakly held keys may have been collected since they were counted
+        indexSize -= keys.size();
+        if (indexSize < 0) indexSize = 0;
+        
+        for (K key : keys) {
+            if (t1.remove(key) == null && t2.remove(key) == null) {
+                if (!b1.remove(key)) {
+                    b2.remove(key);
+                }
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.utilities.cache.WeakCARCache#clearStaleReferences()
      */
@@ -331,6 +592,49 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
         }
         
     }
+    
+    /**
+     * A computation that is currently being done by some thread
+     */
+    private static class InFlight<V> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile V value;
+        private volatile boolean succeeded = false;
+        
+        private void succeeded(V value) {
+            this.value = value;
+            succeeded = true;
+        }
+        
+        private void done() {
+            latch.countDown();
+        }
+        
+        /**
+         * Waits for the computation to finish
+         * 
+         * @return true if the computation succeeded, false if it failed
+         */
+        private boolean await() {
+            boolean interrupted = false;
+            try {
+                for (;;) {
+                    try {
+                        latch.await();
+                        return succeeded;
+                    }
+                    catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT1Size()
@@ -394,11 +698,42 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
         return ((double) localHits / (double) localTries) * (double) 100.00;
     }
     
+    /**
+     * Returns the number of values removed from the T1 or
+     * T2 clocks in order to make room for new values since
+     * the last time clear was called
+     * 
+     * @return The number of evictions since the last time
+     * clear was called
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    /**
+     * The number of calls to compute since the last clear
+     * 
+     * @return The number of calls to compute since the last clear
+     */
+    /* package */ long getTries() {
+        return tries.get();
+    }
+    
+    /**
+     * The number of calls to compute since the last clear that
+     * did not call the computable
+     * 
+     * @return The number of hits since the last clear
+     */
+    /* package */ long getHits() {
+        return hits.get();
+    }
+    
     @Override
     public String toString() {
         return "WeakCARCacheImpl(t1size=" + t1.size() + ",t2Size=" + t2.size() +
                 ",b1Size=" + b1.size() + ",b2Size=" + b2.size() + ",p=" + p + "," +
-                "hitRate=" + getHitRate() + "%," + System.identityHashCode(this) + ")";
+                "hitRate=" + getHitRate() + "%,evictions=" + evictions.get() + "," + System.identityHashCode(this) + ")";
     }
 
     
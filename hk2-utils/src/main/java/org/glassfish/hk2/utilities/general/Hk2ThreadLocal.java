@@ -40,25 +40,36 @@
 package org.glassfish.hk2.utilities.general;
 
 import java.util.WeakHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 /**
- * This is a poor mans version of a {@link java.lang.ThreadLocal} with
- * the one major upside of a {@link #removeAll()} method that
- * can be used to remove ALL instances of all thread locals on
- * ALL threads from any other thread.
+ * This is a {@link java.lang.ThreadLocal} with the one major upside
+ * of a {@link #removeAll()} method that can be used to remove ALL
+ * instances of all thread locals on ALL threads from any other thread.
+ * <p>
+ * The value of each thread is kept in a slot held by a real
+ * {@link java.lang.ThreadLocal}, so {@link #get()} does not take any
+ * lock once the current thread has a value.  The slots that hold a value
+ * are also kept in a registry keyed weakly by thread, which is only
+ * touched when a value is first given to a thread and by
+ * {@link #removeAll()} and {@link #getSize()}
  *
  * @author jwells
  *
  */
 public class Hk2ThreadLocal<T> {
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final WriteLock wLock = readWriteLock.writeLock();
-    private final ReadLock rLock = readWriteLock.readLock();
+    /** Marks a slot that has no value, since null is a valid value */
+    private final static Object NO_VALUE = new Object();
     
-    private final WeakHashMap<Thread, T> locals = new WeakHashMap<Thread, T>();
+    private final Object lock = new Object();
+    
+    private final WeakHashMap<Thread, Slot> registry = new WeakHashMap<Thread, Slot>();
+    
+    private final ThreadLocal<Slot> slots = new ThreadLocal<Slot>() {
+        @Override
+        protected Slot initialValue() {
+            return new Slot();
+        }
+    };
     
     /**
      * Returns the current thread's "initial value" for this
@@ -90,36 +101,20 @@ public class Hk2ThreadLocal<T> {
      *
      * @return the current thread's value of this thread-local
      */
+    @SuppressWarnings("unchecked")
     public T get() {
-        Thread id = Thread.currentThread();
+        Slot slot = slots.get();
         
-        rLock.lock();
-        try {
-            if (locals.containsKey(id)) {
-                return locals.get(id);
-            }
-        }
-        finally {
-            rLock.unlock();
+        Object value = slot.value;
+        if (value != NO_VALUE) {
+            return (T) value;
         }
         
         // Did not previously get a value, so get it now
-        // under write lock
-        wLock.lock();
-        try {
-            if (locals.containsKey(id)) {
-                return locals.get(id);
-            }
-            
-            T initialValue = initialValue();
-            locals.put(id, initialValue);
-            
-            return initialValue;
-        }
-        finally {
-            wLock.unlock();
-        }
+        T initialValue = initialValue();
+        store(slot, initialValue);
         
+        return initialValue;
     }
     
     /**
@@ -132,16 +127,14 @@ public class Hk2ThreadLocal<T> {
      *        this thread-local.
      */
     public void set(T value) {
-        Thread id = Thread.currentThread();
-        
-        wLock.lock();
-        try {
-            locals.put(id, value);
-        }
-        finally {
-            wLock.unlock();
+        store(slots.get(), value);
+    }
+    
+    private void store(Slot slot, Object value) {
+        synchronized (lock) {
+            slot.value = value;
+            registry.put(Thread.currentThread(), slot);
         }
-        
     }
     
     /**
@@ -154,16 +147,14 @@ public class Hk2ThreadLocal<T> {
      * <tt>initialValue</tt> method in the current thread.
      */
      public void remove() {
-         Thread id = Thread.currentThread();
+         Slot slot = slots.get();
          
-         wLock.lock();
-         try {
-             locals.remove(id);
-         }
-         finally {
-             wLock.unlock();
+         synchronized (lock) {
+             slot.value = NO_VALUE;
+             registry.remove(Thread.currentThread());
          }
          
+         slots.remove();
      }
      
      /**
@@ -176,12 +167,12 @@ public class Hk2ThreadLocal<T> {
       * <tt>initialValue</tt> method in the current thread.
       */
       public void removeAll() {
-          wLock.lock();
-          try {
-              locals.clear();
-          }
-          finally {
-              wLock.unlock();
+          synchronized (lock) {
+              for (Slot slot : registry.values()) {
+                  slot.value = NO_VALUE;
+              }
+              
+              registry.clear();
           }
           
       }
@@ -196,12 +187,16 @@ public class Hk2ThreadLocal<T> {
        * have data with the Hk2ThreadLocal
        */
       public int getSize() {
-          rLock.lock();
-          try {
-              return locals.size();
-          }
-          finally {
-              rLock.unlock();
+          synchronized (lock) {
+              return registry.size();
           }
       }
+      
+      /**
+       * The value of one thread.  The value is volatile because
+       * removeAll clears it from some other thread
+       */
+      private static class Slot {
+          private volatile Object value = NO_VALUE;
+      }
 }
@@ -85,6 +85,14 @@ public final class ReflectionHelper {
         '{' , '}', '[', ']', ':', ';', '=', ',', '\\'
     };
     private final static HashMap<Character, Character> REPLACE_CHARACTERS = new HashMap<Character, Character>();
+    
+    /** Shared so that reading the CCL under privilege does not allocate on every invocation */
+    private final static PrivilegedAction<ClassLoader> GET_CCL_ACTION = new PrivilegedAction<ClassLoader>() {
+        @Override
+        public ClassLoader run() {
+            return Thread.currentThread().getContextClassLoader();
+        }
+    };
 
     static {
         for (char illegal : ILLEGAL_CHARACTERS) {
@@ -1297,7 +1305,7 @@ public final class ReflectionHelper {
         }
         finally {
             if (neutralCCL) {
-                setContextClassLoader(Thread.currentThread(), currentCCL);
+                restoreContextClassLoader(currentCCL);
             }
         }
     }
@@ -1314,6 +1322,29 @@ public final class ReflectionHelper {
         return ((modifiers & Modifier.STATIC) != 0);
     }
 
+    /**
+     * Puts the given classloader back as the context classloader of the
+     * current thread, but only if the invoked code actually changed it.
+     * In the common case where the CCL was left alone this costs a
+     * single read and no allocation
+     *
+     * @param l The classloader that was the CCL prior to the invocation
+     */
+    private static void restoreContextClassLoader(ClassLoader l) {
+        if (System.getSecurityManager() == null) {
+            Thread t = Thread.currentThread();
+            if (t.getContextClassLoader() != l) {
+                t.setContextClassLoader(l);
+            }
+            
+            return;
+        }
+        
+        if (AccessController.doPrivileged(GET_CCL_ACTION) != l) {
+            setContextClassLoader(Thread.currentThread(), l);
+        }
+    }
+
     /**
      * Sets the context classloader under the privileged of this class
      * @param t The thread on which to set the classloader
@@ -1382,7 +1413,7 @@ public final class ReflectionHelper {
             throw th;
         } finally {
             if (neutralCCL) {
-                setContextClassLoader(Thread.currentThread(), currentCCL);
+                restoreContextClassLoader(currentCCL);
             }
         }
     }
@@ -1491,12 +1522,11 @@ public final class ReflectionHelper {
      * @return The current context class loader
      */
     private static ClassLoader getCurrentContextClassLoader() {
-        return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
-            @Override
-            public ClassLoader run() {
-                return Thread.currentThread().getContextClassLoader();
-            }
-        });
+        if (System.getSecurityManager() == null) {
+            return Thread.currentThread().getContextClassLoader();
+        }
+        
+        return AccessController.doPrivileged(GET_CCL_ACTION);
     }
     
     /**
@@ -0,0 +1,340 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.SegmentedWeakCARCache;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the segmented version of the CAR cache
+ * 
+ * @author jwells
+ *
+ */
+public class SegmentedWeakCARCacheTest {
+    private final static int NUM_SEGMENTS = 4;
+    
+    /**
+     * The maximum size is split evenly, with the remainder
+     * going to the first segments
+     */
+    @Test // @org.junit.Ignore
+    public void testMaxSizeSplitBetweenSegments() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 10, NUM_SEGMENTS, false, false);
+        
+        Assert.assertEquals(10, cache.getMaxSize());
+        Assert.assertEquals(NUM_SEGMENTS, cache.getNumberOfSegments());
+        
+        Assert.assertEquals(3, cache.getSegment(0).getMaxSize());
+        Assert.assertEquals(3, cache.getSegment(1).getMaxSize());
+        Assert.assertEquals(2, cache.getSegment(2).getMaxSize());
+        Assert.assertEquals(2, cache.getSegment(3).getMaxSize());
+    }
+    
+    /**
+     * Values are cached, and the totals are the sums of the segments
+     */
+    @Test // @org.junit.Ignore
+    public void testValuesCachedAcrossSegments() {
+        CountingComputable computable = new CountingComputable();
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                computable, 100, NUM_SEGMENTS, false, true);
+        
+        for (int lcv = 0; lcv < 20; lcv++) {
+            Assert.assertEquals(lcv, cache.compute(lcv).intValue());
+        }
+        for (int lcv = 0; lcv < 20; lcv++) {
+            Assert.assertEquals(lcv, cache.compute(lcv).intValue());
+        }
+        
+        Assert.assertEquals(20, computable.count.get());
+        Assert.assertEquals(20, cache.getValueSize());
+        Assert.assertEquals(20, cache.getT1Size() + cache.getT2Size());
+        Assert.assertEquals(50.0, cache.getHitRate(), 0.01);
+        
+        int segmentTotal = 0;
+        int segmentsUsed = 0;
+        for (int lcv = 0; lcv < cache.getNumberOfSegments(); lcv++) {
+            int segmentSize = cache.getSegment(lcv).getValueSize();
+            
+            segmentTotal += segmentSize;
+            if (segmentSize > 0) segmentsUsed++;
+        }
+        
+        Assert.assertEquals(20, segmentTotal);
+        Assert.assertTrue("Only " + segmentsUsed + " segments were used", segmentsUsed > 1);
+        
+        Assert.assertTrue(cache.remove(7));
+        Assert.assertEquals(19, cache.getValueSize());
+        
+        cache.compute(7);
+        Assert.assertEquals(21, computable.count.get());
+    }
+    
+    /**
+     * Each segment evicts on its own once it is full
+     */
+    @Test // @org.junit.Ignore
+    public void testEvictionsCountedPerSegment() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 8, NUM_SEGMENTS, false, false);
+        
+        for (int lcv = 0; lcv < 100; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        Assert.assertTrue(cache.getValueSize() <= 8);
+        
+        long segmentEvictions = 0;
+        for (int lcv = 0; lcv < cache.getNumberOfSegments(); lcv++) {
+            WeakCARCache<Integer, Integer> segment = cache.getSegment(lcv);
+            
+            Assert.assertTrue(segment.getValueSize() <= segment.getMaxSize());
+            segmentEvictions += cache.getSegmentEvictions(lcv);
+        }
+        
+        Assert.assertEquals(100 - cache.getValueSize(), cache.getEvictions());
+        Assert.assertEquals(segmentEvictions, cache.getEvictions());
+        
+        cache.clear();
+        
+        Assert.assertEquals(0, cache.getValueSize());
+        Assert.assertEquals(0, cache.getKeySize());
+        Assert.assertEquals(0L, cache.getEvictions());
+    }
+    
+    /**
+     * releaseMatching goes to every segment
+     */
+    @Test // @org.junit.Ignore
+    public void testReleaseMatching() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 100, NUM_SEGMENTS, false, false);
+        
+        for (int lcv = 0; lcv < 20; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        cache.releaseMatching(new CacheKeyFilter<Integer>() {
+
+            @Override
+            public boolean matches(Integer key) {
+                return (key.intValue() % 2) == 0;
+            }
+            
+        });
+        
+        Assert.assertEquals(10, cache.getValueSize());
+    }
+    
+    /**
+     * releaseIndexed only releases keys with the given index key
+     */
+    @Test // @org.junit.Ignore
+    public void testReleaseIndexed() {
+        CountingComputable computable = new CountingComputable();
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                computable, 100, NUM_SEGMENTS, false, true, new ModIndexer());
+        
+        for (int lcv = 0; lcv < 30; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        cache.releaseIndexed(1);
+        Assert.assertEquals(20, cache.getValueSize());
+        
+        // Releasing an index key with no keys is fine
+        cache.releaseIndexed(1);
+        cache.releaseIndexed(7);
+        Assert.assertEquals(20, cache.getValueSize());
+        
+        for (int lcv = 0; lcv < 30; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        // Only the released keys were computed again
+        Assert.assertEquals(40, computable.count.get());
+        
+        // Keys computed again are indexed again
+        cache.releaseIndexed(1);
+        cache.releaseIndexed(2);
+        Assert.assertEquals(10, cache.getValueSize());
+    }
+    
+    /**
+     * The index does not grow without bound as keys are evicted
+     */
+    @Test // @org.junit.Ignore
+    public void testIndexedKeysEvicted() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 10, 1, false, false, new ModIndexer());
+        
+        for (int lcv = 0; lcv < 1000; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        Assert.assertEquals(10, cache.getValueSize());
+        
+        cache.releaseIndexed(0);
+        cache.releaseIndexed(1);
+        cache.releaseIndexed(2);
+        
+        Assert.assertEquals(0, cache.getValueSize());
+        Assert.assertEquals(0, cache.getKeySize());
+    }
+    
+    /**
+     * The index does not keep the keys of a weak cache alive
+     * @throws InterruptedException 
+     */
+    @Test // @org.junit.Ignore
+    public void testIndexedWeakKeysCollected() throws InterruptedException {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CopyingComputable(), 10, 1, true, false, new ModIndexer());
+        
+        Integer key = new Integer(1000);
+        WeakReference<Integer> keyReference = new WeakReference<Integer>(key);
+        
+        Assert.assertEquals(key, cache.compute(key));
+        key = null;
+        
+        int counter = 0;
+        while ((keyReference.get() != null) && (counter < 200)) {
+            System.gc();
+            
+            Thread.sleep(100);
+            
+            counter++;
+        }
+        
+        Assert.assertNull(keyReference.get());
+        
+        // The index still works once its keys are gone
+        cache.compute(1003);
+        cache.releaseIndexed(1);
+        Assert.assertEquals(0, cache.getValueSize());
+    }
+    
+    /**
+     * releaseIndexed can not be used without an indexer
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testReleaseIndexedWithoutIndexer() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 10, 1, false, false);
+        
+        cache.releaseIndexed(0);
+    }
+    
+    /**
+     * A single segment behaves like the unsegmented cache
+     */
+    @Test // @org.junit.Ignore
+    public void testOneSegment() {
+        SegmentedWeakCARCache<Integer, Integer> cache = CacheUtilities.createSegmentedWeakCARCache(
+                new CountingComputable(), 10, 1, false, false);
+        
+        Assert.assertEquals(1, cache.getNumberOfSegments());
+        Assert.assertEquals(10, cache.getSegment(0).getMaxSize());
+        
+        for (int lcv = 0; lcv < 11; lcv++) {
+            cache.compute(lcv);
+        }
+        
+        Assert.assertEquals(10, cache.getValueSize());
+        Assert.assertEquals(1L, cache.getEvictions());
+    }
+    
+    /**
+     * Bad segment counts are rejected
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroSegments() {
+        CacheUtilities.createSegmentedWeakCARCache(new CountingComputable(), 10, 0, false, false);
+    }
+    
+    /**
+     * A max size smaller than the number of segments is rejected
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testMoreSegmentsThanSize() {
+        CacheUtilities.createSegmentedWeakCARCache(new CountingComputable(), 3, NUM_SEGMENTS, false, false);
+    }
+    
+    private static class ModIndexer implements CacheKeyIndexer<Integer> {
+
+        @Override
+        public Object getIndexKey(Integer key) {
+            return key.intValue() % 3;
+        }
+        
+    }
+    
+    private static class CopyingComputable implements Computable<Integer, Integer> {
+
+        @Override
+        public Integer compute(Integer key) {
+            return new Integer(key.intValue());
+        }
+        
+    }
+    
+    private static class CountingComputable implements Computable<Integer, Integer> {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Integer compute(Integer key) {
+            count.incrementAndGet();
+            return key;
+        }
+        
+    }
+
+}
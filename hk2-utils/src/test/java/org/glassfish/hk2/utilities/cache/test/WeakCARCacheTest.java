@@ -41,6 +41,10 @@ package org.glassfish.hk2.utilities.cache.test;
 
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
@@ -741,6 +745,197 @@ public class WeakCARCacheTest {
         testConcurrency(cache);
     }
     
+    @Test // @org.junit.Ignore
+    public void testConcurrencyComputeInParallel() throws InterruptedException {
+        // Key space is 100 keys, so we will make the cache size 50
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, false, true);
+        testConcurrency(cache);
+    }
+    
+    /**
+     * Two threads missing on different keys must be able to compute
+     * at the same time.  The computable will only return once both
+     * threads are inside of it
+     */
+    @Test(timeout=60000) // @org.junit.Ignore
+    public void testMissesOnDifferentKeysComputeInParallel() throws Throwable {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                try {
+                    barrier.await(20, TimeUnit.SECONDS);
+                }
+                catch (Exception e) {
+                    throw new AssertionError("Computations were not done in parallel: " + e);
+                }
+                
+                return key;
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread one = new ComputeThread(cache, 1);
+        ComputeThread two = new ComputeThread(cache, 2);
+        
+        one.start();
+        two.start();
+        
+        Assert.assertEquals(1, one.getResult().intValue());
+        Assert.assertEquals(2, two.getResult().intValue());
+        
+        Assert.assertEquals(2, cache.getValueSize());
+    }
+    
+    /**
+     * Many threads missing on the same key must only
+     * compute the value once
+     */
+    @Test(timeout=60000) // @org.junit.Ignore
+    public void testConcurrentMissesOnSameKeyComputeOnce() throws Throwable {
+        final CountDownLatch inCompute = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger computations = new AtomicInteger();
+        
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                computations.incrementAndGet();
+                inCompute.countDown();
+                
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                
+                return new Integer(key.intValue());
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread threads[] = new ComputeThread[NUM_THREADS];
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv] = new ComputeThread(cache, 1);
+            threads[lcv].start();
+        }
+        
+        Assert.assertTrue(inCompute.await(20, TimeUnit.SECONDS));
+        
+        // Give the other threads a chance to start waiting
+        Thread.sleep(100);
+        release.countDown();
+        
+        Integer first = threads[0].getResult();
+        for (int lcv = 1; lcv < NUM_THREADS; lcv++) {
+            Assert.assertSame(first, threads[lcv].getResult());
+        }
+        
+        Assert.assertEquals(1, computations.get());
+    }
+    
+    /**
+     * A computable is allowed to use the cache it is computing
+     * values for when computing in parallel
+     */
+    @Test(timeout=60000) // @org.junit.Ignore
+    public void testComputableUsesCacheWhenComputingInParallel() {
+        final AtomicInteger computations = new AtomicInteger();
+        final WeakCARCache<?, ?> holder[] = new WeakCARCache<?, ?>[1];
+        
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Integer compute(Integer key) {
+                computations.incrementAndGet();
+                if (key.intValue() == 0) return 0;
+                
+                WeakCARCache<Integer, Integer> me = (WeakCARCache<Integer, Integer>) holder[0];
+                return me.compute(key.intValue() - 1) + key.intValue();
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        holder[0] = cache;
+        
+        Assert.assertEquals(15, cache.compute(5).intValue());
+        Assert.assertEquals(6, computations.get());
+        
+        Assert.assertEquals(15, cache.compute(5).intValue());
+        Assert.assertEquals(10, cache.compute(4).intValue());
+        Assert.assertEquals(6, computations.get());
+    }
+    
+    /**
+     * A value computed while the cache is being cleared must not
+     * be added to the cache, since it may be computed from stale data
+     */
+    @Test(timeout=60000) // @org.junit.Ignore
+    public void testClearDuringComputationDoesNotCacheValue() throws Throwable {
+        final CountDownLatch inCompute = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(new Computable<Integer, Integer>() {
+
+            @Override
+            public Integer compute(Integer key) {
+                inCompute.countDown();
+                
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                
+                return key;
+            }
+            
+        }, SMALL_CACHE_SIZE, false, true);
+        
+        ComputeThread thread = new ComputeThread(cache, 1);
+        thread.start();
+        
+        Assert.assertTrue(inCompute.await(20, TimeUnit.SECONDS));
+        cache.clear();
+        release.countDown();
+        
+        Assert.assertEquals(1, thread.getResult().intValue());
+        Assert.assertEquals(0, cache.getValueSize());
+    }
+    
+    private static class ComputeThread extends Thread {
+        private final WeakCARCache<Integer, Integer> cache;
+        private final Integer key;
+        private volatile Integer result;
+        private volatile Throwable error;
+        
+        private ComputeThread(WeakCARCache<Integer, Integer> cache, int key) {
+            this.cache = cache;
+            this.key = key;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                result = cache.compute(key);
+            }
+            catch (Throwable th) {
+                error = th;
+            }
+        }
+        
+        private Integer getResult() throws Throwable {
+            join();
+            
+            if (error != null) throw error;
+            return result;
+        }
+    }
+    
     private final static int CONCURRENT_ITERATIONS = 100000;
     
     private static class Runner implements Runnable {
@@ -39,6 +39,7 @@
  */
 package org.glassfish.hk2.utilities.reflection;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
@@ -1124,4 +1125,61 @@ public class ReflectionHelperTest {
         Assert.assertEquals(List.class, cType1.getComponentType());
     }
 
+    /**
+     * Tests that a neutral invoke puts back a CCL changed by the method
+     * and leaves the CCL alone when the method did not change it
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void testNeutralCCLInvoke() throws Throwable {
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try {
+            CCLChanger changer = new CCLChanger();
+            Thread.currentThread().setContextClassLoader(original);
+            
+            Method changeCCL = CCLChanger.class.getDeclaredMethod("changeCCL");
+            Method leaveCCL = CCLChanger.class.getDeclaredMethod("leaveCCL");
+            
+            for (int lcv = 0; lcv < 2; lcv++) {
+                ReflectionHelper.invoke(changer, changeCCL, new Object[0], true);
+                Assert.assertSame(original, Thread.currentThread().getContextClassLoader());
+                
+                ReflectionHelper.invoke(changer, leaveCCL, new Object[0], true);
+                Assert.assertSame(original, Thread.currentThread().getContextClassLoader());
+            }
+            
+            Assert.assertEquals(4, changer.getCalls());
+            
+            ReflectionHelper.invoke(changer, changeCCL, new Object[0], false);
+            Assert.assertSame(CCLChanger.getOtherLoader(), Thread.currentThread().getContextClassLoader());
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+    
+    /**
+     * Tests that a neutral makeMe puts back a CCL changed by the constructor
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void testNeutralCCLMakeMe() throws Throwable {
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try {
+            Constructor<?> c = CCLChanger.class.getConstructor();
+            
+            Object made = ReflectionHelper.makeMe(c, new Object[0], true);
+            Assert.assertTrue(made instanceof CCLChanger);
+            Assert.assertSame(original, Thread.currentThread().getContextClassLoader());
+            
+            ReflectionHelper.makeMe(c, new Object[0], false);
+            Assert.assertSame(CCLChanger.getOtherLoader(), Thread.currentThread().getContextClassLoader());
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
 }
@@ -311,7 +311,41 @@ public class GeneralUtilitiesTest {
         // Second time just gets it
         Assert.assertNull(threadLocal.get());
     }
-    
+
+    /**
+     * Tests that a null initial value is remembered rather than
+     * computed again, until it is removed
+     */
+    @Test
+    public void testNullInitialValueComputedOnce() {
+        final int calls[] = new int[1];
+        Hk2ThreadLocal<Object> threadLocal = new Hk2ThreadLocal<Object>() {
+            @Override
+            protected Object initialValue() {
+                calls[0]++;
+                return null;
+            }
+        };
+
+        Assert.assertNull(threadLocal.get());
+        Assert.assertNull(threadLocal.get());
+        Assert.assertEquals(1, calls[0]);
+        Assert.assertEquals(1, threadLocal.getSize());
+
+        threadLocal.remove();
+        Assert.assertEquals(0, threadLocal.getSize());
+
+        Assert.assertNull(threadLocal.get());
+        Assert.assertEquals(2, calls[0]);
+
+        threadLocal.removeAll();
+        Assert.assertEquals(0, threadLocal.getSize());
+
+        Assert.assertNull(threadLocal.get());
+        Assert.assertEquals(3, calls[0]);
+        Assert.assertEquals(1, threadLocal.getSize());
+    }
+
     private static class ThreadGetter implements Runnable {
         private final ThreadService threadService;
         private Long tid;
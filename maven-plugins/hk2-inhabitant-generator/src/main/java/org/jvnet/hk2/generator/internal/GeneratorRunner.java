@@ -70,6 +70,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
 /**
@@ -90,6 +91,7 @@ public class GeneratorRunner {
     private final boolean noSwap;
     private final String outputDirectory;  // Not used in the JAR case
     private final boolean includeDate;
+    private final boolean includeBinary;
     private final boolean outJarIsInJar;
 
     /**
@@ -104,6 +106,8 @@ public class GeneratorRunner {
      * @param noSwap true if this run should NOT swap files (faster but riskier)
      * @param outputDirectory The directory where the file should go
      * @param includeDate Whether or not the output file should include a date
+     * @param includeBinary Whether or not a binary descriptor file should be
+     * written next to the text descriptor file
      */
     public GeneratorRunner(String fileOrDirectory,
             String outjarName,
@@ -112,7 +116,8 @@ public class GeneratorRunner {
             String searchPath,
             boolean noSwap,
             String outputDirectory,
-            boolean includeDate) {
+            boolean includeDate,
+            boolean includeBinary) {
         this.fileOrDirectory = fileOrDirectory;
         this.outjarName = outjarName;
         this.locatorName = locatorName;
@@ -121,11 +126,13 @@ public class GeneratorRunner {
         this.outputDirectory = outputDirectory;
         utilities = new Utilities(verbose, searchPath);
         this.includeDate = includeDate;
+        this.includeBinary = includeBinary;
         outJarIsInJar = fileOrDirectory.equals(outjarName);
         
         if (verbose) {
             System.out.println("HabitatGenerator: inputFile=" + fileOrDirectory + " outjarName=" + outjarName +
-                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory);
+                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory +
+                    " includeBinary=" + includeBinary);
         }
     }
     
@@ -241,10 +248,38 @@ public class GeneratorRunner {
                             " to " + outputFile.getAbsolutePath());
                 }
             }
+            
+            writeBinaryFile(descriptors, new File(inhabitantsDir, targetHabitatName + BinaryDescriptorFile.BINARY_SUFFIX));
 
         }
     }
     
+    /**
+     * Writes the binary descriptor file if requested, otherwise removes
+     * any old one so it cannot hide the new text file
+     */
+    private void writeBinaryFile(List<DescriptorImpl> descriptors, File binaryFile) throws IOException {
+        if (!includeBinary) {
+            if (binaryFile.exists() && !binaryFile.delete()) {
+                throw new IOException("Could not delete stale binary inhabitant file " + binaryFile.getAbsolutePath());
+            }
+            
+            return;
+        }
+        
+        if (verbose) {
+            System.out.println("Writing " + descriptors.size() + " entries to binary file " + binaryFile.getAbsolutePath());
+        }
+        
+        FileOutputStream fos = new FileOutputStream(binaryFile);
+        try {
+            BinaryDescriptorFile.write(fos, descriptors);
+        }
+        finally {
+            fos.close();
+        }
+    }
+    
     private void writeToJar(File jarFile, List<DescriptorImpl> descriptors) throws IOException {
         File outjar = new File(outjarName);
         File writeMeFile = writeInhabitantsFile(descriptors, null, outjar.getParentFile());
@@ -268,7 +303,8 @@ public class GeneratorRunner {
             while (zentry != null) {
                 String entryName = zentry.getName();
             
-                if (entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName)) {
+                if (entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName) ||
+                        entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName + BinaryDescriptorFile.BINARY_SUFFIX)) {
                     // Don't write out the old one
                     zentry = zis.getNextEntry();
                     continue;
@@ -297,6 +333,12 @@ public class GeneratorRunner {
                 finally {
                     desc_os.close();
                 }
+                
+                if (includeBinary) {
+                    zos.putNextEntry(new ZipEntry(META_INF + "/" + INHABITANTS + "/" + locatorName + BinaryDescriptorFile.BINARY_SUFFIX));
+                    
+                    BinaryDescriptorFile.write(zos, descriptors);
+                }
             }
         }
         finally {
@@ -351,6 +393,17 @@ public class GeneratorRunner {
             bais = new ByteArrayInputStream(data);
             
             Files.copy(bais, locatorPath, StandardCopyOption.REPLACE_EXISTING);
+            
+            Path binaryPath = fileSystem.getPath("/" + META_INF, INHABITANTS, locatorName + BinaryDescriptorFile.BINARY_SUFFIX);
+            if (includeBinary) {
+                ByteArrayOutputStream binaryBytes = new ByteArrayOutputStream();
+                BinaryDescriptorFile.write(binaryBytes, descriptors);
+                
+                Files.copy(new ByteArrayInputStream(binaryBytes.toByteArray()), binaryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            else {
+                Files.deleteIfExists(binaryPath);
+            }
         }
         finally {
             if (bais != null) {
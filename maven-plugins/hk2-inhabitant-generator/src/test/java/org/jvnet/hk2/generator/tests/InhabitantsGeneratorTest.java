@@ -77,6 +77,7 @@ import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.general.GeneralUtilities;
 import org.junit.Before;
@@ -99,6 +100,7 @@ public class InhabitantsGeneratorTest {
     private final static String VERBOSE_ARGUMENT = "--verbose";
     private final static String NOSWAP_ARGUMENT = "--noswap";
     private final static String LOCATOR_ARGUMENT = "--locator";
+    private final static String BINARY_ARGUMENT = "--binary";
     private final static String CLASS_DIRECTORY = "gendir";
     private final static String NEGATIVE_CLASS_DIRECTORY = "negative";
     private final static String JAR_FILE = "gendir.jar";
@@ -740,6 +742,61 @@ public class InhabitantsGeneratorTest {
         }
     }
     
+    /**
+     * Tests generating a binary file next to the text file in a directory
+     * @throws IOException 
+     */
+    @Test
+    public void testBinaryDirectoryGeneration() throws IOException {
+        String argv[] = new String[3];
+        
+        argv[0] = FILE_ARGUMENT;
+        argv[1] = gendirDirectory.getAbsolutePath();
+        argv[2] = BINARY_ARGUMENT;
+        
+        File defaultOutput = new File(inhabitantsDirectory, DEFAULT);
+        File binaryOutput = new File(inhabitantsDirectory, DEFAULT + BinaryDescriptorFile.BINARY_SUFFIX);
+        if (defaultOutput.exists()) {
+            // Start with a clean plate
+            Assert.assertTrue(defaultOutput.delete());
+        }
+        if (binaryOutput.exists()) {
+            Assert.assertTrue(binaryOutput.delete());
+        }
+        
+        try {
+            int result = HabitatGenerator.embeddedMain(argv);
+            Assert.assertEquals("Got error code: " + result, 0, result);
+            
+            Assert.assertTrue("did not generate " + defaultOutput.getAbsolutePath(),
+                    defaultOutput.exists());
+            Assert.assertTrue("did not generate " + binaryOutput.getAbsolutePath(),
+                    binaryOutput.exists());
+            
+            FileInputStream fis = new FileInputStream(binaryOutput);
+            try {
+                BinaryDescriptorFile binaryFile = new BinaryDescriptorFile(BinaryDescriptorFile.getBinaryContents(fis));
+                
+                checkDescriptors(new HashSet<DescriptorImpl>(binaryFile.getDescriptors()));
+            }
+            finally {
+                fis.close();
+            }
+            
+            // Generating again without the binary option removes the old binary file
+            result = HabitatGenerator.embeddedMain(new String[] { FILE_ARGUMENT, gendirDirectory.getAbsolutePath() });
+            Assert.assertEquals("Got error code: " + result, 0, result);
+            
+            Assert.assertTrue(defaultOutput.exists());
+            Assert.assertFalse(binaryOutput.exists());
+        }
+        finally {
+            // The test should be clean
+            defaultOutput.delete();
+            binaryOutput.delete();
+        }
+    }
+    
     /**
      * Tests generating into a jar file
      * @throws IOException On failure